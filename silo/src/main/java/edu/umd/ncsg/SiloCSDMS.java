@@ -26,7 +26,7 @@ public class SiloCSDMS {
 //        syntheticPop sp = new syntheticPop(rb);
 //        sp.runSP();
         initialize(args[0]);
-        for (int year = SiloUtil.getStartYear(); year < SiloUtil.getEndYear(); year += SiloUtil.getSimulationLength()) {
+        while (model.getCurrentYear() < SiloUtil.getEndYear()) {
             update(1d);
         }
         finalizeIt();
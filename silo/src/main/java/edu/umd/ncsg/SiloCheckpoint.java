@@ -0,0 +1,349 @@
+package edu.umd.ncsg;
+
+import com.pb.common.util.ResourceUtil;
+import edu.umd.ncsg.data.*;
+import edu.umd.ncsg.utils.RandomStreams;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Checkpoints of a simulation run. Every checkpoint.interval.years years, the state at the beginning of a simulation
+ * period is stored in scenOutput/scenarioName/checkpoints: all households, persons, dwellings and jobs (including
+ * their order in memory), vacancy lists, highest ids, distributions of the initial population, accessibilities and
+ * the state of the random number generator. The state is copied into a snapshot on the simulation thread and
+ * written to file on a background thread. If resume.from.checkpoint is true, the model continues from the latest
+ * checkpoint instead of reading the micro data of the start year. Result files are cut back to their length at the
+ * checkpoint, as the earlier run may have written results of later years already.
+ **/
+
+public class SiloCheckpoint {
+
+    static Logger logger = Logger.getLogger(SiloCheckpoint.class);
+
+    protected static final String PROPERTIES_CHECKPOINT_INTERVAL    = "checkpoint.interval.years";
+    protected static final String PROPERTIES_RESUME_FROM_CHECKPOINT = "resume.from.checkpoint";
+
+    private static final int CHECKPOINTS_TO_KEEP = 2;
+    private static final String FILE_PREFIX = "checkpoint_";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private static int interval = 0;
+    private static int resumeYear = -1;
+    private static String directory;
+    private static ExecutorService writer;
+    private static Future<?> pendingWrite;
+    private static MicroDataSnapshot resumeCheckpoint;
+
+
+    public static void initialize (ResourceBundle rb) {
+        // read settings and find checkpoint to resume from, needs to run before result files are opened
+        interval = ResourceUtil.getIntegerProperty(rb, PROPERTIES_CHECKPOINT_INTERVAL, 0);
+        directory = SiloUtil.baseDirectory + "scenOutput/" + SiloUtil.scenarioName + "/checkpoints";
+        resumeYear = -1;
+        resumeCheckpoint = null;
+        if (ResourceUtil.getBooleanProperty(rb, PROPERTIES_RESUME_FROM_CHECKPOINT, false)) {
+            resumeYear = findLatestCheckpointYear();
+            if (resumeYear == -1) {
+                logger.warn("Found no checkpoint in " + directory + ", starting in year " + SiloUtil.getStartYear());
+            } else {
+                logger.info("Resuming simulation from checkpoint of year " + resumeYear);
+                String fileName = getFileName(resumeYear);
+                logger.info("Reading checkpoint " + fileName);
+                resumeCheckpoint = MicroDataSnapshot.read(fileName);
+                if (resumeCheckpoint.getIntArray("year")[0] != resumeYear) {
+                    logger.error("Checkpoint " + fileName + " was written for a different year.");
+                    throw new RuntimeException("Invalid checkpoint " + fileName);
+                }
+            }
+        }
+    }
+
+
+    public static int getResumeYear () {
+        // return year of checkpoint the model resumes from, or -1 if the model starts from micro data files
+        return resumeYear;
+    }
+
+
+    public static long[] getResultFileLengths () {
+        // return lengths of the result file and the spatial result file when the checkpoint of the resume year was
+        // written, -1 if unknown
+        if (resumeCheckpoint == null || !resumeCheckpoint.hasTable("resultFileLengths")) return new long[]{-1, -1};
+        int[] lengths = resumeCheckpoint.getIntArray("resultFileLengths");
+        return new long[]{toLong(lengths[0], lengths[1]), toLong(lengths[2], lengths[3])};
+    }
+
+
+    private static long toLong (int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+
+    private static int findLatestCheckpointYear () {
+        int latest = -1;
+        for (int year: listCheckpointYears()) if (year < SiloUtil.getEndYear()) latest = Math.max(latest, year);
+        return latest;
+    }
+
+
+    private static int[] listCheckpointYears () {
+        File[] files = new File(directory).listFiles();
+        if (files == null) return new int[0];
+        int[] years = new int[files.length];
+        int count = 0;
+        for (File file: files) {
+            String name = file.getName();
+            if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) continue;
+            try {
+                years[count] = Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring file " + name + " in checkpoint directory.");
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(years, 0, result, 0, count);
+        return result;
+    }
+
+
+    private static String getFileName (int year) {
+        return directory + "/" + FILE_PREFIX + year + FILE_SUFFIX;
+    }
+
+
+    public static boolean isCheckpointYear (int year) {
+        // checkpoints are written every interval years, but not in the year the model started or resumed in
+        int firstYear = resumeYear == -1 ? SiloUtil.getStartYear() : resumeYear;
+        return interval > 0 && year != firstYear && (year - SiloUtil.getStartYear()) % interval == 0;
+    }
+
+
+    public static void writeCheckpoint (final int year, HouseholdDataManager householdData, RealEstateDataManager realEstateData,
+                                        JobDataManager jobData, Accessibility acc) {
+        // copy state at the beginning of year into snapshot on this thread, file is written in the background
+        waitForPendingWrite();
+        logger.info("  Writing checkpoint for year " + year);
+        MicroDataSnapshot checkpoint = createCheckpoint(year);
+        householdData.addStateToCheckpoint(checkpoint);
+        realEstateData.addStateToCheckpoint(checkpoint);
+        jobData.addStateToCheckpoint(checkpoint);
+        acc.addStateToCheckpoint(checkpoint);
+        writeInBackground(year, checkpoint);
+    }
+
+
+    static MicroDataSnapshot createCheckpoint (int year) {
+        // copy micro data, their order in memory, random number generators and lengths of result files into snapshot
+        MicroDataSnapshot checkpoint = new MicroDataSnapshot();
+        checkpoint.addIntArray("year", new int[]{year});
+        HouseholdDataManager.addPopulationToSnapshot(checkpoint);
+        RealEstateDataManager.addDwellingsToSnapshot(checkpoint);
+        JobDataManager.addJobsToSnapshot(checkpoint);
+        addLayout(checkpoint, "households", Household.getHouseholds());
+        addLayout(checkpoint, "persons", Person.getPersons());
+        addLayout(checkpoint, "dwellings", Dwelling.getDwellings());
+        addLayout(checkpoint, "jobs", Job.getJobs());
+        addHouseholdMembers(checkpoint);
+        checkpoint.addByteArray("random", serializeRandom(SiloModel.rand));
+        long seed = RandomStreams.getScenarioSeed();
+        checkpoint.addIntArray("randomStreamsSeed", new int[]{(int) (seed >>> 32), (int) seed});
+        long[] lengths = summarizeData.getResultFileLengths();
+        checkpoint.addIntArray("resultFileLengths", new int[]{(int) (lengths[0] >>> 32), (int) lengths[0],
+                (int) (lengths[1] >>> 32), (int) lengths[1]});
+        return checkpoint;
+    }
+
+
+    static void writeInBackground (final int year, final MicroDataSnapshot checkpoint) {
+        SiloUtil.createDirectoryIfNotExistingYet(directory);
+        final String fileName = getFileName(year);
+        if (writer == null) writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pendingWrite = writer.submit(new Runnable() {
+            public void run() {
+                // write to temporary file first, so that a crash while writing does not leave a broken checkpoint
+                File temporary = new File(fileName + ".tmp");
+                checkpoint.write(temporary.getPath());
+                try {
+                    Files.move(temporary.toPath(), new File(fileName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    logger.error("Could not rename checkpoint file " + temporary.getPath(), e);
+                    throw new RuntimeException(e);
+                }
+                removeOtherCheckpoints(year);
+            }
+        });
+    }
+
+
+    private static void removeOtherCheckpoints (int latestYear) {
+        // keep the latest checkpoints, checkpoints of later years were left by an earlier run and are removed as well
+        int[] years = listCheckpointYears();
+        Arrays.sort(years);
+        int kept = 0;
+        for (int i = years.length - 1; i >= 0; i--) {
+            if (years[i] <= latestYear && kept < CHECKPOINTS_TO_KEEP) {
+                kept++;
+            } else {
+                SiloUtil.deleteFile(getFileName(years[i]));
+            }
+        }
+    }
+
+
+    private static void waitForPendingWrite () {
+        if (pendingWrite == null) return;
+        try {
+            pendingWrite.get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not write checkpoint.", e);
+            throw new RuntimeException(e);
+        }
+        pendingWrite = null;
+    }
+
+
+    public static void finish () {
+        // wait until last checkpoint is written, needs to be called before SILO closes
+        try {
+            waitForPendingWrite();
+        } finally {
+            if (writer != null) writer.shutdown();
+            writer = null;
+        }
+    }
+
+
+    public static MicroDataSnapshot readCheckpoint () {
+        // read checkpoint of resume year and create households, persons, dwellings and jobs in their original order.
+        // Persons are connected to their households, connectPersonsToHouseholds() must not be called again
+        MicroDataSnapshot checkpoint = resumeCheckpoint;
+        resumeCheckpoint = null;
+        HouseholdDataManager.createPopulationFromSnapshot(checkpoint);
+        RealEstateDataManager.createDwellingsFromSnapshot(checkpoint);
+        JobDataManager.createJobsFromSnapshot(checkpoint);
+        restoreLayout(checkpoint, "households", Household.getHouseholds());
+        restoreLayout(checkpoint, "persons", Person.getPersons());
+        restoreLayout(checkpoint, "dwellings", Dwelling.getDwellings());
+        restoreLayout(checkpoint, "jobs", Job.getJobs());
+        connectHouseholdMembers(checkpoint);
+        logger.info("Finished reading " + Household.getHouseholdCount() + " households, " + Person.getPersonCount() +
+                " persons, " + Dwelling.getDwellingCount() + " dwellings and " + Job.getJobCount() + " jobs.");
+        return checkpoint;
+    }
+
+
+    public static void restoreModelState (MicroDataSnapshot checkpoint, HouseholdDataManager householdData,
+                                          RealEstateDataManager realEstateData, JobDataManager jobData,
+                                          Accessibility acc) {
+        // restore state that is otherwise calculated at the beginning of a model run, needs to run after all
+        // data managers and models have been set up
+        householdData.restoreStateFromCheckpoint(checkpoint);
+        realEstateData.restoreStateFromCheckpoint(checkpoint);
+        jobData.restoreStateFromCheckpoint(checkpoint);
+        acc.restoreStateFromCheckpoint(checkpoint);
+        restoreRandomState(checkpoint);
+    }
+
+
+    static void restoreRandomState (MicroDataSnapshot checkpoint) {
+        SiloModel.rand = deserializeRandom(checkpoint.getByteArray("random"));
+        int[] seed = checkpoint.getIntArray("randomStreamsSeed");
+        RandomStreams.initialize(toLong(seed[0], seed[1]));
+    }
+
+
+    private static void addLayout (MicroDataSnapshot checkpoint, String table, EntityStore<?> store) {
+        // store slot of every entity (rows are in the order of the store) and the free slots
+        int[] slots = new int[store.size()];
+        int row = 0;
+        for (int slot = 0; slot < store.getSlotCount(); slot++) {
+            if (store.getEntityInSlot(slot) != null) {
+                slots[row] = slot;
+                row++;
+            }
+        }
+        checkpoint.addIntArray(table + "Slots", slots);
+        checkpoint.addIntArray(table + "FreeSlots", store.getFreeSlots());
+        checkpoint.addIntArray(table + "SlotCount", new int[]{store.getSlotCount()});
+    }
+
+
+    private static void restoreLayout (MicroDataSnapshot checkpoint, String table, EntityStore<?> store) {
+        int[] ids = checkpoint.getTable(table).getIntColumn("id");
+        store.restoreLayout(ids, checkpoint.getIntArray(table + "Slots"), checkpoint.getIntArray(table + "FreeSlots"),
+                checkpoint.getIntArray(table + "SlotCount")[0]);
+    }
+
+
+    private static void addHouseholdMembers (MicroDataSnapshot checkpoint) {
+        // store persons of every household in the order of the household's list of persons
+        int[] household = new int[Person.getPersonCount()];
+        int[] person = new int[Person.getPersonCount()];
+        int row = 0;
+        for (Household hh: Household.getHouseholds()) {
+            for (Person pp: hh.getPersons()) {
+                if (pp == null) continue;
+                household[row] = hh.getId();
+                person[row] = pp.getId();
+                row++;
+            }
+        }
+        MicroDataSnapshot.Table members = checkpoint.addTable("householdMembers", row);
+        members.addIntColumn("household", Arrays.copyOf(household, row));
+        members.addIntColumn("person", Arrays.copyOf(person, row));
+    }
+
+
+    private static void connectHouseholdMembers (MicroDataSnapshot checkpoint) {
+        MicroDataSnapshot.Table members = checkpoint.getTable("householdMembers");
+        int[] household = members.getIntColumn("household");
+        int[] person = members.getIntColumn("person");
+        for (int row = 0; row < members.getRowCount(); row++)
+            Household.getHouseholdFromId(household[row]).addPersonForInitialSetup(Person.getPersonFromId(person[row]));
+    }
+
+
+    private static byte[] serializeRandom (Random rand) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(rand);
+        } catch (IOException e) {
+            logger.error("Could not store state of random number generator.", e);
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+
+    private static Random deserializeRandom (byte[] state) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state))) {
+            return (Random) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            logger.error("Could not restore state of random number generator.", e);
+            throw new RuntimeException(e);
+        }
+    }
+}
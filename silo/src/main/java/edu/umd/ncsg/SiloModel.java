@@ -31,6 +31,7 @@ import edu.umd.ncsg.realEstate.*;
 import edu.umd.ncsg.relocation.InOutMigration;
 import edu.umd.ncsg.relocation.MovesModel;
 import edu.umd.ncsg.transportModel.transportModel;
+import edu.umd.ncsg.utils.AsyncFileWriter;
 import edu.umd.ncsg.utils.CblcmDiffGenerator;
 
 import org.apache.log4j.Logger;
@@ -39,6 +40,7 @@ import com.pb.common.util.ResourceUtil;
 import com.pb.common.datafile.TableDataSet;
 import edu.umd.ncsg.demography.*;
 import edu.umd.ncsg.events.EventManager;
+import edu.umd.ncsg.events.EventQueue;
 import edu.umd.ncsg.events.EventTypes;
 
 /**
@@ -65,6 +67,7 @@ public class SiloModel {
     protected static final String PROPERTIES_CBLCM_MULTIPLIER_PREFIX				= "cblcm.multiplier";
     protected static final String PROPERTIES_CBLCM_MAND_ZONES_FILE			= "cblcm.mandatory.zonal.base.file";
     protected static final String PROPERTIES_SPATIAL_RESULT_FILE_NAME     	= "spatial.result.file.name";
+    protected static final String PROPERTIES_CROSS_CHECK_ZONAL_COUNTERS     = "cross.check.zonal.counters";
     
     
     protected static final String PROPERTIES_CREATE_HOUSING_ENV_IMPACT_FILE = "create.housing.environm.impact.files";
@@ -102,6 +105,8 @@ public class SiloModel {
      */
     public SiloModel(ResourceBundle rb) {
         this.rb = rb;
+        SiloCheckpoint.initialize(rb);
+        ZonalCounters.setCrossCheck(ResourceUtil.getBooleanProperty(rb, PROPERTIES_CROSS_CHECK_ZONAL_COUNTERS, false));
         summarizeData.openResultFile(rb);
         summarizeData.resultFileSpatial(rb, "open");
         IssueCounter.setUpCounter();   // set up counter for any issues during initial setup
@@ -126,7 +131,11 @@ public class SiloModel {
         RealEstateDataManager realEstateData = new RealEstateDataManager(rb);
         HouseholdDataManager householdData = new HouseholdDataManager(rb);
         JobDataManager jobData = new JobDataManager(rb);
-        if (!ResourceUtil.getBooleanProperty(rb, "run.synth.pop.generator")) {   // read data only if synth. pop. generator did not run
+        MicroDataSnapshot checkpoint = null;
+        if (SiloCheckpoint.getResumeYear() != -1) {
+            checkpoint = SiloCheckpoint.readCheckpoint();
+            householdData.setTypeOfAllHouseholds();
+        } else if (!ResourceUtil.getBooleanProperty(rb, "run.synth.pop.generator")) {   // read data only if synth. pop. generator did not run
             householdData.readPopulation();
             realEstateData.readDwellings();
             jobData.readJobs();
@@ -162,9 +171,11 @@ public class SiloModel {
         updateJobs updateJobs = new updateJobs(rb);
         AutoOwnershipModel aoModel = new AutoOwnershipModel(rb);
         ConstructionOverwrite ddOverwrite = new ConstructionOverwrite(rb);
+        if (checkpoint != null)
+            SiloCheckpoint.restoreModelState(checkpoint, householdData, realEstateData, jobData, acc);
 
         boolean trackTime = ResourceUtil.getBooleanProperty(rb, PROPERTIES_TRACK_TIME, false);
-        long[][] timeCounter = new long[EventTypes.values().length + 11][SiloUtil.getEndYear() + 1];
+        long[][] timeCounter = new long[EventTypes.values().length + 14][SiloUtil.getEndYear() + 1];
         long startTime = 0;
         IssueCounter.logIssues();           // log any potential issues during initial setup
 
@@ -172,7 +183,10 @@ public class SiloModel {
         if (ResourceUtil.getBooleanProperty(rb, PROPERTIES_CREATE_PRESTO_SUMMARY_FILE, false))
             summarizeData.preparePrestoSummary(rb);
 
-        for (int year = SiloUtil.getStartYear(); year < SiloUtil.getEndYear(); year += SiloUtil.getSimulationLength()) {
+        int firstYear = checkpoint == null ? SiloUtil.getStartYear() : SiloCheckpoint.getResumeYear();
+        for (int year = firstYear; year < SiloUtil.getEndYear(); year += SiloUtil.getSimulationLength()) {
+            if (SiloCheckpoint.isCheckpointYear(year))
+                SiloCheckpoint.writeCheckpoint(year, householdData, realEstateData, jobData, acc);
             if (SiloUtil.containsElement(scalingYears, year))
                 summarizeData.scaleMicroDataToExogenousForecast(rb, year, householdData);
             logger.info("Simulating changes from year " + year + " to year " + (year + 1));
@@ -211,8 +225,14 @@ public class SiloModel {
                 if (year != SiloUtil.getStartYear() && !SiloUtil.containsElement(tdmYears, year)) {
                     // skims are always read in start year and in every year the transportation model ran. Additional
                     // years to read skims may be provided in skimYears
+                    if (trackTime) startTime = System.currentTimeMillis();
+                    long skimCacheHits = SkimCache.getHits();
+                    long skimCacheMisses = SkimCache.getMisses();
                     acc.readSkim(year);
                     acc.calculateAccessibilities(year);
+                    if (trackTime) timeCounter[EventTypes.values().length + 11][year] += System.currentTimeMillis() - startTime;
+                    timeCounter[EventTypes.values().length + 12][year] += SkimCache.getHits() - skimCacheHits;
+                    timeCounter[EventTypes.values().length + 13][year] += SkimCache.getMisses() - skimCacheMisses;
                 }
             }
 
@@ -226,7 +246,7 @@ public class SiloModel {
             if (trackTime) timeCounter[EventTypes.values().length + 6][year] += System.currentTimeMillis() - startTime;
 
             if (trackTime) startTime = System.currentTimeMillis();
-            if (year != SiloUtil.getBaseYear()) householdData.adjustIncome();
+            if (year != SiloUtil.getBaseYear()) householdData.adjustIncome(year);
             if (trackTime) timeCounter[EventTypes.values().length + 9][year] += System.currentTimeMillis() - startTime;
 
             if (trackTime) startTime = System.currentTimeMillis();
@@ -234,74 +254,85 @@ public class SiloModel {
             if (trackTime) timeCounter[EventTypes.values().length + 7][year] += System.currentTimeMillis() - startTime;
 
             logger.info("  Simulating events");
+            EventQueue parallelMoves = new EventQueue(1024);   // household moves collected for parallel relocation phase
             // walk through all events
-            for (int i = 1; i <= em.getNumberOfEvents(); i++) {
-                //	    if (i%500000==0) logger.info("Processing event " + i);
-                // event[] stores event id in position [0] and person id in position [1]
-                Integer[] event = em.selectNextEvent();
-                if (event[1] == SiloUtil.trackPp || event[1] == SiloUtil.trackHh || event[1] == SiloUtil.trackDd)
-                    SiloUtil.trackWriter.println ("Check event " + EventTypes.values()[event[0]] +  " for pp/hh/dd " +
-                            event[1]);
-                if (event[0] == EventTypes.birthday.ordinal()) {
-                    if (trackTime) startTime = System.currentTimeMillis();
-                    birth.celebrateBirthday(event[1]);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.checkDeath.ordinal()) {
+            while (em.hasNextEvent()) {
+                // every event stores the event type and the id of the person, household, dwelling or planned case
+                long event = em.selectNextEvent();
+                int eventType = EventQueue.getEventType(event);
+                int id = EventQueue.getEventId(event);
+                if (id == SiloUtil.trackPp || id == SiloUtil.trackHh || id == SiloUtil.trackDd)
+                    SiloUtil.trackWriter.println ("Check event " + EventTypes.values()[eventType] +  " for pp/hh/dd " +
+                            id);
+                if (eventType == EventTypes.birthday.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    death.chooseDeath(event[1]);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.checkBirth.ordinal()) {
+                    birth.celebrateBirthday(id);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.checkDeath.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    birth.chooseBirth(event[1]);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.checkLeaveParentHh.ordinal()) {
+                    death.chooseDeath(id);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.checkBirth.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    lph.chooseLeaveParentHh(event[1], move, aoModel);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.checkMarriage.ordinal()) {
+                    birth.chooseBirth(id);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.checkLeaveParentHh.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    mardiv.choosePlannedMarriage(event[1], move, iomig, aoModel);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.checkDivorce.ordinal()) {
+                    lph.chooseLeaveParentHh(id, move, aoModel);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.checkMarriage.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    mardiv.chooseDivorce(event[1], move, aoModel);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.findNewJob.ordinal()) {
+                    mardiv.choosePlannedMarriage(id, move, iomig, aoModel);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.checkDivorce.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    changeEmployment.findNewJob(event[1]);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.quitJob.ordinal()) {
+                    mardiv.chooseDivorce(id, move, aoModel);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.findNewJob.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    changeEmployment.quitJob(event[1]);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.householdMove.ordinal()) {
+                    changeEmployment.findNewJob(id);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.quitJob.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    move.chooseMove(event[1]);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.inmigration.ordinal()) {
+                    changeEmployment.quitJob(id);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.householdMove.ordinal()) {
+                    if (move.relocatesHouseholdsInParallel()) {
+                        parallelMoves.add(EventTypes.householdMove, id);
+                    } else {
+                        if (trackTime) startTime = System.currentTimeMillis();
+                        move.chooseMove(id);
+                        if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                    }
+                } else if (eventType == EventTypes.inmigration.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    iomig.inmigrateHh(event[1], move, changeEmployment, aoModel);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.outMigration.ordinal()) {
+                    iomig.inmigrateHh(id, move, changeEmployment, aoModel);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.outMigration.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    iomig.outMigrateHh(event[1], false);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.ddChangeQual.ordinal()) {
+                    iomig.outMigrateHh(id, false);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.ddChangeQual.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    renov.checkRenovation(event[1]);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.ddDemolition.ordinal()) {
+                    renov.checkRenovation(id);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.ddDemolition.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    demol.checkDemolition(event[1], move, iomig);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
-                } else if (event[0] == EventTypes.ddConstruction.ordinal()) {
+                    demol.checkDemolition(id, move, iomig);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
+                } else if (eventType == EventTypes.ddConstruction.ordinal()) {
                     if (trackTime) startTime = System.currentTimeMillis();
-                    cons.buildDwelling(event[1], move, year);
-                    if (trackTime) timeCounter[event[0]][year] += System.currentTimeMillis() - startTime;
+                    cons.buildDwelling(id, move, year);
+                    if (trackTime) timeCounter[eventType][year] += System.currentTimeMillis() - startTime;
                 } else {
-                    logger.warn("Unknown event type: " + event[0]);
+                    logger.warn("Unknown event type: " + eventType);
                 }
             }
+            if (move.relocatesHouseholdsInParallel()) {
+                if (trackTime) startTime = System.currentTimeMillis();
+                move.chooseMovesInParallel(parallelMoves, year);
+                if (trackTime) timeCounter[EventTypes.householdMove.ordinal()][year] += System.currentTimeMillis() - startTime;
+            }
 
             int nextYearForTransportModel = year + 1;
             if (SiloUtil.containsElement(tdmYears, nextYearForTransportModel)) {
@@ -318,8 +349,11 @@ public class SiloModel {
             logger.info("  Finished this simulation period with " + householdData.getNumberOfPersons() +
                     " persons, " + householdData.getNumberOfHouseholds()+" households and "  +
                     Dwelling.getDwellingCount() + " dwellings.");
+            logger.info("  Snapshot arrays of persons, households, dwellings or jobs created in this simulation period: " +
+                    EntityStore.getAndResetSnapshotCounter());
             if (modelStopper("check")) break;
         }
+        SiloCheckpoint.finish();
         if (SiloUtil.containsElement(scalingYears, SiloUtil.getEndYear()))
             summarizeData.scaleMicroDataToExogenousForecast(rb, SiloUtil.getEndYear(), householdData);
 
@@ -332,6 +366,7 @@ public class SiloModel {
 
         summarizeMicroData(SiloUtil.getEndYear(), move, realEstateData);
         SiloUtil.finish(ddOverwrite);
+        aoModel.writeProbabilities();
         modelStopper("removeFile");
         if (trackTime) writeOutTimeTracker(timeCounter);
         logger.info("Scenario results can be found in the directory scenOutput/" + SiloUtil.scenarioName + ".");
@@ -352,7 +387,11 @@ public class SiloModel {
         realEstateData = new RealEstateDataManager(rb);
         householdData = new HouseholdDataManager(rb);
         jobData = new JobDataManager(rb);
-        if (!ResourceUtil.getBooleanProperty(rb, "run.synth.pop.generator")) {   // read data only if synth. pop. generator did not run
+        MicroDataSnapshot checkpoint = null;
+        if (SiloCheckpoint.getResumeYear() != -1) {
+            checkpoint = SiloCheckpoint.readCheckpoint();
+            householdData.setTypeOfAllHouseholds();
+        } else if (!ResourceUtil.getBooleanProperty(rb, "run.synth.pop.generator")) {   // read data only if synth. pop. generator did not run
             householdData.readPopulation();
             realEstateData.readDwellings();
             jobData.readJobs();
@@ -388,9 +427,13 @@ public class SiloModel {
         updateJobs = new updateJobs(rb);
         aoModel = new AutoOwnershipModel(rb);
         ddOverwrite = new ConstructionOverwrite(rb);
+        if (checkpoint != null) {
+            SiloCheckpoint.restoreModelState(checkpoint, householdData, realEstateData, jobData, acc);
+            currentYear = SiloCheckpoint.getResumeYear();
+        }
 
         trackTime = ResourceUtil.getBooleanProperty(rb, PROPERTIES_TRACK_TIME, false);
-        timeCounter = new long[EventTypes.values().length + 11][SiloUtil.getEndYear() + 1];
+        timeCounter = new long[EventTypes.values().length + 14][SiloUtil.getEndYear() + 1];
         IssueCounter.logIssues();           // log any potential issues during initial setup
 
         TransportModel = new transportModel(rb);
@@ -407,6 +450,8 @@ public class SiloModel {
             logger.error("SILO is not prepared to simulate other interval than 1 year. Invalid interval: " + dt);
             System.exit(1);
         }
+        if (SiloCheckpoint.isCheckpointYear(currentYear))
+            SiloCheckpoint.writeCheckpoint(currentYear, householdData, realEstateData, jobData, acc);
         if (SiloUtil.containsElement(scalingYears, currentYear))
             summarizeData.scaleMicroDataToExogenousForecast(rb, currentYear, householdData);
         logger.info("Simulating changes from year " + currentYear + " to year " + (currentYear + 1));
@@ -445,8 +490,14 @@ public class SiloModel {
             if (currentYear != SiloUtil.getStartYear() && !SiloUtil.containsElement(tdmYears, currentYear)) {
                 // skims are always read in start year and in every year the transportation model ran. Additional
                 // years to read skims may be provided in skimYears
+                if (trackTime) startTime = System.currentTimeMillis();
+                long skimCacheHits = SkimCache.getHits();
+                long skimCacheMisses = SkimCache.getMisses();
                 acc.readSkim(currentYear);
                 acc.calculateAccessibilities(currentYear);
+                if (trackTime) timeCounter[EventTypes.values().length + 11][currentYear] += System.currentTimeMillis() - startTime;
+                timeCounter[EventTypes.values().length + 12][currentYear] += SkimCache.getHits() - skimCacheHits;
+                timeCounter[EventTypes.values().length + 13][currentYear] += SkimCache.getMisses() - skimCacheMisses;
             }
         }
 
@@ -460,7 +511,7 @@ public class SiloModel {
         if (trackTime) timeCounter[EventTypes.values().length + 6][currentYear] += System.currentTimeMillis() - startTime;
 
         if (trackTime) startTime = System.currentTimeMillis();
-        if (currentYear != SiloUtil.getBaseYear()) householdData.adjustIncome();
+        if (currentYear != SiloUtil.getBaseYear()) householdData.adjustIncome(currentYear);
         if (trackTime) timeCounter[EventTypes.values().length + 9][currentYear] += System.currentTimeMillis() - startTime;
 
         if (trackTime) startTime = System.currentTimeMillis();
@@ -469,74 +520,85 @@ public class SiloModel {
         if (trackTime) timeCounter[EventTypes.values().length + 7][currentYear] += System.currentTimeMillis() - startTime;
 
         logger.info("  Simulating events");
+        EventQueue parallelMoves = new EventQueue(1024);   // household moves collected for parallel relocation phase
         // walk through all events
-        for (int i = 1; i <= em.getNumberOfEvents(); i++) {
-            //	    if (i%500000==0) logger.info("Processing event " + i);
-            // event[] stores event id in position [0] and person id in position [1]
-            Integer[] event = em.selectNextEvent();
-            if (event[1] == SiloUtil.trackPp || event[1] == SiloUtil.trackHh || event[1] == SiloUtil.trackDd)
-                SiloUtil.trackWriter.println ("Check event " + EventTypes.values()[event[0]] +  " for pp/hh/dd " +
-                        event[1]);
-            if (event[0] == EventTypes.birthday.ordinal()) {
-                if (trackTime) startTime = System.currentTimeMillis();
-                birth.celebrateBirthday(event[1]);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.checkDeath.ordinal()) {
+        while (em.hasNextEvent()) {
+            // every event stores the event type and the id of the person, household, dwelling or planned case
+            long event = em.selectNextEvent();
+            int eventType = EventQueue.getEventType(event);
+            int id = EventQueue.getEventId(event);
+            if (id == SiloUtil.trackPp || id == SiloUtil.trackHh || id == SiloUtil.trackDd)
+                SiloUtil.trackWriter.println ("Check event " + EventTypes.values()[eventType] +  " for pp/hh/dd " +
+                        id);
+            if (eventType == EventTypes.birthday.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                death.chooseDeath(event[1]);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.checkBirth.ordinal()) {
+                birth.celebrateBirthday(id);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.checkDeath.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                birth.chooseBirth(event[1]);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.checkLeaveParentHh.ordinal()) {
+                death.chooseDeath(id);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.checkBirth.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                lph.chooseLeaveParentHh(event[1], move, aoModel);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.checkMarriage.ordinal()) {
+                birth.chooseBirth(id);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.checkLeaveParentHh.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                mardiv.choosePlannedMarriage(event[1], move, iomig, aoModel);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.checkDivorce.ordinal()) {
+                lph.chooseLeaveParentHh(id, move, aoModel);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.checkMarriage.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                mardiv.chooseDivorce(event[1], move, aoModel);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.findNewJob.ordinal()) {
+                mardiv.choosePlannedMarriage(id, move, iomig, aoModel);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.checkDivorce.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                changeEmployment.findNewJob(event[1]);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.quitJob.ordinal()) {
+                mardiv.chooseDivorce(id, move, aoModel);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.findNewJob.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                changeEmployment.quitJob(event[1]);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.householdMove.ordinal()) {
+                changeEmployment.findNewJob(id);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.quitJob.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                move.chooseMove(event[1]);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.inmigration.ordinal()) {
+                changeEmployment.quitJob(id);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.householdMove.ordinal()) {
+                if (move.relocatesHouseholdsInParallel()) {
+                    parallelMoves.add(EventTypes.householdMove, id);
+                } else {
+                    if (trackTime) startTime = System.currentTimeMillis();
+                    move.chooseMove(id);
+                    if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+                }
+            } else if (eventType == EventTypes.inmigration.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                iomig.inmigrateHh(event[1], move, changeEmployment, aoModel);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.outMigration.ordinal()) {
+                iomig.inmigrateHh(id, move, changeEmployment, aoModel);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.outMigration.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                iomig.outMigrateHh(event[1], false);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.ddChangeQual.ordinal()) {
+                iomig.outMigrateHh(id, false);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.ddChangeQual.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                renov.checkRenovation(event[1]);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.ddDemolition.ordinal()) {
+                renov.checkRenovation(id);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.ddDemolition.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                demol.checkDemolition(event[1], move, iomig);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
-            } else if (event[0] == EventTypes.ddConstruction.ordinal()) {
+                demol.checkDemolition(id, move, iomig);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
+            } else if (eventType == EventTypes.ddConstruction.ordinal()) {
                 if (trackTime) startTime = System.currentTimeMillis();
-                cons.buildDwelling(event[1], move, currentYear);
-                if (trackTime) timeCounter[event[0]][currentYear] += System.currentTimeMillis() - startTime;
+                cons.buildDwelling(id, move, currentYear);
+                if (trackTime) timeCounter[eventType][currentYear] += System.currentTimeMillis() - startTime;
             } else {
-                logger.warn("Unknown event type: " + event[0]);
+                logger.warn("Unknown event type: " + eventType);
             }
         }
+        if (move.relocatesHouseholdsInParallel()) {
+            if (trackTime) startTime = System.currentTimeMillis();
+            move.chooseMovesInParallel(parallelMoves, currentYear);
+            if (trackTime) timeCounter[EventTypes.householdMove.ordinal()][currentYear] += System.currentTimeMillis() - startTime;
+        }
 
         int nextYearForTransportModel = currentYear + 1;
         if (SiloUtil.containsElement(tdmYears, nextYearForTransportModel)) {
@@ -553,11 +615,18 @@ public class SiloModel {
         logger.info("  Finished this simulation period with " + householdData.getNumberOfPersons() +
                 " persons, " + householdData.getNumberOfHouseholds()+" households and "  +
                 Dwelling.getDwellingCount() + " dwellings.");
+        logger.info("  Snapshot arrays of persons, households, dwellings or jobs created in this simulation period: " +
+                EntityStore.getAndResetSnapshotCounter());
         currentYear++;
         if (modelStopper("check")) finishModel();
     }
 
 
+    public int getCurrentYear () {
+        return currentYear;
+    }
+
+
     public void finishModel () {
         // close model run
 
@@ -576,6 +645,7 @@ public class SiloModel {
 
         summarizeMicroData(SiloUtil.getEndYear(), move, realEstateData);
         SiloUtil.finish(ddOverwrite);
+        aoModel.writeProbabilities();
         modelStopper("removeFile");
         
         if(ResourceUtil.getBooleanProperty(rb, PROPERTIES_CREATE_CBLCM_FILES, false)){
@@ -603,9 +673,11 @@ public class SiloModel {
 
     public void closeAllFiles (long startTime) {
         // run this method whenever SILO closes, regardless of whether SILO completed successfully or SILO crashed
+        SiloCheckpoint.finish();
         SiloUtil.trackingFile("close");
         summarizeData.resultFile("close");
         summarizeData.resultFileSpatial(rb, "close");
+        AsyncFileWriter.closeAll();
         float endTime = SiloUtil.rounder(((System.currentTimeMillis() - startTime) / 60000), 1);
         int hours = (int) (endTime / 60);
         int min = (int) (endTime - 60 * hours);
@@ -675,7 +747,7 @@ public class SiloModel {
             for (EventTypes et : EventTypes.values()) pw.print("," + et.toString());
             pw.print(",setupInOutMigration,setupConstructionOfNewDwellings,updateJobInventory,setupJobChange," +
                     "setupListOfEvents,fillMarriageMarket,calcAveHousingSatisfaction,summarizeData,updateRealEstatePrices," +
-                    "planIncomeChange,addOverwriteDwellings");
+                    "planIncomeChange,addOverwriteDwellings,readSkimsAndAccessibilities,skimCacheHits,skimCacheMisses");
             pw.println();
         }
         for (int year = startYear; year < SiloUtil.getEndYear(); year += SiloUtil.getSimulationLength()) {
@@ -695,6 +767,9 @@ public class SiloModel {
             pw.print("," + timeCounter[EventTypes.values().length + 8][year] / 60000f);   // update real estate prices
             pw.print("," + timeCounter[EventTypes.values().length + 9][year] / 60000f);   // plan income change
             pw.print("," + timeCounter[EventTypes.values().length + 10][year] / 60000f);  // add dwellings from overwrite
+            pw.print("," + timeCounter[EventTypes.values().length + 11][year] / 60000f);  // read skims and calculate accessibilities
+            pw.print("," + timeCounter[EventTypes.values().length + 12][year]);           // skims found in skim cache (count)
+            pw.print("," + timeCounter[EventTypes.values().length + 13][year]);           // skims read from file (count)
             pw.println();
         }
         pw.close();
@@ -5,10 +5,14 @@ import com.pb.common.datafile.TableDataFileReader;
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.matrix.Matrix;
 import com.pb.common.util.ResourceUtil;
+import edu.umd.ncsg.data.FloatSkim;
 import edu.umd.ncsg.data.geoData;
 import edu.umd.ncsg.data.summarizeData;
 import edu.umd.ncsg.events.IssueCounter;
 import edu.umd.ncsg.realEstate.ConstructionOverwrite;
+import edu.umd.ncsg.utils.AsyncFileWriter;
+import edu.umd.ncsg.utils.DiscreteSampler;
+import edu.umd.ncsg.utils.RandomStreams;
 import omx.OmxMatrix;
 import omx.hdf5.OmxHdf5Datatype;
 import org.apache.log4j.Logger;
@@ -108,6 +112,8 @@ public class SiloUtil {
             SiloModel.rand = new Random();
         else
             SiloModel.rand = new Random(seed);
+        // independent streams for multi-threaded steps are derived from the same seed
+        RandomStreams.initialize(seed == -1 ? SiloModel.rand.nextLong() : seed);
     }
 
 
@@ -216,6 +222,18 @@ public class SiloUtil {
     }
 
 
+    public static AsyncFileWriter openFileForAsynchronousWriting(String fileName, boolean appendFile) {
+        // open file that is written on a background thread, file is compressed if fileName ends with .gz
+
+        try {
+            return AsyncFileWriter.open(fileName, appendFile);
+        } catch (IOException e) {
+            logger.error("Could not open file <" + fileName + ">.");
+            throw new RuntimeException(e);
+        }
+    }
+
+
     public static void writeTableDataSet (TableDataSet data, String fileName) {
         try{
             CSVFileWriter cfwWriter = new CSVFileWriter();
@@ -231,21 +249,53 @@ public class SiloUtil {
     //TODO REFACTOR SELECT METHODS TO USE GENERICS
     public static int select (double[] probabilities) {
         // select item based on probabilities (for zero-based double array)
-        double selPos = getSum(probabilities) * SiloModel.rand.nextDouble();
+        return select(probabilities, probabilities.length, SiloModel.rand);
+    }
+
+
+    public static int select (double[] probabilities, Random rand) {
+        // select item based on probabilities (for zero-based double array) with random number stream rand
+        return select(probabilities, probabilities.length, rand);
+    }
+
+
+    public static int select (double[] probabilities, int length) {
+        return select(probabilities, length, SiloModel.rand);
+    }
+
+
+    public static int select (double[] probabilities, int length, Random rand) {
+        // select item based on probabilities of the first length elements (for zero-based double array that is reused
+        // and may be longer than the number of items to choose from)
+        double total = 0;
+        for (int i = 0; i < length; i++) total += probabilities[i];
+        double selPos = total * rand.nextDouble();
         double sum = 0;
-        for (int i = 0; i < probabilities.length; i++) {
+        for (int i = 0; i < length; i++) {
             sum += probabilities[i];
             if (sum > selPos) {
                 return i;
             }
         }
-        return probabilities.length - 1;
+        return length - 1;
+    }
+
+
+    public static int select (DiscreteSampler sampler) {
+        // select item from a prepared distribution that is reused for many draws
+        return sampler.select(SiloModel.rand);
     }
 
 
     public static int select (float[] probabilities) {
         // select item based on probabilities (for zero-based float array)
-        float selPos = getSum(probabilities) * SiloModel.rand.nextFloat();
+        return select(probabilities, SiloModel.rand);
+    }
+
+
+    public static int select (float[] probabilities, Random rand) {
+        // select item based on probabilities (for zero-based float array) with random number stream rand
+        float selPos = getSum(probabilities) * rand.nextFloat();
         float sum = 0;
         for (int i = 0; i < probabilities.length; i++) {
             sum += probabilities[i];
@@ -653,6 +703,24 @@ public class SiloUtil {
     }
 
 
+    public static FloatSkim convertOmxToSkim (OmxMatrix omxMatrix) {
+        // convert OMX matrix into skim without going through setValueAt() for every cell. The rows read from the OMX
+        // file are released while they are copied, so omxMatrix must not be used afterwards
+
+        OmxHdf5Datatype.OmxJavaType type = omxMatrix.getOmxJavaType();
+        String name = omxMatrix.getName();
+        if (type.equals(OmxHdf5Datatype.OmxJavaType.FLOAT)) {
+            return FloatSkim.fromRows(name, (float[][]) omxMatrix.getData());
+        } else if (type.equals(OmxHdf5Datatype.OmxJavaType.DOUBLE)) {
+            return FloatSkim.fromRows(name, (double[][]) omxMatrix.getData());
+        } else {
+            logger.info("OMX Matrix type " + type.toString() + " not yet implemented. Program exits.");
+            System.exit(1);
+            return null;
+        }
+    }
+
+
     public static Matrix convertOmxToMatrix (OmxMatrix omxMatrix) {
         // convert OMX matrix into java matrix
 
@@ -191,8 +191,7 @@ public class syntheticPop {
 
         logger.info("  Identifying vacant jobs by zone");
         vacantJobsByZone = new HashMap<>();
-        Job[] jobs = Job.getJobArray();
-        for (Job jj: jobs) {
+        for (Job jj: Job.getJobs()) {
             if (jj.getWorkerId() == -1) {
                 int id = jj.getId();
                 int zone = jj.getZone();
@@ -691,11 +690,12 @@ public class syntheticPop {
 
         JobDataManager jobData = new JobDataManager(rb);
         jobData.calculateJobDensityByZone();
-        AutoOwnershipModel ao = new AutoOwnershipModel(rb);   // calculate auto-ownership probabilities
-        for (Household hh: Household.getHouseholdArray()) {
+        AutoOwnershipModel ao = new AutoOwnershipModel(rb);   // auto-ownership probabilities are calculated when needed
+        for (Household hh: Household.getHouseholds()) {
             int autos = ao.simulateAutoOwnership(hh);
             hh.setAutos(autos);
         }
+        ao.writeProbabilities();
     }
 
 
@@ -707,7 +707,7 @@ public class syntheticPop {
         HashMap<String, ArrayList<Integer>> ddPointer = new HashMap<>();
         // summarize vacancy
         int[][][] ddCount = new int [geoData.getHighestZonalId() + 1][DwellingType.values().length][2];
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
+        for (Dwelling dd: Dwelling.getDwellings()) {
             int taz = dd.getZone();
             int occ = dd.getResidentId();
             ddCount[taz][dd.getType().ordinal()][0]++;
@@ -828,7 +828,7 @@ public class syntheticPop {
 
         int[] ddCount = new int[DwellingType.values().length];
         int[] occCount = new int[DwellingType.values().length];
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
+        for (Dwelling dd: Dwelling.getDwellings()) {
             int id = dd.getResidentId();
             DwellingType tp = dd.getType();
             ddCount[tp.ordinal()]++;
@@ -868,7 +868,7 @@ public class syntheticPop {
         // summarize number of people by PersonRole (married, single, child)
 
         int[][] roleCounter = new int[101][3];
-        for (Person pp: Person.getPersonArray()) {
+        for (Person pp: Person.getPersons()) {
             if (pp.getGender() == 1) continue;
             int age = Math.min(100, pp.getAge());
             roleCounter[age][pp.getRole().ordinal()]++;
@@ -8,8 +8,10 @@ import edu.umd.ncsg.data.Household;
 import edu.umd.ncsg.data.JobDataManager;
 import org.apache.log4j.Logger;
 
-import java.io.File;
+import java.io.*;
+import java.util.Arrays;
 import java.util.ResourceBundle;
+import java.util.zip.CRC32;
 
 /**
  * Simulates number of vehicles per household
@@ -25,18 +27,36 @@ public class AutoOwnershipModel {
     protected static final String PROPERTIES_AutoOwnership_UEC_DATA_SHEET         = "AutoOwnership.UEC.DataSheetNumber";
     protected static final String PROPERTIES_AutoOwnership_UEC_OWNERSHIP_UTILITY  = "AutoOwnership.UEC.Ownership.Utility";
     protected static final String PROPERTIES_LOG_UTILITY_CALCULATION_CONSTRUCTION = "log.util.autoOwnership";
+    protected static final String PROPERTIES_AutoOwnership_PROBABILITY_FILE       = "AutoOwnership.probability.file";
+
+    private static final int HH_SIZES = 8;
+    private static final int WORKERS = 5;
+    private static final int INCOME_CATEGORIES = 12;
+    private static final int TRANSIT_ACCESSIBILITIES = 101;
+    private static final int DENSITY_CATEGORIES = 10;
+    private static final int ALTERNATIVES = 3;                 // 1, 2 and 3+ autos, 0 autos is the remainder
+    private static final int PROBABILITY_FILE_VERSION = 1;
+
     private ResourceBundle rb;
     private String uecFileName;
     private int dataSheetNumber;
+    private int aoModelSheetNumber;
+    private boolean logCalculation;
     int numAltsAutoOwnership;
-    private double[][][][][][] autoOwnerShipUtil;   // [three probabilities][hhsize][workers][income][transitAcc][density]
+    private UtilityExpressionCalculator aoModelUtility;
+    private AutoOwnershipDMU autoOwnershipDMU;
+    private int[] aoAvail;
+    private float[] probabilities;   // [hhsize][workers][income][transitAcc][density][three probabilities], NaN if not calculated yet
+    private String probabilityFileName;
+    private long uecFileHash;
+    private int newlyCalculatedCells;
 
 
 
     public AutoOwnershipModel(ResourceBundle rb) {
         // constructor
 
-        logger.info("  Setting up probabilities for auto-ownership model");
+        logger.info("  Setting up auto-ownership model");
         this.rb = rb;
         uecFileName     = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_AutoOwnership_UEC_FILE);
         dataSheetNumber = ResourceUtil.getIntegerProperty(rb, PROPERTIES_AutoOwnership_UEC_DATA_SHEET);
@@ -45,59 +65,149 @@ public class AutoOwnershipModel {
 
 
     private void setupAutoOwnershipModel () {
+        // probabilities are calculated when they are needed for the first time, unless they can be read from file
+
+        logCalculation = ResourceUtil.getBooleanProperty(rb, PROPERTIES_LOG_UTILITY_CALCULATION_CONSTRUCTION);
+        aoModelSheetNumber = ResourceUtil.getIntegerProperty(rb, PROPERTIES_AutoOwnership_UEC_OWNERSHIP_UTILITY);
+        probabilities = new float[HH_SIZES * WORKERS * INCOME_CATEGORIES * TRANSIT_ACCESSIBILITIES * DENSITY_CATEGORIES *
+                ALTERNATIVES];
+        Arrays.fill(probabilities, Float.NaN);
+        if (ResourceUtil.getProperty(rb, PROPERTIES_AutoOwnership_PROBABILITY_FILE) != null) {
+            probabilityFileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_AutoOwnership_PROBABILITY_FILE);
+            uecFileHash = calculateFileHash(uecFileName);
+            readProbabilities();
+        }
+    }
 
-        boolean logCalculation  = ResourceUtil.getBooleanProperty(rb, PROPERTIES_LOG_UTILITY_CALCULATION_CONSTRUCTION);
-        int aoModelSheetNumber = ResourceUtil.getIntegerProperty(rb, PROPERTIES_AutoOwnership_UEC_OWNERSHIP_UTILITY);
-        UtilityExpressionCalculator aoModelUtility = new UtilityExpressionCalculator(new File(uecFileName),
+
+    private void setupUtilityModel () {
+        // initialize UEC, only needed when probabilities have to be calculated
+
+        aoModelUtility = new UtilityExpressionCalculator(new File(uecFileName),
                 aoModelSheetNumber,
                 dataSheetNumber,
                 SiloUtil.getRbHashMap(),
                 AutoOwnershipDMU.class);
-        AutoOwnershipDMU autoOwnershipDMU = new AutoOwnershipDMU();
+        autoOwnershipDMU = new AutoOwnershipDMU();
 
         // everything is available
         numAltsAutoOwnership = aoModelUtility.getNumberOfAlternatives();
-
-        int[] aoAvail = new int[numAltsAutoOwnership + 1];
+        if (numAltsAutoOwnership != ALTERNATIVES) {
+            logger.error("Auto-ownership model expects " + ALTERNATIVES + " alternatives in " + uecFileName + ", but found " +
+                    numAltsAutoOwnership + ".");
+            throw new RuntimeException("Wrong number of alternatives in auto-ownership UEC.");
+        }
+        aoAvail = new int[numAltsAutoOwnership + 1];
         for (int i = 1; i < aoAvail.length; i++) {
             aoAvail[i] = 1;
         }
+    }
+
+
+    private static int getCell (int hhSize, int wrk, int inc, int transitAcc, int dens) {
+        // position of the probabilities of this combination of attributes (all zero-based) in probabilities
+        if (hhSize < 0 || hhSize >= HH_SIZES || wrk < 0 || wrk >= WORKERS || inc < 0 || inc >= INCOME_CATEGORIES ||
+                transitAcc < 0 || transitAcc >= TRANSIT_ACCESSIBILITIES || dens < 0 || dens >= DENSITY_CATEGORIES)
+            throw new IllegalArgumentException("No auto-ownership probabilities for hh size " + (hhSize + 1) +
+                    ", workers " + wrk + ", income category " + (inc + 1) + ", transit accessibility " + transitAcc +
+                    " and density category " + (dens + 1) + ".");
+        return (((hhSize * WORKERS + wrk) * INCOME_CATEGORIES + inc) * TRANSIT_ACCESSIBILITIES + transitAcc) *
+                DENSITY_CATEGORIES + dens;
+    }
 
-        autoOwnerShipUtil = new double[3][8][5][12][101][10];
-        for (int hhSize = 0; hhSize < 8; hhSize++) {
-            for (int wrk = 0; wrk < 5; wrk++) {
-                for (int inc = 0; inc < 12; inc++) {
-                    for (int transitAcc = 0; transitAcc < 101; transitAcc++) {
-                        for (int dens = 0; dens < 10; dens++) {
-                            // set DMU attributes
-                            autoOwnershipDMU.setHhSize(hhSize + 1);
-                            autoOwnershipDMU.setWorkers(wrk);
-                            autoOwnershipDMU.setIncomeCategory(inc + 1);
-                            autoOwnershipDMU.setTransitAccessibility(transitAcc);
-                            autoOwnershipDMU.setDensityCategory(dens + 1);
-                            double util[] = aoModelUtility.solve(autoOwnershipDMU.getDmuIndexValues(),
-                                    autoOwnershipDMU, aoAvail);
-                            for (int i = 1; i < aoAvail.length; i++) {
-                                util[i-1] = Math.exp(util[i-1]);
-                            }
-                            double prob0cars = 1d / (SiloUtil.getSum(util) + 1d);
-                            for (int i = 1; i < aoAvail.length; i++) {
-                                autoOwnerShipUtil[i-1][hhSize][wrk][inc][transitAcc][dens] = util[i-1] * prob0cars;
-                            }
-                            if (logCalculation) {
-                                // log UEC values for each person type
-                                aoModelUtility.logAnswersArray(traceLogger, "Auto-ownership model. HH size: " + hhSize +
-                                ", wrk: " + wrk + ", inc: " + inc + ", transitAcc: " + transitAcc + ", density: " + dens);
-                                logger.info(hhSize + "," + wrk + "," + inc + "," + transitAcc + "," + dens + "," + prob0cars + "," +
-                                        autoOwnerShipUtil[0][hhSize][wrk][inc][transitAcc][dens] + "," +
-                                        autoOwnerShipUtil[1][hhSize][wrk][inc][transitAcc][dens] + "," +
-                                        autoOwnerShipUtil[2][hhSize][wrk][inc][transitAcc][dens]);
-                            }
-                        }
-                    }
-                }
+
+    private void calculateProbabilities (int hhSize, int wrk, int inc, int transitAcc, int dens) {
+        // solve UEC for this combination of attributes (all zero-based) and store probabilities of 1, 2 and 3+ autos.
+        // Not thread-safe, auto ownership is simulated sequentially in the event loop and the synthetic population
+
+        int cell = getCell(hhSize, wrk, inc, transitAcc, dens);
+        if (aoModelUtility == null) setupUtilityModel();
+        // set DMU attributes
+        autoOwnershipDMU.setHhSize(hhSize + 1);
+        autoOwnershipDMU.setWorkers(wrk);
+        autoOwnershipDMU.setIncomeCategory(inc + 1);
+        autoOwnershipDMU.setTransitAccessibility(transitAcc);
+        autoOwnershipDMU.setDensityCategory(dens + 1);
+        double util[] = aoModelUtility.solve(autoOwnershipDMU.getDmuIndexValues(),
+                autoOwnershipDMU, aoAvail);
+        for (int i = 1; i < aoAvail.length; i++) {
+            util[i-1] = Math.exp(util[i-1]);
+        }
+        double prob0cars = 1d / (SiloUtil.getSum(util) + 1d);
+        for (int i = 1; i < aoAvail.length; i++) {
+            probabilities[cell * ALTERNATIVES + i - 1] = (float) (util[i-1] * prob0cars);
+        }
+        newlyCalculatedCells++;
+        if (logCalculation) {
+            // log UEC values for each person type
+            aoModelUtility.logAnswersArray(traceLogger, "Auto-ownership model. HH size: " + hhSize +
+            ", wrk: " + wrk + ", inc: " + inc + ", transitAcc: " + transitAcc + ", density: " + dens);
+            logger.info(hhSize + "," + wrk + "," + inc + "," + transitAcc + "," + dens + "," + prob0cars + "," +
+                    probabilities[cell * ALTERNATIVES] + "," + probabilities[cell * ALTERNATIVES + 1] + "," +
+                    probabilities[cell * ALTERNATIVES + 2]);
+        }
+    }
+
+
+    private long calculateFileHash (String fileName) {
+        // return CRC32 of file content
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[65536];
+        try (InputStream in = new FileInputStream(fileName)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) crc.update(buffer, 0, count);
+        } catch (IOException e) {
+            logger.error("Could not read auto-ownership UEC file " + fileName, e);
+            throw new RuntimeException(e);
+        }
+        return crc.getValue();
+    }
+
+
+    private void readProbabilities () {
+        // read probabilities stored by an earlier run, they are only used if they were calculated with the same UEC file
+
+        File file = new File(probabilityFileName);
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != PROBABILITY_FILE_VERSION || in.readLong() != uecFileHash ||
+                    in.readInt() != aoModelSheetNumber || in.readInt() != dataSheetNumber ||
+                    in.readInt() != probabilities.length) {
+                logger.info("  Auto-ownership probabilities in " + probabilityFileName + " are outdated and will be recalculated");
+                return;
             }
+            int calculatedCells = 0;
+            for (int i = 0; i < probabilities.length; i++) {
+                probabilities[i] = in.readFloat();
+                if (i % ALTERNATIVES == 0 && !Float.isNaN(probabilities[i])) calculatedCells++;
+            }
+            logger.info("  Read auto-ownership probabilities for " + calculatedCells + " of " +
+                    (probabilities.length / ALTERNATIVES) + " household categories from " + probabilityFileName);
+        } catch (IOException e) {
+            logger.warn("Could not read auto-ownership probabilities from " + probabilityFileName + ", they will be " +
+                    "recalculated: " + e.getMessage());
+            Arrays.fill(probabilities, Float.NaN);
+        }
+    }
+
+
+    public void writeProbabilities () {
+        // store probabilities calculated so far, so that later runs with the same UEC file do not need to calculate them
+
+        if (probabilityFileName == null || newlyCalculatedCells == 0) return;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(probabilityFileName)))) {
+            out.writeInt(PROBABILITY_FILE_VERSION);
+            out.writeLong(uecFileHash);
+            out.writeInt(aoModelSheetNumber);
+            out.writeInt(dataSheetNumber);
+            out.writeInt(probabilities.length);
+            for (float probability: probabilities) out.writeFloat(probability);
+        } catch (IOException e) {
+            logger.warn("Could not write auto-ownership probabilities to " + probabilityFileName + ": " + e.getMessage());
+            return;
         }
+        logger.info("  Wrote auto-ownership probabilities to " + probabilityFileName);
+        newlyCalculatedCells = 0;
     }
 
 
@@ -112,8 +222,10 @@ public class AutoOwnershipModel {
         int incomeCategory = getIncomeCategory(hh.getHhIncome());
         int transitAcc = (int) (Accessibility.getTransitAccessibility(hh.getHomeZone()) + 0.5);
         int density = JobDataManager.getJobDensityCategoryOfZone(hh.getHomeZone());
-        for (int i = 1; i < 4; i++) prob[i] =
-                autoOwnerShipUtil[i-1][hhSize-1][workers][incomeCategory-1][transitAcc][density-1];
+        int cell = getCell(hhSize - 1, workers, incomeCategory - 1, transitAcc, density - 1);
+        if (Float.isNaN(probabilities[cell * ALTERNATIVES]))
+            calculateProbabilities(hhSize - 1, workers, incomeCategory - 1, transitAcc, density - 1);
+        for (int i = 1; i < 4; i++) prob[i] = probabilities[cell * ALTERNATIVES + i - 1];
         prob[0] = 1 - SiloUtil.getSum(prob);
         return SiloUtil.select(prob);
     }
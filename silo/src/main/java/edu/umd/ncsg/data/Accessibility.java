@@ -4,11 +4,17 @@ import com.pb.common.datafile.TableDataSet;
 import com.pb.common.matrix.Matrix;
 import com.pb.common.util.ResourceUtil;
 import edu.umd.ncsg.SiloUtil;
-import omx.OmxFile;
-import omx.OmxMatrix;
+import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Calculates and stores accessibilities
@@ -26,20 +32,33 @@ public class Accessibility {
     protected static final String PROPERTIES_TRANSIT_ACCESSIBILITY_BETA      = "transit.accessibility.b";
     protected static final String PROPERTIES_HTS_WORK_TLFD                   = "hts.work.tlfd";
     protected static final String PROPERTIES_AUTO_OPERATING_COSTS            = "auto.operating.costs";
+    protected static final String PROPERTIES_SKIM_CACHE_MAX_SIZE_MB          = "skim.cache.max.size.mb";
+
+    private static final int ORIGINS_PER_TASK = 64;
+    private static final int DESTINATIONS_PER_BLOCK = 1024;       // weights of one block of destinations stay in cache
 
     static Logger logger = Logger.getLogger(Accessibility.class);
     private ResourceBundle rb;
-    private static Matrix hwySkim;
-    private static Matrix transitSkim;
+    private static Skim hwySkim;
+    private static Skim transitSkim;
     private static double[] autoAccessibility;
     private static double[] transitAccessibility;
     private static double[] regionalAccessibility;
     private static float[] workTLFD;
     private static float autoOperatingCosts;
     private static Matrix travelTimeToRegion;
+    private static float[][] autoImpedance;                      // by origin and destination zone index
+    private static float[][] transitImpedance;
+    private static float impedanceBetaAuto;
+    private static float impedanceBetaTransit;
+    private static Skim impedanceHwySkim;                        // skims used to calculate impedances
+    private static Skim impedanceTransitSkim;
+    private static int[] accessibilityPopulation;                // population used to calculate accessibilities
+    private static int skimYear;                                 // year of skims currently in use
 
     public Accessibility(ResourceBundle rb, int year) {
         this.rb = rb;
+        SkimCache.setMaximumSizeInMegabytes(ResourceUtil.getIntegerProperty(rb, PROPERTIES_SKIM_CACHE_MAX_SIZE_MB, 1024));
         readSkim(year);
         calculateAccessibilities(year);
         readWorkTripLengthFrequencyDistribution();
@@ -51,13 +70,11 @@ public class Accessibility {
     public void readSkim(int year) {
         // Read hwySkim matrix for year
         logger.info("  Reading skims for " + year);
+        skimYear = year;
 
         String hwyFileName = SiloUtil.baseDirectory + "skims/" + rb.getString(PROPERTIES_AUTO_PEAK_SKIM + year);
         // Read highway hwySkim
-        OmxFile hSkim = new OmxFile(hwyFileName);
-        hSkim.openReadOnly();
-        OmxMatrix timeOmxSkimAutos = hSkim.getMatrix("HOVTime");
-        hwySkim = SiloUtil.convertOmxToMatrix(timeOmxSkimAutos);
+        hwySkim = SkimCache.getSkim(hwyFileName, "HOVTime");
 //        TableDataSet hwySkimTbl = SiloUtil.readCSVfile(hwyFileName);
 //        hwySkim = new Matrix(SiloUtil.getZones().length, SiloUtil.getZones().length);
 //        hwySkim.setExternalNumbersZeroBased(SiloUtil.getZones());
@@ -69,10 +86,7 @@ public class Accessibility {
 //        }
         // Read transit hwySkim
         String transitFileName = SiloUtil.baseDirectory + "skims/" + rb.getString(PROPERTIES_TRANSIT_PEAK_SKIM + year);
-        OmxFile tSkim = new OmxFile(transitFileName);
-        tSkim.openReadOnly();
-        OmxMatrix timeOmxSkimTransit = tSkim.getMatrix("CheapJrnyTime");
-        transitSkim = SiloUtil.convertOmxToMatrix(timeOmxSkimTransit);
+        transitSkim = SkimCache.getSkim(transitFileName, "CheapJrnyTime");
 //        TableDataSet transitSkimTbl = SiloUtil.readCSVfile(transitFileName);
 //        transitSkim = new Matrix(SiloUtil.getZones().length, SiloUtil.getZones().length);
 //        transitSkim.setExternalNumbersZeroBased(SiloUtil.getZones());
@@ -101,36 +115,31 @@ public class Accessibility {
     public void calculateAccessibilities (int year) {
         // Calculate Hansen TripGenAccessibility (recalculated every year)
 
+        int[] zones = geoData.getZones();
+        int[] pop = summarizeData.getPopulationByZone();
+        boolean skimsUnchanged = autoImpedance != null && impedanceHwySkim == hwySkim && impedanceTransitSkim == transitSkim;
+        if (skimsUnchanged && Arrays.equals(pop, accessibilityPopulation)) {
+            logger.info("  Skims and population unchanged, keeping accessibilities in " + year);
+            return;
+        }
         logger.info("  Calculating accessibilities for " + year);
         float alphaAuto = (float) ResourceUtil.getDoubleProperty(rb, PROPERTIES_AUTO_ACCESSIBILITY_ALPHA);
         float betaAuto = (float) ResourceUtil.getDoubleProperty(rb, PROPERTIES_AUTO_ACCESSIBILITY_BETA);
         float alphaTransit = (float) ResourceUtil.getDoubleProperty(rb, PROPERTIES_TRANSIT_ACCESSIBILITY_ALPHA);
         float betaTransit = (float) ResourceUtil.getDoubleProperty(rb, PROPERTIES_TRANSIT_ACCESSIBILITY_BETA);
 
-        int[] zones = geoData.getZones();
-        int[] pop = summarizeData.getPopulationByZone();
-        autoAccessibility = new double[zones.length];
-        transitAccessibility = new double[zones.length];
-        for (int orig: zones) {
-            autoAccessibility[geoData.getZoneIndex(orig)] = 0;
-            transitAccessibility[geoData.getZoneIndex(orig)] = 0;
-            for (int dest: zones) {
-                double autoImpedance;
-                if (getAutoTravelTime(orig, dest) == 0) {      // should never happen for auto
-                    autoImpedance = 0;
-                } else {
-                    autoImpedance = Math.exp(betaAuto * getAutoTravelTime(orig, dest));
-                }
-                double transitImpedance;
-                if (getTransitTravelTime(orig, dest) == 0) {   // zone is not connected by walk-to-transit
-                    transitImpedance = 0;
-                } else {
-                    transitImpedance = Math.exp(betaTransit * getTransitTravelTime(orig, dest));
-                }
-                autoAccessibility[geoData.getZoneIndex(orig)] += Math.pow(pop[dest], alphaAuto) * autoImpedance;
-                transitAccessibility[geoData.getZoneIndex(orig)] += Math.pow(pop[dest], alphaTransit) * transitImpedance;
-            }
+        // impedances only change with skims and are reused as long as the same skims are used
+        if (!skimsUnchanged || impedanceBetaAuto != betaAuto || impedanceBetaTransit != betaTransit) {
+            autoImpedance = calculateImpedances(hwySkim, betaAuto, zones);
+            transitImpedance = calculateImpedances(transitSkim, betaTransit, zones);
+            impedanceBetaAuto = betaAuto;
+            impedanceBetaTransit = betaTransit;
+            impedanceHwySkim = hwySkim;
+            impedanceTransitSkim = transitSkim;
         }
+        accessibilityPopulation = pop;
+        autoAccessibility = calculateHansenAccessibilities(autoImpedance, zones, pop, alphaAuto);
+        transitAccessibility = calculateHansenAccessibilities(transitImpedance, zones, pop, alphaTransit);
         autoAccessibility = SiloUtil.scaleArray(autoAccessibility, 100);
         transitAccessibility = SiloUtil.scaleArray(transitAccessibility, 100);
 
@@ -144,6 +153,108 @@ public class Accessibility {
     }
 
 
+    public void addStateToCheckpoint(MicroDataSnapshot checkpoint) {
+        // add skim year and accessibilities to checkpoint, as accessibilities depend on the population of the year
+        // they were calculated in
+        checkpoint.addIntArray("skimYear", new int[]{skimYear});
+        checkpoint.addDoubleArray("autoAccessibility", autoAccessibility.clone());
+        checkpoint.addDoubleArray("transitAccessibility", transitAccessibility.clone());
+        checkpoint.addDoubleArray("regionalAccessibility", regionalAccessibility.clone());
+        checkpoint.addIntArray("accessibilityPopulation", accessibilityPopulation.clone());
+    }
+
+
+    public void restoreStateFromCheckpoint(MicroDataSnapshot checkpoint) {
+        // read skims that were in use in the interrupted run and restore its accessibilities
+        int year = checkpoint.getIntArray("skimYear")[0];
+        if (year != skimYear) readSkim(year);
+        autoAccessibility = checkpoint.getDoubleArray("autoAccessibility");
+        transitAccessibility = checkpoint.getDoubleArray("transitAccessibility");
+        regionalAccessibility = checkpoint.getDoubleArray("regionalAccessibility");
+        accessibilityPopulation = checkpoint.getIntArray("accessibilityPopulation");
+    }
+
+
+    static double[] calculateHansenAccessibilities (final float[][] impedance, int[] zones, int[] pop, float alpha) {
+        // sum up pop^alpha * impedance over all destinations by origin zone index (not yet scaled)
+
+        // population is weighted once per destination instead of once per origin-destination pair
+        final double[] weight = new double[zones.length];
+        for (int dest = 0; dest < zones.length; dest++) weight[dest] = Math.pow(pop[zones[dest]], alpha);
+        final double[] accessibility = new double[zones.length];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int block = 0; block < zones.length; block += ORIGINS_PER_TASK) {
+            final int from = block;
+            final int to = Math.min(block + ORIGINS_PER_TASK, zones.length);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    sumWeightedImpedances(impedance, weight, from, to, accessibility);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        return accessibility;
+    }
+
+
+    static float[][] calculateImpedances (final Skim skim, final float beta, final int[] zones) {
+        // calculate exp(beta * travel time) by origin and destination zone index, travel time 0 indicates that the
+        // destination cannot be reached (should never happen for auto, zone is not connected by walk-to-transit)
+
+        final float[][] impedance = new float[zones.length][zones.length];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int block = 0; block < zones.length; block += ORIGINS_PER_TASK) {
+            final int from = block;
+            final int to = Math.min(block + ORIGINS_PER_TASK, zones.length);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    float[] travelTimeRow = new float[skim.getColumnCount()];
+                    for (int orig = from; orig < to; orig++) {
+                        skim.copyRow(zones[orig], travelTimeRow);
+                        float[] impedanceRow = impedance[orig];
+                        for (int dest = 0; dest < zones.length; dest++) {
+                            float travelTime = travelTimeRow[zones[dest] - 1];
+                            impedanceRow[dest] = travelTime == 0 ? 0 : (float) Math.exp(beta * travelTime);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        return impedance;
+    }
+
+
+    private static void sumWeightedImpedances (float[][] impedance, double[] weight, int fromOrig, int toOrig,
+                                               double[] accessibility) {
+        // add up weighted impedances for origins fromOrig (inclusive) to toOrig (exclusive), destinations are processed
+        // in blocks to reuse the same part of weight for all origins while it is still in the cache
+
+        for (int blockStart = 0; blockStart < weight.length; blockStart += DESTINATIONS_PER_BLOCK) {
+            int blockEnd = Math.min(blockStart + DESTINATIONS_PER_BLOCK, weight.length);
+            for (int orig = fromOrig; orig < toOrig; orig++) {
+                float[] impedanceRow = impedance[orig];
+                double sum = 0;
+                for (int dest = blockStart; dest < blockEnd; dest++) sum += weight[dest] * impedanceRow[dest];
+                accessibility[orig] += sum;
+            }
+        }
+    }
+
+
+    private static void invokeAll (List<Callable<Void>> tasks) {
+        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
+        try {
+            for (Future<Void> result: pool.invokeAll(tasks)) result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not calculate accessibilities.", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+
     private void readWorkTripLengthFrequencyDistribution () {
         // read HTS trip length frequency distribution for work trips
 
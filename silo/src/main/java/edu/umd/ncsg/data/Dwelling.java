@@ -19,9 +19,6 @@ package edu.umd.ncsg.data;
 import org.apache.log4j.Logger;
 
 import java.io.PrintWriter;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Collection;
 
 /**
  * @author Greg Erhardt 
@@ -31,7 +28,7 @@ import java.util.Collection;
 public class Dwelling {
 
     static Logger logger = Logger.getLogger(Dwelling.class);
-    private static final Map<Integer, Dwelling> dwellingMap = new HashMap<>();
+    private static final EntityStore<Dwelling> dwellingStore = new EntityStore<>();
 	int id;
     int zone;
     int hhId;
@@ -59,36 +56,40 @@ public class Dwelling {
         this.yearBuilt = year;
         this.utilOfResident = 0.;
         this.utilByHhType = new double[HouseholdType.values().length];
-        dwellingMap.put(id, this);
+        dwellingStore.put(id, this);
+        ZonalCounters.dwellingAdded(this);
     }
 
 
     public static void saveDwellings (Dwelling[] dds) {
-        for (Dwelling dd: dds) dwellingMap.put(dd.getId(), dd);
+        for (Dwelling dd: dds) dwellingStore.put(dd.getId(), dd);
+        ZonalCounters.reset();
     }
 
 
     public static Dwelling getDwellingFromId(int dwellingId) {
-        return dwellingMap.get(dwellingId);
+        return dwellingStore.get(dwellingId);
     }
 
 
     public static int getDwellingCount() {
-        return dwellingMap.size();
+        return dwellingStore.size();
     }
 
-    public static Collection<Dwelling> getDwellings() {
+    public static EntityStore<Dwelling> getDwellings() {
         // return collection of dwellings
-            return dwellingMap.values();
+            return dwellingStore;
     }
 
     public static Dwelling[] getDwellingArray() {
-        return dwellingMap.values().toArray(new Dwelling[dwellingMap.size()]);
+        return dwellingStore.toArray(new Dwelling[dwellingStore.size()]);
     }
 
 
     public static void removeDwelling(int id) {
-        dwellingMap.remove(id);
+        Dwelling dd = dwellingStore.get(id);
+        if (dd != null) ZonalCounters.dwellingRemoved(dd);
+        dwellingStore.remove(id);
     }
 
 
@@ -171,7 +172,10 @@ public class Dwelling {
     }  
 
     public void setPrice (int price) {
+        int oldPrice = this.price;
         this.price = price;
+        ZonalSummary.invalidate();
+        ZonalCounters.dwellingPriceChanged(this, oldPrice);
     }
 
     public void setRestriction (float restriction) {
@@ -0,0 +1,278 @@
+package edu.umd.ncsg.data;
+
+import java.util.AbstractCollection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Id-indexed store for persons, households, dwellings and jobs. Entities are kept in a densely packed slot array,
+ * and an int array translates ids into slots, so that lookups require neither boxing of the id nor hashing. Slots
+ * that become free when an entity is removed are reused by the next entity that is added.
+ **/
+
+public class EntityStore<T> extends AbstractCollection<T> {
+
+    private static final int NO_SLOT = -1;
+    private static final AtomicInteger snapshotCounter = new AtomicInteger(0);
+
+    private Object[] slots;
+    private int[] idOfSlot;
+    private int[] slotOfId;
+    private int[] freeSlots;
+    private int numberOfFreeSlots;
+    private int slotsInUse;               // slots at position >= slotsInUse have never been used
+    private int size;
+    private int modCount;
+
+
+    public EntityStore () {
+        this(1024);
+    }
+
+
+    public EntityStore (int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 16);
+        slots = new Object[initialCapacity];
+        idOfSlot = new int[initialCapacity];
+        slotOfId = createEmptyIndex(initialCapacity);
+        freeSlots = new int[16];
+        numberOfFreeSlots = 0;
+        slotsInUse = 0;
+        size = 0;
+        modCount = 0;
+    }
+
+
+    private static int[] createEmptyIndex (int length) {
+        int[] index = new int[length];
+        for (int i = 0; i < length; i++) index[i] = NO_SLOT;
+        return index;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public T get (int id) {
+        // return entity with this id, or null if id is not in use
+        if (id < 0 || id >= slotOfId.length) return null;
+        int slot = slotOfId[id];
+        if (slot == NO_SLOT) return null;
+        return (T) slots[slot];
+    }
+
+
+    public boolean containsId (int id) {
+        return id >= 0 && id < slotOfId.length && slotOfId[id] != NO_SLOT;
+    }
+
+
+    public void put (int id, T entity) {
+        // add entity with this id, replaces the entity that used this id before (if any)
+        if (entity == null) throw new IllegalArgumentException("Cannot store null for id " + id + ".");
+        if (id < 0) throw new IllegalArgumentException("Cannot store entity with negative id " + id + ".");
+        if (id >= slotOfId.length) growIndex(id);
+        int slot = slotOfId[id];
+        if (slot != NO_SLOT) {
+            slots[slot] = entity;
+            return;
+        }
+        if (numberOfFreeSlots > 0) {
+            numberOfFreeSlots--;
+            slot = freeSlots[numberOfFreeSlots];
+        } else {
+            if (slotsInUse == slots.length) growSlots();
+            slot = slotsInUse;
+            slotsInUse++;
+        }
+        slots[slot] = entity;
+        idOfSlot[slot] = id;
+        slotOfId[id] = slot;
+        size++;
+        modCount++;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public T remove (int id) {
+        // remove entity with this id and return it, or return null if id is not in use
+        if (id < 0 || id >= slotOfId.length) return null;
+        int slot = slotOfId[id];
+        if (slot == NO_SLOT) return null;
+        T entity = (T) slots[slot];
+        slots[slot] = null;
+        slotOfId[id] = NO_SLOT;
+        if (numberOfFreeSlots == freeSlots.length) {
+            int[] larger = new int[freeSlots.length * 2];
+            System.arraycopy(freeSlots, 0, larger, 0, numberOfFreeSlots);
+            freeSlots = larger;
+        }
+        freeSlots[numberOfFreeSlots] = slot;
+        numberOfFreeSlots++;
+        size--;
+        modCount++;
+        return entity;
+    }
+
+
+    private void growIndex (int id) {
+        int newLength = Math.max(id + 1, slotOfId.length + (slotOfId.length >> 1));
+        int[] larger = createEmptyIndex(newLength);
+        System.arraycopy(slotOfId, 0, larger, 0, slotOfId.length);
+        slotOfId = larger;
+    }
+
+
+    private void growSlots () {
+        int newLength = slots.length + (slots.length >> 1);
+        Object[] largerSlots = new Object[newLength];
+        System.arraycopy(slots, 0, largerSlots, 0, slotsInUse);
+        slots = largerSlots;
+        int[] largerIds = new int[newLength];
+        System.arraycopy(idOfSlot, 0, largerIds, 0, slotsInUse);
+        idOfSlot = largerIds;
+    }
+
+
+    @Override
+    public int size () {
+        return size;
+    }
+
+
+    public int capacity () {
+        // number of slots that are currently allocated
+        return slots.length;
+    }
+
+
+    public int getSlotCount () {
+        // upper bound (exclusive) of slots that may hold an entity, useful to partition the store
+        return slotsInUse;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public T getEntityInSlot (int slot) {
+        // return entity stored in this slot, or null if the slot is free
+        return (T) slots[slot];
+    }
+
+
+    public int getSlotOfId (int id) {
+        // return slot of entity with this id, or -1 if id is not in use
+        if (id < 0 || id >= slotOfId.length) return NO_SLOT;
+        return slotOfId[id];
+    }
+
+
+    public int[] getFreeSlots () {
+        // return slots that will be reused by the next entities added, the last slot is reused first
+        int[] free = new int[numberOfFreeSlots];
+        System.arraycopy(freeSlots, 0, free, 0, numberOfFreeSlots);
+        return free;
+    }
+
+
+    public void restoreLayout (int[] ids, int[] slotOfIds, int[] free, int numberOfSlotsInUse) {
+        // move entities with ids into the given slots, so that iteration order and reuse of free slots are the same as
+        // in the store the layout was taken from. All entities of this store need to be listed in ids
+        if (ids.length != size) throw new IllegalArgumentException("Layout lists " + ids.length +
+                " entities, but store holds " + size + " entities.");
+        Object[] entities = new Object[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            entities[i] = get(ids[i]);
+            if (entities[i] == null) throw new IllegalArgumentException("Layout lists unknown id " + ids[i] + ".");
+        }
+        clear();
+        if (numberOfSlotsInUse > slots.length) {
+            slots = new Object[numberOfSlotsInUse];
+            idOfSlot = new int[numberOfSlotsInUse];
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] >= slotOfId.length) growIndex(ids[i]);
+            slots[slotOfIds[i]] = entities[i];
+            idOfSlot[slotOfIds[i]] = ids[i];
+            slotOfId[ids[i]] = slotOfIds[i];
+        }
+        freeSlots = new int[Math.max(16, free.length)];
+        System.arraycopy(free, 0, freeSlots, 0, free.length);
+        numberOfFreeSlots = free.length;
+        slotsInUse = numberOfSlotsInUse;
+        size = ids.length;
+        modCount++;
+    }
+
+
+    public int getModificationCount () {
+        // changes every time an entity is added or removed
+        return modCount;
+    }
+
+
+    @Override
+    public void clear () {
+        for (int slot = 0; slot < slotsInUse; slot++) {
+            if (slots[slot] != null) slotOfId[idOfSlot[slot]] = NO_SLOT;
+            slots[slot] = null;
+        }
+        slotsInUse = 0;
+        numberOfFreeSlots = 0;
+        size = 0;
+        modCount++;
+    }
+
+
+    @Override
+    public Object[] toArray () {
+        snapshotCounter.incrementAndGet();
+        return super.toArray();
+    }
+
+
+    @Override
+    public <E> E[] toArray (E[] array) {
+        // copy all entities into an array, needed only if entities are added or removed while looping over them
+        snapshotCounter.incrementAndGet();
+        return super.toArray(array);
+    }
+
+
+    public static int getAndResetSnapshotCounter () {
+        // return number of snapshot arrays created by all entity stores since the last call
+        return snapshotCounter.getAndSet(0);
+    }
+
+
+    @Override
+    public Iterator<T> iterator () {
+        // read-only iterator over all entities in slot order, fails if entities are added or removed meanwhile.
+        // Prefer this over getXArray() for summaries and other passes that do not add or remove entities
+        return new Iterator<T>() {
+            private int nextSlot = findNextSlot(0);
+            private final int expectedModCount = modCount;
+
+            private int findNextSlot (int slot) {
+                while (slot < slotsInUse && slots[slot] == null) slot++;
+                return slot;
+            }
+
+            public boolean hasNext () {
+                return nextSlot < slotsInUse;
+            }
+
+            @SuppressWarnings("unchecked")
+            public T next () {
+                if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                if (nextSlot >= slotsInUse) throw new NoSuchElementException();
+                T entity = (T) slots[nextSlot];
+                nextSlot = findNextSlot(nextSlot + 1);
+                return entity;
+            }
+
+            public void remove () {
+                throw new UnsupportedOperationException("EntityStore iterators are read-only.");
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package edu.umd.ncsg.data;
+
+/**
+ * Skim that stores all values in a single float array in row-major order. Compared to com.pb.common.matrix.Matrix, this
+ * avoids one array object per row and the translation of external into internal zone numbers for every lookup.
+ **/
+
+public class FloatSkim implements Skim {
+
+    private final String name;
+    private final float[] values;
+    private final int rows;
+    private final int columns;
+
+
+    public FloatSkim (String name, float[] values, int rows, int columns) {
+        if ((long) rows * columns != values.length) throw new IllegalArgumentException("Skim " + name + " with " +
+                rows + " rows and " + columns + " columns cannot hold " + values.length + " values.");
+        this.name = name;
+        this.values = values;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+
+    public static FloatSkim fromRows (String name, float[][] data) {
+        // copy rows into a single array, every row is released after it was copied so that both copies of the full
+        // skim never need to be held in memory at the same time. Note that data is emptied by this method
+        int rows = data.length;
+        int columns = rows == 0 ? 0 : data[0].length;
+        float[] values = new float[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(data[i], 0, values, i * columns, columns);
+            data[i] = null;
+        }
+        return new FloatSkim(name, values, rows, columns);
+    }
+
+
+    public static FloatSkim fromRows (String name, double[][] data) {
+        // same as above for skims stored as double values, which are converted into float values
+        int rows = data.length;
+        int columns = rows == 0 ? 0 : data[0].length;
+        float[] values = new float[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            double[] row = data[i];
+            int offset = i * columns;
+            for (int j = 0; j < columns; j++) values[offset + j] = (float) row[j];
+            data[i] = null;
+        }
+        return new FloatSkim(name, values, rows, columns);
+    }
+
+
+    @Override
+    public float getValueAt (int orig, int dest) {
+        if (orig < 1 || orig > rows || dest < 1 || dest > columns) throw new IllegalArgumentException("Invalid zone " +
+                "pair " + orig + "/" + dest + " for skim " + name + " with " + rows + " rows and " + columns + " columns.");
+        return values[(orig - 1) * columns + dest - 1];
+    }
+
+
+    @Override
+    public void copyRow (int orig, float[] buffer) {
+        // copy all values of row orig into buffer, buffer[dest - 1] holds the value to zone dest
+        if (orig < 1 || orig > rows) throw new IllegalArgumentException("Invalid zone " + orig + " for skim " + name +
+                " with " + rows + " rows.");
+        System.arraycopy(values, (orig - 1) * columns, buffer, 0, columns);
+    }
+
+
+    @Override
+    public int getRowCount () {
+        return rows;
+    }
+
+
+    @Override
+    public int getColumnCount () {
+        return columns;
+    }
+
+
+    public String getName () {
+        return name;
+    }
+}
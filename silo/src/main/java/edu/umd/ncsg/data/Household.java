@@ -20,9 +20,6 @@ import edu.umd.ncsg.SiloUtil;
 import org.apache.log4j.Logger;
 
 import java.io.PrintWriter;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Collection;
 import java.io.Serializable;
 
 import edu.umd.ncsg.SiloModel;
@@ -37,7 +34,7 @@ public class Household implements Serializable {
 
     static Logger logger = Logger.getLogger(Household.class);
 
-    private static final Map<Integer, Household> householdMap = new HashMap<>();
+    private static final EntityStore<Household> householdStore = new EntityStore<>();
     // Note: if attributes are edited, remember to edit attributes for inmigrants in \relocation\ImOutMigration\setupInOutMigration.java and \relocation\ImOutMigration\inmigrateHh.java as well
     private int hhId;
     private int dwellingId;
@@ -56,40 +53,44 @@ public class Household implements Serializable {
         this.hhSize = hhSize;
         this.autos = autos;
         persons = new Person[hhSize];
-        householdMap.put(id,this);
+        householdStore.put(id,this);
+        ZonalCounters.householdAdded(this);
     }
 
 
     public static Household[] getHouseholdArray() {
-        return householdMap.values().toArray(new Household[householdMap.size()]);
+        return householdStore.toArray(new Household[householdStore.size()]);
     }
 
 
     public static Household getHouseholdFromId(int householdId) {
-        return householdMap.get(householdId);
+        return householdStore.get(householdId);
     }
 
 
     public static int getHouseholdCount() {
-        return householdMap.size();
+        return householdStore.size();
     }
 
 
-    public static Collection<Household> getHouseholds() {
+    public static EntityStore<Household> getHouseholds() {
 //        Collection<Household> households = null;
 //        for (Household household: households) {
 //        }
-        return householdMap.values();
+        return householdStore;
     }
 
 
     public static void saveHouseholds (Household[] hhs) {
-        for (Household hh: hhs) householdMap.put(hh.getId(), hh);
+        for (Household hh: hhs) householdStore.put(hh.getId(), hh);
+        ZonalCounters.reset();
     }
 
 
     public static void remove (int hhID) {
-        householdMap.remove(hhID);
+        Household hh = householdStore.get(hhID);
+        if (hh != null) ZonalCounters.householdRemoved(hh);
+        householdStore.remove(hhID);
     }
 
 
@@ -163,10 +164,14 @@ public class Household implements Serializable {
     public void setDwelling (int id) {
         this.dwellingId = id;
         setHomeZone(Dwelling.getDwellingFromId(id).getZone());
+        ZonalSummary.invalidate();
     }
 
     public void setHomeZone (int zone) {
+        int oldHomeZone = homeZone;
         this.homeZone = zone;
+        ZonalSummary.invalidate();
+        ZonalCounters.householdChanged(oldHomeZone, race, zone, race);
     }
 
 
@@ -183,7 +188,9 @@ public class Household implements Serializable {
         if (getHhSize() > 1) {
             for (Person pp: pps) if (pp.getRace() != householdRace) householdRace = Race.other;
         }
+        Race oldRace = race;
         this.race = householdRace;
+        ZonalCounters.householdChanged(homeZone, oldRace, homeZone, householdRace);
     }
 
 
@@ -219,6 +226,7 @@ public class Household implements Serializable {
             }
             persons = remainingPersons;
             hhSize -= 1;
+            ZonalSummary.invalidate();
             setType();
             setHouseholdRace();
         } else {
@@ -238,6 +246,7 @@ public class Household implements Serializable {
         persons = newPersons;
         hhSize++;
         per.setHhId(hhId);
+        ZonalSummary.invalidate();
         setType();
         setHouseholdRace();
         if (per.getId() == SiloUtil.trackPp || hhId == SiloUtil.trackHh) SiloUtil.trackWriter.println("A person " +
@@ -259,6 +268,7 @@ public class Household implements Serializable {
         persons = newPers;
         hhSize++;
         per.setHhId(hhId);
+        ZonalSummary.invalidate();
         setType();
         if (id == SiloUtil.trackPp || hhId == SiloUtil.trackHh) SiloUtil.trackWriter.println("A child named "
                 + id + " was born and added to household " + hhId + ".");
@@ -267,7 +277,7 @@ public class Household implements Serializable {
 
     public static int getTotalPopulation () {
         int tp = 0;
-        for (Household hh: getHouseholdArray()) tp += hh.getHhSize();
+        for (Household hh: getHouseholds()) tp += hh.getHhSize();
         return tp;
     }
 
@@ -275,7 +285,7 @@ public class Household implements Serializable {
     public static float getAverageHouseholdSize () {
         float ahs = 0;
         int cnt = 0;
-        for (Household hh: getHouseholdArray()) {
+        for (Household hh: getHouseholds()) {
             ahs += hh.getHhSize();
             cnt++;
         }
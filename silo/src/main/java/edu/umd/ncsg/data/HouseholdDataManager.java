@@ -18,16 +18,18 @@ package edu.umd.ncsg.data;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.pb.common.datafile.TableDataSet;
 import edu.umd.ncsg.SiloModel;
 import edu.umd.ncsg.SiloUtil;
 import edu.umd.ncsg.events.EventRules;
-import com.pb.sawdust.calculator.Function1;
-import com.pb.sawdust.util.array.ArrayUtil;
+import edu.umd.ncsg.utils.DiscreteSampler;
+import edu.umd.ncsg.utils.RandomStreams;
 import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
-import com.pb.sawdust.util.concurrent.IteratorAction;
 import org.apache.log4j.Logger;
 import com.pb.common.util.ResourceUtil;
 import com.pb.common.util.IndexSort;
@@ -49,6 +51,8 @@ public class HouseholdDataManager {
     protected static final String PROPERTIES_SUMMARIZE_METRO = "summarize.hh.near.selected.metro.stp";
     protected static final String PROPERTIES_SELECTED_METRO  = "selected.metro.stops";
     protected static final String PROPERTIES_HH_NEAR_METRO   = "hh.near.selected.metro.stops.summary";
+
+    private static final int HOUSEHOLDS_PER_RANDOM_STREAM = 4000;
     private ResourceBundle rb;
 
     private static int highestHouseholdIdInUse;
@@ -56,6 +60,8 @@ public class HouseholdDataManager {
     private float[][] laborParticipationShares;
     private static float[][][] initialIncomeDistribution;              // income by age, gender and occupation
     private static float meanIncomeChange;
+    private static int[] incomeChangeSteps;
+    private static DiscreteSampler incomeChangeSampler;
     public static int[] startNewJobPersonIds;
     public static int[] quitJobPersonIds;
     private float[][][] currentIncomeDistribution;
@@ -66,6 +72,22 @@ public class HouseholdDataManager {
         // constructor
         this.rb = rb;
         meanIncomeChange = (float) ResourceUtil.getDoubleProperty(rb, PROPERTIES_INCOME_CHANGE);
+        setUpIncomeChangeDistribution();
+    }
+
+
+    private static void setUpIncomeChangeDistribution() {
+        // distribution of income changes for new persons does not change during the model run
+
+        double[] prob = new double[21];
+        incomeChangeSteps = new int[21];
+        for (int i = 0; i < prob.length; i++) {
+            // normal distribution to calculate change of income
+            incomeChangeSteps[i] = (int) (-5000f + 10000f * (float) i / (prob.length - 1f));
+            prob[i] = (1 / (meanIncomeChange * Math.sqrt(2 * 3.1416))) *
+                    Math.exp(-(Math.pow(incomeChangeSteps[i], 2) / (2 * Math.pow(meanIncomeChange, 2))));
+        }
+        incomeChangeSampler = DiscreteSampler.cumulative(prob);
     }
 
 
@@ -85,138 +107,206 @@ public class HouseholdDataManager {
         logger.info("Reading household micro data from ascii file");
 
         int year = SiloUtil.getStartYear();
-        String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_HH_FILE_ASCII) + "_" + year + ".csv";
-
-        String recString = "";
-        int recCount = 0;
-        try {
-            BufferedReader in = new BufferedReader(new FileReader(fileName));
-            recString = in.readLine();
-
-            // read header
-            String[] header = recString.split(",");
-            int posId    = SiloUtil.findPositionInArray("id", header);
-            int posDwell = SiloUtil.findPositionInArray("dwelling",header);
-            int posTaz   = SiloUtil.findPositionInArray("zone",header);
-            int posSize  = SiloUtil.findPositionInArray("hhSize",header);
-            int posAutos = SiloUtil.findPositionInArray("autos",header);
-
-            // read line
-            while ((recString = in.readLine()) != null) {
-                recCount++;
-                String[] lineElements = recString.split(",");
-                int id         = Integer.parseInt(lineElements[posId]);
-                int dwellingID = Integer.parseInt(lineElements[posDwell]);
-                int taz        = Integer.parseInt(lineElements[posTaz]);
-                int hhSize     = Integer.parseInt(lineElements[posSize]);
-                int autos      = Integer.parseInt(lineElements[posAutos]);
-
-                new Household(id, dwellingID, taz, hhSize, autos);  // this automatically puts it in id->household map in Household class
+        final String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_HH_FILE_ASCII) + "_" + year + ".csv";
+
+        MicroDataCsvReader reader = new MicroDataCsvReader(fileName);
+        final int posId    = reader.addIntColumn("id");
+        final int posDwell = reader.addIntColumn("dwelling");
+        final int posTaz   = reader.addIntColumn("zone");
+        final int posSize  = reader.addIntColumn("hhSize");
+        final int posAutos = reader.addIntColumn("autos");
+        int recCount = reader.read(new MicroDataCsvReader.RowHandler() {
+            public void handleRow(MicroDataCsvReader.Row row) {
+                int id = row.getInt(posId);
+                new Household(id, row.getInt(posDwell), row.getInt(posTaz), row.getInt(posSize), row.getInt(posAutos));  // this automatically puts it in id->household map in Household class
                 if (id == SiloUtil.trackHh) {
                     SiloUtil.trackWriter.println("Read household with following attributes from " + fileName);
                     Household.getHouseholdFromId(id).logAttributes(SiloUtil.trackWriter);
                 }
             }
-        } catch (IOException e) {
-            logger.fatal("IO Exception caught reading synpop household file: " + fileName);
-            logger.fatal("recCount = " + recCount + ", recString = <" + recString + ">");
-        }
+        });
         logger.info("Finished reading " + recCount + " households.");
     }
 
 
     public static void writeBinaryPopulationDataObjects(ResourceBundle appRb) {
-        // Store population object data in binary file
+        // Store households and persons in columnar binary snapshot, persons are connected to households when reading
         String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(appRb, PROPERTIES_POP_FILE_BIN);
         logger.info("  Writing population data to binary file.");
-        Object[] data = {Household.getHouseholds().toArray(new Household[Household.getHouseholdCount()]),
-                Person.getPersons().toArray(new Person[Person.getPersonCount()])};
-        try {
-            File fl = new File(fileName);
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(fl));
-            out.writeObject(data);
-            out.close();
-        } catch (Exception e) {
-            logger.error("Error saving to binary file " + fileName + ". Object not saved.\n" + e);
-        }
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        addPopulationToSnapshot(snapshot);
+        snapshot.write(fileName);
+    }
+
+
+    public static void addPopulationToSnapshot(MicroDataSnapshot snapshot) {
+        // add one row per household and per person, rows are in the order of Household.getHouseholds() and Person.getPersons()
+        int hhCount = Household.getHouseholdCount();
+        int[] hhId = new int[hhCount];
+        int[] dwelling = new int[hhCount];
+        int[] zone = new int[hhCount];
+        int[] hhSize = new int[hhCount];
+        int[] autos = new int[hhCount];
+        int row = 0;
+        for (Household hh: Household.getHouseholds()) {
+            hhId[row] = hh.getId();
+            dwelling[row] = hh.getDwellingId();
+            zone[row] = hh.getHomeZone();
+            hhSize[row] = hh.getHhSize();
+            autos[row] = hh.getAutos();
+            row++;
+        }
+        MicroDataSnapshot.Table households = snapshot.addTable("households", hhCount);
+        households.addIntColumn("id", hhId);
+        households.addIntColumn("dwelling", dwelling);
+        households.addIntColumn("zone", zone);
+        households.addIntColumn("hhSize", hhSize);
+        households.addIntColumn("autos", autos);
+
+        int ppCount = Person.getPersonCount();
+        int[] ppId = new int[ppCount];
+        int[] hhOfPerson = new int[ppCount];
+        int[] age = new int[ppCount];
+        int[] gender = new int[ppCount];
+        String[] role = new String[ppCount];
+        String[] race = new String[ppCount];
+        int[] occupation = new int[ppCount];
+        int[] workplace = new int[ppCount];
+        int[] income = new int[ppCount];
+        row = 0;
+        for (Person pp: Person.getPersons()) {
+            ppId[row] = pp.getId();
+            hhOfPerson[row] = pp.getHhId();
+            age[row] = pp.getAge();
+            gender[row] = pp.getGender();
+            role[row] = pp.getRole().toString();
+            race[row] = pp.getRace().toString();
+            occupation[row] = pp.getOccupation();
+            workplace[row] = pp.getWorkplace();
+            income[row] = pp.getIncome();
+            row++;
+        }
+        MicroDataSnapshot.Table persons = snapshot.addTable("persons", ppCount);
+        persons.addIntColumn("id", ppId);
+        persons.addIntColumn("hhid", hhOfPerson);
+        persons.addIntColumn("age", age);
+        persons.addIntColumn("gender", gender);
+        persons.addStringColumn("relationShip", role);
+        persons.addStringColumn("race", race);
+        persons.addIntColumn("occupation", occupation);
+        persons.addIntColumn("workplace", workplace);
+        persons.addIntColumn("income", income);
     }
 
 
     private void readBinaryPopulationDataObjects() {
-        // read households and persons from binary file
+        // read households and persons from binary snapshot
         String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_POP_FILE_BIN);
         logger.info("Reading population data from binary file.");
-        try {
-            ObjectInputStream in = new ObjectInputStream(new FileInputStream(new File(fileName)));
-            Object[] data = (Object[]) in.readObject();
-            Household.saveHouseholds((Household[]) data[0]);
-            Person.savePersons((Person[]) data[1]);
-        } catch (Exception e) {
-            logger.error ("Error reading from binary file " + fileName + ". Object not read.\n" + e);
-        }
+        createPopulationFromSnapshot(MicroDataSnapshot.read(fileName));
         setHighestHouseholdAndPersonId();
         logger.info("Finished reading " + Household.getHouseholdCount() + " households.");
         logger.info("Finished reading " + Person.getPersonCount() + " persons.");
     }
 
 
+    public static void createPopulationFromSnapshot(MicroDataSnapshot snapshot) {
+        // create households and persons, constructors put them into the id->object stores
+        MicroDataSnapshot.Table households = snapshot.getTable("households");
+        int[] hhId = households.getIntColumn("id");
+        int[] dwelling = households.getIntColumn("dwelling");
+        int[] zone = households.getIntColumn("zone");
+        int[] hhSize = households.getIntColumn("hhSize");
+        int[] autos = households.getIntColumn("autos");
+        for (int row = 0; row < households.getRowCount(); row++) {
+            new Household(hhId[row], dwelling[row], zone[row], hhSize[row], autos[row]);
+        }
+
+        MicroDataSnapshot.Table persons = snapshot.getTable("persons");
+        int[] ppId = persons.getIntColumn("id");
+        int[] hhOfPerson = persons.getIntColumn("hhid");
+        int[] age = persons.getIntColumn("age");
+        int[] gender = persons.getIntColumn("gender");
+        String[] role = persons.getStringColumn("relationShip");
+        String[] race = persons.getStringColumn("race");
+        int[] occupation = persons.getIntColumn("occupation");
+        int[] workplace = persons.getIntColumn("workplace");
+        int[] income = persons.getIntColumn("income");
+        for (int row = 0; row < persons.getRowCount(); row++) {
+            Person pp = new Person(ppId[row], hhOfPerson[row], age[row], gender[row], Race.valueOf(race[row]),
+                    occupation[row], workplace[row], income[row]);
+            pp.setRole(PersonRole.valueOf(role[row]));
+        }
+    }
+
+
+    public void addStateToCheckpoint(MicroDataSnapshot checkpoint) {
+        // add highest ids and distributions of the initial population to checkpoint
+        checkpoint.addIntArray("highestHouseholdAndPersonId", new int[]{highestHouseholdIdInUse, highestPersonIdInUse});
+        float[] participation = new float[2 * 100];
+        for (int gen = 0; gen < 2; gen++) System.arraycopy(laborParticipationShares[gen], 0, participation, gen * 100, 100);
+        checkpoint.addFloatArray("laborParticipationShares", participation);
+        float[] income = new float[2 * 100 * 2];
+        for (int gen = 0; gen < 2; gen++)
+            for (int age = 0; age < 100; age++)
+                System.arraycopy(initialIncomeDistribution[gen][age], 0, income, (gen * 100 + age) * 2, 2);
+        checkpoint.addFloatArray("initialIncomeDistribution", income);
+    }
+
+
+    public void restoreStateFromCheckpoint(MicroDataSnapshot checkpoint) {
+        // replace state calculated from the population of the resumed year by the state of the interrupted run
+        int[] highestIds = checkpoint.getIntArray("highestHouseholdAndPersonId");
+        highestHouseholdIdInUse = highestIds[0];
+        highestPersonIdInUse = highestIds[1];
+        float[] participation = checkpoint.getFloatArray("laborParticipationShares");
+        laborParticipationShares = new float[2][100];
+        for (int gen = 0; gen < 2; gen++) System.arraycopy(participation, gen * 100, laborParticipationShares[gen], 0, 100);
+        float[] income = checkpoint.getFloatArray("initialIncomeDistribution");
+        initialIncomeDistribution = new float[2][100][2];
+        for (int gen = 0; gen < 2; gen++)
+            for (int age = 0; age < 100; age++)
+                System.arraycopy(income, (gen * 100 + age) * 2, initialIncomeDistribution[gen][age], 0, 2);
+    }
+
+
     private void readPersonData() {
         logger.info("Reading person micro data from ascii file");
 
         int year = SiloUtil.getStartYear();
-        String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_PP_FILE_ASCII) + "_" + year + ".csv";
-
-        String recString = "";
-        int recCount = 0;
-        try {
-            BufferedReader in = new BufferedReader(new FileReader(fileName));
-            recString = in.readLine();
-
-            // read header
-            String[] header = recString.split(",");
-            int posId = SiloUtil.findPositionInArray("id", header);
-            int posHhId = SiloUtil.findPositionInArray("hhid",header);
-            int posAge = SiloUtil.findPositionInArray("age",header);
-            int posGender = SiloUtil.findPositionInArray("gender",header);
-            int posRelShp = SiloUtil.findPositionInArray("relationShip",header);
-            int posRace = SiloUtil.findPositionInArray("race",header);
-            int posOccupation = SiloUtil.findPositionInArray("occupation",header);
-            int posWorkplace = SiloUtil.findPositionInArray("workplace",header);
-            int posIncome = SiloUtil.findPositionInArray("income",header);
-
-            // read line
-            while ((recString = in.readLine()) != null) {
-                recCount++;
-                String[] lineElements = recString.split(",");
-                int id         = Integer.parseInt(lineElements[posId]);
-                int hhid       = Integer.parseInt(lineElements[posHhId]);
-                int age        = Integer.parseInt(lineElements[posAge]);
-                int gender     = Integer.parseInt(lineElements[posGender]);
-                String relShp  = lineElements[posRelShp].replace("\"", "");
-                PersonRole pr  = PersonRole.valueOf(relShp);
-                String strRace = lineElements[posRace].replace("\"", "");
-                Race race = Race.valueOf(strRace);
-                int occupation = Integer.parseInt(lineElements[posOccupation]);
-                int workplace  = Integer.parseInt(lineElements[posWorkplace]);
-                int income     = Integer.parseInt(lineElements[posIncome]);
-                Person pp = new Person(id, hhid, age, gender, race, occupation, workplace, income); //this automatically puts it in id->person map in Person class
+        final String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_PP_FILE_ASCII) + "_" + year + ".csv";
+
+        MicroDataCsvReader reader = new MicroDataCsvReader(fileName);
+        final int posId = reader.addIntColumn("id");
+        final int posHhId = reader.addIntColumn("hhid");
+        final int posAge = reader.addIntColumn("age");
+        final int posGender = reader.addIntColumn("gender");
+        final int posRelShp = reader.addStringColumn("relationShip");
+        final int posRace = reader.addStringColumn("race");
+        final int posOccupation = reader.addIntColumn("occupation");
+        final int posWorkplace = reader.addIntColumn("workplace");
+        final int posIncome = reader.addIntColumn("income");
+        int recCount = reader.read(new MicroDataCsvReader.RowHandler() {
+            public void handleRow(MicroDataCsvReader.Row row) {
+                int id         = row.getInt(posId);
+                PersonRole pr  = PersonRole.valueOf(row.getString(posRelShp));
+                Race race      = Race.valueOf(row.getString(posRace));
+                Person pp = new Person(id, row.getInt(posHhId), row.getInt(posAge), row.getInt(posGender), race,
+                        row.getInt(posOccupation), row.getInt(posWorkplace), row.getInt(posIncome)); //this automatically puts it in id->person map in Person class
                 pp.setRole(pr);
                 if (id == SiloUtil.trackPp) {
                     SiloUtil.trackWriter.println("Read person with following attributes from " + fileName);
                     Person.getPersonFromId(id).logAttributes(SiloUtil.trackWriter);
                 }
             }
-        } catch (IOException e) {
-            logger.fatal("IO Exception caught reading synpop household file: " + fileName);
-            logger.fatal("recCount = " + recCount + ", recString = <" + recString + ">");
-        }
+        });
         logger.info("Finished reading " + recCount + " persons.");
     }
 
 
     public void connectPersonsToHouseholds () {
         // connect person objects to household objects
-        for (Person per: Person.getPersonArray()) {
+        for (Person per: Person.getPersons()) {
             Household hhOfThisPerson = Household.getHouseholdFromId(per.getHhId());
             hhOfThisPerson.addPersonForInitialSetup(per);
             if (per.getHhId() == SiloUtil.trackHh || per.getId() == SiloUtil.trackPp) {
@@ -228,7 +318,7 @@ public class HouseholdDataManager {
 
     public void setTypeOfAllHouseholds () {
         // define household types
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             hh.setType();
             hh.setHouseholdRace();
         }
@@ -383,7 +473,7 @@ public class HouseholdDataManager {
 
         int pers[][] = new int[2][101];
         int ppRace[] = new int[4];
-        for (Person per: Person.getPersonArray()) {
+        for (Person per: Person.getPersons()) {
             int gender = per.getGender();
             int age = Math.min(per.getAge(), 100);
             pers[gender-1][age] += 1;
@@ -405,7 +495,7 @@ public class HouseholdDataManager {
         summarizeData.resultFile("black," + ppRace[1]);
         summarizeData.resultFile("hispanic," + ppRace[2]);
         summarizeData.resultFile("other," + ppRace[3]);
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             int hhSize = Math.min(hh.getHhSize(), 10);
             hhs[hhSize - 1]++;
             hht[hh.getHouseholdType().ordinal()]++;
@@ -436,7 +526,7 @@ public class HouseholdDataManager {
         // labor participation and commuting distance
         float[][][] labP = new float[2][2][5];
         float[][] commDist = new float[2][SiloUtil.getHighestVal(geoData.getRegionList()) + 1];
-        for (Person per: Person.getPersonArray()) {
+        for (Person per: Person.getPersons()) {
             int age = per.getAge();
             int gender = per.getGender() - 1;
             boolean employed = per.getWorkplace() > 0;
@@ -468,9 +558,9 @@ public class HouseholdDataManager {
     public void setHighestHouseholdAndPersonId () {
         // identify highest household ID and highest person ID in use
         highestHouseholdIdInUse = 0;
-        for (Household hh: Household.getHouseholdArray()) highestHouseholdIdInUse = Math.max(highestHouseholdIdInUse, hh.getId());
+        for (Household hh: Household.getHouseholds()) highestHouseholdIdInUse = Math.max(highestHouseholdIdInUse, hh.getId());
         highestPersonIdInUse = 0;
-        for (Person pp: Person.getPersonArray()) highestPersonIdInUse = Math.max(highestPersonIdInUse, pp.getId());
+        for (Person pp: Person.getPersons()) highestPersonIdInUse = Math.max(highestPersonIdInUse, pp.getId());
     }
 
 
@@ -553,7 +643,7 @@ public class HouseholdDataManager {
 
         laborParticipationShares = new float[2][100];
         int[][] count = new int[2][100];
-        for (Person pp: Person.getPersonArray()) {
+        for (Person pp: Person.getPersons()) {
             int age = pp.getAge();
             if (age > 99) continue;  // people older than 99 will always be unemployed/retired
             int gender = pp.getGender();
@@ -582,7 +672,7 @@ public class HouseholdDataManager {
 
         float[][][] averageIncome = new float[2][100][2];              // income by gender, age and unemployed/employed
         int[][][] count = new int[2][100][2];
-        for (Person pp: Person.getPersonArray()) {
+        for (Person pp: Person.getPersons()) {
             int age = Math.min(99, pp.getAge());
             int occupation = 0;
             if (pp.getOccupation() == 1) occupation = 1;
@@ -609,45 +699,56 @@ public class HouseholdDataManager {
     }
 
 
-    public void adjustIncome() {
+    public void adjustIncome(int year) {
         // select who will get a raise or drop in salary
 
         currentIncomeDistribution = calculateIncomeDistribution();   // income by gender, age and unemployed/employed
-        Integer[] personArray = new Integer[Person.getPersonCount()];
-        Person[] pps = Person.getPersonArray();
-        for (int per = 0; per < pps.length; per++) personArray[per] = pps[per].getId();
-
-        // Multi-threading code
-        Function1<Integer, Void> incomeChangeFunction = new Function1<Integer, Void>() {
-            public Void apply(Integer per) {
-                adjustIncomeForPerson(per);
-                return null;
-            }
-        };
-//
-        Iterator<Integer> incomeChangeIterator = ArrayUtil.getIterator(personArray);
-        IteratorAction<Integer> itTask = new IteratorAction<>(incomeChangeIterator, incomeChangeFunction);
+        final Household[] householdArray = new Household[Household.getHouseholdCount()];
+        int pos = 0;
+        for (Household hh: Household.getHouseholds()) householdArray[pos++] = hh;
+
+        // Multi-threading code: households are split into chunks of fixed size, and every chunk draws from its own random
+        // number stream. All members of a household are adjusted by the same task, as changing the income of a person
+        // updates the type of the household. Results do not depend on the number of threads or on the order in which
+        // chunks are processed.
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int chunk = 0; chunk * HOUSEHOLDS_PER_RANDOM_STREAM < householdArray.length; chunk++) {
+            final int from = chunk * HOUSEHOLDS_PER_RANDOM_STREAM;
+            final int to = Math.min(from + HOUSEHOLDS_PER_RANDOM_STREAM, householdArray.length);
+            final Random rand = RandomStreams.createStream("adjustIncome", year, chunk);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int i = from; i < to; i++) {
+                        for (Person pp: householdArray[i].getPersons()) adjustIncomeForPerson(pp, rand);
+                    }
+                    return null;
+                }
+            });
+        }
         ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
-        pool.execute(itTask);
-        itTask.waitForCompletion();
+        try {
+            for (Future<Void> result: pool.invokeAll(tasks)) result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not adjust income of persons.", e);
+            throw new RuntimeException(e);
+        }
     }
 
 
-    private void adjustIncomeForPerson (int per) {
-        // adjust income of person with ID per
+    private void adjustIncomeForPerson (Person pp, Random rand) {
+        // adjust income of person pp
 
-        Person pp = Person.getPersonFromId(per);
         int gender = pp.gender - 1;
         int age = Math.min(99, pp.age);
         int occ = 0;
         if (pp.occupation == 1) occ = 1;
         float desiredShift = initialIncomeDistribution[gender][age][occ] - currentIncomeDistribution[gender][age][occ];
-        int newIncome = selectNewIncome(pp.getIncome(), desiredShift);
+        int newIncome = selectNewIncome(pp.getIncome(), desiredShift, rand);
         pp.setIncome(newIncome);
     }
 
 
-    private int selectNewIncome (int currentIncome, float desiredShift) {
+    private int selectNewIncome (int currentIncome, float desiredShift, Random rand) {
         // calculate new income using a normal distribution
 
         double[] prob = new double[21];
@@ -676,7 +777,7 @@ public class HouseholdDataManager {
                     (2 * Math.pow(meanIncomeChange, 2))));
         }
         prob[smallestAbsValuePos] = prob[smallestAbsValuePos] * 10;   // make no change most likely
-        int sel = SiloUtil.select(prob);
+        int sel = SiloUtil.select(prob, rand);
         return Math.max((currentIncome + lowerBound + (upperBound - lowerBound) / prob.length * sel), 0);
     }
 
@@ -684,16 +785,8 @@ public class HouseholdDataManager {
     public static int selectIncomeForPerson (int gender, int age, int occupation) {
         // select income for household based on gender, age and occupation
 
-        double[] prob = new double[21];
-        int[] change = new int[21];
-        for (int i = 0; i < prob.length; i++) {
-            // normal distribution to calculate change of income
-            change[i] = (int) (-5000f + 10000f * (float) i / (prob.length - 1f));
-            prob[i] = (1 / (meanIncomeChange * Math.sqrt(2 * 3.1416))) *
-                    Math.exp(-(Math.pow(change[i], 2) / (2 * Math.pow(meanIncomeChange, 2))));
-        }
-        int sel = SiloUtil.select(prob);
-        return Math.max((int) initialIncomeDistribution[gender][age][occupation] + change[sel], 0);
+        int sel = SiloUtil.select(incomeChangeSampler);
+        return Math.max((int) initialIncomeDistribution[gender][age][occupation] + incomeChangeSteps[sel], 0);
     }
 
 
@@ -706,7 +799,7 @@ public class HouseholdDataManager {
         // count currently employed people
         final float[][] currentlyEmployed = new float[2][100];
         final float[][] currentlyUnemployed = new float[2][100];
-        for (Person pp : Person.getPersonArray()) {
+        for (Person pp : Person.getPersons()) {
             int age = pp.getAge();
             if (age > 99) continue;  // people older than 99 will always be unemployed/retired
             int gender = pp.getGender();
@@ -738,7 +831,7 @@ public class HouseholdDataManager {
         // plan employment changes
         ArrayList<Integer> alFindJob = new ArrayList<>();
         ArrayList<Integer> alQuitJob = new ArrayList<>();
-        for (Person pp : Person.getPersonArray()) {
+        for (Person pp : Person.getPersons()) {
             int age = pp.getAge();
             if (age > 99) continue;  // people older than 99 will always be unemployed/retired
             int gen = pp.getGender() - 1;
@@ -779,7 +872,7 @@ public class HouseholdDataManager {
         // return HashMap<Zone, ArrayOfHouseholdIds>
 
         HashMap<Integer, int[]> hhByZone = new HashMap<>();
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             int zone = hh.getHomeZone();
             if (hhByZone.containsKey(zone)) {
                 int[] oldList = hhByZone.get(zone);
@@ -796,13 +889,7 @@ public class HouseholdDataManager {
 
     public static int[] getNumberOfHouseholdsByRegion() {
         // return number of households by region
-        int[] hhByRegion = new int[geoData.getRegionList().length];
-        for (Household hh: Household.getHouseholdArray()) {
-            if (hh.getHomeZone() == -1) continue;  // unclear why this is needed
-            int region = geoData.getRegionOfZone(hh.getHomeZone());
-            hhByRegion[geoData.getRegionIndex(region)]++;
-        }
-        return hhByRegion;
+        return ZonalCounters.getHouseholdsByRegionIndex();
     }
 
 
@@ -810,7 +897,7 @@ public class HouseholdDataManager {
         // calculate median income for each MSA
 
         HashMap<Integer, ArrayList<Integer>> incomeHashMap = new HashMap<>();
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             int homeMSA = geoData.getMSAOfZone(hh.getHomeZone());
             if (incomeHashMap.containsKey(homeMSA)) {
                 ArrayList<Integer> inc = incomeHashMap.get(homeMSA);
@@ -854,7 +941,7 @@ public class HouseholdDataManager {
         HashMap<Integer, ArrayList> hhByDistToMetro = new HashMap<>();
         for (Integer dist = 0; dist <= 20; dist++) hhByDistToMetro.put(dist, new ArrayList<Integer>());
 
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             int incCat = getIncomeCategoryForIncome(hh.getHhIncome());
             Integer smallestDist = 21;
             for (int row = 1; row <= selectedMetro.getRowCount(); row++) {
@@ -17,10 +17,6 @@
 package edu.umd.ncsg.data;
 
 import java.io.PrintWriter;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Collection;
-import java.util.Set;
 
 /**
  * Class to hold job data
@@ -30,7 +26,7 @@ import java.util.Set;
 
 public class Job {
 
-    private static final Map<Integer, Job> jobMap = new HashMap<>();
+    private static final EntityStore<Job> jobStore = new EntityStore<>();
 	private int id;
     private int zone;
     private int workerId;
@@ -43,40 +39,36 @@ public class Job {
         this.zone = zone;
         this.workerId = workerId;
         this.type = type;
-        jobMap.put(id, this);
+        jobStore.put(id, this);
     }
 
 
     public static void saveJobs (Job[] jjs) {
-        for (Job jj: jjs) jobMap.put(jj.getId(), jj);
+        for (Job jj: jjs) jobStore.put(jj.getId(), jj);
     }
 
 
     public static Job getJobFromId(int jobId) {
-        return jobMap.get(jobId);
+        return jobStore.get(jobId);
     }
 
 
     public static int getJobCount() {
-        return jobMap.size();
+        return jobStore.size();
     }
 
-    public static Collection<Job> getJobs() {
+    public static EntityStore<Job> getJobs() {
         // return collection of jobs
-            return jobMap.values();
+            return jobStore;
     }
 
     public static Job[] getJobArray() {
-        return jobMap.values().toArray(new Job[jobMap.size()]);
+        return jobStore.toArray(new Job[jobStore.size()]);
     }
 
 
-    public static Set<Integer> getJobMapIDs () {
-        return jobMap.keySet();
-    }
-
     public static void removeJob(int id) {
-        jobMap.remove(id);
+        jobStore.remove(id);
     }
 
 
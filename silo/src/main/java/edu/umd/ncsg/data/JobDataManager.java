@@ -21,6 +21,7 @@ import java.util.*;
 
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.util.ResourceUtil;
+import edu.umd.ncsg.SiloModel;
 import edu.umd.ncsg.SiloUtil;
 import edu.umd.ncsg.events.IssueCounter;
 import org.apache.log4j.Logger;
@@ -74,39 +75,23 @@ public class JobDataManager {
         logger.info("Reading job micro data from ascii file");
 
         int year = SiloUtil.getStartYear();
-        String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_JJ_FILE_ASCII) + "_" + year + ".csv";
-
-        String recString = "";
-        int recCount = 0;
-        try {
-            BufferedReader in = new BufferedReader(new FileReader(fileName));
-            recString = in.readLine();
-
-            // read header
-            String[] header = recString.split(",");
-            int posId = SiloUtil.findPositionInArray("id", header);
-            int posZone = SiloUtil.findPositionInArray("zone",header);
-            int posWorker = SiloUtil.findPositionInArray("personId",header);
-            int posType = SiloUtil.findPositionInArray("type",header);
-
-            // read line
-            while ((recString = in.readLine()) != null) {
-                recCount++;
-                String[] lineElements = recString.split(",");
-                int id      = Integer.parseInt(lineElements[posId]);
-                int zone    = Integer.parseInt(lineElements[posZone]);
-                int worker  = Integer.parseInt(lineElements[posWorker]);
-                String type = lineElements[posType].replace("\"", "");
-                new Job(id, zone, worker, type);
+        final String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_JJ_FILE_ASCII) + "_" + year + ".csv";
+
+        MicroDataCsvReader reader = new MicroDataCsvReader(fileName);
+        final int posId = reader.addIntColumn("id");
+        final int posZone = reader.addIntColumn("zone");
+        final int posWorker = reader.addIntColumn("personId");
+        final int posType = reader.addStringColumn("type");
+        int recCount = reader.read(new MicroDataCsvReader.RowHandler() {
+            public void handleRow(MicroDataCsvReader.Row row) {
+                int id = row.getInt(posId);
+                new Job(id, row.getInt(posZone), row.getInt(posWorker), row.getString(posType));
                 if (id == SiloUtil.trackJj) {
                     SiloUtil.trackWriter.println("Read job with following attributes from " + fileName);
                     Job.getJobFromId(id).logAttributes(SiloUtil.trackWriter);
                 }
             }
-        } catch (IOException e) {
-            logger.fatal("IO Exception caught reading synpop job file: " + fileName);
-            logger.fatal("recCount = " + recCount + ", recString = <" + recString + ">");
-        }
+        });
         logger.info("Finished reading " + recCount + " jobs.");
     }
 
@@ -116,15 +101,32 @@ public class JobDataManager {
 
         String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(appRb, PROPERTIES_JJ_FILE_BIN);
         logger.info("  Writing job data to binary file.");
-        Object[] data = Job.getJobs().toArray(new Job[Job.getJobCount()]);
-        try {
-            File fl = new File(fileName);
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(fl));
-            out.writeObject(data);
-            out.close();
-        } catch (Exception e) {
-            logger.error("Error saving to binary file " + fileName + ". Object not saved.\n" + e);
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        addJobsToSnapshot(snapshot);
+        snapshot.write(fileName);
+    }
+
+
+    public static void addJobsToSnapshot(MicroDataSnapshot snapshot) {
+        // add one row per job in the order of Job.getJobs()
+        int count = Job.getJobCount();
+        int[] id = new int[count];
+        int[] zone = new int[count];
+        int[] worker = new int[count];
+        String[] type = new String[count];
+        int row = 0;
+        for (Job jj: Job.getJobs()) {
+            id[row] = jj.getId();
+            zone[row] = jj.getZone();
+            worker[row] = jj.getWorkerId();
+            type[row] = jj.getType();
+            row++;
         }
+        MicroDataSnapshot.Table jobs = snapshot.addTable("jobs", count);
+        jobs.addIntColumn("id", id);
+        jobs.addIntColumn("zone", zone);
+        jobs.addIntColumn("personId", worker);
+        jobs.addStringColumn("type", type);
     }
 
 
@@ -132,21 +134,63 @@ public class JobDataManager {
         // read jobs from binary file
         String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_JJ_FILE_BIN);
         logger.info("Reading job data from binary file.");
-        try {
-            ObjectInputStream in = new ObjectInputStream(new FileInputStream(new File(fileName)));
-            Object[] data = (Object[]) in.readObject();
-            Job.saveJobs((Job[]) data[0]);
-        } catch (Exception e) {
-            logger.error ("Error reading from binary file " + fileName + ". Object not read.\n" + e);
-        }
+        createJobsFromSnapshot(MicroDataSnapshot.read(fileName));
         logger.info("Finished reading " + Job.getJobCount() + " jobs.");
     }
 
 
+    public static void createJobsFromSnapshot(MicroDataSnapshot snapshot) {
+        MicroDataSnapshot.Table jobs = snapshot.getTable("jobs");
+        int[] id = jobs.getIntColumn("id");
+        int[] zone = jobs.getIntColumn("zone");
+        int[] worker = jobs.getIntColumn("personId");
+        String[] type = jobs.getStringColumn("type");
+        for (int row = 0; row < jobs.getRowCount(); row++) new Job(id[row], zone[row], worker[row], type[row]);
+    }
+
+
+    public void addStateToCheckpoint(MicroDataSnapshot checkpoint) {
+        // add highest job id, job density and vacancy lists to checkpoint
+        checkpoint.addIntArray("highestJobId", new int[]{highestJobIdInUse});
+        checkpoint.addFloatArray("zonalJobDensity", zonalJobDensity.clone());
+        int vacantCount = SiloUtil.getSum(vacantJobsByRegionPos);
+        int[] region = new int[vacantCount];
+        int[] job = new int[vacantCount];
+        int row = 0;
+        for (int reg = 0; reg < vacantJobsByRegionPos.length; reg++) {
+            for (int pos = 0; pos < vacantJobsByRegionPos[reg]; pos++) {
+                region[row] = reg;
+                job[row] = vacantJobsByRegion[reg][pos];
+                row++;
+            }
+        }
+        MicroDataSnapshot.Table vacancies = checkpoint.addTable("vacantJobs", vacantCount);
+        vacancies.addIntColumn("region", region);
+        vacancies.addIntColumn("job", job);
+    }
+
+
+    public void restoreStateFromCheckpoint(MicroDataSnapshot checkpoint) {
+        // replace state calculated from the jobs of the resumed year by the state of the interrupted run, has to run
+        // after identifyVacantJobs()
+        highestJobIdInUse = checkpoint.getIntArray("highestJobId")[0];
+        zonalJobDensity = checkpoint.getFloatArray("zonalJobDensity");
+        MicroDataSnapshot.Table vacancies = checkpoint.getTable("vacantJobs");
+        int[] region = vacancies.getIntColumn("region");
+        int[] job = vacancies.getIntColumn("job");
+        vacantJobsByRegion = SiloUtil.setArrayToValue(vacantJobsByRegion, 0);
+        vacantJobsByRegionPos = SiloUtil.setArrayToValue(vacantJobsByRegionPos, 0);
+        for (int row = 0; row < vacancies.getRowCount(); row++) {
+            vacantJobsByRegion[region[row]][vacantJobsByRegionPos[region[row]]] = job[row];
+            vacantJobsByRegionPos[region[row]]++;
+        }
+    }
+
+
     public void setHighestJobId () {
         // identify highest job ID in use
         highestJobIdInUse = 0;
-        for (Job jj: Job.getJobArray()) highestJobIdInUse = Math.max(highestJobIdInUse, jj.getId());
+        for (Job jj: Job.getJobs()) highestJobIdInUse = Math.max(highestJobIdInUse, jj.getId());
     }
 
 
@@ -238,7 +282,7 @@ public class JobDataManager {
         vacantJobsByRegionPos = SiloUtil.setArrayToValue(vacantJobsByRegionPos, 0);
 
         logger.info("  Identifying vacant jobs");
-        for (Job jj : Job.getJobArray()) {
+        for (Job jj : Job.getJobs()) {
             //TODO THE METHOD RETURNS VALUE ARRAY FROM A MAP -> NULL VALUES MAPPED FOR A FEW KEYS???
         	if (jj == null) continue;   // should not happen, but model crashes without this statement.
             if (jj.getWorkerId() == -1) {
@@ -325,9 +369,9 @@ public class JobDataManager {
             return -1;
         }
         int selectedRegion = SiloUtil.select(regionProbability);
-        float[] jobProbability = new float[getNumberOfVacantJobsByRegion(selectedRegion)];
-        jobProbability = SiloUtil.setArrayToValue(jobProbability, 1);
-        int selectedJob = SiloUtil.select(jobProbability);
+        // all vacant jobs in region are equally likely, same result as SiloUtil.select() with an array of ones
+        int numberOfJobs = getNumberOfVacantJobsByRegion(selectedRegion);
+        int selectedJob = Math.min((int) (numberOfJobs * SiloModel.rand.nextFloat()), numberOfJobs - 1);
 
         int jobId = vacantJobsByRegion[selectedRegion][selectedJob];
         vacantJobsByRegion[selectedRegion][selectedJob] = vacantJobsByRegion[selectedRegion][vacantJobsByRegionPos[selectedRegion] - 1];
@@ -357,7 +401,7 @@ public class JobDataManager {
         summarizeData.resultFile(txt + ",total");
 
         int[][] jobsByTypeAndRegion = new int[JobType.getNumberOfJobTypes()][SiloUtil.getHighestVal(geoData.getRegionList()) + 1];
-        for (Job job: Job.getJobArray()) {
+        for (Job job: Job.getJobs()) {
             jobsByTypeAndRegion[JobType.getOrdinal(job.getType())][geoData.getRegionOfZone(job.getZone())]++;
         }
 
@@ -375,7 +419,7 @@ public class JobDataManager {
 
     public void calculateJobDensityByZone() {
         zonalJobDensity = new float[geoData.getZones().length];
-        for (Job jj: Job.getJobArray()) zonalJobDensity[geoData.getZoneIndex(jj.getZone())]++;
+        for (Job jj: Job.getJobs()) zonalJobDensity[geoData.getZoneIndex(jj.getZone())]++;
         for (int zone: geoData.getZones())
             zonalJobDensity[geoData.getZoneIndex(zone)] /= geoData.getSizeOfZoneInAcres(zone);
     }
@@ -0,0 +1,343 @@
+package edu.umd.ncsg.data;
+
+import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
+import edu.umd.ncsg.SiloUtil;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader for micro data files (households, persons, dwellings and jobs) in csv format. The file is read in
+ * blocks of complete lines, and blocks are parsed by several threads at once directly from bytes, without creating a
+ * String for every line or field. Parsed blocks are handed to a RowHandler in the order of the file, so that entities
+ * are created in the same order as with a line-by-line reader. Files ending with .gz are decompressed on the fly, and
+ * if a csv file does not exist, a compressed file with the same name plus .gz is read instead.
+ **/
+
+public class MicroDataCsvReader {
+
+    static Logger logger = Logger.getLogger(MicroDataCsvReader.class);
+
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final byte INT_COLUMN = 0;
+    private static final byte FLOAT_COLUMN = 1;
+    private static final byte STRING_COLUMN = 2;
+    private static final int MAX_KNOWN_STRINGS = 64;    // distinct strings per block that are reused
+
+    private final String fileName;
+    private final List<String> columnNames = new ArrayList<>();
+    private final List<Byte> columnTypes = new ArrayList<>();
+
+
+    public interface RowHandler {
+        void handleRow (Row row);
+    }
+
+
+    public MicroDataCsvReader (String fileName) {
+        this.fileName = fileName;
+    }
+
+
+    public int addIntColumn (String name) {
+        // request column name to be parsed as int, returns position of column in Row
+        return addColumn(name, INT_COLUMN);
+    }
+
+
+    public int addFloatColumn (String name) {
+        return addColumn(name, FLOAT_COLUMN);
+    }
+
+
+    public int addStringColumn (String name) {
+        // request column name as String, quotes are removed
+        return addColumn(name, STRING_COLUMN);
+    }
+
+
+    private int addColumn (String name, byte type) {
+        columnNames.add(name);
+        columnTypes.add(type);
+        return columnNames.size() - 1;
+    }
+
+
+    public int read (RowHandler handler) {
+        // parse file in parallel blocks and hand rows to handler in file order, returns number of rows read
+        long startTime = System.currentTimeMillis();
+        File file = new File(fileName);
+        if (!file.exists() && new File(fileName + ".gz").exists()) file = new File(fileName + ".gz");
+        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
+        int maxBlocksInProgress = 2 * pool.getParallelism();
+        ArrayDeque<Future<Block>> blocksInProgress = new ArrayDeque<>();
+        Row row = new Row();
+        int rowCount = 0;
+        try (InputStream in = openStream(file)) {
+            byte[] buffer = new byte[BLOCK_SIZE];
+            int filled = 0;
+            int[] fieldOfColumn = null;
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                if (filled == buffer.length) buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                int count = in.read(buffer, filled, buffer.length - filled);
+                if (count == -1) {
+                    endOfFile = true;
+                } else {
+                    filled += count;
+                    if (filled < buffer.length) continue;
+                }
+                // complete lines go into this block, an incomplete last line is carried over into the next one
+                int end = endOfFile ? filled : lastLineEnd(buffer, filled);
+                if (end == 0) continue;
+                int start = 0;
+                if (fieldOfColumn == null) {
+                    int headerEnd = nextLineEnd(buffer, 0, end);
+                    fieldOfColumn = readHeader(new String(buffer, 0, headerEnd, StandardCharsets.UTF_8));
+                    start = Math.min(headerEnd + 1, end);
+                }
+                blocksInProgress.add(pool.submit(new BlockParser(buffer, start, end, fieldOfColumn)));
+                byte[] nextBuffer = new byte[Math.max(BLOCK_SIZE, filled - end)];
+                if (filled > end) System.arraycopy(buffer, end, nextBuffer, 0, filled - end);
+                filled -= end;
+                buffer = nextBuffer;
+                while (blocksInProgress.size() >= maxBlocksInProgress) {
+                    rowCount += handleBlock(blocksInProgress.poll().get(), row, handler);
+                }
+            }
+            while (!blocksInProgress.isEmpty()) rowCount += handleBlock(blocksInProgress.poll().get(), row, handler);
+        } catch (IOException e) {
+            logger.error("Could not read micro data file " + file.getPath(), e);
+            throw new RuntimeException(e);
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not parse micro data file " + file.getPath(), e);
+            throw new RuntimeException(e);
+        }
+        double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.;
+        logger.info("  Read " + rowCount + " rows from " + file.getName() + " in " + seconds + " seconds (" +
+                (int) (rowCount / seconds) + " rows per second).");
+        return rowCount;
+    }
+
+
+    private static InputStream openStream (File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) in = new GZIPInputStream(in, 1 << 16);
+        return in;
+    }
+
+
+    private static int lastLineEnd (byte[] buffer, int filled) {
+        // return position after last line feed in buffer, or 0 if buffer does not contain a complete line
+        for (int i = filled - 1; i >= 0; i--) if (buffer[i] == '\n') return i + 1;
+        return 0;
+    }
+
+
+    private static int nextLineEnd (byte[] buffer, int start, int end) {
+        // return position of next line feed, or end if there is none
+        for (int i = start; i < end; i++) if (buffer[i] == '\n') return i;
+        return end;
+    }
+
+
+    private int[] readHeader (String headerLine) {
+        // return for every requested column the position of the field in a line
+        String[] header = headerLine.trim().replace("\"", "").split(",");
+        int[] fieldOfColumn = new int[columnNames.size()];
+        for (int column = 0; column < columnNames.size(); column++) {
+            fieldOfColumn[column] = SiloUtil.findPositionInArray(columnNames.get(column), header);
+            if (fieldOfColumn[column] == -1) {
+                logger.error("Could not find column " + columnNames.get(column) + " in file " + fileName);
+                throw new RuntimeException("Missing column " + columnNames.get(column) + " in file " + fileName);
+            }
+        }
+        return fieldOfColumn;
+    }
+
+
+    private int handleBlock (Block block, Row row, RowHandler handler) {
+        row.block = block;
+        for (int i = 0; i < block.rowCount; i++) {
+            row.index = i;
+            handler.handleRow(row);
+        }
+        return block.rowCount;
+    }
+
+
+    private static class Block {
+        // parsed values of all rows in a block, stored row by row with one entry per requested column
+        int columns;
+        int rowCount;
+        int[] ints;
+        float[] floats;
+        String[] strings;
+    }
+
+
+    private class BlockParser implements Callable<Block> {
+        private final byte[] bytes;
+        private final int start;
+        private final int end;
+        private final int[] fieldOfColumn;
+        private final byte[] types;
+        private final List<byte[]> knownBytes = new ArrayList<>();
+        private final List<String> knownStrings = new ArrayList<>();
+
+        BlockParser (byte[] bytes, int start, int end, int[] fieldOfColumn) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+            this.fieldOfColumn = fieldOfColumn;
+            types = new byte[columnTypes.size()];
+            for (int i = 0; i < types.length; i++) types[i] = columnTypes.get(i);
+        }
+
+        public Block call () {
+            int columns = types.length;
+            int highestField = 0;
+            for (int field: fieldOfColumn) highestField = Math.max(highestField, field);
+            int[] columnOfField = new int[highestField + 1];
+            Arrays.fill(columnOfField, -1);
+            for (int column = 0; column < columns; column++) columnOfField[fieldOfColumn[column]] = column;
+
+            int lines = 0;
+            for (int i = start; i < end; i++) if (bytes[i] == '\n') lines++;
+            Block block = new Block();
+            block.columns = columns;
+            int size = (lines + 1) * columns;
+            for (byte type: types) {
+                if (type == INT_COLUMN && block.ints == null) block.ints = new int[size];
+                if (type == FLOAT_COLUMN && block.floats == null) block.floats = new float[size];
+                if (type == STRING_COLUMN && block.strings == null) block.strings = new String[size];
+            }
+            int[] fieldStart = new int[columns];
+            int[] fieldEnd = new int[columns];
+
+            int pos = start;
+            while (pos < end) {
+                int lineEnd = nextLineEnd(bytes, pos, end);
+                int contentEnd = lineEnd;
+                if (contentEnd > pos && bytes[contentEnd - 1] == '\r') contentEnd--;
+                if (contentEnd > pos) {
+                    // find start and end of requested fields
+                    Arrays.fill(fieldStart, -1);
+                    int field = 0;
+                    int fieldBegin = pos;
+                    for (int i = pos; i <= contentEnd && field <= highestField; i++) {
+                        if (i == contentEnd || bytes[i] == ',') {
+                            int column = columnOfField[field];
+                            if (column != -1) {
+                                fieldStart[column] = fieldBegin;
+                                fieldEnd[column] = i;
+                            }
+                            field++;
+                            fieldBegin = i + 1;
+                        }
+                    }
+                    int offset = block.rowCount * columns;
+                    for (int column = 0; column < columns; column++) {
+                        if (fieldStart[column] == -1) throw new IllegalArgumentException("Line " +
+                                new String(bytes, pos, contentEnd - pos, StandardCharsets.UTF_8) + " has too few fields.");
+                        if (types[column] == INT_COLUMN) {
+                            block.ints[offset + column] = parseInt(fieldStart[column], fieldEnd[column]);
+                        } else if (types[column] == FLOAT_COLUMN) {
+                            block.floats[offset + column] = parseFloat(fieldStart[column], fieldEnd[column]);
+                        } else {
+                            block.strings[offset + column] = parseString(fieldStart[column], fieldEnd[column]);
+                        }
+                    }
+                    block.rowCount++;
+                }
+                pos = lineEnd + 1;
+            }
+            return block;
+        }
+
+        private int parseInt (int from, int to) {
+            // parse int without creating a String, same rules as Integer.parseInt
+            boolean negative = false;
+            int i = from;
+            if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+                negative = bytes[i] == '-';
+                i++;
+            }
+            if (i == to) throw numberFormatException(from, to);
+            long value = 0;
+            for (; i < to; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) throw numberFormatException(from, to);
+                value = 10 * value + digit;
+                if (value > 2147483648L) throw numberFormatException(from, to);
+            }
+            if (negative) value = -value;
+            if (value > Integer.MAX_VALUE) throw numberFormatException(from, to);
+            return (int) value;
+        }
+
+        private float parseFloat (int from, int to) {
+            // short values without sign or decimals are exact as int, others use Float.parseFloat for identical rounding
+            boolean integer = to > from && to - from < 8;
+            for (int i = from; i < to && integer; i++) integer = bytes[i] >= '0' && bytes[i] <= '9';
+            if (integer) return parseInt(from, to);
+            return Float.parseFloat(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+        }
+
+        private String parseString (int from, int to) {
+            // remove quotes and reuse Strings that occurred before in this block, as string columns hold few values
+            while (from < to && bytes[from] == '"') from++;
+            while (to > from && bytes[to - 1] == '"') to--;
+            for (int s = 0; s < knownBytes.size(); s++) {
+                byte[] known = knownBytes.get(s);
+                if (known.length != to - from) continue;
+                boolean equal = true;
+                for (int i = 0; i < known.length && equal; i++) equal = known[i] == bytes[from + i];
+                if (equal) return knownStrings.get(s);
+            }
+            String value = new String(bytes, from, to - from, StandardCharsets.UTF_8).replace("\"", "");
+            if (knownBytes.size() < MAX_KNOWN_STRINGS) {
+                knownBytes.add(Arrays.copyOfRange(bytes, from, to));
+                knownStrings.add(value);
+            }
+            return value;
+        }
+
+        private NumberFormatException numberFormatException (int from, int to) {
+            return new NumberFormatException("For input string: \"" +
+                    new String(bytes, from, to - from, StandardCharsets.UTF_8) + "\"");
+        }
+    }
+
+
+    public static class Row {
+        // current row of a parsed block, only valid during the call of RowHandler.handleRow()
+        private Block block;
+        private int index;
+
+        public int getInt (int column) {
+            return block.ints[index * block.columns + column];
+        }
+
+        public float getFloat (int column) {
+            return block.floats[index * block.columns + column];
+        }
+
+        public String getString (int column) {
+            return block.strings[index * block.columns + column];
+        }
+    }
+}
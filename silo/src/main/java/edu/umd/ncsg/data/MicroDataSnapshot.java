@@ -0,0 +1,395 @@
+package edu.umd.ncsg.data;
+
+import org.apache.log4j.Logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar binary snapshot of micro data (households, persons, dwellings and jobs) and other model state. A snapshot
+ * holds one or several tables, every table stores each attribute as one column of primitive values. String attributes (such as enum
+ * names or job types) are stored as int codes with a dictionary, so that snapshots remain readable if an enum is
+ * reordered. Columns are identified by name, additional columns in a file are ignored and a missing column is
+ * reported, which makes snapshots tolerant to new attributes. Files are written through a file channel with a direct
+ * buffer and read by memory-mapping every column.
+ **/
+
+public class MicroDataSnapshot {
+
+    static Logger logger = Logger.getLogger(MicroDataSnapshot.class);
+
+    private static final int MAGIC_NUMBER = 0x53494C4F;     // "SILO"
+    private static final int FORMAT_VERSION = 1;
+    private static final byte INT_COLUMN = 1;
+    private static final byte FLOAT_COLUMN = 2;
+    private static final byte STRING_COLUMN = 3;
+    private static final byte DOUBLE_COLUMN = 4;
+    private static final byte BYTE_COLUMN = 5;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+
+    public static class Table {
+        private final String name;
+        private final int rowCount;
+        private final Map<String, Object> columns = new LinkedHashMap<>();
+
+        private Table (String name, int rowCount) {
+            this.name = name;
+            this.rowCount = rowCount;
+        }
+
+        public int getRowCount () {
+            return rowCount;
+        }
+
+        public void addIntColumn (String column, int[] values) {
+            checkLength(column, values.length);
+            columns.put(column, values);
+        }
+
+        public void addFloatColumn (String column, float[] values) {
+            checkLength(column, values.length);
+            columns.put(column, values);
+        }
+
+        public void addStringColumn (String column, String[] values) {
+            checkLength(column, values.length);
+            columns.put(column, values);
+        }
+
+        public void addDoubleColumn (String column, double[] values) {
+            checkLength(column, values.length);
+            columns.put(column, values);
+        }
+
+        public void addByteColumn (String column, byte[] values) {
+            checkLength(column, values.length);
+            columns.put(column, values);
+        }
+
+        public int[] getIntColumn (String column) {
+            return (int[]) getColumn(column, int[].class);
+        }
+
+        public float[] getFloatColumn (String column) {
+            return (float[]) getColumn(column, float[].class);
+        }
+
+        public String[] getStringColumn (String column) {
+            return (String[]) getColumn(column, String[].class);
+        }
+
+        public double[] getDoubleColumn (String column) {
+            return (double[]) getColumn(column, double[].class);
+        }
+
+        public byte[] getByteColumn (String column) {
+            return (byte[]) getColumn(column, byte[].class);
+        }
+
+        private void checkLength (String column, int length) {
+            if (length != rowCount) throw new IllegalArgumentException("Column " + column + " of table " + name +
+                    " has " + length + " values, but table has " + rowCount + " rows.");
+        }
+
+        private Object getColumn (String column, Class<?> type) {
+            Object values = columns.get(column);
+            if (values == null || values.getClass() != type) {
+                logger.error("Snapshot table " + name + " has no column " + column + " of type " + type.getSimpleName());
+                throw new RuntimeException("Snapshot table " + name + " has no column " + column + ".");
+            }
+            return values;
+        }
+    }
+
+
+    public Table addTable (String name, int rowCount) {
+        Table table = new Table(name, rowCount);
+        tables.put(name, table);
+        return table;
+    }
+
+
+    public Table getTable (String name) {
+        Table table = tables.get(name);
+        if (table == null) {
+            logger.error("Snapshot has no table " + name);
+            throw new RuntimeException("Snapshot has no table " + name + ".");
+        }
+        return table;
+    }
+
+
+    // single arrays of model state are stored as tables with one column called value
+    public void addIntArray (String name, int[] values) {
+        addTable(name, values.length).addIntColumn("value", values);
+    }
+
+
+    public void addFloatArray (String name, float[] values) {
+        addTable(name, values.length).addFloatColumn("value", values);
+    }
+
+
+    public void addDoubleArray (String name, double[] values) {
+        addTable(name, values.length).addDoubleColumn("value", values);
+    }
+
+
+    public void addByteArray (String name, byte[] values) {
+        addTable(name, values.length).addByteColumn("value", values);
+    }
+
+
+    public int[] getIntArray (String name) {
+        return getTable(name).getIntColumn("value");
+    }
+
+
+    public float[] getFloatArray (String name) {
+        return getTable(name).getFloatColumn("value");
+    }
+
+
+    public double[] getDoubleArray (String name) {
+        return getTable(name).getDoubleColumn("value");
+    }
+
+
+    public byte[] getByteArray (String name) {
+        return getTable(name).getByteColumn("value");
+    }
+
+
+    public boolean hasTable (String name) {
+        return tables.containsKey(name);
+    }
+
+
+    public void write (String fileName) {
+        // write all tables to fileName, columns are written in one sequential pass through a direct buffer
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileOutputStream out = new FileOutputStream(fileName); FileChannel channel = out.getChannel()) {
+            buffer.putInt(MAGIC_NUMBER);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putInt(tables.size());
+            for (Table table: tables.values()) {
+                putString(channel, buffer, table.name);
+                ensureCapacity(channel, buffer, 8);
+                buffer.putInt(table.rowCount);
+                buffer.putInt(table.columns.size());
+                for (Map.Entry<String, Object> column: table.columns.entrySet()) {
+                    putString(channel, buffer, column.getKey());
+                    Object values = column.getValue();
+                    ensureCapacity(channel, buffer, 1);
+                    if (values instanceof int[]) {
+                        buffer.put(INT_COLUMN);
+                        putInts(channel, buffer, (int[]) values);
+                    } else if (values instanceof float[]) {
+                        buffer.put(FLOAT_COLUMN);
+                        putFloats(channel, buffer, (float[]) values);
+                    } else if (values instanceof double[]) {
+                        buffer.put(DOUBLE_COLUMN);
+                        putDoubles(channel, buffer, (double[]) values);
+                    } else if (values instanceof byte[]) {
+                        buffer.put(BYTE_COLUMN);
+                        putBytes(channel, buffer, (byte[]) values);
+                    } else {
+                        buffer.put(STRING_COLUMN);
+                        putStrings(channel, buffer, (String[]) values);
+                    }
+                }
+            }
+            flush(channel, buffer);
+        } catch (IOException e) {
+            logger.error("Could not write snapshot file " + fileName, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private static void ensureCapacity (FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush(channel, buffer);
+    }
+
+
+    private static void flush (FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+
+    private static void putString (FileChannel channel, ByteBuffer buffer, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(channel, buffer, 4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+
+    private static void putInts (FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+        // copy values in blocks that fit into the buffer, using an int view of the buffer
+        int pos = 0;
+        while (pos < values.length) {
+            ensureCapacity(channel, buffer, 4);
+            int count = Math.min(values.length - pos, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(values, pos, count);
+            buffer.position(buffer.position() + 4 * count);
+            pos += count;
+        }
+    }
+
+
+    private static void putFloats (FileChannel channel, ByteBuffer buffer, float[] values) throws IOException {
+        int pos = 0;
+        while (pos < values.length) {
+            ensureCapacity(channel, buffer, 4);
+            int count = Math.min(values.length - pos, buffer.remaining() / 4);
+            buffer.asFloatBuffer().put(values, pos, count);
+            buffer.position(buffer.position() + 4 * count);
+            pos += count;
+        }
+    }
+
+
+    private static void putDoubles (FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+        int pos = 0;
+        while (pos < values.length) {
+            ensureCapacity(channel, buffer, 8);
+            int count = Math.min(values.length - pos, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().put(values, pos, count);
+            buffer.position(buffer.position() + 8 * count);
+            pos += count;
+        }
+    }
+
+
+    private static void putBytes (FileChannel channel, ByteBuffer buffer, byte[] values) throws IOException {
+        int pos = 0;
+        while (pos < values.length) {
+            ensureCapacity(channel, buffer, 1);
+            int count = Math.min(values.length - pos, buffer.remaining());
+            buffer.put(values, pos, count);
+            pos += count;
+        }
+    }
+
+
+    private static void putStrings (FileChannel channel, ByteBuffer buffer, String[] values) throws IOException {
+        // write dictionary of distinct values followed by one int code per row
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] coded = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Integer code = codes.get(values[i]);
+            if (code == null) {
+                code = dictionary.size();
+                codes.put(values[i], code);
+                dictionary.add(values[i]);
+            }
+            coded[i] = code;
+        }
+        ensureCapacity(channel, buffer, 4);
+        buffer.putInt(dictionary.size());
+        for (String value: dictionary) putString(channel, buffer, value);
+        putInts(channel, buffer, coded);
+    }
+
+
+    public static MicroDataSnapshot read (String fileName) {
+        // read all tables of snapshot fileName
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()) {
+            long[] position = {0};
+            int magicNumber = getInt(channel, position);
+            int version = getInt(channel, position);
+            if (magicNumber != MAGIC_NUMBER || version != FORMAT_VERSION) {
+                logger.error("File " + fileName + " is not a snapshot of version " + FORMAT_VERSION +
+                        ". Write binary files again with this version of SILO.");
+                throw new RuntimeException("Unsupported snapshot file " + fileName);
+            }
+            int tableCount = getInt(channel, position);
+            for (int t = 0; t < tableCount; t++) {
+                String tableName = getString(channel, position);
+                int rowCount = getInt(channel, position);
+                int columnCount = getInt(channel, position);
+                Table table = snapshot.addTable(tableName, rowCount);
+                for (int c = 0; c < columnCount; c++) {
+                    String column = getString(channel, position);
+                    byte type = map(channel, position, 1).get();
+                    if (type == INT_COLUMN) {
+                        table.addIntColumn(column, getInts(channel, position, rowCount));
+                    } else if (type == FLOAT_COLUMN) {
+                        float[] values = new float[rowCount];
+                        map(channel, position, 4L * rowCount).asFloatBuffer().get(values);
+                        table.addFloatColumn(column, values);
+                    } else if (type == DOUBLE_COLUMN) {
+                        double[] values = new double[rowCount];
+                        map(channel, position, 8L * rowCount).asDoubleBuffer().get(values);
+                        table.addDoubleColumn(column, values);
+                    } else if (type == BYTE_COLUMN) {
+                        byte[] values = new byte[rowCount];
+                        map(channel, position, rowCount).get(values);
+                        table.addByteColumn(column, values);
+                    } else if (type == STRING_COLUMN) {
+                        String[] dictionary = new String[getInt(channel, position)];
+                        for (int i = 0; i < dictionary.length; i++) dictionary[i] = getString(channel, position);
+                        int[] coded = getInts(channel, position, rowCount);
+                        String[] values = new String[rowCount];
+                        for (int i = 0; i < rowCount; i++) values[i] = dictionary[coded[i]];
+                        table.addStringColumn(column, values);
+                    } else {
+                        logger.error("Unknown column type " + type + " in snapshot file " + fileName);
+                        throw new RuntimeException("Corrupt snapshot file " + fileName);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not read snapshot file " + fileName, e);
+            throw new RuntimeException(e);
+        }
+        return snapshot;
+    }
+
+
+    private static ByteBuffer map (FileChannel channel, long[] position, long bytes) throws IOException {
+        // map next bytes of file and advance position
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position[0], bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        position[0] += bytes;
+        return buffer;
+    }
+
+
+    private static int getInt (FileChannel channel, long[] position) throws IOException {
+        return map(channel, position, 4).getInt();
+    }
+
+
+    private static int[] getInts (FileChannel channel, long[] position, int count) throws IOException {
+        int[] values = new int[count];
+        map(channel, position, 4L * count).asIntBuffer().get(values);
+        return values;
+    }
+
+
+    private static String getString (FileChannel channel, long[] position) throws IOException {
+        byte[] bytes = new byte[getInt(channel, position)];
+        map(channel, position, bytes.length).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -31,7 +31,7 @@ public class Person implements Serializable {
 
     static Logger logger = Logger.getLogger(Person.class);
 
-    private static final Map<Integer,Person> personMap = new HashMap<>();
+    private static final EntityStore<Person> personStore = new EntityStore<>();
     // Note: if attributes are edited, remember to edit attributes for inmigrants in \relocation\InOutMigration\setupInOutMigration.java and \relocation\InOutMigration\inmigrateHh.java as well
     int id;
 	int hhid;
@@ -59,38 +59,38 @@ public class Person implements Serializable {
 		this.income = income; 
         this.hh = Household.getHouseholdFromId(hhid);
 		setType(age, gender);
-        personMap.put(id,this);
+        personStore.put(id,this);
     }
     
     public static Person getPersonFromId(int id) {
-        return personMap.get(id);
+        return personStore.get(id);
     }
 
     public static void removePerson(int id) {
-        personMap.remove(id);
+        personStore.remove(id);
     }
 
     public static int getPersonCount() {
-        return personMap.size();
+        return personStore.size();
     }
 
 
-    public static Collection<Person> getPersons() {
+    public static EntityStore<Person> getPersons() {
 //        Collection<Person> persons = null;
 //        for (Person person : persons) {
 //        }
 //
-        return personMap.values();
+        return personStore;
     }
 
 
     public static void savePersons (Person[] pps) {
-        for (Person pp: pps) personMap.put(pp.getId(), pp);
+        for (Person pp: pps) personStore.put(pp.getId(), pp);
     }
 
 
     public static Person[] getPersonArray() {
-        return personMap.values().toArray(new Person[personMap.size()]);
+        return personStore.toArray(new Person[personStore.size()]);
     }
 
 
@@ -161,6 +161,7 @@ public class Person implements Serializable {
     public void setIncome (int newIncome) {
         this.income = newIncome;
         Household.getHouseholdFromId(hhid).setType();
+        ZonalSummary.invalidate();
     }
 
     public void setWorkplace(int newWorkplace) {
@@ -169,6 +170,7 @@ public class Person implements Serializable {
 
     public void setOccupation(int newOccupation) {
         this.occupation = newOccupation;
+        ZonalSummary.invalidate();
     }
 
 //    public Lock getLock () {
@@ -1,7 +1,6 @@
 package edu.umd.ncsg.data;
 
 import edu.umd.ncsg.SiloUtil;
-import edu.umd.ncsg.events.IssueCounter;
 import org.apache.log4j.Logger;
 import com.pb.common.util.ResourceUtil;
 import com.pb.common.datafile.TableDataSet;
@@ -45,7 +44,7 @@ public class RealEstateDataManager {
     private static int[] dwellingsByRegion;
     private static int[][] vacDwellingsByRegion;
     private static int[] vacDwellingsByRegionPos;
-    private static int numberOfStoredVacantDD;
+    private static int[] posOfVacantDwelling;              // position of dwelling in vacDwellingsByRegion, -1 if occupied
     private double[] avePrice;
     private double[] aveVac;
     private static float[] medianRent;
@@ -72,50 +71,30 @@ public class RealEstateDataManager {
 
         logger.info("Reading dwelling micro data from ascii file");
         int year = SiloUtil.getStartYear();
-        String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_DD_FILE_ASCII) + "_" + year + ".csv";
-
-        String recString = "";
-        int recCount = 0;
-        try {
-            BufferedReader in = new BufferedReader(new FileReader(fileName));
-            recString = in.readLine();
-
-            // read header
-            String[] header = recString.split(",");
-            int posId      = SiloUtil.findPositionInArray("id", header);
-            int posZone    = SiloUtil.findPositionInArray("zone",header);
-            int posHh      = SiloUtil.findPositionInArray("hhId",header);
-            int posType    = SiloUtil.findPositionInArray("type",header);
-            int posRooms   = SiloUtil.findPositionInArray("bedrooms",header);
-            int posQuality = SiloUtil.findPositionInArray("quality",header);
-            int posCosts   = SiloUtil.findPositionInArray("monthlyCost",header);
-            int posRestr   = SiloUtil.findPositionInArray("restriction",header);
-            int posYear    = SiloUtil.findPositionInArray("yearBuilt",header);
-
-            // read line
-            while ((recString = in.readLine()) != null) {
-                recCount++;
-                String[] lineElements = recString.split(",");
-                int id        = Integer.parseInt(lineElements[posId]);
-                int zone      = Integer.parseInt(lineElements[posZone]);
-                int hhId      = Integer.parseInt(lineElements[posHh]);
-                String tp     = lineElements[posType].replace("\"", "");
-                DwellingType type = DwellingType.valueOf(tp);
-                int price     = Integer.parseInt(lineElements[posCosts]);
-                int area      = Integer.parseInt(lineElements[posRooms]);
-                int quality   = Integer.parseInt(lineElements[posQuality]);
-                float restrict  = Float.parseFloat(lineElements[posRestr]);
-                int yearBuilt = Integer.parseInt(lineElements[posYear]);
-                new Dwelling(id, zone, hhId, type, area, quality, price, restrict, yearBuilt);   // this automatically puts it in id->dwelling map in Dwelling class
+        final String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_DD_FILE_ASCII) + "_" + year + ".csv";
+
+        MicroDataCsvReader reader = new MicroDataCsvReader(fileName);
+        final int posId      = reader.addIntColumn("id");
+        final int posZone    = reader.addIntColumn("zone");
+        final int posHh      = reader.addIntColumn("hhId");
+        final int posType    = reader.addStringColumn("type");
+        final int posRooms   = reader.addIntColumn("bedrooms");
+        final int posQuality = reader.addIntColumn("quality");
+        final int posCosts   = reader.addIntColumn("monthlyCost");
+        final int posRestr   = reader.addFloatColumn("restriction");
+        final int posYear    = reader.addIntColumn("yearBuilt");
+        int recCount = reader.read(new MicroDataCsvReader.RowHandler() {
+            public void handleRow(MicroDataCsvReader.Row row) {
+                int id = row.getInt(posId);
+                DwellingType type = DwellingType.valueOf(row.getString(posType));
+                new Dwelling(id, row.getInt(posZone), row.getInt(posHh), type, row.getInt(posRooms), row.getInt(posQuality),
+                        row.getInt(posCosts), row.getFloat(posRestr), row.getInt(posYear));   // this automatically puts it in id->dwelling map in Dwelling class
                 if (id == SiloUtil.trackDd) {
                     SiloUtil.trackWriter.println("Read dwelling with following attributes from " + fileName);
                     Dwelling.getDwellingFromId(id).logAttributes(SiloUtil.trackWriter);
                 }
             }
-        } catch (IOException e) {
-            logger.fatal("IO Exception caught reading synpop dwelling file: " + fileName);
-            logger.fatal("recCount = " + recCount + ", recString = <" + recString + ">");
-        }
+        });
         logger.info("Finished reading " + recCount + " dwellings.");
     }
 
@@ -123,23 +102,24 @@ public class RealEstateDataManager {
     public void identifyVacantDwellings() {
         // walk through all dwellings and identify vacant dwellings (one-time task at beginning of model run only)
 
+        // vacant dwellings are stored by region, the lists grow when needed and the initial size is only a starting point
         int highestRegion = SiloUtil.getHighestVal(geoData.getRegionList());
-        numberOfStoredVacantDD = ResourceUtil.getIntegerProperty(rb, PROPERTIES_MAX_NUM_VAC_DD);
+        int initialVacantDDbyRegion = ResourceUtil.getIntegerProperty(rb, PROPERTIES_MAX_NUM_VAC_DD);
         dwellingsByRegion = new int[highestRegion + 1];
-        vacDwellingsByRegion = new int[highestRegion + 1][numberOfStoredVacantDD + 1];
-        vacDwellingsByRegion = SiloUtil.setArrayToValue(vacDwellingsByRegion, 0);
+        vacDwellingsByRegion = new int[highestRegion + 1][initialVacantDDbyRegion + 1];
         vacDwellingsByRegionPos = new int[highestRegion + 1];
         vacDwellingsByRegionPos = SiloUtil.setArrayToValue(vacDwellingsByRegionPos, 0);
+        int highestId = 0;
+        for (Dwelling dd : Dwelling.getDwellings()) highestId = Math.max(highestId, dd.getId());
+        posOfVacantDwelling = SiloUtil.createArrayWithValue(highestId + 1, -1);
 
         logger.info("  Identifying vacant dwellings");
-        for (Dwelling dd : Dwelling.getDwellingArray()) {
+        for (Dwelling dd : Dwelling.getDwellings()) {
             if (dd.getResidentId() == -1) {
                 int dwellingId = dd.getId();
                 int region = geoData.getRegionOfZone(dd.getZone());
                 dwellingsByRegion[region]++;
-                vacDwellingsByRegion[region][vacDwellingsByRegionPos[region]] = dwellingId;
-                if (vacDwellingsByRegionPos[region] < numberOfStoredVacantDD) vacDwellingsByRegionPos[region]++;
-                if (vacDwellingsByRegionPos[region] >= numberOfStoredVacantDD) IssueCounter.countExcessOfVacantDwellings(region);
+                appendToVacancyList(region, dwellingId);
                 if (dwellingId == SiloUtil.trackDd)
                     SiloUtil.trackWriter.println("Added dwelling " + dwellingId + " to list of vacant dwelling.");
             }
@@ -155,15 +135,47 @@ public class RealEstateDataManager {
 
         String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(appRb, PROPERTIES_DD_FILE_BIN);
         logger.info("  Writing dwelling data to binary file.");
-        Object[] data = Dwelling.getDwellings().toArray(new Dwelling[Dwelling.getDwellingCount()]);
-        try {
-            File fl = new File(fileName);
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(fl));
-            out.writeObject(data);
-            out.close();
-        } catch (Exception e) {
-            logger.error ("Error saving to binary file " + fileName + ". Object not saved.\n" + e);
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        addDwellingsToSnapshot(snapshot);
+        snapshot.write(fileName);
+    }
+
+
+    public static void addDwellingsToSnapshot(MicroDataSnapshot snapshot) {
+        // add one row per dwelling in the order of Dwelling.getDwellings()
+        int count = Dwelling.getDwellingCount();
+        int[] id = new int[count];
+        int[] zone = new int[count];
+        int[] hhId = new int[count];
+        String[] type = new String[count];
+        int[] bedrooms = new int[count];
+        int[] quality = new int[count];
+        int[] price = new int[count];
+        float[] restriction = new float[count];
+        int[] yearBuilt = new int[count];
+        int row = 0;
+        for (Dwelling dd: Dwelling.getDwellings()) {
+            id[row] = dd.getId();
+            zone[row] = dd.getZone();
+            hhId[row] = dd.getResidentId();
+            type[row] = dd.getType().toString();
+            bedrooms[row] = dd.getBedrooms();
+            quality[row] = dd.getQuality();
+            price[row] = dd.getPrice();
+            restriction[row] = dd.getRestriction();
+            yearBuilt[row] = dd.getYearBuilt();
+            row++;
         }
+        MicroDataSnapshot.Table dwellings = snapshot.addTable("dwellings", count);
+        dwellings.addIntColumn("id", id);
+        dwellings.addIntColumn("zone", zone);
+        dwellings.addIntColumn("hhId", hhId);
+        dwellings.addStringColumn("type", type);
+        dwellings.addIntColumn("bedrooms", bedrooms);
+        dwellings.addIntColumn("quality", quality);
+        dwellings.addIntColumn("monthlyCost", price);
+        dwellings.addFloatColumn("restriction", restriction);
+        dwellings.addIntColumn("yearBuilt", yearBuilt);
     }
 
 
@@ -172,17 +184,89 @@ public class RealEstateDataManager {
 
         String fileName = SiloUtil.baseDirectory + ResourceUtil.getProperty(rb, PROPERTIES_DD_FILE_BIN);
         logger.info("  Reading dwelling data from binary file.");
-        try {
-            ObjectInputStream in = new ObjectInputStream(new FileInputStream(new File(fileName)));
-            Object data = in.readObject();
-            Dwelling.saveDwellings((Dwelling[]) data);
-        } catch (Exception e) {
-            logger.error ("Error reading from binary file " + fileName + ". Object not read.\n" + e);
-        }
+        createDwellingsFromSnapshot(MicroDataSnapshot.read(fileName));
         logger.info("  Finished reading " + Dwelling.getDwellingCount() + " dwellings.");
     }
 
 
+    public static void createDwellingsFromSnapshot(MicroDataSnapshot snapshot) {
+        MicroDataSnapshot.Table dwellings = snapshot.getTable("dwellings");
+        int[] id = dwellings.getIntColumn("id");
+        int[] zone = dwellings.getIntColumn("zone");
+        int[] hhId = dwellings.getIntColumn("hhId");
+        String[] type = dwellings.getStringColumn("type");
+        int[] bedrooms = dwellings.getIntColumn("bedrooms");
+        int[] quality = dwellings.getIntColumn("quality");
+        int[] price = dwellings.getIntColumn("monthlyCost");
+        float[] restriction = dwellings.getFloatColumn("restriction");
+        int[] yearBuilt = dwellings.getIntColumn("yearBuilt");
+        for (int row = 0; row < dwellings.getRowCount(); row++) {
+            new Dwelling(id[row], zone[row], hhId[row], DwellingType.valueOf(type[row]), bedrooms[row], quality[row],
+                    price[row], restriction[row], yearBuilt[row]);   // this automatically puts it in id->dwelling map
+        }
+    }
+
+
+    public void addStateToCheckpoint(MicroDataSnapshot checkpoint) {
+        // add vacancy lists, dwelling counts, rent shares and remaining development capacity to checkpoint
+        checkpoint.addIntArray("highestDwellingIdAndLargestNoBedrooms", new int[]{highestDwellingIdInUse, largestNoBedrooms});
+        checkpoint.addIntArray("dwellingsByQuality", dwellingsByQuality.clone());
+        checkpoint.addDoubleArray("initialQualityShares", initialQualityShares.clone());
+        checkpoint.addIntArray("dwellingsByRegion", dwellingsByRegion.clone());
+        int vacantCount = SiloUtil.getSum(vacDwellingsByRegionPos);
+        int[] region = new int[vacantCount];
+        int[] dwelling = new int[vacantCount];
+        int row = 0;
+        for (int reg = 0; reg < vacDwellingsByRegionPos.length; reg++) {
+            for (int pos = 0; pos < vacDwellingsByRegionPos[reg]; pos++) {
+                region[row] = reg;
+                dwelling[row] = vacDwellingsByRegion[reg][pos];
+                row++;
+            }
+        }
+        MicroDataSnapshot.Table vacancies = checkpoint.addTable("vacantDwellings", vacantCount);
+        vacancies.addIntColumn("region", region);
+        vacancies.addIntColumn("dwelling", dwelling);
+        float[] rentShares = new float[(SiloUtil.incBrackets.length + 1) * (rentCategories + 1)];
+        for (int incomeCategory = 1; incomeCategory <= SiloUtil.incBrackets.length + 1; incomeCategory++)
+            System.arraycopy(ddPriceByHhType.get(incomeCategory), 0, rentShares, (incomeCategory - 1) * (rentCategories + 1),
+                    rentCategories + 1);
+        checkpoint.addFloatArray("rentSharesByIncomeCategory", rentShares);
+        if (useCapacityAsNumberOfDwellings)
+            checkpoint.addFloatArray("developmentCapacity", developmentCapacity.getColumnAsFloat("DevCapacity"));
+    }
+
+
+    public void restoreStateFromCheckpoint(MicroDataSnapshot checkpoint) {
+        // replace state calculated from the dwellings of the resumed year by the state of the interrupted run, has to
+        // run after identifyVacantDwellings() and readLandUse()
+        int[] highest = checkpoint.getIntArray("highestDwellingIdAndLargestNoBedrooms");
+        highestDwellingIdInUse = highest[0];
+        largestNoBedrooms = highest[1];
+        dwellingsByQuality = checkpoint.getIntArray("dwellingsByQuality");
+        initialQualityShares = checkpoint.getDoubleArray("initialQualityShares");
+        dwellingsByRegion = checkpoint.getIntArray("dwellingsByRegion");
+        MicroDataSnapshot.Table vacancies = checkpoint.getTable("vacantDwellings");
+        int[] region = vacancies.getIntColumn("region");
+        int[] dwelling = vacancies.getIntColumn("dwelling");
+        vacDwellingsByRegionPos = SiloUtil.setArrayToValue(vacDwellingsByRegionPos, 0);
+        posOfVacantDwelling = SiloUtil.createArrayWithValue(Math.max(highestDwellingIdInUse + 1, posOfVacantDwelling.length), -1);
+        for (int row = 0; row < vacancies.getRowCount(); row++) appendToVacancyList(region[row], dwelling[row]);
+        float[] rentShares = checkpoint.getFloatArray("rentSharesByIncomeCategory");
+        ddPriceByHhType = new HashMap<>();
+        for (int incomeCategory = 1; incomeCategory <= SiloUtil.incBrackets.length + 1; incomeCategory++) {
+            float[] vector = new float[rentCategories + 1];
+            System.arraycopy(rentShares, (incomeCategory - 1) * (rentCategories + 1), vector, 0, vector.length);
+            ddPriceByHhType.put(incomeCategory, vector);
+        }
+        if (useCapacityAsNumberOfDwellings) {
+            float[] capacity = checkpoint.getFloatArray("developmentCapacity");
+            for (int row = 1; row <= developmentCapacity.getRowCount(); row++)
+                developmentCapacity.setValueAt(row, "DevCapacity", capacity[row - 1]);
+        }
+    }
+
+
     public void readLandUse() {
         // read land use data
         logger.info("Reading land use data");
@@ -260,7 +344,7 @@ public class RealEstateDataManager {
         // identify how much rent (specified by 25 rent categories) is paid by households of each income category
         rentCategories = 25;
         float[][] priceByIncome = new float[SiloUtil.incBrackets.length + 1][rentCategories + 1];
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
+        for (Dwelling dd: Dwelling.getDwellings()) {
             highestDwellingIdInUse = Math.max(highestDwellingIdInUse, dd.getId());
             largestNoBedrooms = Math.max(largestNoBedrooms, dd.getBedrooms());
             int hhId = dd.getResidentId();
@@ -319,7 +403,7 @@ public class RealEstateDataManager {
         // calculate median rent by MSA
 
         HashMap<Integer, ArrayList<Integer>> rentHashMap = new HashMap<>();
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
+        for (Dwelling dd: Dwelling.getDwellings()) {
             int dwellingMSA = geoData.getMSAOfZone(dd.getZone());
             if (rentHashMap.containsKey(dwellingMSA)) {
                 ArrayList<Integer> rents = rentHashMap.get(dwellingMSA);
@@ -351,7 +435,7 @@ public class RealEstateDataManager {
             summarizeData.resultFile(row);
         }
         int[] ddByType = new int[DwellingType.values().length];
-        for (Dwelling dd: Dwelling.getDwellingArray()) ddByType[dd.getType().ordinal()]++;
+        for (Dwelling dd: Dwelling.getDwellings()) ddByType[dd.getType().ordinal()]++;
         for (DwellingType dt: DwellingType.values()) {
             summarizeData.resultFile("CountOfDD,"+dt.toString()+","+ddByType[dt.ordinal()]);
         }
@@ -384,7 +468,7 @@ public class RealEstateDataManager {
         summarizeData.resultFile(header);
         int[][] rentByIncome = new int[10][10];
         int[] rents = new int[10];
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             int hhInc = hh.getHhIncome();
             int rent = Dwelling.getDwellingFromId(hh.getDwellingId()).getPrice();
             int incCat = Math.min((hhInc / 10000), 9);
@@ -430,45 +514,88 @@ public class RealEstateDataManager {
     }
 
 
+    public static int getVacancyListLengthOfRegion (int region) {
+        // return number of dwellings currently stored in the vacancy list of region
+        return vacDwellingsByRegionPos[region];
+    }
+
+
+    public static int getVacantDwellingInRegion (int region, int position) {
+        // return ID of vacant dwelling stored at position in the vacancy list of region, allows sampling without copying
+        return vacDwellingsByRegion[region][position];
+    }
+
+
+    static int getPositionOfVacantDwelling (int ddId) {
+        // position of dwelling ddId in the vacancy list of its region, -1 if it is not vacant
+        return ddId < posOfVacantDwelling.length ? posOfVacantDwelling[ddId] : -1;
+    }
+
+
     public static int getNumberOfVacantDDinRegion (int region) {
         return Math.max(vacDwellingsByRegionPos[region] - 1, 0);
     }
 
 
     public static void removeDwellingFromVacancyList (int ddId) {
-        // remove dwelling with ID ddId from list of vacant dwellings
-
-        boolean found = false;
+        // remove dwelling with ID ddId from list of vacant dwellings by moving the last vacant dwelling of this region
+        // into its position
 
-        // todo: when selecting a vacant dwelling, I should be able to store the index of this dwelling in the vacDwellingByRegion array, which should make it faster to remove the vacant dwelling from this array.
-        int region = geoData.getRegionOfZone(Dwelling.getDwellingFromId(ddId).getZone());
-        for (int i = 0; i < vacDwellingsByRegionPos[region]; i++) {
-            if (vacDwellingsByRegion[region][i] == ddId) {
-                vacDwellingsByRegion[region][i] = vacDwellingsByRegion[region][vacDwellingsByRegionPos[region] - 1];
-                vacDwellingsByRegion[region][vacDwellingsByRegionPos[region] - 1] = 0;
-                vacDwellingsByRegionPos[region] -= 1;
-                if (ddId == SiloUtil.trackDd) SiloUtil.trackWriter.println("Removed dwelling " + ddId +
-                        " from list of vacant dwellings.");
-                found = true;
-                break;
-            }
+        if (ddId >= posOfVacantDwelling.length || posOfVacantDwelling[ddId] == -1) {
+            logger.warn("Consistency error: Could not find vacant dwelling " + ddId + " in vacDwellingsByRegion.");
+            return;
         }
-        if (!found) logger.warn("Consistency error: Could not find vacant dwelling " + ddId + " in vacDwellingsByRegion.");
+        int region = geoData.getRegionOfZone(Dwelling.getDwellingFromId(ddId).getZone());
+        int pos = posOfVacantDwelling[ddId];
+        int last = vacDwellingsByRegionPos[region] - 1;
+        int movedId = vacDwellingsByRegion[region][last];
+        vacDwellingsByRegion[region][pos] = movedId;
+        posOfVacantDwelling[movedId] = pos;
+        vacDwellingsByRegion[region][last] = 0;
+        vacDwellingsByRegionPos[region] = last;
+        posOfVacantDwelling[ddId] = -1;
+        if (ddId == SiloUtil.trackDd) SiloUtil.trackWriter.println("Removed dwelling " + ddId +
+                " from list of vacant dwellings.");
     }
 
 
     public static void addDwellingToVacancyList (Dwelling dd) {
         // add dwelling to vacancy list
 
+        int ddId = dd.getId();
+        if (ddId < posOfVacantDwelling.length && posOfVacantDwelling[ddId] != -1) {
+            logger.warn("Consistency error: Dwelling " + ddId + " is already in list of vacant dwellings.");
+            return;
+        }
         int region = geoData.getRegionOfZone(dd.getZone());
-        vacDwellingsByRegion[region][vacDwellingsByRegionPos[region]] = dd.getId();
-        if (vacDwellingsByRegionPos[region] < numberOfStoredVacantDD) vacDwellingsByRegionPos[region]++;
-        if (vacDwellingsByRegionPos[region] >= numberOfStoredVacantDD) IssueCounter.countExcessOfVacantDwellings(region);
-        if (dd.getId() == SiloUtil.trackDd) SiloUtil.trackWriter.println("Added dwelling " + dd.getId() +
+        appendToVacancyList(region, ddId);
+        if (ddId == SiloUtil.trackDd) SiloUtil.trackWriter.println("Added dwelling " + ddId +
                 " to list of vacant dwellings.");
     }
 
 
+    private static void appendToVacancyList (int region, int ddId) {
+        // store dwelling at the end of the vacancy list of region, expand list and position index if they are full
+
+        int pos = vacDwellingsByRegionPos[region];
+        if (pos == vacDwellingsByRegion[region].length) {
+            int[] larger = new int[Math.max(16, pos + (pos >> 1))];
+            System.arraycopy(vacDwellingsByRegion[region], 0, larger, 0, pos);
+            vacDwellingsByRegion[region] = larger;
+        }
+        if (ddId >= posOfVacantDwelling.length) {
+            int oldLength = posOfVacantDwelling.length;
+            int[] larger = new int[Math.max(ddId + 1, oldLength + (oldLength >> 1))];
+            System.arraycopy(posOfVacantDwelling, 0, larger, 0, oldLength);
+            for (int i = oldLength; i < larger.length; i++) larger[i] = -1;
+            posOfVacantDwelling = larger;
+        }
+        vacDwellingsByRegion[region][pos] = ddId;
+        posOfVacantDwelling[ddId] = pos;
+        vacDwellingsByRegionPos[region] = pos + 1;
+    }
+
+
     public void calculateRegionWidePriceAndVacancyByDwellingType() {
         // calculate region-wide average dwelling costs and vacancy by dwelling type
 
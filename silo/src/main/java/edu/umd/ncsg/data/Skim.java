@@ -0,0 +1,17 @@
+package edu.umd.ncsg.data;
+
+/**
+ * Read-only travel time or distance skim. Zones are numbered from 1 to the number of rows or columns in the order in
+ * which they are stored in the skim file.
+ **/
+
+public interface Skim {
+
+    float getValueAt (int orig, int dest);
+
+    void copyRow (int orig, float[] buffer);
+
+    int getRowCount ();
+
+    int getColumnCount ();
+}
@@ -0,0 +1,146 @@
+package edu.umd.ncsg.data;
+
+import edu.umd.ncsg.SiloUtil;
+import omx.OmxFile;
+import omx.OmxMatrix;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Process-wide cache of skims read from OMX files. Skims are identified by the name of the matrix and a hash of the
+ * file content, so that a file that is read again (for example, by the synthetic population generator and by the
+ * model, or in several skim years) or a copy of an unchanged file under a different name is loaded only once. The
+ * content hash of a file is only recalculated if its size or modification time changed. The least recently used
+ * skims are evicted once the cache exceeds its maximum size.
+ **/
+
+public class SkimCache {
+
+    static Logger logger = Logger.getLogger(SkimCache.class);
+
+    private static long maximumSizeInBytes = 1024L * 1024L * 1024L;
+    private static long sizeInBytes = 0;
+    private static final Map<String, FileState> fileStates = new HashMap<>();
+    private static final LinkedHashMap<String, FloatSkim> skims = new LinkedHashMap<>(16, 0.75f, true);
+    private static long hits = 0;
+    private static long misses = 0;
+
+
+    private static class FileState {
+        // size and modification time of a file when its content hash was calculated
+        final long length;
+        final long lastModified;
+        final long contentHash;
+
+        FileState (long length, long lastModified, long contentHash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+    }
+
+
+    public static synchronized void setMaximumSizeInMegabytes (int megabytes) {
+        maximumSizeInBytes = megabytes * 1024L * 1024L;
+        evict(null);
+    }
+
+
+    public static synchronized Skim getSkim (String fileName, String matrixName) {
+        // return skim matrixName of OMX file fileName, read file only if this content has not been loaded before
+
+        File file = new File(fileName);
+        if (!file.exists()) {
+            logger.error("Could not find skim file " + fileName);
+            throw new RuntimeException("Could not find skim file " + fileName);
+        }
+        String contentKey = matrixName + "@" + getContentHash(file) + "/" + file.length();
+        FloatSkim skim = skims.get(contentKey);
+        if (skim != null) {
+            hits++;
+            logger.info("  Using cached skim " + matrixName + " for " + fileName);
+            return skim;
+        }
+        misses++;
+        skim = readOmxSkim(fileName, matrixName);
+        skims.put(contentKey, skim);
+        sizeInBytes += getSizeInBytes(skim);
+        evict(contentKey);
+        return skim;
+    }
+
+
+    private static FloatSkim readOmxSkim (String fileName, String matrixName) {
+        // read matrix matrixName from OMX file into a skim and close file
+        OmxFile omxFile = new OmxFile(fileName);
+        omxFile.openReadOnly();
+        OmxMatrix omxMatrix = omxFile.getMatrix(matrixName);
+        FloatSkim skim = SiloUtil.convertOmxToSkim(omxMatrix);
+        omxFile.close();
+        return skim;
+    }
+
+
+    private static long getContentHash (File file) {
+        // return hash of file content, which is only recalculated if the file has been changed since last time
+        String path = file.getAbsolutePath();
+        FileState state = fileStates.get(path);
+        if (state != null && state.length == file.length() && state.lastModified == file.lastModified())
+            return state.contentHash;
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream in = new FileInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) crc.update(buffer, 0, count);
+        } catch (IOException e) {
+            logger.error("Could not read skim file " + path, e);
+            throw new RuntimeException(e);
+        }
+        fileStates.put(path, new FileState(file.length(), file.lastModified(), crc.getValue()));
+        return crc.getValue();
+    }
+
+
+    private static long getSizeInBytes (FloatSkim skim) {
+        return 4L * skim.getRowCount() * skim.getColumnCount();
+    }
+
+
+    private static void evict (String keep) {
+        // remove least recently used skims until cache fits into maximum size, the skim with key keep is never removed
+        Iterator<Map.Entry<String, FloatSkim>> it = skims.entrySet().iterator();
+        while (sizeInBytes > maximumSizeInBytes && it.hasNext()) {
+            Map.Entry<String, FloatSkim> entry = it.next();
+            if (entry.getKey().equals(keep)) continue;
+            sizeInBytes -= getSizeInBytes(entry.getValue());
+            logger.info("  Removed skim " + entry.getValue().getName() + " from skim cache");
+            it.remove();
+        }
+    }
+
+
+    public static synchronized long getHits () {
+        return hits;
+    }
+
+
+    public static synchronized long getMisses () {
+        return misses;
+    }
+
+
+    public static synchronized void clear () {
+        skims.clear();
+        fileStates.clear();
+        sizeInBytes = 0;
+    }
+}
@@ -0,0 +1,202 @@
+package edu.umd.ncsg.data;
+
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * Counts of households by race and dwellings by type, price and size for every zone and region that are updated
+ * whenever a household moves, changes its race, is created or removed and whenever a dwelling is built, demolished or
+ * repriced. Annual summaries therefore only need to walk through zones instead of all households and dwellings.
+ * Counters are set up with a full count the first time they are requested. With cross-checking enabled, every request
+ * compares the counters against a full recount and stops the model if they differ.
+ **/
+
+public class ZonalCounters {
+
+    static Logger logger = Logger.getLogger(ZonalCounters.class);
+
+    private static volatile boolean initialized = false;
+    private static boolean crossCheck = false;
+    private static Counts counts;
+
+
+    private static class Counts {
+        // households are counted by home zone (zone index) and region index, dwellings by zone id
+        final int[][] householdsByZoneAndRace;
+        final int[][] householdsByRegionAndRace;
+        final int[] householdsByRegion;
+        final int[][] dwellingsByTypeAndZone;
+        final long[][] pricesByTypeAndZone;
+        final long[][] bedroomsByTypeAndZone;
+
+        Counts () {
+            householdsByZoneAndRace = new int[geoData.getZones().length][Race.values().length];
+            householdsByRegionAndRace = new int[geoData.getRegionList().length][Race.values().length];
+            householdsByRegion = new int[geoData.getRegionList().length];
+            dwellingsByTypeAndZone = new int[DwellingType.values().length][geoData.getHighestZonalId() + 1];
+            pricesByTypeAndZone = new long[DwellingType.values().length][geoData.getHighestZonalId() + 1];
+            bedroomsByTypeAndZone = new long[DwellingType.values().length][geoData.getHighestZonalId() + 1];
+        }
+
+
+        void countHousehold (int homeZone, Race race, int change) {
+            if (homeZone == -1) return;
+            int region = geoData.getRegionIndex(geoData.getRegionOfZone(homeZone));
+            householdsByRegion[region] += change;
+            if (race == null) return;   // race is set once persons have been added to the household
+            householdsByZoneAndRace[geoData.getZoneIndex(homeZone)][race.ordinal()] += change;
+            householdsByRegionAndRace[region][race.ordinal()] += change;
+        }
+
+
+        void countDwelling (int zone, DwellingType type, int price, int bedrooms, int change) {
+            dwellingsByTypeAndZone[type.ordinal()][zone] += change;
+            pricesByTypeAndZone[type.ordinal()][zone] += change * (long) price;
+            bedroomsByTypeAndZone[type.ordinal()][zone] += change * (long) bedrooms;
+        }
+
+
+        boolean equals (Counts other) {
+            return Arrays.deepEquals(householdsByZoneAndRace, other.householdsByZoneAndRace) &&
+                    Arrays.deepEquals(householdsByRegionAndRace, other.householdsByRegionAndRace) &&
+                    Arrays.equals(householdsByRegion, other.householdsByRegion) &&
+                    Arrays.deepEquals(dwellingsByTypeAndZone, other.dwellingsByTypeAndZone) &&
+                    Arrays.deepEquals(pricesByTypeAndZone, other.pricesByTypeAndZone) &&
+                    Arrays.deepEquals(bedroomsByTypeAndZone, other.bedroomsByTypeAndZone);
+        }
+    }
+
+
+    public static void setCrossCheck (boolean check) {
+        // compare counters with full recount whenever they are requested (for debugging only, slow)
+        crossCheck = check;
+    }
+
+
+    private static Counts countAll () {
+        Counts all = new Counts();
+        for (Household hh: Household.getHouseholds()) all.countHousehold(hh.getHomeZone(), hh.getRace(), 1);
+        for (Dwelling dd: Dwelling.getDwellings())
+            all.countDwelling(dd.getZone(), dd.getType(), dd.getPrice(), dd.getBedrooms(), 1);
+        return all;
+    }
+
+
+    private static synchronized Counts getCounts () {
+        // set up counters with full count on first request, afterwards they are updated by every change
+        if (!initialized) {
+            counts = countAll();
+            initialized = true;
+        } else if (crossCheck) {
+            if (!counts.equals(countAll())) {
+                logger.error("Zonal counters differ from full recount of households and dwellings.");
+                throw new RuntimeException("Zonal counters differ from full recount of households and dwellings.");
+            }
+        }
+        return counts;
+    }
+
+
+    public static void reset () {
+        // counters are set up again with full count on next request, needs to be called if micro data are replaced
+        initialized = false;
+    }
+
+
+    static void householdAdded (Household hh) {
+        if (!initialized) return;
+        synchronized (ZonalCounters.class) {
+            counts.countHousehold(hh.getHomeZone(), hh.getRace(), 1);
+        }
+    }
+
+
+    static void householdRemoved (Household hh) {
+        if (!initialized) return;
+        synchronized (ZonalCounters.class) {
+            counts.countHousehold(hh.getHomeZone(), hh.getRace(), -1);
+        }
+    }
+
+
+    static void householdChanged (int oldHomeZone, Race oldRace, int newHomeZone, Race newRace) {
+        if (!initialized || (oldHomeZone == newHomeZone && oldRace == newRace)) return;
+        synchronized (ZonalCounters.class) {
+            counts.countHousehold(oldHomeZone, oldRace, -1);
+            counts.countHousehold(newHomeZone, newRace, 1);
+        }
+    }
+
+
+    static void dwellingAdded (Dwelling dd) {
+        if (!initialized) return;
+        synchronized (ZonalCounters.class) {
+            counts.countDwelling(dd.getZone(), dd.getType(), dd.getPrice(), dd.getBedrooms(), 1);
+        }
+    }
+
+
+    static void dwellingRemoved (Dwelling dd) {
+        if (!initialized) return;
+        synchronized (ZonalCounters.class) {
+            counts.countDwelling(dd.getZone(), dd.getType(), dd.getPrice(), dd.getBedrooms(), -1);
+        }
+    }
+
+
+    static void dwellingPriceChanged (Dwelling dd, int oldPrice) {
+        if (!initialized || oldPrice == dd.getPrice()) return;
+        synchronized (ZonalCounters.class) {
+            counts.pricesByTypeAndZone[dd.getType().ordinal()][dd.getZone()] += (long) dd.getPrice() - oldPrice;
+        }
+    }
+
+
+    public static synchronized float[][] getHouseholdsByZoneIndexAndRace () {
+        // number of households by zone index and race ordinal
+        int[][] households = getCounts().householdsByZoneAndRace;
+        float[][] result = new float[households.length][];
+        for (int i = 0; i < households.length; i++) result[i] = toFloat(households[i]);
+        return result;
+    }
+
+
+    public static synchronized float[][] getHouseholdsByRegionIndexAndRace () {
+        // number of households by region index and race ordinal
+        int[][] households = getCounts().householdsByRegionAndRace;
+        float[][] result = new float[households.length][];
+        for (int i = 0; i < households.length; i++) result[i] = toFloat(households[i]);
+        return result;
+    }
+
+
+    public static synchronized int[] getHouseholdsByRegionIndex () {
+        return getCounts().householdsByRegion.clone();
+    }
+
+
+    public static synchronized int[] getDwellingsByZone (DwellingType type) {
+        // number of dwellings of this type by zone id
+        return getCounts().dwellingsByTypeAndZone[type.ordinal()].clone();
+    }
+
+
+    public static synchronized long[] getSumOfPricesByZone (DwellingType type) {
+        // sum of monthly prices of dwellings of this type by zone id
+        return getCounts().pricesByTypeAndZone[type.ordinal()].clone();
+    }
+
+
+    public static synchronized long[] getSumOfBedroomsByZone (DwellingType type) {
+        // sum of bedrooms of dwellings of this type by zone id
+        return getCounts().bedroomsByTypeAndZone[type.ordinal()].clone();
+    }
+
+
+    private static float[] toFloat (int[] values) {
+        float[] result = new float[values.length];
+        for (int i = 0; i < values.length; i++) result[i] = values[i];
+        return result;
+    }
+}
@@ -0,0 +1,304 @@
+package edu.umd.ncsg.data;
+
+import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
+import edu.umd.ncsg.SiloUtil;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Zonal counts of households, persons, dwellings and jobs. All counts are calculated together in one
+ * parallel pass over the micro data, where every task counts one range of slots of the entity stores and partial
+ * counts are added up at the end. Counts are kept until households, persons, dwellings or jobs are added or removed
+ * or one of the attributes that are counted changes, so that repeated requests within a year are answered without
+ * another pass.
+ **/
+
+public class ZonalSummary {
+
+    static Logger logger = Logger.getLogger(ZonalSummary.class);
+
+    private static final int SLOTS_PER_TASK = 100000;
+
+    private static volatile boolean upToDate = false;
+    private static final int[] storeVersions = new int[4];
+    private static final int[] currentVersions = new int[4];
+    private static int[] mstmIncomeBrackets = null;
+    private static Counts counts;
+
+
+    private static class Counts {
+        // indexed by zone id, zone of household is taken from its dwelling
+        final int[] population;
+        final int[] households;
+        final int[][] householdsByIncome;
+        final int[][] dwellingsByType;
+        final int[] sumOfPrices;
+        final int[] jobs;
+        // indexed by zone index, zone of household is its home zone
+        final int[] householdsByHomeZone;
+        final int[][][] householdsByWorkersAndMstmIncome;
+        final int[][][] householdsBySizeAndMstmIncome;
+        final int[] retailJobs;
+        final int[] otherJobs;
+        final int[] totalJobs;
+        final int[][] jobsByMstmType;
+
+        Counts () {
+            int highestZone = geoData.getHighestZonalId() + 1;
+            int zones = geoData.getZones().length;
+            population = new int[highestZone];
+            households = new int[highestZone];
+            householdsByIncome = new int[SiloUtil.incBrackets.length + 1][highestZone];
+            dwellingsByType = new int[DwellingType.values().length + 1][highestZone];
+            sumOfPrices = new int[highestZone];
+            jobs = new int[highestZone];
+            householdsByHomeZone = new int[zones];
+            int mstmIncomeCategories = mstmIncomeBrackets == null ? 0 : mstmIncomeBrackets.length + 1;
+            householdsByWorkersAndMstmIncome = new int[mstmIncomeCategories == 0 ? 0 : zones][4][mstmIncomeCategories];
+            householdsBySizeAndMstmIncome = new int[mstmIncomeCategories == 0 ? 0 : zones][5][mstmIncomeCategories];
+            retailJobs = new int[highestZone];
+            otherJobs = new int[highestZone];
+            totalJobs = new int[highestZone];
+            jobsByMstmType = new int[4][zones];
+        }
+
+
+        void countHouseholds (int fromSlot, int toSlot) {
+            EntityStore<Household> store = Household.getHouseholds();
+            for (int slot = fromSlot; slot < toSlot; slot++) {
+                Household hh = store.getEntityInSlot(slot);
+                if (hh == null) continue;
+                int zone = Dwelling.getDwellingFromId(hh.getDwellingId()).getZone();
+                int income = hh.getHhIncome();
+                population[zone] += hh.getHhSize();
+                households[zone]++;
+                householdsByIncome[HouseholdDataManager.getIncomeCategoryForIncome(income) - 1][zone]++;
+                if (hh.getHomeZone() == -1) continue;
+                int zoneIndex = geoData.getZoneIndex(hh.getHomeZone());
+                householdsByHomeZone[zoneIndex]++;
+                if (mstmIncomeBrackets != null) {
+                    int inc = HouseholdDataManager.getSpecifiedIncomeCategoryForIncome(mstmIncomeBrackets, income);
+                    int wrk = Math.min(HouseholdDataManager.getNumberOfWorkersInHousehold(hh), 3);
+                    householdsByWorkersAndMstmIncome[zoneIndex][wrk][inc - 1]++;
+                    householdsBySizeAndMstmIncome[zoneIndex][Math.min(hh.getHhSize(), 5) - 1][inc - 1]++;
+                }
+            }
+        }
+
+
+        void countDwellings (int fromSlot, int toSlot) {
+            EntityStore<Dwelling> store = Dwelling.getDwellings();
+            for (int slot = fromSlot; slot < toSlot; slot++) {
+                Dwelling dd = store.getEntityInSlot(slot);
+                if (dd == null) continue;
+                dwellingsByType[dd.getType().ordinal()][dd.getZone()]++;
+                sumOfPrices[dd.getZone()] += dd.getPrice();
+            }
+        }
+
+
+        void countJobs (int fromSlot, int toSlot) {
+            EntityStore<Job> store = Job.getJobs();
+            String[] jobTypes = JobType.getJobTypes();
+            int mstmTypes = Math.min(jobTypes.length, 4);
+            for (int slot = fromSlot; slot < toSlot; slot++) {
+                Job jj = store.getEntityInSlot(slot);
+                if (jj == null) continue;
+                int zoneIndex = geoData.getZoneIndex(jj.getZone());
+                jobs[jj.getZone()]++;
+                totalJobs[zoneIndex]++;
+                if (jj.getType().equals("RET")) retailJobs[zoneIndex]++;
+                else if (jj.getType().equals("OTH")) otherJobs[zoneIndex]++;
+                for (int type = 0; type < mstmTypes; type++) {
+                    if (jj.getType().equalsIgnoreCase(jobTypes[type])) {
+                        jobsByMstmType[type][zoneIndex]++;
+                        break;
+                    }
+                }
+            }
+        }
+
+
+        void add (Counts other) {
+            addArray(population, other.population);
+            addArray(households, other.households);
+            for (int i = 0; i < householdsByIncome.length; i++) addArray(householdsByIncome[i], other.householdsByIncome[i]);
+            for (int i = 0; i < dwellingsByType.length; i++) addArray(dwellingsByType[i], other.dwellingsByType[i]);
+            addArray(sumOfPrices, other.sumOfPrices);
+            addArray(jobs, other.jobs);
+            addArray(householdsByHomeZone, other.householdsByHomeZone);
+            for (int zone = 0; zone < householdsByWorkersAndMstmIncome.length; zone++) {
+                for (int i = 0; i < 4; i++)
+                    addArray(householdsByWorkersAndMstmIncome[zone][i], other.householdsByWorkersAndMstmIncome[zone][i]);
+                for (int i = 0; i < 5; i++)
+                    addArray(householdsBySizeAndMstmIncome[zone][i], other.householdsBySizeAndMstmIncome[zone][i]);
+            }
+            addArray(retailJobs, other.retailJobs);
+            addArray(otherJobs, other.otherJobs);
+            addArray(totalJobs, other.totalJobs);
+            for (int i = 0; i < jobsByMstmType.length; i++) addArray(jobsByMstmType[i], other.jobsByMstmType[i]);
+        }
+
+
+        private static void addArray (int[] sum, int[] values) {
+            for (int i = 0; i < sum.length; i++) sum[i] += values[i];
+        }
+    }
+
+
+    public static void invalidate () {
+        // called whenever an attribute changes that is counted, written only once so that threads do not compete
+        if (upToDate) upToDate = false;
+    }
+
+
+    public static synchronized void setMstmIncomeBrackets (int[] brackets) {
+        // income brackets used to count households for MSTM, counts are recalculated if brackets change
+        if (Arrays.equals(brackets, mstmIncomeBrackets)) return;
+        mstmIncomeBrackets = brackets.clone();
+        upToDate = false;
+    }
+
+
+    private static void readStoreVersions () {
+        // only called by getCounts(), which is synchronized
+        currentVersions[0] = Household.getHouseholds().getModificationCount();
+        currentVersions[1] = Person.getPersons().getModificationCount();
+        currentVersions[2] = Dwelling.getDwellings().getModificationCount();
+        currentVersions[3] = Job.getJobs().getModificationCount();
+    }
+
+
+    private static synchronized Counts getCounts () {
+        // return counts of current micro data, count again only if micro data changed since last time
+        readStoreVersions();
+        if (upToDate && counts != null && Arrays.equals(currentVersions, storeVersions)) return counts;
+        // changes made while counting reset upToDate
+        upToDate = true;
+        System.arraycopy(currentVersions, 0, storeVersions, 0, storeVersions.length);
+        counts = count();
+        return counts;
+    }
+
+
+    private static Counts count () {
+        List<Callable<Counts>> tasks = new ArrayList<>();
+        addTasks(tasks, Household.getHouseholds().getSlotCount(), 0);
+        addTasks(tasks, Dwelling.getDwellings().getSlotCount(), 1);
+        addTasks(tasks, Job.getJobs().getSlotCount(), 2);
+        Counts total = new Counts();
+        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
+        try {
+            for (Future<Counts> result: pool.invokeAll(tasks)) total.add(result.get());
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not summarize micro data by zone.", e);
+            throw new RuntimeException(e);
+        }
+        return total;
+    }
+
+
+    private static void addTasks (List<Callable<Counts>> tasks, int slotCount, final int entity) {
+        for (int from = 0; from < slotCount; from += SLOTS_PER_TASK) {
+            final int fromSlot = from;
+            final int toSlot = Math.min(from + SLOTS_PER_TASK, slotCount);
+            tasks.add(new Callable<Counts>() {
+                public Counts call() {
+                    Counts partial = new Counts();
+                    if (entity == 0) partial.countHouseholds(fromSlot, toSlot);
+                    else if (entity == 1) partial.countDwellings(fromSlot, toSlot);
+                    else partial.countJobs(fromSlot, toSlot);
+                    return partial;
+                }
+            });
+        }
+    }
+
+
+    public static int[] getPopulationByZone () {
+        return getCounts().population.clone();
+    }
+
+
+    public static int[] getHouseholdsByZone () {
+        return getCounts().households.clone();
+    }
+
+
+    public static int[] getHouseholdsByIncomeCategory (int incomeCategory) {
+        // incomeCategory is 1-based as returned by HouseholdDataManager.getIncomeCategoryForIncome()
+        return getCounts().householdsByIncome[incomeCategory - 1].clone();
+    }
+
+
+    public static int[] getDwellingsByZone (DwellingType type) {
+        return getCounts().dwellingsByType[type.ordinal()].clone();
+    }
+
+
+    public static int[] getSumOfPricesByZone () {
+        return getCounts().sumOfPrices.clone();
+    }
+
+
+    public static int[] getJobsByZone () {
+        return getCounts().jobs.clone();
+    }
+
+
+    public static int[] getHouseholdsByHomeZoneIndex () {
+        return getCounts().householdsByHomeZone.clone();
+    }
+
+
+    public static int[][][] getHouseholdsByWorkersAndMstmIncome () {
+        // indexed by zone index, workers (capped at 3) and income category - 1, setMstmIncomeBrackets() needs to be
+        // called first
+        return copy(getCounts().householdsByWorkersAndMstmIncome);
+    }
+
+
+    public static int[][][] getHouseholdsBySizeAndMstmIncome () {
+        // indexed by zone index, size - 1 (size capped at 5) and income category - 1, setMstmIncomeBrackets() needs to be
+        // called first
+        return copy(getCounts().householdsBySizeAndMstmIncome);
+    }
+
+
+    private static int[][][] copy (int[][][] counts) {
+        int[][][] copy = new int[counts.length][][];
+        for (int i = 0; i < counts.length; i++) {
+            copy[i] = new int[counts[i].length][];
+            for (int j = 0; j < counts[i].length; j++) copy[i][j] = counts[i][j].clone();
+        }
+        return copy;
+    }
+
+
+    public static int[] getRetailJobsByZoneIndex () {
+        return getCounts().retailJobs.clone();
+    }
+
+
+    public static int[] getOtherJobsByZoneIndex () {
+        return getCounts().otherJobs.clone();
+    }
+
+
+    public static int[] getTotalJobsByZoneIndex () {
+        return getCounts().totalJobs.clone();
+    }
+
+
+    public static int[] getJobsByMstmTypeAndZoneIndex (int type) {
+        // type is the position in JobType.getJobTypes() (0 to 3)
+        return getCounts().jobsByMstmType[type].clone();
+    }
+}
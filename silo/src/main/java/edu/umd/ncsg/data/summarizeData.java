@@ -3,10 +3,15 @@ package edu.umd.ncsg.data;
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.util.ResourceUtil;
 import com.sun.org.apache.xpath.internal.operations.Bool;
+import edu.umd.ncsg.SiloCheckpoint;
 import edu.umd.ncsg.SiloUtil;
 import edu.umd.ncsg.relocation.MovesModel;
+import edu.umd.ncsg.utils.AsyncFileWriter;
 import org.apache.log4j.Logger;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.util.HashMap;
 import java.util.ResourceBundle;
 
@@ -40,13 +45,16 @@ public class summarizeData {
     protected static final String PROPERTIES_PRESTO_REGION_DEFINITION     = "presto.regions";
     protected static final String PROPERTIES_PRESTO_SUMMARY_FILE          = "presto.summary.file";
     protected static final String PROPERTIES_USE_CAPACITY   = "use.growth.capacity.data";
+    protected static final String PROPERTIES_COMPRESS_MICRO_DATA          = "compress.micro.data.files";
     
     
-    private static PrintWriter resultWriter;
-    private static PrintWriter spatialResultWriter;
+    private static AsyncFileWriter resultWriter;
+    private static AsyncFileWriter spatialResultWriter;
+    private static String resultFile;
+    private static String spatialResultFile;
 
-    private static PrintWriter resultWriterFinal;
-    private static PrintWriter spatialResultWriterFinal;
+    private static AsyncFileWriter resultWriterFinal;
+    private static AsyncFileWriter spatialResultWriterFinal;
 
     public static Boolean resultWriterReplicate = false;
 
@@ -60,9 +68,11 @@ public class summarizeData {
         String directory = SiloUtil.baseDirectory + "scenOutput/" + SiloUtil.scenarioName;
         SiloUtil.createDirectoryIfNotExistingYet(directory);
         String resultFileName = rb.getString(PROPERTIES_RESULT_FILE_NAME);
-        resultWriter = SiloUtil.openFileForSequentialWriting(directory + "/" + resultFileName +
-                SiloUtil.gregorianIterator + ".csv", SiloUtil.getStartYear() != SiloUtil.getBaseYear());
-        resultWriterFinal = SiloUtil.openFileForSequentialWriting(directory + "/" + resultFileName + "_" + SiloUtil.getEndYear() + ".csv", false);
+        resultFile = directory + "/" + resultFileName + SiloUtil.gregorianIterator + ".csv";
+        if (SiloCheckpoint.getResumeYear() != -1) truncateFile(resultFile, SiloCheckpoint.getResultFileLengths()[0]);
+        resultWriter = SiloUtil.openFileForAsynchronousWriting(resultFile,
+                SiloUtil.getStartYear() != SiloUtil.getBaseYear() || SiloCheckpoint.getResumeYear() != -1);
+        resultWriterFinal = SiloUtil.openFileForAsynchronousWriting(directory + "/" + resultFileName + "_" + SiloUtil.getEndYear() + ".csv", false);
     }
 
 
@@ -104,9 +114,12 @@ public class summarizeData {
                 String directory = SiloUtil.baseDirectory + "scenOutput/" + SiloUtil.scenarioName;
                 SiloUtil.createDirectoryIfNotExistingYet(directory);
                 String resultFileName = rb.getString(PROPERTIES_SPATIAL_RESULT_FILE_NAME);
-                spatialResultWriter = SiloUtil.openFileForSequentialWriting(directory + "/" + resultFileName +
-                        SiloUtil.gregorianIterator + ".csv", SiloUtil.getStartYear() != SiloUtil.getBaseYear());
-                spatialResultWriterFinal = SiloUtil.openFileForSequentialWriting(directory + "/" + resultFileName +"_"+ SiloUtil.getEndYear() + ".csv", false);
+                spatialResultFile = directory + "/" + resultFileName + SiloUtil.gregorianIterator + ".csv";
+                if (SiloCheckpoint.getResumeYear() != -1)
+                    truncateFile(spatialResultFile, SiloCheckpoint.getResultFileLengths()[1]);
+                spatialResultWriter = SiloUtil.openFileForAsynchronousWriting(spatialResultFile,
+                        SiloUtil.getStartYear() != SiloUtil.getBaseYear() || SiloCheckpoint.getResumeYear() != -1);
+                spatialResultWriterFinal = SiloUtil.openFileForAsynchronousWriting(directory + "/" + resultFileName +"_"+ SiloUtil.getEndYear() + ".csv", false);
                 break;
             case "close":
                 spatialResultWriter.close();
@@ -119,6 +132,34 @@ public class summarizeData {
         }
     }
 
+    public static long[] getResultFileLengths () {
+        // write everything printed to the result files so far and return their lengths in bytes, -1 if a file is not open
+        if (resultWriter != null) resultWriter.flush();
+        if (spatialResultWriter != null) spatialResultWriter.flush();
+        AsyncFileWriter.waitForQueuedOutput();
+        return new long[]{resultWriter == null ? -1 : new File(resultFile).length(),
+                spatialResultWriter == null ? -1 : new File(spatialResultFile).length()};
+    }
+
+
+    private static void truncateFile (String fileName, long length) {
+        // remove output that was written after a checkpoint by an earlier run, before the file is appended to again
+        if (length < 0) return;
+        File file = new File(fileName);
+        if (!file.exists()) return;
+        if (file.length() < length) {
+            logger.warn("File " + fileName + " is shorter than when the checkpoint was written.");
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        } catch (IOException e) {
+            logger.error("Could not truncate file " + fileName + " to the length at the checkpoint.", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+
     public static void summarizeSpatially (int year, MovesModel move, RealEstateDataManager realEstateData) {
         // write out results by zone
 
@@ -127,25 +168,14 @@ public class summarizeData {
         resultFileSpatial(null, hd + ",dd_SFD,dd_SFA,dd_MF234,dd_MF5plus,dd_MH,availLand,avePrice,jobs,shWhite,shBlack,shHispanic,shOther");
 
         int[] zones = geoData.getZones();
-        int[][] dds = new int[DwellingType.values().length + 1][geoData.getHighestZonalId() + 1];
-        int[] prices = new int[geoData.getHighestZonalId() + 1];
-        int[] jobs = new int[geoData.getHighestZonalId() + 1];
-        int[] hhs = new int[geoData.getHighestZonalId() + 1];
-        int[][] hhInc = new int[SiloUtil.incBrackets.length + 1][geoData.getHighestZonalId() + 1];
+        int[][] dds = new int[DwellingType.values().length][];
+        for (DwellingType dt: DwellingType.values()) dds[dt.ordinal()] = ZonalSummary.getDwellingsByZone(dt);
+        int[] prices = ZonalSummary.getSumOfPricesByZone();
+        int[] jobs = ZonalSummary.getJobsByZone();
+        int[] hhs = ZonalSummary.getHouseholdsByZone();
+        int[][] hhInc = new int[SiloUtil.incBrackets.length + 1][];
+        for (int inc = 0; inc <= SiloUtil.incBrackets.length; inc++) hhInc[inc] = ZonalSummary.getHouseholdsByIncomeCategory(inc + 1);
         int[] pop = getPopulationByZone();
-        for (Household hh: Household.getHouseholdArray()) {
-            int zone = Dwelling.getDwellingFromId(hh.getDwellingId()).getZone();
-            int incGroup = HouseholdDataManager.getIncomeCategoryForIncome(hh.getHhIncome());
-            hhInc[incGroup - 1][zone]++;
-            hhs[zone] ++;
-        }
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
-            dds[dd.getType().ordinal()][dd.getZone()]++;
-            prices[dd.getZone()] += dd.getPrice();
-        }
-        for (Job jj: Job.getJobArray()) {
-            jobs[jj.getZone()]++;
-        }
 
 
         for (int taz: zones) {
@@ -174,58 +204,31 @@ public class summarizeData {
 
     public static int[] getPopulationByZone () {
         // summarize population by zone
-
-        int[] pp = new int[geoData.getHighestZonalId() + 1];
-        for (Household hh: Household.getHouseholdArray()) {
-            int zone = Dwelling.getDwellingFromId(hh.getDwellingId()).getZone();
-            pp[zone] += hh.getHhSize();
-        }
-        return pp;
+        return ZonalSummary.getPopulationByZone();
     }
 
 
     public static int[] getHouseholdsByZone () {
         // summarize households by zone
-
-        int[] householdsByZone = new int[geoData.getHighestZonalId() + 1];
-        for (Household hh: Household.getHouseholdArray()) {
-            int zone = Dwelling.getDwellingFromId(hh.getDwellingId()).getZone();
-            householdsByZone[zone]++;
-        }
-        return householdsByZone;
+        return ZonalSummary.getHouseholdsByZone();
     }
 
 
     public static int[] getRetailEmploymentByZone() {
         // summarize retail employment by zone
-
-        int[] retailEmplByZone = new int[geoData.getHighestZonalId() + 1];
-        for (Job jj: Job.getJobArray()) {
-            if (jj.getType().equals("RET")) retailEmplByZone[geoData.getZoneIndex(jj.getZone())]++;
-        }
-        return retailEmplByZone;
+        return ZonalSummary.getRetailJobsByZoneIndex();
     }
 
 
     public static int[] getOtherEmploymentByZone() {
         // summarize other employment by zone
-
-        int[] otherEmplByZone = new int[geoData.getHighestZonalId() + 1];
-        for (Job jj: Job.getJobArray()) {
-            if (jj.getType().equals("OTH")) otherEmplByZone[geoData.getZoneIndex(jj.getZone())]++;
-        }
-        return otherEmplByZone;
+        return ZonalSummary.getOtherJobsByZoneIndex();
     }
 
 
     public static int[] getTotalEmploymentByZone() {
-        // summarize retail employment by zone
-
-        int[] totalEmplByZone = new int[geoData.getHighestZonalId() + 1];
-        for (Job jj: Job.getJobArray()) {
-            totalEmplByZone[geoData.getZoneIndex(jj.getZone())]++;
-        }
-        return totalEmplByZone;
+        // summarize total employment by zone
+        return ZonalSummary.getTotalJobsByZoneIndex();
     }
 
 
@@ -394,7 +397,7 @@ public class summarizeData {
 
         PrintWriter pw = SiloUtil.openFileForSequentialWriting(fileName, false);
         pw.println("id,zone,type,size,yearBuilt,occupied");
-        for (Dwelling dd: Dwelling.getDwellingArray()){
+        for (Dwelling dd: Dwelling.getDwellings()){
             pw.print(dd.getId());
             pw.print(",");
             pw.print(dd.getZone());
@@ -412,15 +415,15 @@ public class summarizeData {
 
 
     public static void writeOutSyntheticPopulation (ResourceBundle rb, int year) {
-        // write out files with synthetic population
+        // write out files with synthetic population, files are written on a background thread
 
+        String extension = ResourceUtil.getBooleanProperty(rb, PROPERTIES_COMPRESS_MICRO_DATA, false) ? ".csv.gz" : ".csv";
         logger.info("  Writing household file");
         String filehh = SiloUtil.baseDirectory + rb.getString(PROPERTIES_FILENAME_HH_MICRODATA) + "_" +
-                year + ".csv";
-        PrintWriter pwh = SiloUtil.openFileForSequentialWriting(filehh, false);
+                year + extension;
+        AsyncFileWriter pwh = SiloUtil.openFileForAsynchronousWriting(filehh, false);
         pwh.println("id,dwelling,zone,hhSize,autos");
-        Household[] hhs = Household.getHouseholdArray();
-        for (Household hh : hhs) {
+        for (Household hh : Household.getHouseholds()) {
             if (hh.getId() == SiloUtil.trackHh) {
                 SiloUtil.trackingFile("Writing hh " + hh.getId() + " to micro data file.");
                 hh.logAttributes(SiloUtil.trackWriter);
@@ -439,11 +442,10 @@ public class summarizeData {
 
         logger.info("  Writing person file");
         String filepp = SiloUtil.baseDirectory + rb.getString(PROPERTIES_FILENAME_PP_MICRODATA) + "_" +
-                year + ".csv";
-        PrintWriter pwp = SiloUtil.openFileForSequentialWriting(filepp, false);
+                year + extension;
+        AsyncFileWriter pwp = SiloUtil.openFileForAsynchronousWriting(filepp, false);
         pwp.println("id,hhID,age,gender,relationShip,race,occupation,driversLicense,workplace,income");
-        Person[] pps = Person.getPersonArray();
-        for (Person pp : pps) {
+        for (Person pp : Person.getPersons()) {
             pwp.print(pp.getId());
             pwp.print(",");
             pwp.print(pp.getHhId());
@@ -470,11 +472,10 @@ public class summarizeData {
 
         logger.info("  Writing dwelling file");
         String filedd = SiloUtil.baseDirectory + rb.getString(PROPERTIES_FILENAME_DD_MICRODATA) + "_" +
-                year + ".csv";
-        PrintWriter pwd = SiloUtil.openFileForSequentialWriting(filedd, false);
+                year + extension;
+        AsyncFileWriter pwd = SiloUtil.openFileForAsynchronousWriting(filedd, false);
         pwd.println("id,zone,type,hhID,bedrooms,quality,monthlyCost,restriction,yearBuilt");
-        Dwelling[] dds = Dwelling.getDwellingArray();
-        for (Dwelling dd : dds) {
+        for (Dwelling dd : Dwelling.getDwellings()) {
             pwd.print(dd.getId());
             pwd.print(",");
             pwd.print(dd.getZone());
@@ -501,11 +502,10 @@ public class summarizeData {
 
         logger.info("  Writing job file");
         String filejj = SiloUtil.baseDirectory + rb.getString(PROPERTIES_FILENAME_JJ_MICRODATA) + "_" +
-                year + ".csv";
-        PrintWriter pwj = SiloUtil.openFileForSequentialWriting(filejj, false);
+                year + extension;
+        AsyncFileWriter pwj = SiloUtil.openFileForAsynchronousWriting(filejj, false);
         pwj.println("id,zone,personId,type");
-        Job[] jjs = Job.getJobArray();
-        for (Job jj : jjs) {
+        for (Job jj : Job.getJobs()) {
             pwj.print(jj.getId());
             pwj.print(",");
             pwj.print(jj.getZone());
@@ -536,7 +536,7 @@ public class summarizeData {
         PrintWriter pwa = SiloUtil.openFileForSequentialWriting("autoOwnershipA.csv", false);
         pwa.println("hhSize,workers,income,transit,density,autos");
         int[][] autos = new int[4][60000];
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             int autoOwnership = hh.getAutos();
             int zone = hh.getHomeZone();
             int county = geoData.getCountyOfZone(zone);
@@ -590,7 +590,7 @@ public class summarizeData {
         pw.println(",averageRent");
         int[][] rentByIncome = new int[10][10];
         int[] rents = new int[10];
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             if (prestoRegionByTaz[hh.getHomeZone()] > 0) {
                 int hhInc = hh.getHhIncome();
                 int rent = Dwelling.getDwellingFromId(hh.getDwellingId()).getPrice();
@@ -1,18 +1,24 @@
 package edu.umd.ncsg.events;
 
-import com.pb.common.util.IndexSort;
 import edu.umd.ncsg.SiloModel;
 import edu.umd.ncsg.SiloUtil;
 import edu.umd.ncsg.demography.MarryDivorceModel;
 import edu.umd.ncsg.realEstate.ConstructionModel;
 import edu.umd.ncsg.relocation.InOutMigration;
 import edu.umd.ncsg.data.*;
+import com.pb.common.util.ResourceUtil;
+import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
 import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Collection;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Generates a series of events in random order
@@ -24,11 +30,12 @@ public class EventManager {
 
     static Logger logger = Logger.getLogger(EventManager.class);
 
+    protected static final String PROPERTIES_CREATE_EVENTS_MULTI_THREADED = "create.events.multi.threaded";
+
     private HouseholdDataManager householdData;
     private RealEstateDataManager realEstateData;
-    private ArrayList<Integer[]> events;
-    private int randomEventOrder[];
-    private int posInArray;
+    private EventQueue events;
+    private boolean createEventsMultiThreaded;
     private static HashMap<EventTypes, Integer> eventCounter;
 
     public EventManager (ResourceBundle rb, HouseholdDataManager householdData, RealEstateDataManager realEstateData) {
@@ -36,126 +43,94 @@ public class EventManager {
         this.householdData = householdData;
         this.realEstateData = realEstateData;
         EventRules.setUpEventRules(rb);
+        createEventsMultiThreaded = ResourceUtil.getBooleanProperty(rb, PROPERTIES_CREATE_EVENTS_MULTI_THREADED, false);
     }
 
 
     public void createListOfEvents (int numberOfPlannedMarriages) {
-        // create an array list that contains all land use events
+        // create a queue that contains all land use events
 
-        events = new ArrayList<>();
         Collection<Person> persons = householdData.getPersons();
-        int numEvents = 0;
+        events = new EventQueue(persons.size() * 2);
 
         // create person events
-        for (Person per: persons) {
-            int id = per.getId();
-            // Birthday
-            if (EventRules.ruleBirthday(per)) {
-                events.add(new Integer[]{EventTypes.birthday.ordinal(), id});
-                numEvents ++;
-            }
-            // Death
-            if (EventRules.ruleDeath(per)) {
-                events.add(new Integer[]{EventTypes.checkDeath.ordinal(), id});
-                numEvents ++;
-            }
-            // Birth
-            if (EventRules.ruleGiveBirth(per)) {
-                events.add(new Integer[]{EventTypes.checkBirth.ordinal(), id});
-                numEvents ++;
-            }
-            // Leave parental household
-            if (EventRules.ruleLeaveParHousehold(per)) {
-                events.add(new Integer[]{EventTypes.checkLeaveParentHh.ordinal(), id});
-                numEvents ++;
-            }
-            // Divorce
-            if (EventRules.ruleGetDivorced(per)) {
-                events.add(new Integer[]{EventTypes.checkDivorce.ordinal(), id});
-                numEvents++;
-            }
+        if (createEventsMultiThreaded) {
+            events.addAll(createEventsInParallel(Person.getPersons(), "persons", new EventGenerator<Person>() {
+                public void addEvents(Person per, EventQueue queue) {
+                    addPersonEvents(per, queue);
+                }
+            }));
+        } else {
+            for (Person per: persons) addPersonEvents(per, events);
         }
 
 
         // wedding events
         for (int i = 0; i < numberOfPlannedMarriages; i++) {
-            events.add(new Integer[]{EventTypes.checkMarriage.ordinal(), i});
-            numEvents++;
+            events.add(EventTypes.checkMarriage, i);
         }
 
 
         // employment events
         if (EventRules.ruleStartNewJob()) {
             for (int ppId: HouseholdDataManager.getStartNewJobPersonIds()) {
-                events.add(new Integer[]{EventTypes.findNewJob.ordinal(), ppId});
-                numEvents++;
+                events.add(EventTypes.findNewJob, ppId);
             }
         }
 
         if (EventRules.ruleQuitJob()) {
             for (int ppId: HouseholdDataManager.getQuitJobPersonIds()) {
-                events.add(new Integer[]{EventTypes.quitJob.ordinal(), ppId});
-                numEvents++;
+                events.add(EventTypes.quitJob, ppId);
             }
         }
 
 
         // create household events
-        for (Household hh: Household.getHouseholdArray()) {
-            if (EventRules.ruleHouseholdMove(hh)) {
-                int id = hh.getId();
-                events.add(new Integer[]{EventTypes.householdMove.ordinal(), id});
-                numEvents++;
-            }
+        if (createEventsMultiThreaded) {
+            events.addAll(createEventsInParallel(Household.getHouseholds(), "households", new EventGenerator<Household>() {
+                public void addEvents(Household hh, EventQueue queue) {
+                    addHouseholdEvents(hh, queue);
+                }
+            }));
+        } else {
+            for (Household hh: Household.getHouseholds()) addHouseholdEvents(hh, events);
         }
 
         if (EventRules.ruleOutmigrate()) {
             for (int hhId: InOutMigration.outMigratingHhId) {
                 if (EventRules.ruleOutmigrate(Household.getHouseholdFromId(hhId))) {
-                    events.add(new Integer[]{EventTypes.outMigration.ordinal(), hhId});
-                    numEvents++;
+                    events.add(EventTypes.outMigration, hhId);
                 }
             }
         }
 
         if (EventRules.ruleInmigrate()) {
             for (int hhId: InOutMigration.inmigratingHhId) {
-                events.add(new Integer[]{EventTypes.inmigration.ordinal(), hhId});
-                numEvents++;
+                events.add(EventTypes.inmigration, hhId);
             }
         }
 
         // update dwelling events
-        Collection<Dwelling> dwellings = realEstateData.getDwellings();
-        for (Dwelling dd: dwellings) {
-            int id = dd.getId();
-            // renovate dwelling or deteriorate
-            if (EventRules.ruleChangeDwellingQuality(dd)) {
-                events.add(new Integer[]{EventTypes.ddChangeQual.ordinal(), id});
-                numEvents++;
-            }
-            // demolish
-            if (EventRules.ruleDemolishDwelling(dd)) {
-                events.add(new Integer[]{EventTypes.ddDemolition.ordinal(), id});
-                numEvents++;
-            }
+        if (createEventsMultiThreaded) {
+            events.addAll(createEventsInParallel(Dwelling.getDwellings(), "dwellings", new EventGenerator<Dwelling>() {
+                public void addEvents(Dwelling dd, EventQueue queue) {
+                    addDwellingEvents(dd, queue);
+                }
+            }));
+        } else {
+            Collection<Dwelling> dwellings = realEstateData.getDwellings();
+            for (Dwelling dd: dwellings) addDwellingEvents(dd, events);
         }
         // build new dwellings
         if (EventRules.ruleBuildDwelling()) {
             for (int constructionCase: ConstructionModel.listOfPlannedConstructions) {
-                events.add(new Integer[]{EventTypes.ddConstruction.ordinal(), constructionCase});
-                numEvents++;
+                events.add(EventTypes.ddConstruction, constructionCase);
             }
         }
 
-        logger.info("  Created " + numEvents + " events to simulate");
+        logger.info("  Created " + events.size() + " events to simulate");
         logger.info("  Events are randomized");
-        int randomNumArray[] = new int[numEvents];
-        for (int i = 0; i < numEvents; i++) {
-            randomNumArray[i] = (int) (SiloModel.rand.nextDouble() * (float) numEvents * 10f);
-        }
-        randomEventOrder = IndexSort.indexSort(randomNumArray);
-        posInArray = 0;
+        events.shuffle(SiloModel.rand);
 
         // initialize event counter
         eventCounter = new HashMap<>();
@@ -163,14 +138,115 @@ public class EventManager {
     }
 
 
-    public static void countEvent (EventTypes et) {
-        // add 1 to counter for EventTypes et
+    private static void addPersonEvents (Person per, EventQueue queue) {
+        int id = per.getId();
+        // Birthday
+        if (EventRules.ruleBirthday(per)) {
+            queue.add(EventTypes.birthday, id);
+        }
+        // Death
+        if (EventRules.ruleDeath(per)) {
+            queue.add(EventTypes.checkDeath, id);
+        }
+        // Birth
+        if (EventRules.ruleGiveBirth(per)) {
+            queue.add(EventTypes.checkBirth, id);
+        }
+        // Leave parental household
+        if (EventRules.ruleLeaveParHousehold(per)) {
+            queue.add(EventTypes.checkLeaveParentHh, id);
+        }
+        // Divorce
+        if (EventRules.ruleGetDivorced(per)) {
+            queue.add(EventTypes.checkDivorce, id);
+        }
+    }
+
+
+    private static void addHouseholdEvents (Household hh, EventQueue queue) {
+        if (EventRules.ruleHouseholdMove(hh)) {
+            queue.add(EventTypes.householdMove, hh.getId());
+        }
+    }
+
+
+    private static void addDwellingEvents (Dwelling dd, EventQueue queue) {
+        int id = dd.getId();
+        // renovate dwelling or deteriorate
+        if (EventRules.ruleChangeDwellingQuality(dd)) {
+            queue.add(EventTypes.ddChangeQual, id);
+        }
+        // demolish
+        if (EventRules.ruleDemolishDwelling(dd)) {
+            queue.add(EventTypes.ddDemolition, id);
+        }
+    }
+
+
+    private interface EventGenerator<T> {
+        void addEvents(T entity, EventQueue queue);
+    }
+
+
+    private <T> EventQueue createEventsInParallel (final EntityStore<T> entities, String label, final EventGenerator<T> generator) {
+        // split slots of the entity store into one contiguous partition per thread, evaluate event rules for each
+        // partition in parallel and merge partitions in their original order, which results in the same list as the
+        // single-threaded scan. Entities are read in place, no snapshot array is created.
+
+        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
+        int slotCount = entities.getSlotCount();
+        int numberOfPartitions = Math.max(1, Math.min(pool.getParallelism(), slotCount));
+        int partitionSize = (slotCount + numberOfPartitions - 1) / numberOfPartitions;
+        List<Callable<EventQueue>> tasks = new ArrayList<>();
+        for (int part = 0; part < numberOfPartitions; part++) {
+            final int from = part * partitionSize;
+            final int to = Math.min(from + partitionSize, slotCount);
+            tasks.add(new Callable<EventQueue>() {
+                public EventQueue call() {
+                    EventQueue queue = new EventQueue((to - from) * 2);
+                    for (int slot = from; slot < to; slot++) {
+                        T entity = entities.getEntityInSlot(slot);
+                        if (entity != null) generator.addEvents(entity, queue);
+                    }
+                    return queue;
+                }
+            });
+        }
+
+        EventQueue merged = new EventQueue(entities.size());
+        try {
+            List<Future<EventQueue>> results = pool.invokeAll(tasks);
+            for (int part = 0; part < results.size(); part++) {
+                EventQueue queue = results.get(part).get();
+                logPartitionCounts(label, part, queue);
+                merged.addAll(queue);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not create events for " + label + " in parallel.", e);
+            throw new RuntimeException(e);
+        }
+        return merged;
+    }
+
+
+    private static void logPartitionCounts (String label, int partition, EventQueue queue) {
+        int[] counts = queue.countByType();
+        StringBuilder sb = new StringBuilder("    Partition " + partition + " of " + label + ":");
+        for (EventTypes et: EventTypes.values()) {
+            if (counts[et.ordinal()] > 0) sb.append(" ").append(et.toString()).append("=").append(counts[et.ordinal()]);
+        }
+        logger.info(sb.toString());
+    }
+
+
+    public static synchronized void countEvent (EventTypes et) {
+        // add 1 to counter for EventTypes et, synchronized as events may be simulated in parallel
         int counter = eventCounter.get(et) + 1;
         eventCounter.put(et, counter);
     }
 
 
-    public static void countEvent (EventTypes et, int amount) {
+    public static synchronized void countEvent (EventTypes et, int amount) {
         // add <amount> to counter for EventTypes et
         int counter = eventCounter.get(et) + amount;
         eventCounter.put(et, counter);
@@ -245,16 +321,19 @@ public class EventManager {
     }
 
 
-    public Integer getNumberOfEvents() {
-        // returns size of event array
+    public int getNumberOfEvents() {
+        // returns number of events in queue
         return events.size();
     }
 
 
-    public Integer[] selectNextEvent() {
-        // select the next event in order stored in randomEventOrder
-        Integer[] event = events.get(randomEventOrder[posInArray]);
-        posInArray++;
-        return event;
+    public boolean hasNextEvent() {
+        return events.hasNext();
+    }
+
+
+    public long selectNextEvent() {
+        // select the next event in randomized order, use EventQueue.getEventType() and getEventId() to decode
+        return events.next();
     }
 }
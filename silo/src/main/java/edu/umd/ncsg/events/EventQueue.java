@@ -0,0 +1,105 @@
+package edu.umd.ncsg.events;
+
+import java.util.Random;
+
+/**
+ * Packed list of events. Every event is stored as a single primitive long that holds the event type in the upper
+ * 32 bits and the id of the person, household, dwelling or planned case in the lower 32 bits. This avoids creating
+ * one object per event, which matters when several million events are simulated every year.
+ **/
+
+public class EventQueue {
+
+    private long[] events;
+    private int size;
+    private int posInQueue;
+
+
+    public EventQueue (int initialCapacity) {
+        events = new long[Math.max(initialCapacity, 16)];
+        size = 0;
+        posInQueue = 0;
+    }
+
+
+    public static long encode (int eventType, int id) {
+        return ((long) eventType << 32) | (id & 0xFFFFFFFFL);
+    }
+
+
+    public static int getEventType (long event) {
+        return (int) (event >>> 32);
+    }
+
+
+    public static int getEventId (long event) {
+        return (int) event;
+    }
+
+
+    public void add (EventTypes et, int id) {
+        // add event of type et for person/household/dwelling id
+        if (size == events.length) grow(size + 1);
+        events[size] = encode(et.ordinal(), id);
+        size++;
+    }
+
+
+    public void addAll (EventQueue other) {
+        // append all events of other queue in their current order
+        if (size + other.size > events.length) grow(size + other.size);
+        System.arraycopy(other.events, 0, events, size, other.size);
+        size += other.size;
+    }
+
+
+    private void grow (int minCapacity) {
+        int newCapacity = Math.max(minCapacity, events.length + (events.length >> 1));
+        long[] larger = new long[newCapacity];
+        System.arraycopy(events, 0, larger, 0, size);
+        events = larger;
+    }
+
+
+    public void shuffle (Random rand) {
+        // randomize order of events in place (Fisher-Yates), reproducible for a given state of rand
+        for (int i = size - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            long tmp = events[i];
+            events[i] = events[j];
+            events[j] = tmp;
+        }
+        posInQueue = 0;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public long get (int position) {
+        return events[position];
+    }
+
+
+    public boolean hasNext() {
+        return posInQueue < size;
+    }
+
+
+    public long next() {
+        // return next event in current order
+        long event = events[posInQueue];
+        posInQueue++;
+        return event;
+    }
+
+
+    public int[] countByType() {
+        // return number of events by ordinal of EventTypes
+        int[] counts = new int[EventTypes.values().length];
+        for (int i = 0; i < size; i++) counts[getEventType(events[i])]++;
+        return counts;
+    }
+}
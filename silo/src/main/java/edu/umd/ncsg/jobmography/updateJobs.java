@@ -4,17 +4,19 @@ import com.pb.common.datafile.TableDataSet;
 import edu.umd.ncsg.SiloUtil;
 import edu.umd.ncsg.data.*;
 import edu.umd.ncsg.events.EventRules;
+import edu.umd.ncsg.utils.RandomStreams;
+import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
 import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
-import com.pb.sawdust.calculator.Function1;
-import com.pb.sawdust.util.array.ArrayUtil;
-import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
-import com.pb.sawdust.util.concurrent.IteratorAction;
+import java.util.concurrent.Future;
 
 /**
  * Reads exogenous forecast for jobs and adds/removes jobs accordingly
@@ -28,6 +30,7 @@ public class updateJobs {
     protected transient Logger logger = Logger.getLogger(updateJobs.class);
     protected static final String PROPERTIES_EMPLOYMENT_FORECAST     = "interpol.empl.forecast";
     private ResourceBundle rb;
+    private static final int ZONES_PER_RANDOM_STREAM = 100;
     private HashMap<String, int[]> jobsAvailableForRemoval;
 
     public updateJobs(ResourceBundle rb) {
@@ -124,35 +127,18 @@ public class updateJobs {
 
         if (!EventRules.ruleStartNewJob() && !EventRules.ruleQuitJob()) return;
         logger.info("  Updating job market based on exogenous forecast for " + year + " (multi-threaded step)");
-        int[][] jobsByZone = new int[JobType.getNumberOfJobTypes()][geoData.getHighestZonalId()+1];
-        for (Job jj: Job.getJobArray()) {
+        final int[][] jobsByZone = new int[JobType.getNumberOfJobTypes()][geoData.getHighestZonalId()+1];
+        for (Job jj: Job.getJobs()) {
             int jobTypeId = JobType.getOrdinal(jj.getType());
             jobsByZone[jobTypeId][jj.getZone()]++;
         }
 
         String dir = SiloUtil.baseDirectory + "scenOutput/" + SiloUtil.scenarioName + "/employmentForecast/";
         String forecastFileName = dir + rb.getString(PROPERTIES_EMPLOYMENT_FORECAST) + year + ".csv";
-        TableDataSet forecast = SiloUtil.readCSVfile(forecastFileName);
-
-        ArrayList<String> employmentChangeList = new ArrayList<>();
-        for (int row = 1; row <= forecast.getRowCount(); row++) {
-            int zone = (int) forecast.getValueAt(row, "zone");
-            for (String jt: JobType.getJobTypes()) {
-                int jobsExogenousForecast = (int) forecast.getValueAt(row, jt);
-                if (jobsExogenousForecast > jobsByZone[JobType.getOrdinal(jt)][zone]) {
-                    int change = jobsExogenousForecast - jobsByZone[JobType.getOrdinal(jt)][zone];
-                    employmentChangeList.add("add:" + jt + "." + zone + "." + change);
-//                    addJobs(jt, zone, change);
-                } else if (jobsExogenousForecast < jobsByZone[JobType.getOrdinal(jt)][zone]) {
-                    int change = jobsByZone[JobType.getOrdinal(jt)][zone] - jobsExogenousForecast;
-//                    removeJobs(jt, zone, change);
-                    employmentChangeList.add("rem:" + jt + "." + zone + "." + change);
-                }
-            }
-        }
+        final TableDataSet forecast = SiloUtil.readCSVfile(forecastFileName);
 
         jobsAvailableForRemoval = new HashMap<>();
-        for (Job jj: Job.getJobArray()) {
+        for (Job jj: Job.getJobs()) {
             String token = jj.getType() + "." + jj.getZone() + "." + (jj.getWorkerId() == -1);
             if (jobsAvailableForRemoval.containsKey(token)) {
                 int[] jobList = jobsAvailableForRemoval.get(token);
@@ -162,96 +148,118 @@ public class updateJobs {
             }
         }
 
-
-        // Multi-threading code
-        Function1<String,Void> JobChangeMethod = new Function1<String,Void>() {
-            public Void apply(String employmentChangeDefinition) {
-                String[] change = employmentChangeDefinition.split(":");
-                if (change[0].equalsIgnoreCase("add")) {
-                    addJobs(change[1]);
-                } else {              // token "rem"
-                    removeJobs(change[1]);
+        // Multi-threading code: rows of the forecast are split into chunks of fixed size, and every chunk draws from its
+        // own random number stream when selecting the jobs to be removed. Tasks only read the job store. Changes are
+        // applied afterwards in the order of the forecast file, so that job IDs do not depend on the number of threads.
+        List<Callable<List<JobChange>>> tasks = new ArrayList<>();
+        for (int chunk = 0; chunk * ZONES_PER_RANDOM_STREAM < forecast.getRowCount(); chunk++) {
+            final int from = chunk * ZONES_PER_RANDOM_STREAM + 1;
+            final int to = Math.min(from + ZONES_PER_RANDOM_STREAM - 1, forecast.getRowCount());
+            final Random rand = RandomStreams.createStream("updateJobs", year, chunk);
+            tasks.add(new Callable<List<JobChange>>() {
+                public List<JobChange> call() {
+                    List<JobChange> changes = new ArrayList<>();
+                    for (int row = from; row <= to; row++) {
+                        int zone = (int) forecast.getValueAt(row, "zone");
+                        for (String jt: JobType.getJobTypes()) {
+                            int jobsExogenousForecast = (int) forecast.getValueAt(row, jt);
+                            int jobsNow = jobsByZone[JobType.getOrdinal(jt)][zone];
+                            if (jobsExogenousForecast > jobsNow) {
+                                changes.add(new JobChange(jt, zone, jobsExogenousForecast - jobsNow, null));
+                            } else if (jobsExogenousForecast < jobsNow) {
+                                int[] removeJobs = selectJobsToRemove(jt, zone, jobsNow - jobsExogenousForecast, rand);
+                                changes.add(new JobChange(jt, zone, 0, removeJobs));
+                            }
+                        }
+                    }
+                    return changes;
+                }
+            });
+        }
+        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
+        try {
+            for (Future<List<JobChange>> result: pool.invokeAll(tasks)) {
+                for (JobChange change: result.get()) {
+                    if (change.jobsToRemove == null) {
+                        addJobs(change.type, change.zone, change.jobsToAdd);
+                    } else {
+                        removeJobs(change.type, change.zone, change.jobsToRemove);
+                    }
                 }
-                return null;
             }
-        };
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not update job inventory for " + year + ".", e);
+            throw new RuntimeException(e);
+        }
+    }
 
-        String[] code = SiloUtil.convertStringArrayListToArray(employmentChangeList);
-        Iterator<String> jobChangeIterator = ArrayUtil.getIterator(code);
-        IteratorAction<String> itTask = new IteratorAction<>(jobChangeIterator, JobChangeMethod);
-        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
-        pool.execute(itTask);
-        itTask.waitForCompletion();
 
-        // Fix job map, which for some reason keeps getting messed up
-        for (int jobId: Job.getJobMapIDs()) {
-            Job jj = Job.getJobFromId(jobId);
-            if (jj == null) {
-                Job.removeJob(jobId);
-                logger.warn("Had to manually remove Job " + jobId + " from job map.");
+    private int[] selectJobsToRemove (String type, int zone, int change, Random rand) {
+        // select jobs to be removed, eliminating vacant jobs first and jobs that are filled with workers only if necessary
+
+        int[] removeJobs = new int[change];
+        int count = 0;
+        for (boolean vacant: new boolean[]{true, false}) {
+            int[] jobs = jobsAvailableForRemoval.get(type + "." + zone + "." + vacant);
+            if (jobs == null) continue;
+            jobs = jobs.clone();
+            // partial Fisher-Yates shuffle draws jobs of this zone and type without replacement
+            for (int i = 0; i < jobs.length && count < change; i++) {
+                int j = i + rand.nextInt(jobs.length - i);
+                int selected = jobs[j];
+                jobs[j] = jobs[i];
+                jobs[i] = selected;
+                removeJobs[count++] = selected;
             }
         }
+        return removeJobs;
     }
 
 
-    private void addJobs (String addJobsInstruction) {
+    private void addJobs (String type, int zone, int change) {
         // add new jobs
 
-        String[] definition = addJobsInstruction.split("\\.");
-        String type = definition[0];
-        int zone = Integer.parseInt(definition[1]);
-        int change = Integer.parseInt(definition[2]);
         for (int i = 1; i <= change; i++) {
-            int id;
-            synchronized (Job.class) {
-                id = JobDataManager.getNextJobId();
-                new Job(id, zone, -1, type);
-            }
+            int id = JobDataManager.getNextJobId();
+            new Job(id, zone, -1, type);
             if (id == SiloUtil.trackJj) SiloUtil.trackWriter.println("Job " + id + " of type " + type +
                     " was newly created in zone " + zone + " based on exogenous forecast.");
         }
     }
 
 
-    private void removeJobs (String removeJobsInstructions) {
-        // remove jobs
+    private void removeJobs (String type, int zone, int[] jobsToRemove) {
+        // remove jobs, workers of previously occupied jobs become unemployed
 
-        String[] definition = removeJobsInstructions.split("\\.");
-        String type = definition[0];
-        int zone = Integer.parseInt(definition[1]);
-        int change = Integer.parseInt(definition[2]);
-
-        // first, try to eliminate only jobs that are vacant
-        String tokenVacantJobs = type + "." + zone + "." + true;
-        if (jobsAvailableForRemoval.containsKey(tokenVacantJobs)) {
-            int[] vacantJobs = jobsAvailableForRemoval.get(tokenVacantJobs);
-            int counter = 0;
-            while (counter < vacantJobs.length && change > 0) {
-                synchronized (Job.class) {
-                    Job.removeJob(vacantJobs[counter]);
-                }
-                if (vacantJobs[counter] == SiloUtil.trackJj) SiloUtil.trackWriter.println("Vacant job " + vacantJobs[counter] +
-                        " of type " + type + " was removed in zone " + zone + " based on exogenous forecast.");
-                counter++;
-                change = change - 1;
+        for (int id: jobsToRemove) {
+            Job jobToBeRemoved = Job.getJobFromId(id);
+            int personId = jobToBeRemoved.getWorkerId();
+            if (personId == -1) {
+                Job.removeJob(id);
+                if (id == SiloUtil.trackJj) SiloUtil.trackWriter.println("Vacant job " + id + " of type " + type +
+                        " was removed in zone " + zone + " based on exogenous forecast.");
+            } else {
+                Person.getPersonFromId(personId).quitJob(false);
+                Job.removeJob(id);
+                if (id == SiloUtil.trackJj) SiloUtil.trackWriter.println("Previously occupied job " + id + " of type " +
+                        type + " was removed in zone " + zone + " based on exogenous forecast.");
             }
         }
+    }
 
-        // if necessary (i.e., change still > 0) remove jobs that are filled with workers
-        String tokenOccupiedJobs = type + "." + zone + "." + false;
-        int[] occupiedJobs = jobsAvailableForRemoval.get(tokenOccupiedJobs);
-        int counter = 0;
-        while (change > 0) {
-            Job jobToBeRemoved = Job.getJobFromId(occupiedJobs[counter]);
-            int personId = jobToBeRemoved.getWorkerId();
-            Person.getPersonFromId(personId).quitJob(false);
-            synchronized (Job.class) {
-                Job.removeJob(occupiedJobs[counter]);
-            }
-            if (occupiedJobs[counter] == SiloUtil.trackJj) SiloUtil.trackWriter.println("Previously occupied job " +
-                    occupiedJobs[counter] + " of type " + type + " was removed in zone " + zone + " based on exogenous forecast.");
-            counter++;
-            change = change - 1;
+
+    private static class JobChange {
+        // jobs to be added to or removed from one zone, as selected from the exogenous forecast
+        private final String type;
+        private final int zone;
+        private final int jobsToAdd;
+        private final int[] jobsToRemove;
+
+        private JobChange (String type, int zone, int jobsToAdd, int[] jobsToRemove) {
+            this.type = type;
+            this.zone = zone;
+            this.jobsToAdd = jobsToAdd;
+            this.jobsToRemove = jobsToRemove;
         }
     }
 }
@@ -216,12 +216,11 @@ public class ConstructionModel {
         // calculate scaled average housing price by dwelling type and zone
 
         float[][] avePrice = new float[DwellingType.values().length][geoData.getHighestZonalId() + 1];
-        int[][] counter = new int[DwellingType.values().length][geoData.getHighestZonalId() + 1];
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
-            int dt = dd.getType().ordinal();
-            int zone = dd.getZone();
-            counter[dt][zone]++;
-            avePrice[dt][zone] += dd.getPrice();
+        int[][] counter = new int[DwellingType.values().length][];
+        for (DwellingType dt: DwellingType.values()) {
+            counter[dt.ordinal()] = ZonalCounters.getDwellingsByZone(dt);
+            long[] sumOfPrices = ZonalCounters.getSumOfPricesByZone(dt);
+            for (int zone: geoData.getZones()) avePrice[dt.ordinal()][zone] = sumOfPrices[zone];
         }
         for (DwellingType dt: DwellingType.values()) {
             int dto = dt.ordinal();
@@ -247,11 +246,16 @@ public class ConstructionModel {
 
         float[][] avePrice = new float[DwellingType.values().length][SiloUtil.getHighestVal(geoData.getRegionList()) + 1];
         int[][] counter = new int[DwellingType.values().length][SiloUtil.getHighestVal(geoData.getRegionList()) + 1];
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
-            int dt = dd.getType().ordinal();
-            int region = geoData.getRegionOfZone(dd.getZone());
-            counter[dt][region]++;
-            avePrice[dt][region] += dd.getPrice();
+        for (DwellingType dt: DwellingType.values()) {
+            int[] dwellings = ZonalCounters.getDwellingsByZone(dt);
+            long[] sumOfPrices = ZonalCounters.getSumOfPricesByZone(dt);
+            long[] sumByRegion = new long[avePrice[dt.ordinal()].length];
+            for (int zone: geoData.getZones()) {
+                int region = geoData.getRegionOfZone(zone);
+                counter[dt.ordinal()][region] += dwellings[zone];
+                sumByRegion[region] += sumOfPrices[zone];
+            }
+            for (int region: geoData.getRegionList()) avePrice[dt.ordinal()][region] = sumByRegion[region];
         }
         for (DwellingType dt: DwellingType.values()) {
             int dto = dt.ordinal();
@@ -277,11 +281,14 @@ public class ConstructionModel {
 
         float[][] aveSize = new float[DwellingType.values().length][SiloUtil.getHighestVal(geoData.getRegionList()) + 1];
         int[][] counter = new int[DwellingType.values().length][SiloUtil.getHighestVal(geoData.getRegionList()) + 1];
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
-            int dt = dd.getType().ordinal();
-            int region = geoData.getRegionOfZone(dd.getZone());
-            counter[dt][region]++;
-            aveSize[dt][region] += dd.getBedrooms();
+        for (DwellingType dt: DwellingType.values()) {
+            int[] dwellings = ZonalCounters.getDwellingsByZone(dt);
+            long[] sumOfBedrooms = ZonalCounters.getSumOfBedroomsByZone(dt);
+            for (int zone: geoData.getZones()) {
+                int region = geoData.getRegionOfZone(zone);
+                counter[dt.ordinal()][region] += dwellings[zone];
+                aveSize[dt.ordinal()][region] += sumOfBedrooms[zone];
+            }
         }
         for (DwellingType dt: DwellingType.values()) {
             int dto = dt.ordinal();
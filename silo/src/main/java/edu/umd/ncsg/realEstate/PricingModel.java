@@ -4,12 +4,12 @@ import edu.umd.ncsg.SiloUtil;
 import edu.umd.ncsg.data.DwellingType;
 import edu.umd.ncsg.data.RealEstateDataManager;
 import edu.umd.ncsg.data.geoData;
+import edu.umd.ncsg.utils.AsyncFileWriter;
 import org.apache.log4j.Logger;
 import edu.umd.ncsg.data.Dwelling;
 import com.pb.common.util.ResourceUtil;
 import com.pb.common.calculator.UtilityExpressionCalculator;
 
-import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.ResourceBundle;
 import java.io.File;
@@ -141,12 +141,10 @@ public class PricingModel {
         }
         realEstateData.setAvePriceByDwellingType(averagePrice);
 
-        PrintWriter pw = SiloUtil.openFileForSequentialWriting(("priceUpdate"+String.valueOf(year)+".csv"), false);
+        AsyncFileWriter pw = SiloUtil.openFileForAsynchronousWriting(("priceUpdate"+String.valueOf(year)+".csv"), false);
         pw.println("type,regVacRate,oldPrice,newPrice,frequency");
         for (String token: priceChange.keySet()) {
-            String[] values = token.split("_");
-            for (String val: values) pw.print(val + ",");
-            pw.println(priceChange.get(token));
+            pw.println(token.replace('_', ',') + "," + priceChange.get(token));
         }
         pw.close();
     }
@@ -0,0 +1,129 @@
+package edu.umd.ncsg.relocation;
+
+import java.util.Arrays;
+
+/**
+ * Cache of dwelling utilities calculated by the UEC. The utility of a dwelling depends only on the household type,
+ * the zone, the quality, the number of bedrooms and the price category, which are packed into a single long key.
+ * Keys and utilities are stored in primitive arrays with open addressing to avoid boxing. Not thread-safe, every
+ * thread uses its own cache.
+ **/
+
+public class DwellingUtilityCache {
+
+    private static final long EMPTY = -1L;
+    static final int MAX_SIZE = 1 << 20;    // cache is emptied when it grows beyond this number of utilities
+
+    private long[] keys;
+    private double[] utilities;
+    private int size;
+    private long hits;
+    private long misses;
+
+
+    public DwellingUtilityCache () {
+        keys = new long[4096];
+        Arrays.fill(keys, EMPTY);
+        utilities = new double[4096];
+        size = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+
+    public static long createKey (int householdTypeOrdinal, int zoneIndex, int quality, int bedrooms, int priceCategory) {
+        // pack attributes into one key, returns -1 if any attribute is out of range and cannot be cached
+        if (householdTypeOrdinal < 0 || householdTypeOrdinal > 127 || zoneIndex < 0 || zoneIndex > 0xFFFFFF ||
+                quality < 0 || quality > 0xFF || bedrooms < 0 || bedrooms > 0xFF || priceCategory < 0 ||
+                priceCategory > 0xFFFF) return EMPTY;
+        return ((long) householdTypeOrdinal << 56) | ((long) zoneIndex << 32) | ((long) quality << 24) |
+                ((long) bedrooms << 16) | priceCategory;
+    }
+
+
+    private static int hash (long key) {
+        // mix bits of key, as neighboring zones and price categories would otherwise cluster in the table
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (key ^ (key >>> 33));
+    }
+
+
+    public double get (long key) {
+        // return cached utility for key, or NaN if the utility has not been calculated yet
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                hits++;
+                return utilities[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        misses++;
+        return Double.NaN;
+    }
+
+
+    public void put (long key, double utility) {
+        // store utility for key, table is doubled when it is half full
+        if (size >= MAX_SIZE) clear();
+        if (2 * (size + 1) > keys.length) grow();
+        insert(key, utility);
+    }
+
+
+    private void insert (long key, double utility) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                utilities[slot] = utility;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        utilities[slot] = utility;
+        size++;
+    }
+
+
+    private void grow () {
+        long[] oldKeys = keys;
+        double[] oldUtilities = utilities;
+        keys = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        utilities = new double[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != EMPTY) insert(oldKeys[i], oldUtilities[i]);
+    }
+
+
+    public void clear () {
+        // remove all utilities, needs to be called whenever accessibilities or prices have been updated
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+
+    public int size () {
+        return size;
+    }
+
+
+    public long getHits () {
+        return hits;
+    }
+
+
+    public long getMisses () {
+        return misses;
+    }
+
+
+    public void resetCounters () {
+        hits = 0;
+        misses = 0;
+    }
+}
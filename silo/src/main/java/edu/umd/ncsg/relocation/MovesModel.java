@@ -12,16 +12,27 @@ import edu.umd.ncsg.SiloModel;
 import edu.umd.ncsg.SiloUtil;
 import edu.umd.ncsg.data.*;
 import edu.umd.ncsg.events.EventManager;
+import edu.umd.ncsg.events.EventQueue;
 import edu.umd.ncsg.events.EventRules;
 import edu.umd.ncsg.events.EventTypes;
+import edu.umd.ncsg.utils.DiscreteSampler;
+import edu.umd.ncsg.utils.RandomStreams;
+import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
 import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class MovesModel {
-    Logger logger = Logger.getLogger(MovesModel.class);
+    static Logger logger = Logger.getLogger(MovesModel.class);
     static Logger traceLogger = Logger.getLogger("trace");
 
     protected static final String PROPERTIES_MOVES_UEC_FILE                  = "HH.Moves.UEC.FileName";
@@ -37,6 +48,13 @@ public class MovesModel {
     protected static final String PROPERTIES_SELECT_DWELLING_MN_LOG_MODEL    = "select.dwelling.mn.log.model.parameter";
     protected static final String PROPERTIES_SELECT_DWELLING_RACE_FACTOR     = "relevance.of.race.in.zone.of.dwelling";
     protected static final String PROPERTIES_RUN_SCENARIO_HOUSING_SUBSIDY    = "provide.housing.subsidy.to.low.inc";
+    protected static final String PROPERTIES_SELECT_DWELLING_DIRECT_SAMPLING = "select.dwelling.direct.sampling";
+    protected static final String PROPERTIES_RELOCATE_HOUSEHOLDS_IN_PARALLEL = "relocate.households.in.parallel";
+    protected static final String PROPERTIES_CACHE_DWELLING_UTILITIES        = "cache.dwelling.utilities";
+
+    private static final int MAX_NUMBER_OF_EVALUATED_DWELLINGS = 20;   // No household will evaluate more than 20 dwellings
+    private static final int MAX_NUMBER_OF_CLAIM_RETRIES = 3;          // searches repeated if selected dwelling was taken by another household
+    private static final int MOVES_PER_TASK = 1000;
 
     // properties
     private String uecFileName;
@@ -62,6 +80,24 @@ public class MovesModel {
     private double selectDwellingRaceRelevance;
     private boolean provideRentSubsidyToLowIncomeHh;
     private int[] householdsByRegion;
+    private DiscreteSampler[][] regionSamplerWithoutWorkers;     // by income category and race, null if no region is available
+    private boolean sampleDwellingsDirectly;
+    private boolean relocateInParallel;
+    private boolean cacheDwellingUtilities;
+    private final List<DwellingEvaluator> allDwellingEvaluators = new ArrayList<>();
+    private final ThreadLocal<DwellingEvaluator> dwellingEvaluators = new ThreadLocal<DwellingEvaluator>() {
+        @Override
+        protected DwellingEvaluator initialValue() {
+            // every additional thread of the parallel relocation phase needs its own UEC and DMU
+            return registerDwellingEvaluator(new DwellingEvaluator(createDwellingUtilityModel(), new MovesDMU()));
+        }
+    };
+    private static final ThreadLocal<DwellingSample> dwellingSamples = new ThreadLocal<DwellingSample>() {
+        @Override
+        protected DwellingSample initialValue() {
+            return new DwellingSample();
+        }
+    };
 
 
     public MovesModel(ResourceBundle rb) {
@@ -82,15 +118,70 @@ public class MovesModel {
         setupSelectDwellingModel();
         provideRentSubsidyToLowIncomeHh = ResourceUtil.getBooleanProperty(rb, PROPERTIES_RUN_SCENARIO_HOUSING_SUBSIDY, false);
         if (provideRentSubsidyToLowIncomeHh) RealEstateDataManager.calculateMedianRentByMSA();
+        sampleDwellingsDirectly = ResourceUtil.getBooleanProperty(rb, PROPERTIES_SELECT_DWELLING_DIRECT_SAMPLING, false);
+        relocateInParallel = ResourceUtil.getBooleanProperty(rb, PROPERTIES_RELOCATE_HOUSEHOLDS_IN_PARALLEL, false);
+        // cached utilities skip the UEC, which therefore cannot be logged
+        cacheDwellingUtilities = ResourceUtil.getBooleanProperty(rb, PROPERTIES_CACHE_DWELLING_UTILITIES, true) &&
+                !logCalculationDwelling;
     }
 
 
     private void setupEvaluateDwellings() {
         // set up model to evaluate dwellings
 
+        ddUtilityModel = createDwellingUtilityModel();
+        dwellingEvaluators.set(registerDwellingEvaluator(new DwellingEvaluator(ddUtilityModel, evaluateDwellingDmu)));
+    }
+
+
+    private DwellingEvaluator registerDwellingEvaluator (DwellingEvaluator evaluator) {
+        synchronized (allDwellingEvaluators) {
+            allDwellingEvaluators.add(evaluator);
+        }
+        return evaluator;
+    }
+
+
+    private void clearDwellingUtilityCaches () {
+        // log cache performance and remove all cached utilities, called whenever accessibilities have been updated.
+        // Worker threads are idle at this point, as caches are not thread-safe
+        long hits = getDwellingUtilityCacheHits();
+        long misses = getDwellingUtilityCacheMisses();
+        if (hits + misses > 0) logger.info("  Dwelling utility cache since last update: " + hits + " hits, " + misses +
+                " misses (hit rate " + SiloUtil.rounder(100f * hits / (hits + misses), 1) + "%)");
+        synchronized (allDwellingEvaluators) {
+            for (DwellingEvaluator evaluator: allDwellingEvaluators) {
+                evaluator.cache.clear();
+                evaluator.cache.resetCounters();
+            }
+        }
+    }
+
+
+    public long getDwellingUtilityCacheHits () {
+        // number of dwelling utilities taken from the cache by all threads since the last update
+        long hits = 0;
+        synchronized (allDwellingEvaluators) {
+            for (DwellingEvaluator evaluator: allDwellingEvaluators) hits += evaluator.cache.getHits();
+        }
+        return hits;
+    }
+
+
+    public long getDwellingUtilityCacheMisses () {
+        // number of dwelling utilities calculated with the UEC by all threads since the last update
+        long misses = 0;
+        synchronized (allDwellingEvaluators) {
+            for (DwellingEvaluator evaluator: allDwellingEvaluators) misses += evaluator.cache.getMisses();
+        }
+        return misses;
+    }
+
+
+    private synchronized UtilityExpressionCalculator createDwellingUtilityModel() {
+        // initialize UEC, synchronized as worker threads of the parallel relocation phase create their own copy
         int ddUtilityModelSheetNumber = ResourceUtil.getIntegerProperty(rb, PROPERTIES_MOVES_UEC_MODEL_SHEET_DD_UTIL);
-        // initialize UEC
-        ddUtilityModel = new UtilityExpressionCalculator(new File(uecFileName),
+        return new UtilityExpressionCalculator(new File(uecFileName),
                 ddUtilityModelSheetNumber,
                 dataSheetNumber,
                 SiloUtil.getRbHashMap(),
@@ -98,13 +189,18 @@ public class MovesModel {
     }
 
 
+    public boolean relocatesHouseholdsInParallel() {
+        return relocateInParallel;
+    }
+
+
     public void calculateAverageHousingSatisfaction () {
         // calculate average satisfaction with dwelling (utility) for every household type
 
         evaluateAllDwellingUtilities();
         averageHousingSatisfaction = new double[HouseholdType.values().length];
         int[] hhCountyByType = new int[HouseholdType.values().length];
-        for (Household hh: Household.getHouseholdArray()) {
+        for (Household hh: Household.getHouseholds()) {
             double util = Dwelling.getDwellingFromId(hh.getDwellingId()).getUtilOfResident();
             int count = hh.getHouseholdType().ordinal();
             averageHousingSatisfaction[count] += util;
@@ -118,14 +214,8 @@ public class MovesModel {
     private void calculateRacialCompositionByZoneAndRegion() {
         // Calculate share of races by zone
 
-        zonalRacialComposition = new float[geoData.getZones().length][4];
-        regionalRacialComposition = new float[geoData.getRegionList().length][4];
-        SiloUtil.setArrayToValue(zonalRacialComposition, 0f);
-        for (Household hh: Household.getHouseholdArray()) {
-            zonalRacialComposition[geoData.getZoneIndex(hh.getHomeZone())][hh.getRace().ordinal()]++;
-            int region = geoData.getRegionOfZone(hh.getHomeZone());
-            regionalRacialComposition[geoData.getRegionIndex(region)][hh.getRace().ordinal()]++;
-        }
+        zonalRacialComposition = ZonalCounters.getHouseholdsByZoneIndexAndRace();
+        regionalRacialComposition = ZonalCounters.getHouseholdsByRegionIndexAndRace();
         for (int zone: geoData.getZones()) {
             int zonalSum = 0;
             for (int raceType = 0; raceType < zonalRacialComposition[0].length; raceType++) {
@@ -162,11 +252,12 @@ public class MovesModel {
 
         logger.info("  Evaluating utility of dwellings for current residents and utility of vacant dwellings for all " +
                 "household types");
+        clearDwellingUtilityCaches();
         // everything is available
         numAltsEvalDwelling = ddUtilityModel.getNumberOfAlternatives();
         evalDwellingAvail = new int[numAltsEvalDwelling + 1];
         for (int i = 1; i < evalDwellingAvail.length; i++) evalDwellingAvail[i] = 1;
-        for (Dwelling dd: Dwelling.getDwellingArray()) {
+        for (Dwelling dd: Dwelling.getDwellings()) {
             if (dd.getResidentId() == -1) {
                 // dwelling is vacant, evaluate for all household types
                 double utils[] = updateUtilitiesOfVacantDwelling(dd);
@@ -189,14 +280,19 @@ public class MovesModel {
 
         int incCategory = HouseholdType.convertHouseholdTypeToIncomeCategory(ht);
         float[] shares = RealEstateDataManager.getRentPaymentsForIncomeGroup(incCategory);
-        int priceCategory = (int) (price / 200f + 0.5);   // 25 rent categories are defined as <rent/200>, see RealEstateDataManager
-        priceCategory = Math.min(priceCategory, RealEstateDataManager.rentCategories);
+        int priceCategory = getPriceCategory(price);
         double util = 0;
         for (int i = 0; i <= priceCategory; i++) util += shares[i];
         return (1f - util);   // invert utility, as lower price has higher utility
     }
 
 
+    private static int getPriceCategory (int price) {
+        int priceCategory = (int) (price / 200f + 0.5);   // 25 rent categories are defined as <rent/200>, see RealEstateDataManager
+        return Math.min(priceCategory, RealEstateDataManager.rentCategories);
+    }
+
+
     private double convertPriceToUtility (int price, int incCategory) {
         // convert price into utility
 
@@ -364,6 +460,7 @@ public class MovesModel {
             }
         }
         householdsByRegion = HouseholdDataManager.getNumberOfHouseholdsByRegion();
+        setUpRegionSamplersForHouseholdsWithoutWorkers();
 
         // todo: remove
 //        PrintWriter utilWriter = SiloUtil.openFileForSequentialWriting("regionalUtilities.csv", true);
@@ -392,7 +489,7 @@ public class MovesModel {
 
         int priceSum = 0;
         int counter = 0;
-        for (Dwelling d: Dwelling.getDwellingArray()) {
+        for (Dwelling d: Dwelling.getDwellings()) {
             int zone = d.getZone();
             if (geoData.getRegionOfZone(zone) == region) {
                 priceSum += d.getPrice();
@@ -429,6 +526,24 @@ public class MovesModel {
     }
 
 
+    private void setUpRegionSamplersForHouseholdsWithoutWorkers() {
+        // without workers, probabilities to select a region depend on income and race only and remain the same for the
+        // entire year, prepare them once instead of summing up region utilities for every move
+
+        regionSamplerWithoutWorkers = new DiscreteSampler[SiloUtil.incBrackets.length + 1][Race.values().length];
+        for (int income = 1; income <= SiloUtil.incBrackets.length + 1; income++) {
+            for (Race race: Race.values()) {
+                double[] regionProbabilities = new double[numAltsSelReg];
+                for (int i = 0; i < numAltsSelReg; i++) {
+                    regionProbabilities[i] = utilityRegion[income - 1][race.ordinal()][i] * householdsByRegion[i];
+                }
+                if (SiloUtil.getSum(regionProbabilities) > 0)
+                    regionSamplerWithoutWorkers[income - 1][race.ordinal()] = DiscreteSampler.cumulative(regionProbabilities);
+            }
+        }
+    }
+
+
     public double[] getRegionUtilities (HouseholdType ht, Race race, int[] workZones) {
         // return utility of regions based on household type and based on work location of workers in household
 
@@ -471,7 +586,118 @@ public class MovesModel {
     }
 
 
+    public void chooseMovesInParallel (final EventQueue moves, int year) {
+        // Alternative to chooseMove() for all household moves of this year that were collected in moves. Households
+        // decide whether to move and select a dwelling concurrently, all of them seeing the vacancies at the beginning
+        // of this phase. The selected dwellings are claimed afterwards one household at a time in the order of the
+        // event queue. A household whose dwelling has been claimed by a household earlier in the queue searches again
+        // with its own random number stream. As every household draws from a stream of its own, results do not
+        // depend on the number of threads or on the order in which threads happen to finish.
+
+        if (moves.size() == 0) return;
+        logger.info("  Relocating households in parallel");
+        DwellingSearch search = new DwellingSearch() {
+            public int selectDwelling (int hhId, Random rand) {
+                return selectDwellingConcurrently(hhId, rand);
+            }
+            public int searchAgain (Household hh, Random rand) {
+                return searchForNewDwelling(hh.getPersons(), rand);
+            }
+        };
+        int[] counts = chooseMovesInParallel(moves, year, search, ForkJoinPoolFactory.getForkJoinPool());
+        EventManager.countEvent(EventTypes.householdMove, counts[0]);
+        logger.info("  " + counts[0] + " households moved, " + counts[1] + " claims on dwellings were retried after a conflict");
+    }
+
+
+    static int[] chooseMovesInParallel (final EventQueue moves, final int year, final DwellingSearch search,
+                                        ForkJoinPool pool) {
+        // selects dwellings concurrently in pool and claims them in the order of moves, returns the number of households
+        // that moved and the number of claims that were retried
+
+        final int[] selectedDwellings = new int[moves.size()];
+        final Random[] streams = new Random[moves.size()];
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int chunk = 0; chunk * MOVES_PER_TASK < moves.size(); chunk++) {
+            final int from = chunk * MOVES_PER_TASK;
+            final int to = Math.min(from + MOVES_PER_TASK, moves.size());
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    for (int i = from; i < to; i++) {
+                        int hhId = EventQueue.getEventId(moves.get(i));
+                        streams[i] = RandomStreams.createStream("householdMove", year, hhId);
+                        selectedDwellings[i] = search.selectDwelling(hhId, streams[i]);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Object> result: pool.invokeAll(tasks)) result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not relocate households in parallel.", e);
+            throw new RuntimeException(e);
+        }
+
+        // claim selected dwellings in the order of the event queue
+        int moved = 0;
+        int retries = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            if (selectedDwellings[i] <= 0) continue;
+            Household hh = Household.getHouseholdFromId(EventQueue.getEventId(moves.get(i)));
+            int idNewDD = selectedDwellings[i];
+            int attempt = 0;
+            while (idNewDD > 0 && !claimDwelling(hh, idNewDD)) {
+                if (attempt++ == MAX_NUMBER_OF_CLAIM_RETRIES) {
+                    idNewDD = -1;
+                    break;
+                }
+                retries++;                                        // dwelling was taken by another household, search again
+                idNewDD = search.searchAgain(hh, streams[i]);
+            }
+            if (idNewDD > 0) {
+                moved++;
+                if (hh.getId() == SiloUtil.trackHh) SiloUtil.trackWriter.println("Household " + hh.getId() +
+                        " has moved to dwelling " + idNewDD);
+            } else {
+                if (hh.getId() == SiloUtil.trackHh) SiloUtil.trackWriter.println("Household " + hh.getId() +
+                        " intended to move but could not find an adequate dwelling.");
+            }
+        }
+        return new int[]{moved, retries};
+    }
+
+
+    private int selectDwellingConcurrently (int hhId, Random rand) {
+        // first part of chooseMove(), returns the dwelling selected by this household or -1 if it does not move. Safe to
+        // be called by several threads at the same time as long as no household is moved.
+
+        Household hh = Household.getHouseholdFromId(hhId);
+        if (!EventRules.ruleHouseholdMove(hh)) return -1;        // Household does not exist anymore
+        if (!moveOrNot(hhId, rand)) return -1;
+        int idNewDD = searchForNewDwelling(hh.getPersons(), rand);
+        if (idNewDD <= 0 && hhId == SiloUtil.trackHh) SiloUtil.trackWriter.println("Household " + hhId +
+                " intended to move but could not find an adequate dwelling.");
+        return idNewDD;
+    }
+
+
+    private static boolean claimDwelling (Household hh, int idNewDD) {
+        // move household hh into dwelling idNewDD if this dwelling is still vacant, return false otherwise
+
+        Dwelling newDd = Dwelling.getDwellingFromId(idNewDD);
+        if (newDd.getResidentId() != -1) return false;
+        relocateHousehold(hh, hh.getDwellingId(), idNewDD);
+        return true;
+    }
+
+
     private boolean moveOrNot (int hhId) {
+        return moveOrNot(hhId, SiloModel.rand);
+    }
+
+
+    private boolean moveOrNot (int hhId, Random rand) {
         // select whether this household considers relocating or not
 
         Household hh = Household.getHouseholdFromId(hhId);
@@ -484,7 +710,7 @@ public class MovesModel {
         prop[0] = 1. - 1. / (1. + parameter_MoveOrNotShift *
                 Math.exp(parameter_MoveOrNotSlope * (averageHousingSatisfaction[hhType.ordinal()] - currentUtil)));
         prop[1] = 1. - prop[0];
-        return SiloUtil.select(prop) == 0;
+        return SiloUtil.select(prop, rand) == 0;
     }
 
 
@@ -497,6 +723,11 @@ public class MovesModel {
 
 
     public int searchForNewDwelling(Person[] persons) {
+        return searchForNewDwelling(persons, SiloModel.rand);
+    }
+
+
+    private int searchForNewDwelling(Person[] persons, Random rand) {
         // search alternative dwellings
 
         // data preparation
@@ -516,6 +747,39 @@ public class MovesModel {
         HouseholdType ht = HouseholdDataManager.defineHouseholdType(persons.length, incomeBracket);
 
         // Step 1: select region
+        int[] regions = geoData.getRegionList();
+        int selectedRegion;
+        if (workZones.length == 0) {
+            int incomeCategory = HouseholdType.convertHouseholdTypeToIncomeCategory(ht);
+            DiscreteSampler sampler = regionSamplerWithoutWorkers[incomeCategory - 1][householdRace.ordinal()];
+            if (sampler == null) return -1;
+            selectedRegion = sampler.select(rand);
+        } else {
+            selectedRegion = selectRegion(ht, householdRace, workZones, rand);
+            if (selectedRegion == -1) return -1;
+        }
+
+        // Step 2: select vacant dwelling in selected region
+        if (sampleDwellingsDirectly)
+            return selectSampledDwelling(regions[selectedRegion], ht, householdIncome, householdRace, rand);
+        int[] vacantDwellings = RealEstateDataManager.getListOfVacantDwellingsInRegion(regions[selectedRegion]);
+        double[] expProbs = SiloUtil.createArrayWithValue(vacantDwellings.length, 0d);
+        int maxNumberOfDwellings = Math.min(MAX_NUMBER_OF_EVALUATED_DWELLINGS, vacantDwellings.length);
+        float factor = ((float) maxNumberOfDwellings / (float) vacantDwellings.length);
+        for (int i = 0; i < vacantDwellings.length; i++) {
+            if (rand.nextFloat() > factor) continue;
+            Dwelling dd = Dwelling.getDwellingFromId(vacantDwellings[i]);
+            expProbs[i] = getDwellingSelectionProbability(dd, ht, householdIncome, householdRace);
+        }
+        if (SiloUtil.getSum(expProbs) == 0) return -1;    // could not find dwelling that fits restrictions
+        int selected = SiloUtil.select(expProbs, rand);
+        return vacantDwellings[selected];
+    }
+
+
+    private int selectRegion (HouseholdType ht, Race householdRace, int[] workZones, Random rand) {
+        // select region based on region utilities that depend on work locations, return -1 if no region is available
+
         int[] regions = geoData.getRegionList();
         double[] regionUtilities = getRegionUtilities(ht, householdRace, workZones);
         // todo: adjust probabilities to make that households tend to move shorter distances (dist to work is already represented)
@@ -546,41 +810,142 @@ public class MovesModel {
             }
         }
         if (SiloUtil.getSum(regionUtilities) == 0) return -1;
-        int selectedRegion = SiloUtil.select(regionUtilities);
+        return SiloUtil.select(regionUtilities, rand);
+    }
 
-        // Step 2: select vacant dwelling in selected region
-        int[] vacantDwellings = RealEstateDataManager.getListOfVacantDwellingsInRegion(regions[selectedRegion]);
-        double[] expProbs = SiloUtil.createArrayWithValue(vacantDwellings.length, 0d);
-        int maxNumberOfDwellings = Math.min(20, vacantDwellings.length);  // No household will evaluate more than 20 dwellings
-        float factor = ((float) maxNumberOfDwellings / (float) vacantDwellings.length);
-        for (int i = 0; i < vacantDwellings.length; i++) {
-            if (SiloModel.rand.nextFloat() > factor) continue;
-            Dwelling dd = Dwelling.getDwellingFromId(vacantDwellings[i]);
-            int msa = geoData.getMSAOfZone(dd.getZone());
-            if (dd.getRestriction() > 0 &&    // dwelling is restricted to households with certain income
-                    householdIncome > (HouseholdDataManager.getMedianIncome(msa) * dd.getRestriction())) continue;
-            float racialShare = 1;
-            if (householdRace != Race.other) {
-                racialShare = getZonalRacialShare(dd.getZone(), householdRace);
-            }
-            // multiply by racial share to make zones with higher own racial share more attractive
-            double adjProb;
-            if (householdQualifiesForSubsidy(householdIncome, dd.getZone(), dd.getPrice())) {
-                adjProb = Math.pow(calculateUtility(ht, householdIncome, dd), (1 - selectDwellingRaceRelevance)) *
-                        Math.pow(racialShare, selectDwellingRaceRelevance);
-            } else {
-                adjProb = Math.pow(dd.getUtilByHhType()[ht.ordinal()], (1 - selectDwellingRaceRelevance)) *
-                        Math.pow(racialShare, selectDwellingRaceRelevance);
+
+    private int selectSampledDwelling (int region, HouseholdType ht, int householdIncome, Race householdRace,
+                                       Random rand) {
+        // Draw candidate dwellings directly from the vacancy list of region instead of copying the list and drawing a
+        // random number for every vacant dwelling. Thinning every dwelling with probability factor = 20 / n results in a
+        // binomially distributed number of candidates, which are uniformly distributed across the list. Therefore, the
+        // number of candidates is drawn from Binomial(n, factor) first, and then as many distinct positions are drawn.
+
+        DwellingSample sample = dwellingSamples.get();
+        int numberOfCandidates;
+        int vacancies = RealEstateDataManager.getVacancyListLengthOfRegion(region);
+        if (vacancies == 0) return -1;
+        if (vacancies <= MAX_NUMBER_OF_EVALUATED_DWELLINGS) {
+            numberOfCandidates = vacancies;                       // factor is 1, every vacant dwelling is evaluated
+        } else {
+            double factor = (double) MAX_NUMBER_OF_EVALUATED_DWELLINGS / (double) vacancies;
+            numberOfCandidates = drawBinomial(vacancies, factor, rand);
+        }
+        if (numberOfCandidates == 0) return -1;
+        sample.ensureCapacity(numberOfCandidates);
+        drawDistinctPositions(vacancies, numberOfCandidates, sample.positions, rand);
+        for (int i = 0; i < numberOfCandidates; i++)
+            sample.dwellingIds[i] = RealEstateDataManager.getVacantDwellingInRegion(region, sample.positions[i]);
+
+        double sum = 0;
+        for (int i = 0; i < numberOfCandidates; i++) {
+            sample.expProbs[i] = getDwellingSelectionProbability(Dwelling.getDwellingFromId(sample.dwellingIds[i]), ht,
+                    householdIncome, householdRace);
+            sum += sample.expProbs[i];
+        }
+        if (sum == 0) return -1;    // could not find dwelling that fits restrictions
+        int selected = SiloUtil.select(sample.expProbs, numberOfCandidates, rand);
+        return sample.dwellingIds[selected];
+    }
+
+
+    static int drawBinomial (int trials, double probability, Random rand) {
+        // draw from binomial distribution by inversion, the expected number of steps equals the mean (about 20 here)
+        double u = rand.nextDouble();
+        double odds = probability / (1 - probability);
+        double prob = Math.pow(1 - probability, trials);
+        double cumulative = prob;
+        int k = 0;
+        while (u > cumulative && k < trials) {
+            prob = prob * odds * (trials - k) / (k + 1);
+            k++;
+            cumulative += prob;
+        }
+        return k;
+    }
+
+
+    static void drawDistinctPositions (int range, int count, int[] positions, Random rand) {
+        // draw count distinct positions between 0 and range - 1 with equal probability (Floyd's algorithm)
+        int drawn = 0;
+        for (int upper = range - count; upper < range; upper++) {
+            int candidate = rand.nextInt(upper + 1);
+            for (int i = 0; i < drawn; i++) {
+                if (positions[i] == candidate) {
+                    candidate = upper;
+                    break;
+                }
             }
-            expProbs[i] = Math.exp(parameter_SelectDD * adjProb);
+            positions[drawn] = candidate;
+            drawn++;
+        }
+    }
+
+
+    private double getDwellingSelectionProbability (Dwelling dd, HouseholdType ht, int householdIncome, Race householdRace) {
+        // return exponentiated utility of dwelling dd for a household searching for a new dwelling, or 0 if the
+        // household may not live in this dwelling
+        int msa = geoData.getMSAOfZone(dd.getZone());
+        if (dd.getRestriction() > 0 &&    // dwelling is restricted to households with certain income
+                householdIncome > (HouseholdDataManager.getMedianIncome(msa) * dd.getRestriction())) return 0;
+        float racialShare = 1;
+        if (householdRace != Race.other) {
+            racialShare = getZonalRacialShare(dd.getZone(), householdRace);
+        }
+        // multiply by racial share to make zones with higher own racial share more attractive
+        double adjProb;
+        if (householdQualifiesForSubsidy(householdIncome, dd.getZone(), dd.getPrice())) {
+            adjProb = Math.pow(calculateUtility(ht, householdIncome, dd), (1 - selectDwellingRaceRelevance)) *
+                    Math.pow(racialShare, selectDwellingRaceRelevance);
+        } else {
+            adjProb = Math.pow(dd.getUtilByHhType()[ht.ordinal()], (1 - selectDwellingRaceRelevance)) *
+                    Math.pow(racialShare, selectDwellingRaceRelevance);
+        }
+        return Math.exp(parameter_SelectDD * adjProb);
+    }
+
+
+    interface DwellingSearch {
+        // dwelling selection used by chooseMovesInParallel(), returns -1 if no dwelling was selected
+        int selectDwelling (int hhId, Random rand);     // first selection, called concurrently
+        int searchAgain (Household hh, Random rand);    // after the selected dwelling was claimed by another household
+    }
+
+
+    private static class DwellingSample {
+        // reusable buffers for candidate dwellings, one instance per thread
+        int[] positions = new int[64];
+        int[] dwellingIds = new int[64];
+        double[] expProbs = new double[64];
+
+        void ensureCapacity (int size) {
+            if (size <= positions.length) return;
+            positions = new int[size];
+            dwellingIds = new int[size];
+            expProbs = new double[size];
+        }
+    }
+
+
+    private static class DwellingEvaluator {
+        // UEC, DMU and utility cache to calculate dwelling utilities, one instance per thread as none is thread-safe
+        final UtilityExpressionCalculator model;
+        final MovesDMU dmu;
+        final DwellingUtilityCache cache = new DwellingUtilityCache();
+
+        DwellingEvaluator (UtilityExpressionCalculator model, MovesDMU dmu) {
+            this.model = model;
+            this.dmu = dmu;
         }
-        if (SiloUtil.getSum(expProbs) == 0) return -1;    // could not find dwelling that fits restrictions
-        int selected = SiloUtil.select(expProbs);
-        return vacantDwellings[selected];
     }
 
 
     public void moveHousehold(Household hh, int idOldDD, int idNewDD) {
+        relocateHousehold(hh, idOldDD, idNewDD);
+    }
+
+
+    private static void relocateHousehold (Household hh, int idOldDD, int idNewDD) {
         // Move household hh from oldDD to newDD
 
         // if this household had a dwelling in this study area before, vacate old dwelling
@@ -601,13 +966,6 @@ public class MovesModel {
     private double calculateUtility (HouseholdType ht, int income, Dwelling dd) {
         // calculate utility for household hh in dwelling dd
 
-        evaluateDwellingDmu.setUtilityDwellingQuality(convertQualityToUtility(dd.getQuality()));
-        evaluateDwellingDmu.setUtilityDwellingSize(convertAreaToUtility(dd.getBedrooms()));
-        evaluateDwellingDmu.setUtilityDwellingAutoAccessibility(convertAccessToUtility(Accessibility.getAutoAccessibility(dd.getZone())));
-        evaluateDwellingDmu.setUtilityDwellingTransitAccessibility(convertAccessToUtility(Accessibility.getTransitAccessibility(dd.getZone())));
-        evaluateDwellingDmu.setUtilityDwellingSchoolQuality(geoData.getZonalSchoolQuality(dd.getZone()));
-        evaluateDwellingDmu.setUtilityDwellingCrimeRate(geoData.getCountyCrimeRate(geoData.getCountyOfZone(dd.getZone())));
-
         int price = dd.getPrice();
         if (provideRentSubsidyToLowIncomeHh && income > 0) {     // income equals -1 if dwelling is vacant right now
             // housing subsidy program in place
@@ -619,12 +977,32 @@ public class MovesModel {
             }
         }
 
-        evaluateDwellingDmu.setUtilityDwellingPrice(convertPriceToUtility(price, ht));
-        evaluateDwellingDmu.setType(ht);
-        double util[] = ddUtilityModel.solve(evaluateDwellingDmu.getDmuIndexValues(), evaluateDwellingDmu, evalDwellingAvail);
+        // all UEC inputs are determined by household type, zone, quality, bedrooms and price category, which allows
+        // reusing the utility of any dwelling with the same attributes
+        DwellingEvaluator evaluator = dwellingEvaluators.get();
+        long key = -1;
+        if (cacheDwellingUtilities) {
+            key = DwellingUtilityCache.createKey(ht.ordinal(), geoData.getZoneIndex(dd.getZone()), dd.getQuality(),
+                    dd.getBedrooms(), getPriceCategory(price));
+            if (key != -1) {
+                double cachedUtil = evaluator.cache.get(key);
+                if (!Double.isNaN(cachedUtil)) return cachedUtil;
+            }
+        }
+
+        evaluator.dmu.setUtilityDwellingQuality(convertQualityToUtility(dd.getQuality()));
+        evaluator.dmu.setUtilityDwellingSize(convertAreaToUtility(dd.getBedrooms()));
+        evaluator.dmu.setUtilityDwellingAutoAccessibility(convertAccessToUtility(Accessibility.getAutoAccessibility(dd.getZone())));
+        evaluator.dmu.setUtilityDwellingTransitAccessibility(convertAccessToUtility(Accessibility.getTransitAccessibility(dd.getZone())));
+        evaluator.dmu.setUtilityDwellingSchoolQuality(geoData.getZonalSchoolQuality(dd.getZone()));
+        evaluator.dmu.setUtilityDwellingCrimeRate(geoData.getCountyCrimeRate(geoData.getCountyOfZone(dd.getZone())));
+        evaluator.dmu.setUtilityDwellingPrice(convertPriceToUtility(price, ht));
+        evaluator.dmu.setType(ht);
+        double util[] = evaluator.model.solve(evaluator.dmu.getDmuIndexValues(), evaluator.dmu, evalDwellingAvail);
         // log UEC values for each household type
         if (logCalculationDwelling)
-            ddUtilityModel.logAnswersArray(traceLogger, "Quality of dwelling " + dd.getId());
+            evaluator.model.logAnswersArray(traceLogger, "Quality of dwelling " + dd.getId());
+        if (key != -1) evaluator.cache.put(key, util[0]);
         return util[0];
     }
 
@@ -72,20 +72,13 @@ public class transportModel {
                 rb.getString(PROPERTIES_MSTM_SE_DATA_FILE) + "_" + year + ".csv");
         logger.info("  Summarizing socio-economic data for MSTM to file " + fileName);
         // summarize micro data
-        int[] hhs = new int[geoData.getZones().length];
-        int[] ind = new int[geoData.getZones().length];
-        int[] ret = new int[geoData.getZones().length];
-        int[] off = new int[geoData.getZones().length];
-        int[] oth = new int[geoData.getZones().length];
-
-        for (Household hh : Household.getHouseholdArray()) hhs[geoData.getZoneIndex(hh.getHomeZone())]++;
-        String[] jobTypes = JobType.getJobTypes();
-        for (Job jj : Job.getJobArray()) {
-            if (jj.getType().equalsIgnoreCase(jobTypes[0])) ret[geoData.getZoneIndex(jj.getZone())]++;
-            else if (jj.getType().equalsIgnoreCase(jobTypes[1])) off[geoData.getZoneIndex(jj.getZone())]++;
-            else if (jj.getType().equalsIgnoreCase(jobTypes[2])) ind[geoData.getZoneIndex(jj.getZone())]++;
-            else if (jj.getType().equalsIgnoreCase(jobTypes[3])) oth[geoData.getZoneIndex(jj.getZone())]++;
-        }
+        int[] mstmIncCategories = ResourceUtil.getIntegerArray(rb, PROPERTIES_MSTM_INCOME_BRACKETS);
+        ZonalSummary.setMstmIncomeBrackets(mstmIncCategories);
+        int[] hhs = ZonalSummary.getHouseholdsByHomeZoneIndex();
+        int[] ret = ZonalSummary.getJobsByMstmTypeAndZoneIndex(0);
+        int[] off = ZonalSummary.getJobsByMstmTypeAndZoneIndex(1);
+        int[] ind = ZonalSummary.getJobsByMstmTypeAndZoneIndex(2);
+        int[] oth = ZonalSummary.getJobsByMstmTypeAndZoneIndex(3);
         TableDataSet enrollment = SiloUtil.readCSVfile(rb.getString(PROPERTIES_SCHOOL_ENROLLMENT_DATA));
         enrollment.buildIndex(enrollment.getColumnPosition(";SMZ_N"));
 
@@ -116,17 +109,9 @@ public class transportModel {
         String fileNameWrk = (SiloUtil.baseDirectory + "scenOutput/" + SiloUtil.scenarioName + "/" +
                 rb.getString(PROPERTIES_MSTM_HH_WRK_DATA_FILE) + "_" + year + ".csv");
         logger.info("  Summarizing households by number of workers for MSTM to file " + fileNameWrk);
-        int[] mstmIncCategories = ResourceUtil.getIntegerArray(rb, PROPERTIES_MSTM_INCOME_BRACKETS);
 
         PrintWriter pwWrk = SiloUtil.openFileForSequentialWriting(fileNameWrk, false);
         if (pwWrk == null) return;
-        int[][][] hhByWorkersAndInc = new int[geoData.getZones().length][4][5];
-        for (Household hh : Household.getHouseholdArray()) {
-            int inc = HouseholdDataManager.getSpecifiedIncomeCategoryForIncome(mstmIncCategories, hh.getHhIncome());
-            int wrk = Math.min(HouseholdDataManager.getNumberOfWorkersInHousehold(hh), 3);
-            int zone = hh.getHomeZone();
-            hhByWorkersAndInc[geoData.getZoneIndex(zone)][wrk][inc - 1]++;
-        }
         pwWrk.println("SMZ,WKR0_IQ1,WKR0_IQ2,WKR0_IQ3,WKR0_IQ4,WKR0_IQ5,WKR1_IQ1,WKR1_IQ2,WKR1_IQ3,WKR1_IQ4,WKR1_IQ5," +
                 "WKR2_IQ1,WKR2_IQ2,WKR2_IQ3,WKR2_IQ4,WKR2_IQ5,WKR3_IQ1,WKR3_IQ2,WKR3_IQ3,WKR3_IQ4,WKR3_IQ5,Total");
         // I am guessing:
@@ -134,13 +119,15 @@ public class transportModel {
         // WKR0_IQ1: number of households with zero workers in income quantile 1
         // Etc.
         // kai, dec'15
+        int[][][] hhByWorkers = ZonalSummary.getHouseholdsByWorkersAndMstmIncome();
         for (int zone : geoData.getZones()) {
             pwWrk.print(zone);
             int total = 0;
             for (int wrk = 0; wrk <= 3; wrk++) {
                 for (int inc = 1; inc <= 5; inc++) {
-                    pwWrk.print("," + hhByWorkersAndInc[geoData.getZoneIndex(zone)][wrk][inc-1]);
-                    total += hhByWorkersAndInc[geoData.getZoneIndex(zone)][wrk][inc-1];
+                    int count = hhByWorkers[geoData.getZoneIndex(zone)][wrk][inc - 1];
+                    pwWrk.print("," + count);
+                    total += count;
                 }
             }
             pwWrk.println("," + total);
@@ -153,23 +140,18 @@ public class transportModel {
 
         PrintWriter pwSize = SiloUtil.openFileForSequentialWriting(fileNameSize, false);
         if (pwSize == null) return;
-        int[][][] hhBySizeAndInc = new int[geoData.getZones().length][5][5];
-        for (Household hh : Household.getHouseholdArray()) {
-            int inc = HouseholdDataManager.getSpecifiedIncomeCategoryForIncome(mstmIncCategories, hh.getHhIncome());
-            int size = Math.min(hh.getHhSize(), 5);
-            int zone = hh.getHomeZone();
-            hhBySizeAndInc[geoData.getZoneIndex(zone)][size - 1][inc - 1]++;
-        }
         pwSize.println("SMZ,SIZ1_IQ1,SIZ1_IQ2,SIZ1_IQ3,SIZ1_IQ4,SIZ1_IQ5,SIZ2_IQ1,SIZ2_IQ2,SIZ2_IQ3,SIZ2_IQ4,SIZ2_IQ5," +
                 "SIZ3_IQ1,SIZ3_IQ2,SIZ3_IQ3,SIZ3_IQ4,SIZ3_IQ5,SIZ4_IQ1,SIZ4_IQ2,SIZ4_IQ3,SIZ4_IQ4,SIZ4_IQ5,SIZ5_IQ1," +
                 "SIZ5_IQ2,SIZ5_IQ3,SIZ5_IQ4,SIZ5_IQ5,Total");
+        int[][][] hhBySize = ZonalSummary.getHouseholdsBySizeAndMstmIncome();
         for (int zone : geoData.getZones()) {
             pwSize.print(zone);
             int total = 0;
             for (int size = 1; size <= 5; size++) {
                 for (int inc = 1; inc <= 5; inc++) {
-                    pwSize.print("," + hhBySizeAndInc[geoData.getZoneIndex(zone)][size - 1][inc - 1]);
-                    total += hhBySizeAndInc[geoData.getZoneIndex(zone)][size - 1][inc - 1];
+                    int count = hhBySize[geoData.getZoneIndex(zone)][size - 1][inc - 1];
+                    pwSize.print("," + count);
+                    total += count;
                 }
             }
             pwSize.println("," + total);
@@ -0,0 +1,180 @@
+package edu.umd.ncsg.transportModel.tripGeneration;
+
+import com.pb.common.datafile.TableDataSet;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * Household type definition compiled into a dense lookup table by household size, workers, income category, auto
+ * category and region, so that a household is classified with a single array read instead of scanning all household
+ * types. Every cell holds the first household type whose ranges contain the cell, as the scan in
+ * TripGenerationData.getHhType() would return. Households outside of the table or in cells without a household type
+ * are handed to the scan, which reports them.
+ */
+
+public class HouseholdTypeClassifier {
+
+    private static Logger logger = Logger.getLogger(HouseholdTypeClassifier.class);
+
+    private static final int MAX_SIZE = 7;
+    private static final int MAX_WORKERS = 4;
+    private static final int MAX_AUTOS = 3;
+    private static final int MAX_AUTO_SUFFICIENCY = 2;
+
+    private final TripGenerationData tgData;
+    private final String autoDef;
+    private final boolean autos;
+    private final TableDataSet hhTypeDef;
+
+    // bounds of household types by dimension (size, workers, income, autos, region) and type row
+    private final float[][] low = new float[5][];
+    private final float[][] high = new float[5][];
+    private final int[] hhTypeIds;
+
+    // first value and number of values covered by the table by dimension
+    private final int[] first = new int[5];
+    private final int[] length = new int[5];
+    private final int[] types;
+
+
+    public HouseholdTypeClassifier (TripGenerationData tgData, String autoDef, TableDataSet hhTypeDef) {
+        this.tgData = tgData;
+        this.autoDef = autoDef;
+        this.autos = autoDef.equalsIgnoreCase("autos");
+        this.hhTypeDef = hhTypeDef;
+
+        int numTypes = hhTypeDef.getRowCount();
+        String[] dimensions = {"size", "workers", "income", "autos", "region"};
+        for (int dim = 0; dim < dimensions.length; dim++) {
+            TableDataSet.FloatColumn lowColumn = hhTypeDef.floatColumn(dimensions[dim] + "_l");
+            TableDataSet.FloatColumn highColumn = hhTypeDef.floatColumn(dimensions[dim] + "_h");
+            low[dim] = new float[numTypes];
+            high[dim] = new float[numTypes];
+            for (int hhType = 1; hhType <= numTypes; hhType++) {
+                low[dim][hhType - 1] = lowColumn.getIndexed(hhType);
+                high[dim][hhType - 1] = highColumn.getIndexed(hhType);
+            }
+        }
+        TableDataSet.FloatColumn hhTypeColumn = hhTypeDef.floatColumn("hhType");
+        hhTypeIds = new int[numTypes];
+        for (int hhType = 1; hhType <= numTypes; hhType++) hhTypeIds[hhType - 1] = (int) hhTypeColumn.getIndexed(hhType);
+
+        // table covers all values defined by any household type that a household can take after capping
+        int[] cap = {MAX_SIZE, MAX_WORKERS, Integer.MAX_VALUE, autos ? MAX_AUTOS : MAX_AUTO_SUFFICIENCY, Integer.MAX_VALUE};
+        long cells = 1;
+        for (int dim = 0; dim < 5; dim++) {
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int type = 0; type < numTypes; type++) {
+                min = Math.min(min, low[dim][type]);
+                max = Math.max(max, high[dim][type]);
+            }
+            first[dim] = numTypes == 0 ? 0 : (int) Math.ceil(min);
+            int last = numTypes == 0 ? -1 : (int) Math.min(Math.floor(max), cap[dim]);
+            length[dim] = Math.max(last - first[dim] + 1, 0);
+            cells *= length[dim];
+        }
+        if (cells > Integer.MAX_VALUE) {
+            logger.error("Household type definition covers too many combinations to compile: " + cells);
+            throw new RuntimeException("Household type definition covers too many combinations to compile: " + cells);
+        }
+        types = new int[(int) cells];
+        Arrays.fill(types, -1);
+        fillTable();
+        validate();
+    }
+
+
+    private void fillTable () {
+        // fill cells covered by each household type, last type first so that earlier types take precedence as in scan
+        int[] from = new int[5];
+        int[] to = new int[5];
+        for (int type = hhTypeIds.length - 1; type >= 0; type--) {
+            boolean empty = false;
+            for (int dim = 0; dim < 5; dim++) {
+                from[dim] = Math.max((int) Math.ceil(low[dim][type]) - first[dim], 0);
+                to[dim] = Math.min((int) Math.floor(high[dim][type]) - first[dim], length[dim] - 1);
+                if (from[dim] > to[dim]) empty = true;
+            }
+            if (empty) continue;
+            for (int s = from[0]; s <= to[0]; s++) {
+                for (int w = from[1]; w <= to[1]; w++) {
+                    for (int i = from[2]; i <= to[2]; i++) {
+                        for (int a = from[3]; a <= to[3]; a++) {
+                            for (int r = from[4]; r <= to[4]; r++) {
+                                types[cell(s, w, i, a, r)] = hhTypeIds[type];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    private void validate () {
+        // compare every cell with scan over all household types and count combinations that have no household type
+        int uncovered = 0;
+        int[] value = new int[5];
+        for (int cell = 0; cell < types.length; cell++) {
+            int rest = cell;
+            for (int dim = 4; dim >= 0; dim--) {
+                value[dim] = first[dim] + rest % length[dim];
+                rest /= length[dim];
+            }
+            int scanned = scan(value);
+            if (scanned != types[cell]) {
+                logger.error("Compiled household type " + types[cell] + " differs from scanned household type " +
+                        scanned + " for " + Arrays.toString(value));
+                throw new RuntimeException("Compiled household type differs from scanned household type for " +
+                        Arrays.toString(value));
+            }
+            if (scanned == -1) uncovered++;
+        }
+        if (uncovered > 0) logger.warn("  " + uncovered + " of " + types.length + " combinations of size, workers, " +
+                "income, autos and region are not covered by any household type.");
+    }
+
+
+    private int scan (int[] value) {
+        for (int type = 0; type < hhTypeIds.length; type++) {
+            boolean match = true;
+            for (int dim = 0; dim < 5 && match; dim++) {
+                match = value[dim] >= low[dim][type] && value[dim] <= high[dim][type];
+            }
+            if (match) return hhTypeIds[type];
+        }
+        return -1;
+    }
+
+
+    private int cell (int s, int w, int i, int a, int r) {
+        return (((s * length[1] + w) * length[2] + i) * length[3] + a) * length[4] + r;
+    }
+
+
+    public static int getAutoCategory (boolean autos, int hhWrk, int hhVeh) {
+        // autos are capped at 3, auto sufficiency compares autos with workers
+        if (autos) return Math.min(hhVeh, MAX_AUTOS);
+        if (hhVeh < hhWrk) return 0;        // fewer autos than workers
+        else if (hhVeh == hhWrk) return 1;  // equal number of autos and workers
+        else return 2;                      // more autos than workers
+    }
+
+
+    public int getHhType (int hhSze, int hhWrk, int hhInc, int hhVeh, int hhReg) {
+        int s = Math.min(hhSze, MAX_SIZE) - first[0];
+        int w = Math.min(hhWrk, MAX_WORKERS) - first[1];
+        int i = hhInc - first[2];
+        int a = getAutoCategory(autos, Math.min(hhWrk, MAX_WORKERS), hhVeh) - first[3];
+        int r = hhReg - first[4];
+        if (s >= 0 && s < length[0] && w >= 0 && w < length[1] && i >= 0 && i < length[2] && a >= 0 &&
+                a < length[3] && r >= 0 && r < length[4]) {
+            int type = types[cell(s, w, i, a, r)];
+            if (type != -1) return type;
+        }
+        // household outside of defined types, scan reports it
+        return tgData.getHhType(autoDef, hhTypeDef, hhSze, hhWrk, hhInc, hhVeh, hhReg);
+    }
+}
@@ -2,19 +2,20 @@ package edu.umd.ncsg.transportModel.tripGeneration;
 
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.util.ResourceUtil;
-import com.pb.sawdust.calculator.Function1;
-import com.pb.sawdust.util.array.ArrayUtil;
 import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
-import com.pb.sawdust.util.concurrent.IteratorAction;
 import edu.umd.ncsg.SiloUtil;
 import org.apache.log4j.Logger;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class controls explores new definitions of household types to analyze the household travel survey
@@ -28,10 +29,13 @@ import java.util.concurrent.ForkJoinPool;
 public class HouseholdTypeExploration {
 
     private static Logger logger = Logger.getLogger(HouseholdTypeExploration.class);
+    protected static final String PROPERTIES_MAX_NUMBER_OF_HH_TYPES = "trip.gen.exploration.max.hh.types";
+
     private ResourceBundle rb;
     private String tripPurp;
     private TripGenerationData tgData;
-    final private ArrayList<String> statistics = new ArrayList<>();
+    private SurveyHistogramCube cube;
+    private final AtomicInteger unclassifiedDefinitions = new AtomicInteger();
 
 
     public HouseholdTypeExploration(ResourceBundle rb, TripGenerationData tgData) {
@@ -56,7 +60,6 @@ public class HouseholdTypeExploration {
 
         logger.info("  Exploring potential household definitions for trip purpose " + tripPurp);
 
-        int counterTest = 0;
         int size = 7;
         int workers = 5;
         int income = 12;
@@ -64,80 +67,74 @@ public class HouseholdTypeExploration {
         if (tgData.getAutoMode().equalsIgnoreCase("autos")) autos = 4;
         else autos = 3;
         int region = 3;
-        ArrayList<String> segmentationSize = readSegmentations(size);
-        ArrayList<String> segmentationWorkers = readSegmentations(workers);
-        ArrayList<String> segmentationIncome = readSegmentations(income);
-        ArrayList<String> segmentationAutos = readSegmentations(autos);
-        ArrayList<String> segmentationRegion = readSegmentations(region);
+        cube = new SurveyHistogramCube(tgData, tgData.getAutoMode());
+        // workers and autos are coded 1 to n in segmentations, but start with 0 in household type definitions
+        final Segmentation segmentationSize = new Segmentation(readSegmentations(size), SurveyHistogramCube.SIZE, 0);
+        final Segmentation segmentationWorkers = new Segmentation(readSegmentations(workers), SurveyHistogramCube.WORKERS, 1);
+        final Segmentation segmentationIncome = new Segmentation(readSegmentations(income), SurveyHistogramCube.INCOME, 0);
+        final Segmentation segmentationAutos = new Segmentation(readSegmentations(autos), SurveyHistogramCube.AUTOS, 1);
+        final Segmentation segmentationRegion = new Segmentation(readSegmentations(region), SurveyHistogramCube.REGION, 0);
         int htsRecords = tgData.getNumberOfHouseholdRecords();
+        final int maxCategories = Math.min(htsRecords / tgData.getMinNumberOfRecords(),
+                ResourceUtil.getIntegerProperty(rb, PROPERTIES_MAX_NUMBER_OF_HH_TYPES, Integer.MAX_VALUE));
 
-        ArrayList<String> hhDefinitions = new ArrayList<>();
-//        String sizeToken = "1-7";
-//        String workerToken = "1-5";
-//        String incomeToken = "1-1.2-2.3-3.4-12";
-//        String autoToken = "1-4";
-        for (String sizeToken: segmentationSize) {
-            String[] sizePortions = sizeToken.split("\\.");
-            for (String workerToken : segmentationWorkers) {
-                String[] workerPortions = workerToken.split("\\.");
-                for (String incomeToken : segmentationIncome) {
-                    String[] incomePortions = incomeToken.split("\\.");
-                    for (String autoToken : segmentationAutos) {
-                        String[] autoPortions = autoToken.split("\\.");
-                        for (String regionToken : segmentationRegion) {
-//                            if (!regionToken.equals("1-3")) continue;
-                            String[] regionPortions = regionToken.split("\\.");
-                            int numCategories = sizePortions.length * workerPortions.length * incomePortions.length *
-                                    autoPortions.length * regionPortions.length;
-                            if (numCategories > (htsRecords / tgData.getMinNumberOfRecords())) continue;
-                            if (numCategories > 80) continue;  // todo: Speeds code up, but shouldn't be done.
+        // number definitions and write them out, every combination of size and worker token is analyzed by one task
+        String fileName = rb.getString("trip.rate.statistics") + "_" + tripPurp + "_hhDef.csv";
+        PrintWriter hhDefinitionsFile = SiloUtil.openFileForSequentialWriting(fileName, false);
+        hhDefinitionsFile.println("counter,numTypes,sizeToken,workerToken,incomeToken,autoToken,regionToken");
+        List<Callable<List<String>>> tasks = new ArrayList<>();
+        int counterTest = 0;
+        for (int sizeToken = 0; sizeToken < segmentationSize.size(); sizeToken++) {
+            for (int workerToken = 0; workerToken < segmentationWorkers.size(); workerToken++) {
+                final int firstCounter = counterTest + 1;
+                for (int incomeToken = 0; incomeToken < segmentationIncome.size(); incomeToken++) {
+                    for (int autoToken = 0; autoToken < segmentationAutos.size(); autoToken++) {
+                        for (int regionToken = 0; regionToken < segmentationRegion.size(); regionToken++) {
+                            int numCategories = segmentationSize.portions[sizeToken] *
+                                    segmentationWorkers.portions[workerToken] * segmentationIncome.portions[incomeToken] *
+                                    segmentationAutos.portions[autoToken] * segmentationRegion.portions[regionToken];
+                            if (numCategories > maxCategories) continue;
                             counterTest++;
-
-                            hhDefinitions.add(counterTest + ":" + numCategories + ":" + sizeToken + ":" + workerToken + ":" +
-                                    incomeToken + ":" + autoToken + ":" + regionToken);
-
-//                            counterUseful = analyzeSurvey(counterUseful, numCategories, sizePortions, workerPortions,
-//                                    incomePortions, autoPortions, regionPortions);
-//                            if (counterAll % 100000 == 0) logger.info("  Completed testing " + counterTest +
-//                                    " (Total combinations created thus far " + counterAll + "). Found so far: " +
-//                                    counterUseful);
+                            hhDefinitionsFile.println(counterTest + "," + numCategories + "," +
+                                    segmentationSize.tokens.get(sizeToken) + "," +
+                                    segmentationWorkers.tokens.get(workerToken) + "," +
+                                    segmentationIncome.tokens.get(incomeToken) + "," +
+                                    segmentationAutos.tokens.get(autoToken) + "," +
+                                    segmentationRegion.tokens.get(regionToken));
                         }
                     }
                 }
+                if (counterTest < firstCounter) continue;
+                final int s = sizeToken;
+                final int w = workerToken;
+                tasks.add(new Callable<List<String>>() {
+                    public List<String> call() {
+                        return analyzeSurvey(firstCounter, maxCategories, segmentationSize, s, segmentationWorkers, w,
+                                segmentationIncome, segmentationAutos, segmentationRegion);
+                    }
+                });
             }
         }
+        hhDefinitionsFile.close();
         logger.info("  Analyzing " + counterTest + " household type definitions.");
 
-        // Multi-threading code
-        Function1<String,Void> surveyAnalysis = new Function1<String,Void>() {
-            public Void apply(String hhDefinitionCode) {
-                analyzeSurvey(hhDefinitionCode);
-                return null;
-            }
-        };
-//
-        String[] code = SiloUtil.convertArrayListToStringArray(hhDefinitions);
-        Iterator<String> hhTypeDefinitionIterator = ArrayUtil.getIterator(code);
-        IteratorAction<String> itTask = new IteratorAction<>(hhTypeDefinitionIterator, surveyAnalysis);
-        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
-        pool.execute(itTask);
-        itTask.waitForCompletion();
-
-        // write out statistics
+        // write out statistics in order of definitions
         String fileNameStat = rb.getString("trip.rate.statistics") + "_" + tripPurp + ".csv";
         PrintWriter hhDefinitionStatistics = SiloUtil.openFileForSequentialWriting(fileNameStat, false);
         hhDefinitionStatistics.println("counter,noHhTypes,minNumberOfRecords,aveNumberOfRecords,maxNumberOfRecords,minStdDev," +
                 "aveStdDev,maxStdDev,minCoeffOfVar,aveCoeffOfVar,maxCoeffOfVar");
-        for (String result: statistics) hhDefinitionStatistics.println(result);
-        hhDefinitionStatistics.close();
-        String fileName = rb.getString("trip.rate.statistics") + "_" + tripPurp + "_hhDef.csv";
-        PrintWriter hhDefinitionsFile = SiloUtil.openFileForSequentialWriting(fileName, false);
-        hhDefinitionsFile.println("counter,numTypes,sizeToken,workerToken,incomeToken,autoToken,regionToken");
-        for (String definition: hhDefinitions) {
-            String def = definition.replace(":", ",");
-            hhDefinitionsFile.println(def);
+        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
+        try {
+            for (Future<List<String>> results: pool.invokeAll(tasks)) {
+                for (String result: results.get()) hhDefinitionStatistics.println(result);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not analyze household type definitions.", e);
+            throw new RuntimeException(e);
         }
-        hhDefinitionsFile.close();
+        hhDefinitionStatistics.close();
+        if (unclassifiedDefinitions.get() > 0) logger.warn("  " + unclassifiedDefinitions.get() + " household type " +
+                "definitions were skipped as they do not cover all survey records.");
         logger.info("  Exploration concluded.");
     }
 
@@ -155,57 +152,235 @@ public class HouseholdTypeExploration {
     }
 
 
-    private void analyzeSurvey (String code) {
-        // analyze survey for given household type definition
-
-        String[] codeSegments = code.split(":");
-        int counter = Integer.parseInt(codeSegments[0]);
-        int numCategories = Integer.parseInt(codeSegments[1]);
-        String sizeToken = codeSegments[2];
-        String[] sizePortions = sizeToken.split("\\.");
-        String workerToken = codeSegments[3];
-        String[] workerPortions = workerToken.split("\\.");
-        String incomeToken = codeSegments[4];
-        String[] incomePortions = incomeToken.split("\\.");
-        String autoToken = codeSegments[5];
-        String[] autoPortions = autoToken.split("\\.");
-        String regionToken = codeSegments[6];
-        String[] regionPortions = regionToken.split("\\.");
-        TableDataSet hhTypeDef = tgData.createHouseholdTypeTableDataSet(numCategories, sizePortions, workerPortions,
-                incomePortions, autoPortions, regionPortions);
-        int[] hhTypeArray = tgData.defineHouseholdTypeOfEachSurveyRecords(tgData.getAutoMode(), hhTypeDef);
-        if (hhTypeArray[0] != -1) {
-            processSurvey(hhTypeDef, hhTypeArray, counter);
+    private class Segmentation {
+        // segmentations of one dimension, with the portion that contains each value of the dimension by segmentation
+
+        final ArrayList<String> tokens;
+        final int[] portions;
+        final int[][] portionOfValue;
+        final boolean[] coversSurvey;
+
+        Segmentation (ArrayList<String> tokens, int dimension, int offset) {
+            this.tokens = tokens;
+            portions = new int[tokens.size()];
+            portionOfValue = new int[tokens.size()][cube.getHighestValue(dimension) + 1];
+            coversSurvey = new boolean[tokens.size()];
+            boolean[] surveyed = new boolean[cube.getHighestValue(dimension) + 1];
+            for (int cell = 0; cell < cube.getNumberOfCells(); cell++) surveyed[cube.getValue(cell, dimension)] = true;
+            for (int token = 0; token < tokens.size(); token++) {
+                String[] portionTokens = tokens.get(token).split("\\.");
+                portions[token] = portionTokens.length;
+                // a value in more than one portion belongs to the first household type that contains it
+                Arrays.fill(portionOfValue[token], -1);
+                for (int portion = portionTokens.length - 1; portion >= 0; portion--) {
+                    String[] parts = portionTokens[portion].split("-");
+                    int low = Math.max(Integer.parseInt(parts[0]) - offset, 0);
+                    int high = Math.min(Integer.parseInt(parts[1]) - offset, cube.getHighestValue(dimension));
+                    for (int value = low; value <= high; value++) portionOfValue[token][value] = portion;
+                }
+                coversSurvey[token] = true;
+                for (int value = 0; value < surveyed.length; value++)
+                    if (surveyed[value] && portionOfValue[token][value] == -1) coversSurvey[token] = false;
+            }
+        }
+
+        int size () {
+            return tokens.size();
+        }
+    }
+
+
+    private class Histogram {
+        // households, sum of trips and sum of squared trips by purpose, aggregated into buckets
+
+        final int[] households;
+        final long[] sumOfTrips;
+        final long[] sumOfSquaredTrips;
+
+        Histogram (int buckets) {
+            households = new int[buckets];
+            sumOfTrips = new long[buckets * tripPurposes.values().length];
+            sumOfSquaredTrips = new long[buckets * tripPurposes.values().length];
+        }
+
+        void addTrips (int bucket, Histogram other, int otherBucket) {
+            int numPurposes = tripPurposes.values().length;
+            for (int p = 0; p < numPurposes; p++) {
+                sumOfTrips[bucket * numPurposes + p] += other.sumOfTrips[otherBucket * numPurposes + p];
+                sumOfSquaredTrips[bucket * numPurposes + p] += other.sumOfSquaredTrips[otherBucket * numPurposes + p];
+            }
         }
     }
 
 
-    private void processSurvey (TableDataSet hhTypeDef, int[] hhTypeArray, int counter) {
-        // Read household travel survey
+    private List<String> analyzeSurvey (int firstCounter, int maxCategories, Segmentation segmentationSize, int sizeToken,
+                                        Segmentation segmentationWorkers, int workerToken, Segmentation segmentationIncome,
+                                        Segmentation segmentationAutos, Segmentation segmentationRegion) {
+        // analyze survey for all household type definitions with this size and worker token, in order of counter. Cells
+        // of the survey histogram are summed by size and worker portion first, then by income portion and finally by
+        // auto and region portion, so that every step works on the sums of the previous one.
+
+        List<String> statistics = new ArrayList<>();
+        int numPurposes = tripPurposes.values().length;
+        int minRecords = tgData.getMinNumberOfRecords();
+        int nInc = cube.getHighestValue(SurveyHistogramCube.INCOME) + 1;
+        int nAut = cube.getHighestValue(SurveyHistogramCube.AUTOS) + 1;
+        int nReg = cube.getHighestValue(SurveyHistogramCube.REGION) + 1;
+        boolean coversSurvey = segmentationSize.coversSurvey[sizeToken] && segmentationWorkers.coversSurvey[workerToken];
+
+        // sum by size and worker portion and by income, auto and region value
+        int numWorkerPortions = segmentationWorkers.portions[workerToken];
+        int numSizeWorker = segmentationSize.portions[sizeToken] * numWorkerPortions;
+        Histogram bySizeWorker = new Histogram(numSizeWorker * nInc * nAut * nReg);
+        if (coversSurvey) {
+            for (int cell = 0; cell < cube.getNumberOfCells(); cell++) {
+                int ps = segmentationSize.portionOfValue[sizeToken][cube.getValue(cell, SurveyHistogramCube.SIZE)];
+                int pw = segmentationWorkers.portionOfValue[workerToken][cube.getValue(cell, SurveyHistogramCube.WORKERS)];
+                int bucket = (((ps * numWorkerPortions + pw) * nInc + cube.getValue(cell, SurveyHistogramCube.INCOME)) *
+                        nAut + cube.getValue(cell, SurveyHistogramCube.AUTOS)) * nReg +
+                        cube.getValue(cell, SurveyHistogramCube.REGION);
+                bySizeWorker.households[bucket] += cube.getHouseholds(cell);
+                for (int p = 0; p < numPurposes; p++) {
+                    int[] trips = cube.getTrips(cell, p);
+                    int[] counts = cube.getCounts(cell, p);
+                    for (int entry = 0; entry < trips.length; entry++) {
+                        bySizeWorker.sumOfTrips[bucket * numPurposes + p] += (long) counts[entry] * trips[entry];
+                        bySizeWorker.sumOfSquaredTrips[bucket * numPurposes + p] +=
+                                (long) counts[entry] * trips[entry] * trips[entry];
+                    }
+                }
+            }
+        }
+        // non-empty buckets and households by size and worker portion and income value
+        int numUsed = 0;
+        for (int records: bySizeWorker.households) if (records > 0) numUsed++;
+        int[] usedBuckets = new int[numUsed];
+        int[] householdsBySizeWorkerIncome = new int[numSizeWorker * nInc];
+        numUsed = 0;
+        for (int bucket = 0; bucket < bySizeWorker.households.length; bucket++) {
+            if (bySizeWorker.households[bucket] == 0) continue;
+            usedBuckets[numUsed++] = bucket;
+            householdsBySizeWorkerIncome[bucket / (nAut * nReg)] += bySizeWorker.households[bucket];
+        }
 
-        HashMap<String, Integer[]> tripsByHhTypeAndPurpose = tgData.collectTripFrequencyDistribution(hhTypeArray);
-        evaluateTripFrequencies(hhTypeDef, counter, tripsByHhTypeAndPurpose);
+        int counter = firstCounter - 1;
+        for (int incomeToken = 0; incomeToken < segmentationIncome.size(); incomeToken++) {
+            int numIncomePortions = segmentationIncome.portions[incomeToken];
+            int numPrefix = numSizeWorker * numIncomePortions;
+            if (numPrefix > maxCategories) continue;
+
+            // finer household types cannot have more records than their size, worker and income portion
+            int[] portionOfIncome = segmentationIncome.portionOfValue[incomeToken];
+            boolean prefixUsable = coversSurvey && segmentationIncome.coversSurvey[incomeToken];
+            if (prefixUsable) {
+                int[] householdsByPrefix = new int[numPrefix];
+                int sizeWorkerIncome = 0;
+                for (int sizeWorker = 0; sizeWorker < numSizeWorker; sizeWorker++) {
+                    for (int income = 0; income < nInc; income++) {
+                        int records = householdsBySizeWorkerIncome[sizeWorkerIncome++];
+                        if (records > 0) householdsByPrefix[sizeWorker * numIncomePortions + portionOfIncome[income]] += records;
+                    }
+                }
+                for (int records: householdsByPrefix) if (records < minRecords) prefixUsable = false;
+            }
+
+            // sum by size, worker and income portion, which is the same for all auto and region tokens
+            Histogram byPrefix = null;
+            if (prefixUsable) {
+                byPrefix = new Histogram(numPrefix * nAut * nReg);
+                for (int bucket: usedBuckets) {
+                    int sizeWorkerIncome = bucket / (nAut * nReg);
+                    int prefix = sizeWorkerIncome / nInc * numIncomePortions + portionOfIncome[sizeWorkerIncome % nInc];
+                    int prefixBucket = prefix * nAut * nReg + bucket % (nAut * nReg);
+                    byPrefix.households[prefixBucket] += bySizeWorker.households[bucket];
+                    byPrefix.addTrips(prefixBucket, bySizeWorker, bucket);
+                }
+            }
+
+            for (int autoToken = 0; autoToken < segmentationAutos.size(); autoToken++) {
+                // household types cannot have more records than their size, worker, income and auto portion either
+                boolean autoUsable = prefixUsable;
+                if (autoUsable) {
+                    int numAutoPortions = segmentationAutos.portions[autoToken];
+                    int[] portionOfAutos = segmentationAutos.portionOfValue[autoToken];
+                    int[] householdsByPrefixAndAuto = new int[numPrefix * numAutoPortions];
+                    int bucket = 0;
+                    for (int prefix = 0; prefix < numPrefix; prefix++) {
+                        for (int autos = 0; autos < nAut; autos++) {
+                            for (int region = 0; region < nReg; region++) {
+                                int records = byPrefix.households[bucket++];
+                                if (records > 0) householdsByPrefixAndAuto[prefix * numAutoPortions + portionOfAutos[autos]] += records;
+                            }
+                        }
+                    }
+                    for (int records: householdsByPrefixAndAuto) if (records < minRecords) autoUsable = false;
+                }
+                for (int regionToken = 0; regionToken < segmentationRegion.size(); regionToken++) {
+                    int numCategories = numPrefix * segmentationAutos.portions[autoToken] *
+                            segmentationRegion.portions[regionToken];
+                    if (numCategories > maxCategories) continue;
+                    counter++;
+                    if (!coversSurvey || !segmentationIncome.coversSurvey[incomeToken] ||
+                            !segmentationAutos.coversSurvey[autoToken] || !segmentationRegion.coversSurvey[regionToken]) {
+                        unclassifiedDefinitions.incrementAndGet();
+                        continue;
+                    }
+                    if (!autoUsable) continue;
+                    String result = evaluateTripFrequencies(counter, numCategories, byPrefix, nAut, nReg,
+                            segmentationAutos.portionOfValue[autoToken], segmentationAutos.portions[autoToken],
+                            segmentationRegion.portionOfValue[regionToken], segmentationRegion.portions[regionToken]);
+                    if (result != null) statistics.add(result);
+                }
+            }
+        }
+        return statistics;
     }
 
 
-    private void evaluateTripFrequencies (TableDataSet hhTypeDef, int counter,
-                                          HashMap<String, Integer[]> tripsByHhTypeAndPurpose) {
-        // evaluate statistical significance of calculated trip rates
+    private String evaluateTripFrequencies (int counter, int numCategories, Histogram byPrefix, int nAut, int nReg,
+                                            int[] autoPortionOfValue, int numAutoPortions, int[] regionPortionOfValue,
+                                            int numRegionPortions) {
+        // sum histogram by household type and evaluate statistical significance of calculated trip rates
+
+        int numPurposes = tripPurposes.values().length;
+        int numBuckets = byPrefix.households.length;
+        int[] hhTypeOfBucket = new int[numBuckets];
+        int[] hhTypeCounter = new int[numCategories];
+        int bucket = 0;
+        for (int prefix = 0; prefix < numBuckets / (nAut * nReg); prefix++) {
+            for (int autos = 0; autos < nAut; autos++) {
+                for (int region = 0; region < nReg; region++) {
+                    int records = byPrefix.households[bucket];
+                    if (records > 0) {
+                        hhTypeOfBucket[bucket] = (prefix * numAutoPortions + autoPortionOfValue[autos]) *
+                                numRegionPortions + regionPortionOfValue[region];
+                        hhTypeCounter[hhTypeOfBucket[bucket]] += records;
+                    }
+                    bucket++;
+                }
+            }
+        }
+        // analyze if every household type has a sufficient number of records
+        for (int hhTypeRecords: hhTypeCounter) if (hhTypeRecords < tgData.getMinNumberOfRecords()) return null;
+        Histogram byHhType = new Histogram(numCategories);
+        System.arraycopy(hhTypeCounter, 0, byHhType.households, 0, numCategories);
+        for (bucket = 0; bucket < numBuckets; bucket++) {
+            if (byPrefix.households[bucket] > 0) byHhType.addTrips(hhTypeOfBucket[bucket], byPrefix, bucket);
+        }
 
-        int[] numberOfRecords = new int[hhTypeDef.getRowCount() * tripPurposes.values().length];
-        float[] variance = new float[hhTypeDef.getRowCount() * tripPurposes.values().length];
-        float[] coefficientOfVariation = new float[hhTypeDef.getRowCount() * tripPurposes.values().length];
+        int[] numberOfRecords = new int[numCategories * numPurposes];
+        float[] variance = new float[numCategories * numPurposes];
+        float[] coefficientOfVariation = new float[numCategories * numPurposes];
         int pos = 0;
-        for (int hhType: hhTypeDef.getColumnAsInt("hhType")) {
-            for (tripPurposes purpose: tripPurposes.values()) {
-                String token = String.valueOf(hhType) + "_" + purpose.toString();
-                Integer[] thisTripFrequency = tripsByHhTypeAndPurpose.get(token);
-                if (SiloUtil.getSum(thisTripFrequency) == 0) continue;
-                int[] trpFrq = SiloUtil.convertIntegerToInt(thisTripFrequency);
-                int[] tripRecords = convertTripRecordsToArray(trpFrq);
-                float mean = SiloUtil.getMean(tripRecords);
-                numberOfRecords[pos] = SiloUtil.getSum(trpFrq);
-                variance[pos] = SiloUtil.getVariance(tripRecords);
+        for (int hhType = 0; hhType < numCategories; hhType++) {
+            // every household is a record for every purpose, with zero or more trips
+            int records = byHhType.households[hhType];
+            if (records == 0) continue;
+            for (int p = 0; p < numPurposes; p++) {
+                long sumOfTrips = byHhType.sumOfTrips[hhType * numPurposes + p];
+                float mean = (float) sumOfTrips / records;
+                numberOfRecords[pos] = records;
+                variance[pos] = getVariance(records, sumOfTrips, byHhType.sumOfSquaredTrips[hhType * numPurposes + p], mean);
                 if (mean != 0) coefficientOfVariation[pos] = (float) (Math.sqrt(variance[pos]) / mean * 100);
                 pos++;
             }
@@ -215,16 +390,25 @@ public class HouseholdTypeExploration {
         float maxStdDev = SiloUtil.getHighestVal(variance);
         if (maxStdDev > 0) maxStdDev = (float) Math.sqrt(maxStdDev);
         float aveStdDev = (float) Math.sqrt(SiloUtil.getWeightedMean(variance, numberOfRecords));
-        String result = counter + "," +hhTypeDef.getRowCount() + "," +
+        return counter + "," + numCategories + "," +
                 SiloUtil.getSmallestVal(numberOfRecords) + "," + SiloUtil.getMean(numberOfRecords) + "," +
                 SiloUtil.getHighestVal(numberOfRecords) + "," +
                 minStdDev + "," + aveStdDev + "," + maxStdDev + "," +
                 getSmallestValNonEqualZero(coefficientOfVariation) + "," +
                 SiloUtil.getWeightedMean(coefficientOfVariation, numberOfRecords) + "," +
                 SiloUtil.getHighestVal(coefficientOfVariation);
-        synchronized (statistics) {
-            statistics.add(result);
+    }
+
+
+    private static float getVariance (int records, long sumOfTrips, long sumOfSquaredTrips, float mean) {
+        // sample variance of number of trips from sum and sum of squares, as SiloUtil.getVariance() of all trip records
+
+        if (records <= 1) {
+            logger.error("Cannot calculate variance for array with length " + records);
+            return 0;
         }
+        double sm = sumOfSquaredTrips - 2. * mean * sumOfTrips + (double) records * mean * mean;
+        return (float) (Math.max(sm, 0) / (records - 1));
     }
 
 
@@ -237,17 +421,6 @@ public class HouseholdTypeExploration {
     }
 
 
-    private int[] convertTripRecordsToArray (int[] trpFrq) {
-        // convert trip frequency array trpFrq into long ArrayList with trips
-
-        ArrayList<Integer> tripRecords = new ArrayList<>();
-        for (int numberOfTrips = 0; numberOfTrips < trpFrq.length; numberOfTrips++) {
-            for (int trips = 0; trips < trpFrq[numberOfTrips]; trips++) tripRecords.add(numberOfTrips);
-        }
-        return SiloUtil.convertArrayListToIntArray(tripRecords);
-    }
-
-
 //    private void writeSegmentationFile(int segCounter, TableDataSet hhTypeDef) {
 //        // write file that defines household segmentation
 //
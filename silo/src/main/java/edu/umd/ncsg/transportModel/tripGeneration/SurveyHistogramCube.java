@@ -0,0 +1,165 @@
+package edu.umd.ncsg.transportModel.tripGeneration;
+
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of household travel survey records by household size, workers, income, auto category and region, and by
+ * trip purpose and number of trips. The five household characteristics are bit-packed into one cell index, with as
+ * many bits as the range of each characteristic in the survey needs, and only cells with survey records are kept. For
+ * every cell and purpose, the number of households making a given number of trips is stored sparsely. The trip
+ * frequencies of any household type definition are the sum of the cells that fall into each household type, so
+ * definitions can be evaluated without classifying every survey record again.
+ */
+
+public class SurveyHistogramCube {
+
+    private static Logger logger = Logger.getLogger(SurveyHistogramCube.class);
+
+    public static final int SIZE = 0;
+    public static final int WORKERS = 1;
+    public static final int INCOME = 2;
+    public static final int AUTOS = 3;
+    public static final int REGION = 4;
+
+    private static final String[] DIMENSIONS = {"size", "workers", "income", "auto category", "region"};
+
+    // lowest and highest value in the survey and bits of the packed cell index by dimension
+    private final int[] lowest = new int[5];
+    private final int[] highest = new int[5];
+    private final int[] bits = new int[5];
+    private final int[] shift = new int[5];
+    private final int[] cells;            // packed index of every cell with survey records, ascending
+    private final int[] households;       // number of survey records by cell
+    private final int[][][] trips;        // number of trips by cell, purpose and entry
+    private final int[][][] counts;       // number of households making that number of trips by cell, purpose and entry
+
+
+    public SurveyHistogramCube (TripGenerationData tgData, String autoDef) {
+        this(tgData.getSurveyHouseholdCharacteristics(autoDef), tgData.getTripsOfSurveyHouseholds());
+    }
+
+
+    SurveyHistogramCube (int[][] characteristics, int[][] tripsOfHouseholds) {
+        // characteristics and trips by purpose of survey households in rows 1 to number of records
+        setDimensions(characteristics);
+        int numPurposes = tripPurposes.values().length;
+
+        // sort survey records by packed cell index, with the row in the lower half of every key
+        long[] keys = new long[characteristics.length - 1];
+        for (int row = 1; row < characteristics.length; row++)
+            keys[row - 1] = ((long) pack(characteristics[row]) << 32) | row;
+        Arrays.sort(keys);
+        int numCells = 0;
+        for (int i = 0; i < keys.length; i++) if (i == 0 || (keys[i] >>> 32) != (keys[i - 1] >>> 32)) numCells++;
+        cells = new int[numCells];
+        households = new int[numCells];
+        trips = new int[numCells][numPurposes][];
+        counts = new int[numCells][numPurposes][];
+
+        // count records and trips of every cell, keep entries for numbers of trips that occur
+        int[][] frequencies = new int[numPurposes][TripGenerationData.MAX_NUMBER_OF_TRIPS + 1];
+        int cell = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int row = (int) keys[i];
+            households[cell]++;
+            for (int p = 0; p < numPurposes; p++) frequencies[p][tripsOfHouseholds[row][p]]++;
+            if (i == keys.length - 1 || (keys[i + 1] >>> 32) != (keys[i] >>> 32)) {
+                cells[cell] = (int) (keys[i] >>> 32);
+                for (int p = 0; p < numPurposes; p++) {
+                    int entries = 0;
+                    for (int freq: frequencies[p]) if (freq > 0) entries++;
+                    trips[cell][p] = new int[entries];
+                    counts[cell][p] = new int[entries];
+                    int entry = 0;
+                    for (int numberOfTrips = 0; numberOfTrips < frequencies[p].length; numberOfTrips++) {
+                        if (frequencies[p][numberOfTrips] == 0) continue;
+                        trips[cell][p][entry] = numberOfTrips;
+                        counts[cell][p][entry] = frequencies[p][numberOfTrips];
+                        entry++;
+                    }
+                    Arrays.fill(frequencies[p], 0);
+                }
+                cell++;
+            }
+        }
+        logger.info("  Summarized " + keys.length + " survey records in " + numCells + " cells.");
+    }
+
+
+    private void setDimensions (int[][] characteristics) {
+        // every dimension ranges from its lowest to its highest value in the survey and is packed with as many bits as
+        // that range needs
+        if (characteristics.length > 1) {
+            Arrays.fill(lowest, Integer.MAX_VALUE);
+            Arrays.fill(highest, Integer.MIN_VALUE);
+        }
+        for (int row = 1; row < characteristics.length; row++) {
+            for (int dim = 0; dim < 5; dim++) {
+                lowest[dim] = Math.min(lowest[dim], characteristics[row][dim]);
+                highest[dim] = Math.max(highest[dim], characteristics[row][dim]);
+            }
+        }
+        for (int dim = 0; dim < 5; dim++) {
+            // values are used as array indices when household type definitions are evaluated
+            if (lowest[dim] < 0) {
+                logger.error("Survey households have negative " + DIMENSIONS[dim] + " " + lowest[dim] + ".");
+                throw new RuntimeException("Survey households have negative " + DIMENSIONS[dim] + " " + lowest[dim] + ".");
+            }
+            bits[dim] = 32 - Integer.numberOfLeadingZeros(highest[dim] - lowest[dim]);
+        }
+        for (int dim = 3; dim >= 0; dim--) shift[dim] = shift[dim + 1] + bits[dim + 1];
+        if (shift[SIZE] + bits[SIZE] > 31) {
+            logger.error("Range of survey household characteristics is too large to pack: lowest " +
+                    Arrays.toString(lowest) + ", highest " + Arrays.toString(highest));
+            throw new RuntimeException("Range of survey household characteristics is too large to pack: lowest " +
+                    Arrays.toString(lowest) + ", highest " + Arrays.toString(highest));
+        }
+    }
+
+
+    private int pack (int[] values) {
+        int index = 0;
+        for (int dim = 0; dim < 5; dim++) index |= (values[dim] - lowest[dim]) << shift[dim];
+        return index;
+    }
+
+
+    public int getLowestValue (int dimension) {
+        return lowest[dimension];
+    }
+
+
+    public int getHighestValue (int dimension) {
+        return highest[dimension];
+    }
+
+
+    public int getNumberOfCells () {
+        return cells.length;
+    }
+
+
+    public int getValue (int cell, int dimension) {
+        // value of size, workers, income, auto category or region of this cell
+        return lowest[dimension] + ((cells[cell] >>> shift[dimension]) & ((1 << bits[dimension]) - 1));
+    }
+
+
+    public int getHouseholds (int cell) {
+        return households[cell];
+    }
+
+
+    public int[] getTrips (int cell, int purpose) {
+        // numbers of trips made by households in this cell for purpose (ordinal), ascending
+        return trips[cell][purpose];
+    }
+
+
+    public int[] getCounts (int cell, int purpose) {
+        // number of households in this cell making the corresponding number of trips in getTrips()
+        return counts[cell][purpose];
+    }
+}
@@ -2,13 +2,23 @@ package edu.umd.ncsg.transportModel.tripGeneration;
 
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.util.ResourceUtil;
+import com.pb.sawdust.util.concurrent.ForkJoinPoolFactory;
+import edu.umd.ncsg.SiloModel;
 import edu.umd.ncsg.SiloUtil;
 import edu.umd.ncsg.data.*;
+import edu.umd.ncsg.utils.RandomStreams;
 import org.apache.log4j.Logger;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 /**
@@ -24,6 +34,8 @@ import java.util.regex.Pattern;
 public class TripGeneration {
 
     private static Logger logger = Logger.getLogger(TripGeneration.class);
+    protected static final String PROPERTIES_TRIP_GEN_IN_PARALLEL = "trip.gen.in.parallel";
+    private static final int SLOTS_PER_RANDOM_STREAM = 10000;
     private ResourceBundle rb;
     private TripGenerationData tgData;
     private float tripProd[][][];
@@ -111,36 +123,111 @@ public class TripGeneration {
 
         TableDataSet regionDefinition = SiloUtil.readCSVfile(rb.getString("household.travel.survey.reg"));
         regionDefinition.buildIndex(regionDefinition.getColumnPosition("SMZRMZ"));
+        TableDataSet.FloatColumn regions = regionDefinition.floatColumn("Regions");
+        boolean inParallel = ResourceUtil.getBooleanProperty(rb, PROPERTIES_TRIP_GEN_IN_PARALLEL, false);
 
         // Generate trips for each purpose
-        tripProd = new float[SiloUtil.getHighestVal(geoData.getZones()) + 1][tripPurposes.values().length][6];
+        int highestZone = SiloUtil.getHighestVal(geoData.getZones());
+        tripProd = new float[highestZone + 1][tripPurposes.values().length][6];
         for (int purp = 0; purp < tripPurposes.values().length; purp++) {
             String strPurp = tripPurposes.values()[purp].toString();
             logger.info("  Generating trips with purpose " + strPurp);
             TableDataSet hhTypeDef = createHHTypeDefinition(strPurp);
             int[] hhTypeArray = tgData.defineHouseholdTypeOfEachSurveyRecords(selectAutoMode(strPurp), hhTypeDef);
-            HashMap<String, Integer[]> tripsByHhTypeAndPurpose = tgData.collectTripFrequencyDistribution(hhTypeArray);
+            double[][] tripProbabilities = getTripProbabilities(tgData.collectTripFrequencies(hhTypeArray), purp);
+            HouseholdTypeClassifier classifier = new HouseholdTypeClassifier(tgData, selectAutoMode(strPurp), hhTypeDef);
             // Generate trips for each household
-            for (Household hh: Household.getHouseholdArray()) {
-                int region = (int) regionDefinition.getIndexedValueAt(hh.getHomeZone(), "Regions");
-                int incCategory = translateIncomeIntoCategory (hh.getHhIncome());
-                int hhType = tgData.getHhType(selectAutoMode(strPurp), hhTypeDef, hh.getHhSize(), hh.getNumberOfWorkers(),
-                        incCategory, hh.getAutos(), region);
-                String token = hhType + "_" + strPurp;
-                Integer[] tripFrequencies = tripsByHhTypeAndPurpose.get(token);
-                if (tripFrequencies == null) {
-                    logger.error("Could not find trip frequencies for this hhType/Purpose: " + token);
+            float[][] tripProdOfPurpose;
+            if (inParallel) {
+                tripProdOfPurpose = microgenerateTripsInParallel(year, strPurp, classifier, regions, tripProbabilities,
+                        highestZone);
+            } else {
+                tripProdOfPurpose = new float[highestZone + 1][6];
+                for (Household hh: Household.getHouseholds()) {
+                    microgenerateTrips(hh, strPurp, classifier, regions, tripProbabilities, tripProdOfPurpose,
+                            SiloModel.rand);
                 }
-                if (SiloUtil.getSum(tripFrequencies) == 0) continue;
-                int numTrips = selectNumberOfTrips(tripFrequencies);
-                int mstmIncCat = defineMstmIncomeCategory(hh.getHhIncome());
-                tripProd[hh.getHomeZone()][purp][mstmIncCat] += numTrips;
+            }
+            for (int zone = 0; zone <= highestZone; zone++) {
+                for (int inc = 0; inc < 6; inc++) tripProd[zone][purp][inc] = tripProdOfPurpose[zone][inc];
             }
         }
         logger.info("  Generated " + SiloUtil.customFormat("###,###", SiloUtil.getSum(tripProd)) + " raw trips.");
     }
 
 
+    private double[][] getTripProbabilities (int[][][] tripFrequencies, int purp) {
+        // probabilities of 0, 1, 2, ... trips by household type, null if no survey household of this type made a trip
+        double[][] tripProbabilities = new double[tripFrequencies.length][];
+        for (int hhType = 0; hhType < tripFrequencies.length; hhType++) {
+            int[] frequencies = tripFrequencies[hhType][purp];
+            if (SiloUtil.getSum(frequencies) == 0) continue;
+            tripProbabilities[hhType] = new double[frequencies.length];
+            for (int i = 0; i < frequencies.length; i++) tripProbabilities[hhType][i] = frequencies[i];
+        }
+        return tripProbabilities;
+    }
+
+
+    private float[][] microgenerateTripsInParallel (int year, final String strPurp,
+                                                   final HouseholdTypeClassifier classifier,
+                                                   final TableDataSet.FloatColumn regions,
+                                                   final double[][] tripProbabilities, final int highestZone) {
+        // Multi-threading code: households are split into ranges of slots, and every range draws from its own random
+        // number stream and adds trips to its own array. Arrays are added up in order of ranges, therefore results do
+        // not depend on the number of threads.
+        final EntityStore<Household> households = Household.getHouseholds();
+        List<Callable<float[][]>> tasks = new ArrayList<>();
+        for (int chunk = 0; chunk * SLOTS_PER_RANDOM_STREAM < households.getSlotCount(); chunk++) {
+            final int fromSlot = chunk * SLOTS_PER_RANDOM_STREAM;
+            final int toSlot = Math.min(fromSlot + SLOTS_PER_RANDOM_STREAM, households.getSlotCount());
+            final Random rand = RandomStreams.createStream("microgenerateTrips" + strPurp, year, chunk);
+            tasks.add(new Callable<float[][]>() {
+                public float[][] call() {
+                    float[][] partial = new float[highestZone + 1][6];
+                    for (int slot = fromSlot; slot < toSlot; slot++) {
+                        Household hh = households.getEntityInSlot(slot);
+                        if (hh != null) microgenerateTrips(hh, strPurp, classifier, regions, tripProbabilities, partial, rand);
+                    }
+                    return partial;
+                }
+            });
+        }
+        float[][] tripProdOfPurpose = new float[highestZone + 1][6];
+        ForkJoinPool pool = ForkJoinPoolFactory.getForkJoinPool();
+        try {
+            for (Future<float[][]> result: pool.invokeAll(tasks)) {
+                float[][] partial = result.get();
+                for (int zone = 0; zone <= highestZone; zone++) {
+                    for (int inc = 0; inc < 6; inc++) tripProdOfPurpose[zone][inc] += partial[zone][inc];
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Could not generate trips with purpose " + strPurp + ".", e);
+            throw new RuntimeException(e);
+        }
+        return tripProdOfPurpose;
+    }
+
+
+    private void microgenerateTrips (Household hh, String strPurp, HouseholdTypeClassifier classifier,
+                                     TableDataSet.FloatColumn regions, double[][] tripProbabilities,
+                                     float[][] tripProdOfPurpose, Random rand) {
+        // draw number of trips of this household and add them to its home zone and MSTM income category
+        int region = (int) regions.getIndexed(hh.getHomeZone());
+        int incCategory = translateIncomeIntoCategory (hh.getHhIncome());
+        int hhType = classifier.getHhType(hh.getHhSize(), hh.getNumberOfWorkers(), incCategory, hh.getAutos(), region);
+        if (hhType < 0 || hhType >= tripProbabilities.length) {
+            logger.error("Could not find trip frequencies for this hhType/Purpose: " + hhType + "_" + strPurp);
+            return;
+        }
+        if (tripProbabilities[hhType] == null) return;
+        int numTrips = SiloUtil.select(tripProbabilities[hhType], rand);
+        int mstmIncCat = defineMstmIncomeCategory(hh.getHhIncome());
+        tripProdOfPurpose[hh.getHomeZone()][mstmIncCat] += numTrips;
+    }
+
+
     private int translateIncomeIntoCategory (int hhIncome) {
         // translate income in absolute dollars into household travel survey income categories
 
@@ -174,14 +261,6 @@ public class TripGeneration {
     }
 
 
-    private int selectNumberOfTrips (Integer[] tripFrequencies) {
-        // select number of trips
-        double[] probabilities = new double[tripFrequencies.length];
-        for (int i = 0; i < tripFrequencies.length; i++) probabilities[i] = (double) tripFrequencies[i];
-        return SiloUtil.select(probabilities);
-    }
-
-
     private void removeNonMotorizedTrips (int year) {
         // subtract fixed share of trips by purpose and zone that is assumed to be non-motorized
 
@@ -27,6 +27,8 @@ public class TripGenerationData {
     private TableDataSet htsTR;
     private static String autoMode;
     private int minNumberOfRecords;
+    static final int MAX_NUMBER_OF_TRIPS = 30;   // highest number of trips per household and purpose
+    private int[][] tripsOfSurveyHouseholds;
 
 
     public TripGenerationData(ResourceBundle rb) {
@@ -41,6 +43,7 @@ public class TripGenerationData {
         // read household travel survey
 
         logger.info("  Reading household travel survey");
+        tripsOfSurveyHouseholds = null;
         htsHH = SiloUtil.readCSVfile(rb.getString("household.travel.survey.hh"));
         if (tripPurpose.equalsIgnoreCase("all")) {
             htsTR = SiloUtil.readCSVfile(rb.getString("household.travel.survey.trips"));
@@ -157,18 +160,24 @@ public class TripGenerationData {
 
         int[] hhTypeCounter = new int[SiloUtil.getHighestVal(hhTypeDef.getColumnAsInt("hhType")) + 1];
         int[] hhTypeArray = new int[htsHH.getRowCount() + 1];
+        HouseholdTypeClassifier classifier = new HouseholdTypeClassifier(this, autoDef, hhTypeDef);
+        TableDataSet.FloatColumn hhsiz = htsHH.floatColumn("hhsiz");
+        TableDataSet.FloatColumn hhwrk = htsHH.floatColumn("hhwrk");
+        TableDataSet.FloatColumn incom = htsHH.floatColumn("incom");
+        TableDataSet.FloatColumn hhveh = htsHH.floatColumn("hhveh");
+        TableDataSet.FloatColumn urbanSuburbanRural = htsHH.floatColumn("urbanSuburbanRural");
 
         for (int row = 1; row <= htsHH.getRowCount(); row++) {
-            int hhSze = (int) htsHH.getValueAt(row, "hhsiz");
+            int hhSze = (int) hhsiz.get(row);
             hhSze = Math.min(hhSze, 7);    // hhsiz 8 has only 19 records, aggregate with hhsiz 7
-            int hhWrk = (int) htsHH.getValueAt(row, "hhwrk");
+            int hhWrk = (int) hhwrk.get(row);
             hhWrk = Math.min(hhWrk, 4);    // hhwrk 6 has 1 and hhwrk 5 has 7 records, aggregate with hhwrk 4
-            int hhInc = (int) htsHH.getValueAt(row, "incom");
-            int hhVeh = (int) htsHH.getValueAt(row, "hhveh");
+            int hhInc = (int) incom.get(row);
+            int hhVeh = (int) hhveh.get(row);
             hhVeh = Math.min (hhVeh, 3);   // Auto-ownership model will generate groups 0, 1, 2, 3+ only.
-            int region = (int) htsHH.getValueAt(row, "urbanSuburbanRural");
+            int region = (int) urbanSuburbanRural.get(row);
 
-            int hhTypeId = getHhType(autoDef, hhTypeDef, hhSze, hhWrk, hhInc, hhVeh, region);
+            int hhTypeId = classifier.getHhType(hhSze, hhWrk, hhInc, hhVeh, region);
             hhTypeArray[row] = hhTypeId;
             hhTypeCounter[hhTypeId]++;
         }
@@ -181,29 +190,33 @@ public class TripGenerationData {
 
 
     public int getHhType (String autoDef, TableDataSet hhTypeDef, int hhSze, int hhWrk, int hhInc, int hhVeh, int hhReg) {
-        // Define household type
+        // Define household type by scanning all types, HouseholdTypeClassifier gives the same result with one lookup
 
         hhSze = Math.min (hhSze, 7);
         hhWrk = Math.min (hhWrk, 4);
-        int hhAut;
-        if (autoDef.equalsIgnoreCase("autos")) {
-            hhAut = Math.min(hhVeh, 3);
-        } else {
-            if (hhVeh < hhWrk) hhAut = 0;        // fewer autos than workers
-            else if (hhVeh == hhWrk) hhAut = 1;  // equal number of autos and workers
-            else hhAut = 2;                      // more autos than workers
-        }
+        int hhAut = HouseholdTypeClassifier.getAutoCategory(autoDef.equalsIgnoreCase("autos"), hhWrk, hhVeh);
+        // look up columns once instead of once per type and criterion
+        TableDataSet.FloatColumn sizeL = hhTypeDef.floatColumn("size_l");
+        TableDataSet.FloatColumn sizeH = hhTypeDef.floatColumn("size_h");
+        TableDataSet.FloatColumn workersL = hhTypeDef.floatColumn("workers_l");
+        TableDataSet.FloatColumn workersH = hhTypeDef.floatColumn("workers_h");
+        TableDataSet.FloatColumn incomeL = hhTypeDef.floatColumn("income_l");
+        TableDataSet.FloatColumn incomeH = hhTypeDef.floatColumn("income_h");
+        TableDataSet.FloatColumn autosL = hhTypeDef.floatColumn("autos_l");
+        TableDataSet.FloatColumn autosH = hhTypeDef.floatColumn("autos_h");
+        TableDataSet.FloatColumn regionL = hhTypeDef.floatColumn("region_l");
+        TableDataSet.FloatColumn regionH = hhTypeDef.floatColumn("region_h");
         for (int hhType = 1; hhType <= hhTypeDef.getRowCount(); hhType++) {
-            if (hhSze >= hhTypeDef.getIndexedValueAt(hhType, "size_l") &&          // Household size
-                    hhSze <= hhTypeDef.getIndexedValueAt(hhType, "size_h") &&
-                    hhWrk >= hhTypeDef.getIndexedValueAt(hhType, "workers_l") &&   // Number of workers
-                    hhWrk <= hhTypeDef.getIndexedValueAt(hhType, "workers_h") &&
-                    hhInc >= hhTypeDef.getIndexedValueAt(hhType, "income_l") &&    // Household income
-                    hhInc <= hhTypeDef.getIndexedValueAt(hhType, "income_h") &&
-                    hhAut >= hhTypeDef.getIndexedValueAt(hhType, "autos_l") &&     // Number of vehicles
-                    hhAut <= hhTypeDef.getIndexedValueAt(hhType, "autos_h") &&
-                    hhReg >= hhTypeDef.getIndexedValueAt(hhType, "region_l") &&    // Region (urban, suburban, rural)
-                    hhReg <= hhTypeDef.getIndexedValueAt(hhType, "region_h")) {
+            if (hhSze >= sizeL.getIndexed(hhType) &&          // Household size
+                    hhSze <= sizeH.getIndexed(hhType) &&
+                    hhWrk >= workersL.getIndexed(hhType) &&   // Number of workers
+                    hhWrk <= workersH.getIndexed(hhType) &&
+                    hhInc >= incomeL.getIndexed(hhType) &&    // Household income
+                    hhInc <= incomeH.getIndexed(hhType) &&
+                    hhAut >= autosL.getIndexed(hhType) &&     // Number of vehicles
+                    hhAut <= autosH.getIndexed(hhType) &&
+                    hhReg >= regionL.getIndexed(hhType) &&    // Region (urban, suburban, rural)
+                    hhReg <= regionH.getIndexed(hhType)) {
                 return (int) hhTypeDef.getIndexedValueAt(hhType, "hhType");
             }
         }
@@ -293,45 +306,105 @@ public class TripGenerationData {
         //   |
         //   contains -> Integer[] tripFrequencyList: Frequency of 0, 1, 2, 3, ... trips
 
+        int[][][] tripFrequencies = collectTripFrequencies(hhTypeArray);
         HashMap<String, Integer[]> tripsByHhTypeAndPurpose = new HashMap<>();  // contains trips by hhtype and purpose
-
-        for (int hhType = 1; hhType < hhTypeArray.length; hhType++) {
+        for (int hhType = 1; hhType < Math.max(hhTypeArray.length, tripFrequencies.length); hhType++) {
             for (tripPurposes purp: tripPurposes.values()) {
                 String token = String.valueOf(hhType) + "_" + purp.toString();
-                // fill Storage structure from bottom       0                  10                  20                  30
-                Integer[] tripFrequencyList = new Integer[]{0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0};  // space for up to 30 trips
+                Integer[] tripFrequencyList = new Integer[MAX_NUMBER_OF_TRIPS + 1];
+                for (int trips = 0; trips <= MAX_NUMBER_OF_TRIPS; trips++) {
+                    tripFrequencyList[trips] = hhType < tripFrequencies.length ?
+                            tripFrequencies[hhType][purp.ordinal()][trips] : 0;
+                }
                 tripsByHhTypeAndPurpose.put(token, tripFrequencyList);
             }
         }
+        return tripsByHhTypeAndPurpose;
+    }
+
+
+    public int[][][] collectTripFrequencies (int[] hhTypeArray) {
+        // Summarize frequency of number of trips by household type, trip purpose (ordinal) and number of trips (0 to 30)
+
+        int highestHhType = 0;
+        for (int hhRow = 1; hhRow < hhTypeArray.length; hhRow++) highestHhType = Math.max(highestHhType, hhTypeArray[hhRow]);
+        int[][][] tripFrequencies = new int[highestHhType + 1][tripPurposes.values().length][MAX_NUMBER_OF_TRIPS + 1];
+
+        int[][] tripsOfSurveyHouseholds = getTripsOfSurveyHouseholds();
+        for (int hhRow = 1; hhRow <= getNumberOfHouseholdRecords(); hhRow++) {
+            int hhType = hhTypeArray[hhRow];
+            if (hhType < 1) {
+                int sampleId = (int) htsHH.getValueAt(hhRow, "sampn");
+                logger.error("Survey household " + sampleId + " has no household type.");
+                throw new RuntimeException("Survey household " + sampleId + " has no household type.");
+            }
+            for (int p = 0; p < tripPurposes.values().length; p++) {
+                tripFrequencies[hhType][p][tripsOfSurveyHouseholds[hhRow][p]]++;
+            }
+        }
+        return tripFrequencies;
+    }
+
+
+    public int[][] getTripsOfSurveyHouseholds () {
+        // Number of trips by survey household (row 1 to number of records) and trip purpose (ordinal), calculated once
+        // after the survey has been read
+
+        if (tripsOfSurveyHouseholds != null) return tripsOfSurveyHouseholds;
+        int[][] trips = new int[getNumberOfHouseholdRecords() + 1][tripPurposes.values().length];
 
         // Read through household file fo HTS
         int pos = 1;
+        TableDataSet.FloatColumn hhSampn = htsHH.floatColumn("sampn");
+        TableDataSet.FloatColumn trSampn = htsTR.floatColumn("sampn");
+        TableDataSet.StringColumn mainPurpose = htsTR.stringColumn("mainPurpose");
         for (int hhRow = 1; hhRow <= getNumberOfHouseholdRecords(); hhRow++) {
-            int sampleId = (int) htsHH.getValueAt(hhRow, "sampn");
-            int hhType = hhTypeArray[hhRow];
-            int[] tripsOfThisHouseholdByPurposes = new int[tripPurposes.values().length];
+            int sampleId = (int) hhSampn.get(hhRow);
             // Ready through trip file of HTS
             for (int trRow = pos; trRow <= htsTR.getRowCount(); trRow++) {
-                if ((int) htsTR.getValueAt(trRow, "sampn") == sampleId) {
+                if ((int) trSampn.get(trRow) == sampleId) {
 
                     // add this trip to this household
                     pos++;
-                    String htsTripPurpose = htsTR.getStringValueAt(trRow, "mainPurpose");
-                    tripsOfThisHouseholdByPurposes[tripPurposes.valueOf(htsTripPurpose).ordinal()]++;
+                    String htsTripPurpose = mainPurpose.get(trRow);
+                    trips[hhRow][tripPurposes.valueOf(htsTripPurpose).ordinal()]++;
                 } else {
                     // This trip record does not belong to this household
                     break;
                 }
             }
             for (int p = 0; p < tripPurposes.values().length; p++) {
-                String token = String.valueOf(hhType) + "_" + tripPurposes.values()[p].toString();
-                Integer[] tripsOfThisHouseholdType = tripsByHhTypeAndPurpose.get(token);
-                int count = tripsOfThisHouseholdByPurposes[p];
-                tripsOfThisHouseholdType[count]++;
-                tripsByHhTypeAndPurpose.put(token, tripsOfThisHouseholdType);
+                if (trips[hhRow][p] > MAX_NUMBER_OF_TRIPS) {
+                    logger.error("Survey household " + sampleId + " made more than " + MAX_NUMBER_OF_TRIPS + " trips.");
+                    throw new RuntimeException("Survey household " + sampleId + " made more than " +
+                            MAX_NUMBER_OF_TRIPS + " trips.");
+                }
             }
         }
-        return tripsByHhTypeAndPurpose;
+        tripsOfSurveyHouseholds = trips;
+        return tripsOfSurveyHouseholds;
+    }
+
+
+    public int[][] getSurveyHouseholdCharacteristics (String autoDef) {
+        // Size, workers, income, auto category and region of every survey household (row 1 to number of records), capped
+        // as for defining its household type
+
+        boolean autos = autoDef.equalsIgnoreCase("autos");
+        int[][] characteristics = new int[getNumberOfHouseholdRecords() + 1][];
+        TableDataSet.FloatColumn hhsiz = htsHH.floatColumn("hhsiz");
+        TableDataSet.FloatColumn hhwrk = htsHH.floatColumn("hhwrk");
+        TableDataSet.FloatColumn incom = htsHH.floatColumn("incom");
+        TableDataSet.FloatColumn hhveh = htsHH.floatColumn("hhveh");
+        TableDataSet.FloatColumn urbanSuburbanRural = htsHH.floatColumn("urbanSuburbanRural");
+        for (int row = 1; row <= getNumberOfHouseholdRecords(); row++) {
+            int hhSze = Math.min((int) hhsiz.get(row), 7);
+            int hhWrk = Math.min((int) hhwrk.get(row), 4);
+            int hhVeh = Math.min((int) hhveh.get(row), 3);
+            characteristics[row] = new int[] {hhSze, hhWrk, (int) incom.get(row),
+                    HouseholdTypeClassifier.getAutoCategory(autos, hhWrk, hhVeh), (int) urbanSuburbanRural.get(row)};
+        }
+        return characteristics;
     }
 
 }
@@ -0,0 +1,73 @@
+package edu.umd.ncsg.utils;
+
+import java.util.Random;
+
+/**
+ * Samples from a discrete distribution in constant time with Walker's alias method (as set up by Vose). Setting up
+ * the table takes linear time, which pays off for distributions with many items that are used for many draws.
+ **/
+
+public class AliasSampler extends DiscreteSampler {
+
+    private final double[] probability;
+    private final int[] alias;
+
+
+    public AliasSampler (double[] probabilities) {
+        double sum = checkProbabilities(probabilities);
+        int n = probabilities.length;
+        probability = new double[n];
+        alias = new int[n];
+        if (sum == 0) {
+            // all probabilities are zero, every column refers to the last item as SiloUtil.select() would select
+            for (int i = 0; i < n; i++) alias[i] = n - 1;
+            return;
+        }
+
+        // scale probabilities so that the average is 1 and split items into those below and above average
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = probabilities[i] * n / sum;
+            if (scaled[i] < 1) small[numSmall++] = i;
+            else large[numLarge++] = i;
+        }
+        // fill up every item below average with probability of an item above average
+        while (numSmall > 0 && numLarge > 0) {
+            int less = small[--numSmall];
+            int more = large[--numLarge];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) small[numSmall++] = more;
+            else large[numLarge++] = more;
+        }
+        // remaining items are (up to rounding errors) exactly average
+        while (numLarge > 0) {
+            int i = large[--numLarge];
+            probability[i] = 1;
+            alias[i] = i;
+        }
+        while (numSmall > 0) {
+            int i = small[--numSmall];
+            probability[i] = 1;
+            alias[i] = i;
+        }
+    }
+
+
+    @Override
+    public int select (Random rand) {
+        int column = rand.nextInt(probability.length);
+        return rand.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+
+    @Override
+    public int size () {
+        return probability.length;
+    }
+}
@@ -0,0 +1,327 @@
+package edu.umd.ncsg.utils;
+
+import org.apache.log4j.Logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Text file writer that hands its output to a background thread. Lines are collected in a chunk, and full chunks are
+ * passed as immutable strings through a bounded queue to a single writer thread that is shared by all files. The
+ * writer thread encodes the text into a large direct buffer and writes it to disk, compressed if the file name ends
+ * with ".gz". The simulation only waits if the queue is full. closeAll() closes all files and returns once everything
+ * has been written. A single file must be written by one thread only.
+ **/
+
+public class AsyncFileWriter {
+
+    static Logger logger = Logger.getLogger(AsyncFileWriter.class);
+
+    private static final int CHUNK_SIZE = 1 << 16;       // characters collected before a chunk is queued
+    private static final int QUEUE_CAPACITY = 256;       // chunks waiting to be written
+    private static final int BUFFER_SIZE = 1 << 20;      // bytes of direct buffer per file
+
+    private static final int TEXT = 0;
+    private static final int FLUSH = 1;
+    private static final int CLOSE = 2;
+    private static final int BARRIER = 3;
+
+    private static final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final Set<AsyncFileWriter> openWriters = new LinkedHashSet<>();
+    private static Thread writerThread;
+    private static volatile IOException failure;
+
+    private final String fileName;
+    private StringBuilder pending = new StringBuilder(CHUNK_SIZE + 1024);
+    private boolean closed = false;
+
+    // only used by the writer thread
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder;
+
+
+    private static class Chunk {
+        final AsyncFileWriter writer;
+        final int type;
+        final String text;
+        final CountDownLatch done;
+
+        Chunk (AsyncFileWriter writer, int type, String text, CountDownLatch done) {
+            this.writer = writer;
+            this.type = type;
+            this.text = text;
+            this.done = done;
+        }
+    }
+
+
+    private AsyncFileWriter (String fileName, WritableByteChannel channel) {
+        this.fileName = fileName;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+
+    public static AsyncFileWriter open (String fileName, boolean appendFile) throws IOException {
+        // open file for writing on the writer thread, file is gzip-compressed if its name ends with .gz
+        FileOutputStream out = new FileOutputStream(fileName, appendFile);
+        WritableByteChannel channel;
+        if (fileName.endsWith(".gz")) channel = Channels.newChannel(new GZIPOutputStream(out, 1 << 16));
+        else channel = out.getChannel();
+        AsyncFileWriter writer = new AsyncFileWriter(fileName, channel);
+        synchronized (AsyncFileWriter.class) {
+            startWriterThread();
+            openWriters.add(writer);
+        }
+        return writer;
+    }
+
+
+    private static void startWriterThread () {
+        // start writer thread when the first file is opened. If the JVM shuts down, output that has been queued already
+        // is written to disk. Text that is still collected by a writer is not touched, as the simulation thread may be
+        // printing to it, and files are only closed by close() or closeAll() on the thread that owns them
+        if (writerThread != null) return;
+        writerThread = new Thread("AsyncFileWriter") {
+            @Override
+            public void run () {
+                processQueue();
+            }
+        };
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run () {
+                try {
+                    List<AsyncFileWriter> writers;
+                    synchronized (AsyncFileWriter.class) {
+                        writers = new ArrayList<>(openWriters);
+                    }
+                    for (AsyncFileWriter writer: writers) enqueue(new Chunk(writer, FLUSH, null, null));
+                    waitForQueuedOutput();
+                } catch (RuntimeException e) {
+                    logger.error("Could not complete writing of output files.", e);
+                }
+            }
+        });
+    }
+
+
+    public void print (String text) {
+        if (closed) return;
+        pending.append(text);
+        if (pending.length() >= CHUNK_SIZE) queueChunk(TEXT);
+    }
+
+
+    public void print (char c) {
+        if (closed) return;
+        pending.append(c);
+    }
+
+
+    public void print (int value) {
+        if (closed) return;
+        pending.append(value);
+    }
+
+
+    public void print (float value) {
+        if (closed) return;
+        pending.append(value);
+    }
+
+
+    public void print (double value) {
+        if (closed) return;
+        pending.append(value);
+    }
+
+
+    public void print (Object value) {
+        print(String.valueOf(value));
+    }
+
+
+    public void println () {
+        print(System.lineSeparator());
+    }
+
+
+    public void println (String text) {
+        if (closed) return;
+        pending.append(text);
+        println();
+    }
+
+
+    public void println (int value) {
+        print(value);
+        println();
+    }
+
+
+    public void println (float value) {
+        print(value);
+        println();
+    }
+
+
+    public void println (double value) {
+        print(value);
+        println();
+    }
+
+
+    public void println (Object value) {
+        println(String.valueOf(value));
+    }
+
+
+    public void flush () {
+        // hand collected text to the writer thread and have it written to the file
+        if (closed) return;
+        queueChunk(FLUSH);
+    }
+
+
+    public void close () {
+        // hand remaining text to the writer thread, which closes the file afterwards
+        if (closed) return;
+        queueChunk(CLOSE);
+        closed = true;
+        synchronized (AsyncFileWriter.class) {
+            openWriters.remove(this);
+        }
+    }
+
+
+    private void queueChunk (int type) {
+        if (pending.length() > 0) {
+            enqueue(new Chunk(this, TEXT, pending.toString(), null));
+            pending.setLength(0);
+        }
+        if (type != TEXT) enqueue(new Chunk(this, type, null, null));
+    }
+
+
+    private static void enqueue (Chunk chunk) {
+        if (failure != null) {
+            logger.error("Writing of output files failed earlier.", failure);
+            throw new RuntimeException(failure);
+        }
+        try {
+            queue.put(chunk);
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while queuing output.", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    public static void closeAll () {
+        // close all open files and wait until the writer thread has written everything to disk
+        List<AsyncFileWriter> writers;
+        synchronized (AsyncFileWriter.class) {
+            if (writerThread == null) return;
+            writers = new ArrayList<>(openWriters);
+        }
+        for (AsyncFileWriter writer: writers) writer.close();
+        waitForQueuedOutput();
+    }
+
+
+    public static void waitForQueuedOutput () {
+        // wait until the writer thread has processed everything that has been queued so far, text that was printed
+        // but not flushed yet is not included
+        synchronized (AsyncFileWriter.class) {
+            if (writerThread == null) return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        enqueue(new Chunk(null, BARRIER, null, done));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for output files to be written.", e);
+            throw new RuntimeException(e);
+        }
+        if (failure != null) {
+            logger.error("Could not write output files.", failure);
+            throw new RuntimeException(failure);
+        }
+    }
+
+
+    private static void processQueue () {
+        // runs on writer thread, output of a file that failed is discarded so that the simulation is not blocked
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (chunk.type == BARRIER) {
+                chunk.done.countDown();
+                continue;
+            }
+            if (failure != null) continue;
+            try {
+                chunk.writer.process(chunk);
+            } catch (IOException e) {
+                logger.error("Could not write to file " + chunk.writer.fileName, e);
+                failure = e;
+            }
+        }
+    }
+
+
+    private void process (Chunk chunk) throws IOException {
+        switch (chunk.type) {
+            case TEXT:
+                CharBuffer chars = CharBuffer.wrap(chunk.text);
+                encoder.reset();
+                CoderResult result;
+                do {
+                    result = encoder.encode(chars, buffer, true);
+                    if (result.isOverflow()) drainBuffer();
+                } while (result.isOverflow());
+                while (encoder.flush(buffer).isOverflow()) drainBuffer();
+                break;
+            case FLUSH:
+                drainBuffer();
+                break;
+            case CLOSE:
+                drainBuffer();
+                channel.close();
+                break;
+        }
+    }
+
+
+    private void drainBuffer () throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
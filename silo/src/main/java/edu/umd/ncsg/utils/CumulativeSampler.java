@@ -0,0 +1,47 @@
+package edu.umd.ncsg.utils;
+
+import java.util.Random;
+
+/**
+ * Samples from a discrete distribution with cumulative probabilities and binary search. The cumulative sums are built
+ * in the same order as in SiloUtil.select(double[]), therefore both select the same item for the same random number.
+ **/
+
+public class CumulativeSampler extends DiscreteSampler {
+
+    private final double[] cumulative;
+    private final double total;
+
+
+    public CumulativeSampler (double[] probabilities) {
+        checkProbabilities(probabilities);
+        cumulative = new double[probabilities.length];
+        double sum = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            sum += probabilities[i];
+            cumulative[i] = sum;
+        }
+        total = sum;
+    }
+
+
+    @Override
+    public int select (Random rand) {
+        // find first item with cumulative probability larger than the selected position
+        double selPos = total * rand.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > selPos) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
+
+    @Override
+    public int size () {
+        return cumulative.length;
+    }
+}
@@ -0,0 +1,41 @@
+package edu.umd.ncsg.utils;
+
+import java.util.Random;
+
+/**
+ * Draws items from a discrete probability distribution that is used for many draws. Unlike SiloUtil.select(), which
+ * sums up and walks through the probabilities for every draw, a sampler prepares the distribution once.
+ **/
+
+public abstract class DiscreteSampler {
+
+    public static DiscreteSampler cumulative (double[] probabilities) {
+        // prefix sums with binary search, selects the same item as SiloUtil.select(probabilities) for the same random number
+        return new CumulativeSampler(probabilities);
+    }
+
+
+    public static DiscreteSampler alias (double[] probabilities) {
+        // Walker's alias table, constant time per draw but uses the random number generator differently than SiloUtil.select()
+        return new AliasSampler(probabilities);
+    }
+
+
+    static double checkProbabilities (double[] probabilities) {
+        // return sum of probabilities. If all probabilities are zero, the last item is selected as in SiloUtil.select()
+        if (probabilities.length == 0) throw new IllegalArgumentException("Cannot sample from empty probabilities.");
+        double sum = 0;
+        for (double prob: probabilities) {
+            if (prob < 0 || Double.isNaN(prob) || Double.isInfinite(prob))
+                throw new IllegalArgumentException("Invalid probability " + prob + ".");
+            sum += prob;
+        }
+        return sum;
+    }
+
+
+    public abstract int select (Random rand);
+
+
+    public abstract int size ();
+}
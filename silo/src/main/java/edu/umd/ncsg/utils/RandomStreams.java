@@ -0,0 +1,35 @@
+package edu.umd.ncsg.utils;
+
+import java.util.Random;
+
+/**
+ * Hands out independent random number streams that are derived from the scenario seed. A stream is identified by
+ * its purpose, the simulation year and a partition number, so that a multi-threaded step draws the same random
+ * numbers for every partition no matter which thread happens to process it. This makes parallel steps reproducible.
+ **/
+
+public class RandomStreams {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static long scenarioSeed = 0L;
+
+
+    public static void initialize (long seed) {
+        scenarioSeed = seed;
+    }
+
+
+    public static long getScenarioSeed () {
+        return scenarioSeed;
+    }
+
+
+    public static Random createStream (String purpose, int year, int partition) {
+        // return new random number generator for this purpose, year and partition
+        long key = SplitMixRandom.mix64(scenarioSeed + GOLDEN_GAMMA);
+        key = SplitMixRandom.mix64(key + GOLDEN_GAMMA * (purpose.hashCode() + 1L));
+        key = SplitMixRandom.mix64(key + GOLDEN_GAMMA * (year + 1L));
+        key = SplitMixRandom.mix64(key + GOLDEN_GAMMA * (partition + 1L));
+        return new SplitMixRandom(key);
+    }
+}
@@ -0,0 +1,67 @@
+package edu.umd.ncsg.utils;
+
+import java.util.Random;
+
+/**
+ * Random number generator based on SplitMix64. Unlike java.util.Random, the state is not shared through an atomic
+ * variable, therefore every instance must be used by one thread only. RandomStreams hands out one instance per worker
+ * or partition.
+ **/
+
+public class SplitMixRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private long state;
+
+
+    public SplitMixRandom (long seed) {
+        super(seed);
+        state = seed;
+    }
+
+
+    @Override
+    public synchronized void setSeed (long seed) {
+        super.setSeed(seed);
+        state = seed;
+    }
+
+
+    static long mix64 (long z) {
+        // finalizer of SplitMix64, spreads every input bit across all output bits
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+
+    private long nextRawLong () {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+
+    @Override
+    protected int next (int bits) {
+        return (int) (nextRawLong() >>> (64 - bits));
+    }
+
+
+    @Override
+    public long nextLong () {
+        return nextRawLong();
+    }
+
+
+    @Override
+    public double nextDouble () {
+        return (nextRawLong() >>> 11) * 0x1.0p-53;
+    }
+
+
+    @Override
+    public float nextFloat () {
+        return (nextRawLong() >>> 40) * 0x1.0p-24f;
+    }
+}
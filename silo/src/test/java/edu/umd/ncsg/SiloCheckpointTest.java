@@ -0,0 +1,302 @@
+package edu.umd.ncsg;
+
+import edu.umd.ncsg.data.*;
+import edu.umd.ncsg.utils.AsyncFileWriter;
+import edu.umd.ncsg.utils.RandomStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.ResourceBundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes a checkpoint, empties all stores and resumes from the checkpoint. Checks that households, persons, dwellings
+ * and jobs are restored with their attributes and their order in memory, that vacancy lists and the random number
+ * generators continue where they were, and that result files are cut back to their length at the checkpoint.
+ **/
+
+public class SiloCheckpointTest {
+
+    private static final int ZONES = 6;
+    private static final int REGIONS = 2;
+    private static final int YEAR = 2001;
+    private static final String PROPERTIES = "checkpoint.interval.years = 1\n" +
+            "mean.change.of.yearly.income = 2000\n" +
+            "vacant.job.by.reg.array = 50\n" +
+            "result.file.name = result\n" +
+            "spatial.result.file.name = spatialResult\n";
+
+    private ResourceBundle rb;
+    private HouseholdDataManager householdData;
+    private RealEstateDataManager realEstateData;
+    private JobDataManager jobData;
+
+
+    @Before
+    public void setUp () throws IOException {
+        rb = TestGeography.setUp(ZONES, REGIONS, PROPERTIES + "resume.from.checkpoint = false\n");
+        SiloUtil.scenarioName = "checkpointTest";
+        new File(SiloUtil.baseDirectory + "scenOutput/" + SiloUtil.scenarioName).mkdirs();
+        SiloUtil.setBaseYear(SiloUtil.getStartYear());
+        SiloCheckpoint.initialize(rb);
+        createMicroData();
+        setUpDataManagers(rb);
+    }
+
+
+    @After
+    public void tearDown () throws IOException {
+        AsyncFileWriter.closeAll();
+        TestGeography.clearMicroData();
+        deleteRecursively(new File(SiloUtil.baseDirectory + "scenOutput"));
+    }
+
+
+    private static void deleteRecursively (File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) for (File child: children) deleteRecursively(child);
+        Files.deleteIfExists(file.toPath());
+    }
+
+
+    private static void createMicroData () {
+        // 20 households with two persons each live in dwellings 1 to 20, dwellings 21 to 30 are vacant. Every other
+        // household has a worker, jobs 11 to 25 are vacant. Some entities are removed to leave free slots in the stores
+        for (int id = 1; id <= 33; id++)
+            new Dwelling(id, (id - 1) % ZONES + 1, id <= 20 ? id : -1, DwellingType.values()[id % DwellingType.values().length],
+                    id % 4 + 1, id % 4 + 1, 500 + 10 * id, id % 5 == 0 ? 0.8f : 0, 1950 + id);
+        for (int id = 1; id <= 26; id++)
+            new Job(id, (id - 1) % ZONES + 1, id <= 10 ? 4 * id - 3 : -1, id % 3 == 0 ? "RET" : "OFF");
+        for (int id = 1; id <= 21; id++) {
+            Household hh = new Household(id, id, (id - 1) % ZONES + 1, 2, id % 3);
+            Person first = createPerson(2 * id - 1, id, id % 2 == 0 ? id / 2 : -1);
+            Person second = createPerson(2 * id, id, -1);
+            // members of household 3 are listed in reverse order
+            if (id == 3) {
+                hh.addPersonForInitialSetup(second);
+                hh.addPersonForInitialSetup(first);
+            } else {
+                hh.addPersonForInitialSetup(first);
+                hh.addPersonForInitialSetup(second);
+            }
+        }
+        for (Household hh: Household.getHouseholds()) hh.setHouseholdRace();
+        Dwelling.removeDwelling(32);
+        Job.removeJob(26);
+        Person.removePerson(42);
+        Person.removePerson(41);
+        Household.remove(21);
+        new Dwelling(34, 1, -1, DwellingType.SFD, 3, 2, 900, 0, 2000);
+    }
+
+
+    private static Person createPerson (int id, int hhId, int job) {
+        Person pp = new Person(id, hhId, 20 + id % 50, id % 2 + 1, Race.values()[id % Race.values().length],
+                job == -1 ? 2 : 1, job, job == -1 ? 0 : 20000 + 1000 * id);
+        pp.setRole(PersonRole.married);
+        return pp;
+    }
+
+
+    private void setUpDataManagers (ResourceBundle rb) {
+        // same order as in SiloModel
+        realEstateData = new RealEstateDataManager(rb);
+        householdData = new HouseholdDataManager(rb);
+        jobData = new JobDataManager(rb);
+        jobData.setHighestJobId();
+        jobData.identifyVacantJobs();
+        jobData.calculateJobDensityByZone();
+        realEstateData.fillQualityDistribution();
+        realEstateData.setHighestVariables();
+        realEstateData.identifyVacantDwellings();
+        householdData.setHighestHouseholdAndPersonId();
+        householdData.calculateInitialSettings();
+    }
+
+
+    private static List<String> describeMicroData () {
+        // attributes of all entities in the order of the stores, and the slots of the stores
+        List<String> description = new ArrayList<>();
+        for (Household hh: Household.getHouseholds()) {
+            String members = "";
+            for (Person pp: hh.getPersons()) members += "," + pp.getId();
+            description.add("hh " + hh.getId() + "," + hh.getDwellingId() + "," + hh.getHomeZone() + "," +
+                    hh.getHhSize() + "," + hh.getAutos() + "," + hh.getRace() + members);
+        }
+        for (Person pp: Person.getPersons())
+            description.add("pp " + pp.getId() + "," + pp.getHhId() + "," + pp.getAge() + "," + pp.getGender() + "," +
+                    pp.getRole() + "," + pp.getRace() + "," + pp.getOccupation() + "," + pp.getWorkplace() + "," +
+                    pp.getIncome());
+        for (Dwelling dd: Dwelling.getDwellings())
+            description.add("dd " + dd.getId() + "," + dd.getZone() + "," + dd.getResidentId() + "," + dd.getType() +
+                    "," + dd.getBedrooms() + "," + dd.getQuality() + "," + dd.getPrice() + "," + dd.getRestriction() +
+                    "," + dd.getYearBuilt());
+        for (Job jj: Job.getJobs())
+            description.add("jj " + jj.getId() + "," + jj.getZone() + "," + jj.getWorkerId() + "," + jj.getType());
+        describeLayout(description, "households", Household.getHouseholds());
+        describeLayout(description, "persons", Person.getPersons());
+        describeLayout(description, "dwellings", Dwelling.getDwellings());
+        describeLayout(description, "jobs", Job.getJobs());
+        return description;
+    }
+
+
+    private static void describeLayout (List<String> description, String name, EntityStore<?> store) {
+        description.add(name + " slots " + store.getSlotCount() + ", free " + Arrays.toString(store.getFreeSlots()));
+    }
+
+
+    private static List<String> describeVacancyLists () {
+        List<String> description = new ArrayList<>();
+        for (int region: geoData.getRegionList()) {
+            String list = "region " + region + ":";
+            for (int pos = 0; pos < RealEstateDataManager.getVacancyListLengthOfRegion(region); pos++)
+                list += " " + RealEstateDataManager.getVacantDwellingInRegion(region, pos);
+            description.add(list);
+            description.add("vacant jobs " + region + ": " + JobDataManager.getNumberOfVacantJobsByRegion(region));
+        }
+        return description;
+    }
+
+
+    private MicroDataSnapshot createCheckpoint () {
+        MicroDataSnapshot checkpoint = SiloCheckpoint.createCheckpoint(YEAR);
+        householdData.addStateToCheckpoint(checkpoint);
+        realEstateData.addStateToCheckpoint(checkpoint);
+        jobData.addStateToCheckpoint(checkpoint);
+        return checkpoint;
+    }
+
+
+    private static void assertTablesEqual (MicroDataSnapshot expected, MicroDataSnapshot actual, String table,
+                                           String... columns) {
+        assertEquals(table, expected.getTable(table).getRowCount(), actual.getTable(table).getRowCount());
+        for (String column: columns)
+            assertTrue(table + "." + column, Arrays.equals(expected.getTable(table).getIntColumn(column),
+                    actual.getTable(table).getIntColumn(column)));
+    }
+
+
+    private static String readFile (String fileName) throws IOException {
+        return new String(Files.readAllBytes(new File(fileName).toPath()), "UTF-8");
+    }
+
+
+    @Test
+    public void resumedRunContinuesWithCheckpointState () throws IOException {
+        // vacate and occupy dwellings, so that the vacancy lists are no longer in the order of the dwelling ids
+        Dwelling dd = Dwelling.getDwellingFromId(4);
+        dd.setResidentID(-1);
+        RealEstateDataManager.addDwellingToVacancyList(dd);
+        Dwelling.getDwellingFromId(23).setResidentID(4);
+        RealEstateDataManager.removeDwellingFromVacancyList(23);
+        Household.getHouseholdFromId(4).setDwelling(23);
+
+        SiloModel.rand = new Random(17);
+        for (int i = 0; i < 5; i++) SiloModel.rand.nextDouble();
+        RandomStreams.initialize(987654321012L);
+
+        MicroDataSnapshot written = createCheckpoint();
+        SiloCheckpoint.writeInBackground(YEAR, written);
+        SiloCheckpoint.finish();
+        List<String> microData = describeMicroData();
+        List<String> vacancies = describeVacancyLists();
+        double[] draws = new double[10];
+        for (int i = 0; i < draws.length; i++) draws[i] = SiloModel.rand.nextDouble();
+        double stream = RandomStreams.createStream("test", YEAR, 3).nextDouble();
+
+        // resume in a new run, set up as in SiloModel
+        rb = TestGeography.setUp(ZONES, REGIONS, PROPERTIES + "resume.from.checkpoint = true\n");
+        SiloModel.rand = new Random(1);
+        RandomStreams.initialize(0);
+        SiloCheckpoint.initialize(rb);
+        assertEquals(YEAR, SiloCheckpoint.getResumeYear());
+        MicroDataSnapshot checkpoint = SiloCheckpoint.readCheckpoint();
+        householdData = new HouseholdDataManager(rb);
+        householdData.setTypeOfAllHouseholds();
+        setUpDataManagers(rb);
+        householdData.restoreStateFromCheckpoint(checkpoint);
+        realEstateData.restoreStateFromCheckpoint(checkpoint);
+        jobData.restoreStateFromCheckpoint(checkpoint);
+        SiloCheckpoint.restoreRandomState(checkpoint);
+
+        assertEquals(microData, describeMicroData());
+        assertEquals(vacancies, describeVacancyLists());
+        for (double draw: draws) assertEquals(draw, SiloModel.rand.nextDouble(), 0);
+        assertEquals(stream, RandomStreams.createStream("test", YEAR, 3).nextDouble(), 0);
+
+        // state of the data managers is restored as well
+        MicroDataSnapshot restored = createCheckpoint();
+        assertTablesEqual(written, restored, "vacantDwellings", "region", "dwelling");
+        assertTablesEqual(written, restored, "vacantJobs", "region", "job");
+        for (String name: new String[]{"highestHouseholdAndPersonId", "highestDwellingIdAndLargestNoBedrooms",
+                "dwellingsByQuality", "dwellingsByRegion", "highestJobId"})
+            assertTrue(name, Arrays.equals(written.getIntArray(name), restored.getIntArray(name)));
+        for (String name: new String[]{"laborParticipationShares", "initialIncomeDistribution", "zonalJobDensity",
+                "rentSharesByIncomeCategory"})
+            assertTrue(name, Arrays.equals(written.getFloatArray(name), restored.getFloatArray(name)));
+
+        // the position index of the vacancy lists is restored, every vacant dwelling can be removed from its list
+        for (Dwelling vacant: Dwelling.getDwellings()) {
+            if (vacant.getResidentId() != -1) continue;
+            int region = geoData.getRegionOfZone(vacant.getZone());
+            RealEstateDataManager.removeDwellingFromVacancyList(vacant.getId());
+            for (int pos = 0; pos < RealEstateDataManager.getVacancyListLengthOfRegion(region); pos++)
+                assertTrue(vacant.getId() != RealEstateDataManager.getVacantDwellingInRegion(region, pos));
+        }
+        for (int region: geoData.getRegionList())
+            assertEquals(0, RealEstateDataManager.getVacancyListLengthOfRegion(region));
+    }
+
+
+    @Test
+    public void resultFilesAreCutBackToCheckpoint () throws IOException {
+        String directory = SiloUtil.baseDirectory + "scenOutput/" + SiloUtil.scenarioName + "/";
+        String resultFile = directory + "result" + SiloUtil.gregorianIterator + ".csv";
+        String spatialResultFile = directory + "spatialResult" + SiloUtil.gregorianIterator + ".csv";
+        summarizeData.openResultFile(rb);
+        summarizeData.resultFileSpatial(rb, "open");
+        summarizeData.resultFile("Year 2000");
+        summarizeData.resultFile("population,40");
+        summarizeData.resultFileSpatial(rb, "Year 2000");
+        summarizeData.resultFileSpatial(rb, "1,7");
+        SiloModel.rand = new Random(1);
+        SiloCheckpoint.writeInBackground(YEAR, createCheckpoint());
+        SiloCheckpoint.finish();
+        String result = readFile(resultFile);
+        String spatialResult = readFile(spatialResultFile);
+        assertEquals("Year 2000" + System.lineSeparator() + "population,40" + System.lineSeparator(), result);
+
+        // the interrupted run had written results of the following year before it stopped
+        summarizeData.resultFile("Year 2001");
+        summarizeData.resultFileSpatial(rb, "Year 2001");
+        summarizeData.resultFile("close");
+        summarizeData.resultFileSpatial(rb, "close");
+        AsyncFileWriter.closeAll();
+        assertTrue(readFile(resultFile).length() > result.length());
+        assertTrue(readFile(spatialResultFile).length() > spatialResult.length());
+
+        rb = TestGeography.setUp(ZONES, REGIONS, PROPERTIES + "resume.from.checkpoint = true\n");
+        SiloCheckpoint.initialize(rb);
+        summarizeData.openResultFile(rb);
+        summarizeData.resultFileSpatial(rb, "open");
+        assertEquals(result, readFile(resultFile));
+        assertEquals(spatialResult, readFile(spatialResultFile));
+        summarizeData.resultFile("Year 2001");
+        summarizeData.resultFile("close");
+        summarizeData.resultFileSpatial(rb, "close");
+        AsyncFileWriter.closeAll();
+        assertEquals(result + "Year 2001" + System.lineSeparator(), readFile(resultFile));
+        assertEquals(spatialResult, readFile(spatialResultFile));
+    }
+}
@@ -0,0 +1,84 @@
+package edu.umd.ncsg.data;
+
+import com.pb.common.matrix.Matrix;
+
+/**
+ * Compares the time to calculate Hansen accessibilities for one mode with the previous double loop over all
+ * origin-destination pairs of a Matrix, with impedances calculated from the skim and with impedances reused from a
+ * previous year. Every variant is run a few times after a warm-up run and the best time is reported, together with the
+ * largest relative difference to the double loop.
+ *
+ * Usage: AccessibilityBenchmark [zones] [runs]
+ **/
+
+public class AccessibilityBenchmark {
+
+    private static final float ALPHA = 1.2f;
+    private static final float BETA = -0.25f;
+
+
+    public static void main (String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        float[][] times = AccessibilityTest.createTravelTimes(size, 0.01, 1);
+        // set up like SiloUtil.convertOmxToMatrix()
+        Matrix matrix = new Matrix("test", "test", size, size);
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++) matrix.setValueAt(i + 1, j + 1, times[i][j]);
+        FloatSkim skim = FloatSkim.fromRows("test", times);
+        int[] zones = AccessibilityTest.createZones(size);
+        int[] pop = AccessibilityTest.createPopulation(size, 2);
+
+        double[] expected = null;
+        double doubleLoop = Double.MAX_VALUE;
+        for (int run = 0; run <= runs; run++) {
+            long start = System.nanoTime();
+            expected = calculateWithDoubleLoop(matrix, zones, pop);
+            if (run > 0) doubleLoop = Math.min(doubleLoop, (System.nanoTime() - start) / 1e6);
+        }
+
+        double[] actual = null;
+        float[][] impedance = null;
+        double withImpedances = Double.MAX_VALUE;
+        double reusedImpedances = Double.MAX_VALUE;
+        for (int run = 0; run <= runs; run++) {
+            long start = System.nanoTime();
+            impedance = Accessibility.calculateImpedances(skim, BETA, zones);
+            actual = Accessibility.calculateHansenAccessibilities(impedance, zones, pop, ALPHA);
+            if (run > 0) withImpedances = Math.min(withImpedances, (System.nanoTime() - start) / 1e6);
+        }
+        for (int run = 0; run <= runs; run++) {
+            long start = System.nanoTime();
+            actual = Accessibility.calculateHansenAccessibilities(impedance, zones, pop, ALPHA);
+            if (run > 0) reusedImpedances = Math.min(reusedImpedances, (System.nanoTime() - start) / 1e6);
+        }
+
+        double maxDifference = 0;
+        for (int i = 0; i < expected.length; i++)
+            if (expected[i] != 0) maxDifference = Math.max(maxDifference, Math.abs(actual[i] - expected[i]) / expected[i]);
+        System.out.println(String.format("%8s %16s %16s %16s %16s", "zones", "double loop ms", "impedances ms",
+                "reused ms", "max rel. diff"));
+        System.out.println(String.format("%8d %16.1f %16.1f %16.1f %16.2e", zones.length, doubleLoop, withImpedances,
+                reusedImpedances, maxDifference));
+    }
+
+
+    private static double[] calculateWithDoubleLoop (Matrix skim, int[] zones, int[] pop) {
+        // previous implementation of Accessibility.calculateAccessibilities() for one mode
+        double[] accessibility = new double[zones.length];
+        for (int origIndex = 0; origIndex < zones.length; origIndex++) {
+            int orig = zones[origIndex];
+            for (int dest: zones) {
+                double impedance;
+                if (skim.getValueAt(orig, dest) == 0) {
+                    impedance = 0;
+                } else {
+                    impedance = Math.exp(BETA * skim.getValueAt(orig, dest));
+                }
+                accessibility[origIndex] += Math.pow(pop[dest], ALPHA) * impedance;
+            }
+        }
+        return accessibility;
+    }
+}
@@ -0,0 +1,139 @@
+package edu.umd.ncsg.data;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the Hansen accessibilities calculated from impedances and population weights with the previous double loop
+ * over all origin-destination pairs on the same skims.
+ **/
+
+public class AccessibilityTest {
+
+    private static final float ALPHA_AUTO = 1.2f;
+    private static final float BETA_AUTO = -0.25f;
+    private static final float ALPHA_TRANSIT = 1.0f;
+    private static final float BETA_TRANSIT = -0.1f;
+
+
+    static float[][] createTravelTimes (int size, double shareOfZeros, long seed) {
+        // random travel times between 1 and 90 minutes, some zone pairs are not connected (travel time 0)
+        Random rand = new Random(seed);
+        float[][] times = new float[size][size];
+        for (int orig = 0; orig < size; orig++)
+            for (int dest = 0; dest < size; dest++)
+                times[orig][dest] = rand.nextDouble() < shareOfZeros ? 0 : 1 + rand.nextFloat() * 89;
+        return times;
+    }
+
+
+    static int[] createZones (int size) {
+        // zone ids 1 to size without every tenth zone, which are not part of the study area
+        int count = 0;
+        for (int zone = 1; zone <= size; zone++) if (zone % 10 != 0) count++;
+        int[] zones = new int[count];
+        int pos = 0;
+        for (int zone = 1; zone <= size; zone++) if (zone % 10 != 0) zones[pos++] = zone;
+        return zones;
+    }
+
+
+    static int[] createPopulation (int size, long seed) {
+        // population by zone id, some zones are empty
+        Random rand = new Random(seed);
+        int[] pop = new int[size + 1];
+        for (int zone = 1; zone <= size; zone++) pop[zone] = rand.nextInt(5) == 0 ? 0 : rand.nextInt(20000);
+        return pop;
+    }
+
+
+    static double[] calculateWithDoubleLoop (Skim skim, int[] zones, int[] pop, float alpha, float beta) {
+        // previous implementation of Accessibility.calculateAccessibilities() for one mode
+        double[] accessibility = new double[zones.length];
+        for (int origIndex = 0; origIndex < zones.length; origIndex++) {
+            int orig = zones[origIndex];
+            for (int dest: zones) {
+                double impedance;
+                if (skim.getValueAt(orig, dest) == 0) {
+                    impedance = 0;
+                } else {
+                    impedance = Math.exp(beta * skim.getValueAt(orig, dest));
+                }
+                accessibility[origIndex] += Math.pow(pop[dest], alpha) * impedance;
+            }
+        }
+        return accessibility;
+    }
+
+
+    private static void assertSameAccessibilities (String message, double[] expected, double[] actual) {
+        // impedances are stored as float, which allows for a small relative difference
+        assertEquals(message, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            double tolerance = Math.max(Math.abs(expected[i]) * 1e-6, 1e-9);
+            assertEquals(message + ", zone index " + i, expected[i], actual[i], tolerance);
+        }
+    }
+
+
+    private static void compare (int size, double shareOfZeros, float alpha, float beta, long seed) {
+        FloatSkim skim = FloatSkim.fromRows("test", createTravelTimes(size, shareOfZeros, seed));
+        int[] zones = createZones(size);
+        int[] pop = createPopulation(size, seed + 1);
+        double[] expected = calculateWithDoubleLoop(skim, zones, pop, alpha, beta);
+        float[][] impedance = Accessibility.calculateImpedances(skim, beta, zones);
+        double[] actual = Accessibility.calculateHansenAccessibilities(impedance, zones, pop, alpha);
+        assertSameAccessibilities(size + " zones", expected, actual);
+    }
+
+
+    @Test
+    public void autoAccessibilitiesMatchDoubleLoop () {
+        compare(1, 0, ALPHA_AUTO, BETA_AUTO, 1);
+        compare(63, 0, ALPHA_AUTO, BETA_AUTO, 2);
+        compare(65, 0.01, ALPHA_AUTO, BETA_AUTO, 3);
+        // more zones than one block of destinations
+        compare(1500, 0.01, ALPHA_AUTO, BETA_AUTO, 4);
+    }
+
+
+    @Test
+    public void transitAccessibilitiesMatchDoubleLoop () {
+        // many zone pairs are not connected by walk-to-transit
+        compare(200, 0.4, ALPHA_TRANSIT, BETA_TRANSIT, 5);
+        compare(1300, 0.4, ALPHA_TRANSIT, BETA_TRANSIT, 6);
+    }
+
+
+    @Test
+    public void unconnectedOriginHasNoAccessibility () {
+        int size = 100;
+        float[][] times = createTravelTimes(size, 0, 7);
+        for (int dest = 0; dest < size; dest++) times[4][dest] = 0;
+        FloatSkim skim = FloatSkim.fromRows("test", times);
+        int[] zones = createZones(size);
+        int[] pop = createPopulation(size, 8);
+        double[] accessibility = Accessibility.calculateHansenAccessibilities(
+                Accessibility.calculateImpedances(skim, BETA_TRANSIT, zones), zones, pop, ALPHA_TRANSIT);
+        assertEquals(0, accessibility[4], 0);
+        assertTrue(accessibility[5] > 0);
+        assertSameAccessibilities("unconnected origin",
+                calculateWithDoubleLoop(skim, zones, pop, ALPHA_TRANSIT, BETA_TRANSIT), accessibility);
+    }
+
+
+    @Test
+    public void emptyZonesDoNotContribute () {
+        int size = 50;
+        FloatSkim skim = FloatSkim.fromRows("test", createTravelTimes(size, 0, 9));
+        int[] zones = createZones(size);
+        int[] pop = new int[size + 1];
+        double[] accessibility = Accessibility.calculateHansenAccessibilities(
+                Accessibility.calculateImpedances(skim, BETA_AUTO, zones), zones, pop, ALPHA_AUTO);
+        for (double value: accessibility) assertEquals(0, value, 0);
+    }
+}
@@ -0,0 +1,254 @@
+package edu.umd.ncsg.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests slot reuse, id index growth, iteration and layout restoring of EntityStore.
+ **/
+
+public class EntityStoreTest {
+
+    @Test
+    public void emptyStore () {
+        EntityStore<String> store = new EntityStore<>();
+        assertEquals(0, store.size());
+        assertTrue(store.isEmpty());
+        assertEquals(0, store.getSlotCount());
+        assertFalse(store.iterator().hasNext());
+        assertEquals(0, store.toArray().length);
+        assertEquals(0, store.getFreeSlots().length);
+        assertNull(store.get(0));
+        assertNull(store.remove(0));
+        assertFalse(store.containsId(0));
+        assertEquals(-1, store.getSlotOfId(0));
+        assertEquals(0, store.getModificationCount());
+    }
+
+
+    @Test
+    public void putGetAndReplace () {
+        EntityStore<String> store = new EntityStore<>(16);
+        store.put(3, "a");
+        store.put(7, "b");
+        assertEquals(2, store.size());
+        assertEquals("a", store.get(3));
+        assertEquals("b", store.get(7));
+        assertNull(store.get(4));
+        int modCount = store.getModificationCount();
+        // replacing an entity keeps its slot and does not count as adding or removing
+        store.put(3, "c");
+        assertEquals(2, store.size());
+        assertEquals("c", store.get(3));
+        assertEquals(0, store.getSlotOfId(3));
+        assertEquals(modCount, store.getModificationCount());
+    }
+
+
+    @Test
+    public void removedSlotIsReused () {
+        EntityStore<String> store = new EntityStore<>(16);
+        for (int id = 0; id < 5; id++) store.put(id, "e" + id);
+        int slotOfOne = store.getSlotOfId(1);
+        int slotOfThree = store.getSlotOfId(3);
+        assertEquals("e1", store.remove(1));
+        assertEquals("e3", store.remove(3));
+        assertNull(store.remove(3));
+        assertEquals(3, store.size());
+        assertNull(store.getEntityInSlot(slotOfOne));
+        assertEquals(2, store.getFreeSlots().length);
+
+        // last freed slot is reused first, slot count does not grow
+        store.put(10, "e10");
+        assertEquals(slotOfThree, store.getSlotOfId(10));
+        store.put(11, "e11");
+        assertEquals(slotOfOne, store.getSlotOfId(11));
+        assertEquals(5, store.getSlotCount());
+        store.put(12, "e12");
+        assertEquals(5, store.getSlotOfId(12));
+        assertEquals(6, store.getSlotCount());
+        assertFalse(store.containsId(1));
+        assertTrue(store.containsId(11));
+    }
+
+
+    @Test
+    public void idBeyondCapacity () {
+        EntityStore<String> store = new EntityStore<>(16);
+        assertNull(store.get(1000000));
+        assertNull(store.remove(1000000));
+        store.put(1000000, "far");
+        assertEquals("far", store.get(1000000));
+        assertEquals(1, store.size());
+        assertNull(store.get(1000001));
+        assertNull(store.get(-5));
+        // slots grow beyond initial capacity as well
+        for (int id = 0; id < 100; id++) store.put(id, "e" + id);
+        assertEquals(101, store.size());
+        assertTrue(store.capacity() >= 101);
+        for (int id = 0; id < 100; id++) assertEquals("e" + id, store.get(id));
+        assertEquals("far", store.get(1000000));
+    }
+
+
+    @Test
+    public void invalidEntitiesAreRejected () {
+        EntityStore<String> store = new EntityStore<>();
+        try {
+            store.put(-1, "negative");
+            fail("negative id accepted");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            store.put(1, null);
+            fail("null entity accepted");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertEquals(0, store.size());
+    }
+
+
+    @Test
+    public void iteratorFollowsSlotsAndFailsOnChange () {
+        EntityStore<String> store = new EntityStore<>(16);
+        for (int id = 0; id < 6; id++) store.put(id, "e" + id);
+        store.remove(2);
+        store.put(9, "e9");
+        List<String> seen = new ArrayList<>();
+        for (String entity: store) seen.add(entity);
+        assertEquals(6, seen.size());
+        assertEquals("e9", seen.get(2));
+
+        Iterator<String> it = store.iterator();
+        it.next();
+        try {
+            it.remove();
+            fail("iterator removed entity");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+        store.remove(0);
+        try {
+            it.next();
+            fail("iterator did not notice removal");
+        } catch (ConcurrentModificationException expected) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void modificationCountAndClear () {
+        EntityStore<String> store = new EntityStore<>();
+        store.put(1, "a");
+        store.put(2, "b");
+        int afterAdding = store.getModificationCount();
+        assertEquals(2, afterAdding);
+        store.remove(1);
+        assertEquals(3, store.getModificationCount());
+        store.clear();
+        assertTrue(store.getModificationCount() > 3);
+        assertEquals(0, store.size());
+        assertNull(store.get(2));
+        assertEquals(0, store.getSlotCount());
+        store.put(2, "c");
+        assertEquals(0, store.getSlotOfId(2));
+    }
+
+
+    @Test
+    public void restoreLayoutReproducesOrderAndReuse () {
+        // original store with holes
+        EntityStore<String> original = new EntityStore<>(16);
+        for (int id = 0; id < 8; id++) original.put(id, "e" + id);
+        original.remove(5);
+        original.remove(2);
+        int[] ids = new int[original.size()];
+        int[] slots = new int[original.size()];
+        int pos = 0;
+        for (int slot = 0; slot < original.getSlotCount(); slot++) {
+            String entity = original.getEntityInSlot(slot);
+            if (entity == null) continue;
+            ids[pos] = Integer.parseInt(entity.substring(1));
+            slots[pos] = slot;
+            pos++;
+        }
+
+        // same entities added in a different order
+        EntityStore<String> restored = new EntityStore<>(16);
+        for (int id = 7; id >= 0; id--) if (id != 5 && id != 2) restored.put(id, "e" + id);
+        restored.restoreLayout(ids, slots, original.getFreeSlots(), original.getSlotCount());
+
+        assertEquals(original.size(), restored.size());
+        assertEquals(original.getSlotCount(), restored.getSlotCount());
+        Iterator<String> a = original.iterator();
+        Iterator<String> b = restored.iterator();
+        while (a.hasNext()) assertEquals(a.next(), b.next());
+        assertFalse(b.hasNext());
+        for (int id = 0; id < 8; id++) assertEquals(original.getSlotOfId(id), restored.getSlotOfId(id));
+
+        original.put(20, "e20");
+        restored.put(20, "e20");
+        assertEquals(original.getSlotOfId(20), restored.getSlotOfId(20));
+        original.put(21, "e21");
+        restored.put(21, "e21");
+        assertEquals(original.getSlotOfId(21), restored.getSlotOfId(21));
+    }
+
+
+    @Test
+    public void restoreLayoutOfEmptyStore () {
+        EntityStore<String> store = new EntityStore<>();
+        store.restoreLayout(new int[0], new int[0], new int[0], 0);
+        assertEquals(0, store.size());
+        store.put(4, "a");
+        assertEquals(0, store.getSlotOfId(4));
+    }
+
+
+    @Test
+    public void restoreLayoutRejectsIncompleteLayout () {
+        EntityStore<String> store = new EntityStore<>();
+        store.put(1, "a");
+        store.put(2, "b");
+        try {
+            store.restoreLayout(new int[] {1}, new int[] {0}, new int[0], 1);
+            fail("incomplete layout accepted");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            store.restoreLayout(new int[] {1, 3}, new int[] {0, 1}, new int[0], 2);
+            fail("unknown id accepted");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertSame("a", store.get(1));
+        assertEquals(2, store.size());
+    }
+
+
+    @Test
+    public void snapshotsAreCounted () {
+        EntityStore<String> store = new EntityStore<>();
+        store.put(1, "a");
+        EntityStore.getAndResetSnapshotCounter();
+        store.toArray();
+        store.toArray(new String[0]);
+        assertEquals(2, EntityStore.getAndResetSnapshotCounter());
+        assertEquals(0, EntityStore.getAndResetSnapshotCounter());
+    }
+}
@@ -0,0 +1,148 @@
+package edu.umd.ncsg.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates a person file with CRLF line ends, plain and compressed, reads it with the line-by-line split/parseInt
+ * parsing that was used before MicroDataCsvReader and with MicroDataCsvReader, and checks that all values are
+ * identical. The time of both readers is reported.
+ *
+ * Usage: MicroDataCsvReaderBenchmark [rows]
+ **/
+
+public class MicroDataCsvReaderBenchmark {
+
+    private static final String[] INT_COLUMNS = {"id", "hhid", "age", "gender", "occupation", "workplace", "income"};
+    private static final String[] STRING_COLUMNS = {"relationShip", "race"};
+    private static final String FLOAT_COLUMN = "share";
+
+
+    public static void main (String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1500000;
+        File plain = File.createTempFile("pp_", ".csv");
+        File compressed = new File(plain.getPath() + ".gz");
+        try {
+            writeFile(plain, rows, false);
+            writeFile(compressed, rows, true);
+            for (File file: new File[]{plain, compressed}) {
+                long start = System.currentTimeMillis();
+                Values expected = readWithSplit(file, rows);
+                long split = System.currentTimeMillis() - start;
+                start = System.currentTimeMillis();
+                Values actual = readWithMicroDataCsvReader(file, rows);
+                long reader = System.currentTimeMillis() - start;
+                System.out.println(String.format("%-10s %9d rows, split/parseInt %6d ms, MicroDataCsvReader %6d ms, " +
+                        "values identical: %s", file.getName().endsWith(".gz") ? "gzipped" : "plain", rows, split, reader,
+                        expected.equals(actual)));
+                if (!expected.equals(actual)) System.exit(1);
+            }
+        } finally {
+            plain.delete();
+            compressed.delete();
+        }
+    }
+
+
+    private static void writeFile (File file, int rows, boolean compress) throws IOException {
+        Random rand = new Random(rows);
+        String[] roles = {"single", "married", "child"};
+        String[] races = {"white", "black", "hispanic", "other"};
+        OutputStream stream = new FileOutputStream(file);
+        if (compress) stream = new GZIPOutputStream(stream);
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            out.print("id,hhid,age,gender,relationShip,race,occupation,workplace,income,share,driversLicense\r\n");
+            for (int row = 0; row < rows; row++) {
+                out.print((row + 1) + "," + (row / 3 + 1) + "," + rand.nextInt(100) + "," + (rand.nextInt(2) + 1) +
+                        ",\"" + roles[rand.nextInt(3)] + "\",\"" + races[rand.nextInt(4)] + "\"," + rand.nextInt(3) + "," +
+                        (rand.nextInt(10) - 2) + "," + rand.nextInt(250000) + "," +
+                        (rand.nextBoolean() ? String.valueOf(rand.nextInt(1000)) : String.valueOf(rand.nextFloat() * 10)) +
+                        "," + rand.nextBoolean() + "\r\n");
+            }
+        }
+    }
+
+
+    private static Values readWithSplit (File file, int rows) throws IOException {
+        // previous parsing of micro data files in HouseholdDataManager, RealEstateDataManager and JobDataManager
+        Values values = new Values(rows);
+        InputStream stream = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) stream = new GZIPInputStream(stream);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String[] header = in.readLine().split(",");
+            int[] posInt = new int[INT_COLUMNS.length];
+            for (int c = 0; c < INT_COLUMNS.length; c++) posInt[c] = Arrays.asList(header).indexOf(INT_COLUMNS[c]);
+            int[] posString = new int[STRING_COLUMNS.length];
+            for (int c = 0; c < STRING_COLUMNS.length; c++) posString[c] = Arrays.asList(header).indexOf(STRING_COLUMNS[c]);
+            int posFloat = Arrays.asList(header).indexOf(FLOAT_COLUMN);
+            String recString;
+            int row = 0;
+            while ((recString = in.readLine()) != null) {
+                String[] lineElements = recString.split(",");
+                for (int c = 0; c < INT_COLUMNS.length; c++) values.ints[c][row] = Integer.parseInt(lineElements[posInt[c]]);
+                for (int c = 0; c < STRING_COLUMNS.length; c++)
+                    values.strings[c][row] = lineElements[posString[c]].replace("\"", "");
+                values.floats[row] = Float.parseFloat(lineElements[posFloat]);
+                row++;
+            }
+            values.rowCount = row;
+        }
+        return values;
+    }
+
+
+    private static Values readWithMicroDataCsvReader (File file, int rows) {
+        final Values values = new Values(rows);
+        MicroDataCsvReader reader = new MicroDataCsvReader(file.getPath());
+        final int[] posInt = new int[INT_COLUMNS.length];
+        for (int c = 0; c < INT_COLUMNS.length; c++) posInt[c] = reader.addIntColumn(INT_COLUMNS[c]);
+        final int[] posString = new int[STRING_COLUMNS.length];
+        for (int c = 0; c < STRING_COLUMNS.length; c++) posString[c] = reader.addStringColumn(STRING_COLUMNS[c]);
+        final int posFloat = reader.addFloatColumn(FLOAT_COLUMN);
+        values.rowCount = reader.read(new MicroDataCsvReader.RowHandler() {
+            int row = 0;
+            public void handleRow (MicroDataCsvReader.Row line) {
+                for (int c = 0; c < INT_COLUMNS.length; c++) values.ints[c][row] = line.getInt(posInt[c]);
+                for (int c = 0; c < STRING_COLUMNS.length; c++) values.strings[c][row] = line.getString(posString[c]);
+                values.floats[row] = line.getFloat(posFloat);
+                row++;
+            }
+        });
+        return values;
+    }
+
+
+    private static class Values {
+        int rowCount;
+        final int[][] ints;
+        final String[][] strings;
+        final float[] floats;
+
+        Values (int rows) {
+            ints = new int[INT_COLUMNS.length][rows];
+            strings = new String[STRING_COLUMNS.length][rows];
+            floats = new float[rows];
+        }
+
+        boolean equals (Values other) {
+            // floats are compared bit by bit, as both readers have to round in the same way
+            if (rowCount != other.rowCount) return false;
+            for (int row = 0; row < rowCount; row++)
+                if (Float.floatToIntBits(floats[row]) != Float.floatToIntBits(other.floats[row])) return false;
+            return Arrays.deepEquals(ints, other.ints) && Arrays.deepEquals(strings, other.strings);
+        }
+    }
+}
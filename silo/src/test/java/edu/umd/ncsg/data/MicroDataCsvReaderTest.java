@@ -0,0 +1,156 @@
+package edu.umd.ncsg.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads small csv files with MicroDataCsvReader, plain and compressed, and checks the fallback to a compressed file and
+ * the errors for missing files and columns.
+ **/
+
+public class MicroDataCsvReaderTest {
+
+    private static final String CONTENT = "\"id\",\"zone\",\"race\",\"price\",\"unused\"\r\n" +
+            "1,5,\"white\",1.5,x\r\n" +
+            "2,-7,black,1200,y\r\n" +
+            "\r\n" +
+            "3,2147483647,\"hispanic\",0.1,z";
+
+    private File directory;
+
+
+    @Before
+    public void setUp () throws IOException {
+        directory = File.createTempFile("csvreader", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+
+    @After
+    public void tearDown () {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file: files) file.delete();
+        directory.delete();
+    }
+
+
+    private File writeFile (String name, String content, boolean compress) throws IOException {
+        File file = new File(directory, name);
+        try (OutputStream out = compress ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+
+    private static List<String> read (String fileName) {
+        // read columns in an order different from the file, return one String per row
+        MicroDataCsvReader reader = new MicroDataCsvReader(fileName);
+        final int race = reader.addStringColumn("race");
+        final int id = reader.addIntColumn("id");
+        final int price = reader.addFloatColumn("price");
+        final int zone = reader.addIntColumn("zone");
+        final List<String> rows = new ArrayList<>();
+        int rowCount = reader.read(new MicroDataCsvReader.RowHandler() {
+            public void handleRow (MicroDataCsvReader.Row row) {
+                rows.add(row.getInt(id) + "," + row.getInt(zone) + "," + row.getString(race) + "," + row.getFloat(price));
+            }
+        });
+        assertEquals(rows.size(), rowCount);
+        return rows;
+    }
+
+
+    private static void assertContent (List<String> rows) {
+        assertEquals(3, rows.size());
+        assertEquals("1,5,white,1.5", rows.get(0));
+        assertEquals("2,-7,black,1200.0", rows.get(1));
+        assertEquals("3,2147483647,hispanic,0.1", rows.get(2));
+    }
+
+
+    @Test
+    public void readsPlainFile () throws IOException {
+        File file = writeFile("hh_2000.csv", CONTENT, false);
+        assertContent(read(file.getPath()));
+    }
+
+
+    @Test
+    public void readsCompressedFile () throws IOException {
+        File file = writeFile("hh_2000.csv.gz", CONTENT, true);
+        assertContent(read(file.getPath()));
+    }
+
+
+    @Test
+    public void fallsBackToCompressedFile () throws IOException {
+        writeFile("hh_2000.csv.gz", CONTENT, true);
+        assertContent(read(new File(directory, "hh_2000.csv").getPath()));
+    }
+
+
+    @Test
+    public void prefersPlainFileOverCompressedFile () throws IOException {
+        writeFile("hh_2000.csv", CONTENT, false);
+        writeFile("hh_2000.csv.gz", "id,zone,race,price\n9,9,other,9", true);
+        assertContent(read(new File(directory, "hh_2000.csv").getPath()));
+    }
+
+
+    @Test
+    public void missingFileStopsReading () {
+        try {
+            read(new File(directory, "missing.csv").getPath());
+            fail("Missing file not reported");
+        } catch (RuntimeException expected) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void missingColumnStopsReading () throws IOException {
+        File file = writeFile("hh_2000.csv", "id,zone,race\n1,2,white\n", false);
+        try {
+            read(file.getPath());
+            fail("Missing column not reported");
+        } catch (RuntimeException expected) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void emptyFileHasNoRows () throws IOException {
+        File file = writeFile("hh_2000.csv", "id,zone,race,price\n", false);
+        assertEquals(0, read(file.getPath()).size());
+    }
+
+
+    @Test
+    public void invalidIntIsRejected () throws IOException {
+        File file = writeFile("hh_2000.csv", "id,zone,race,price\n1,2147483648,white,1\n", false);
+        try {
+            read(file.getPath());
+            fail("Int overflow not reported");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getCause() != null);
+        }
+    }
+}
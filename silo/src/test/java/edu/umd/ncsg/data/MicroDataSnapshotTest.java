@@ -0,0 +1,201 @@
+package edu.umd.ncsg.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes snapshots to a temporary file and reads them back, for all column types, for columns that are larger than the
+ * write buffer and for the population tables with and without households.
+ **/
+
+public class MicroDataSnapshotTest {
+
+    private File file;
+
+
+    @Before
+    public void setUp () throws IOException {
+        file = File.createTempFile("snapshot", ".bin");
+        clearPopulation();
+    }
+
+
+    @After
+    public void tearDown () {
+        file.delete();
+        clearPopulation();
+    }
+
+
+    private static void clearPopulation () {
+        Household.getHouseholds().clear();
+        Person.getPersons().clear();
+    }
+
+
+    private MicroDataSnapshot writeAndRead (MicroDataSnapshot snapshot) {
+        snapshot.write(file.getPath());
+        return MicroDataSnapshot.read(file.getPath());
+    }
+
+
+    @Test
+    public void allColumnTypesSurviveRoundTrip () {
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        MicroDataSnapshot.Table table = snapshot.addTable("table", 4);
+        int[] ints = {0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        float[] floats = {0f, -1.5f, Float.NaN, Float.MAX_VALUE};
+        double[] doubles = {0d, Math.PI, Double.NEGATIVE_INFINITY, Double.MIN_VALUE};
+        byte[] bytes = {0, -128, 127, 1};
+        String[] strings = {"white", "", "white", "Stra\u00dfe"};
+        table.addIntColumn("ints", ints);
+        table.addFloatColumn("floats", floats);
+        table.addDoubleColumn("doubles", doubles);
+        table.addByteColumn("bytes", bytes);
+        table.addStringColumn("strings", strings);
+        snapshot.addIntArray("intArray", new int[]{7});
+        snapshot.addDoubleArray("emptyArray", new double[0]);
+
+        MicroDataSnapshot read = writeAndRead(snapshot);
+        MicroDataSnapshot.Table readTable = read.getTable("table");
+        assertEquals(4, readTable.getRowCount());
+        assertTrue(Arrays.equals(ints, readTable.getIntColumn("ints")));
+        assertTrue(Arrays.equals(floats, readTable.getFloatColumn("floats")));
+        assertTrue(Arrays.equals(doubles, readTable.getDoubleColumn("doubles")));
+        assertTrue(Arrays.equals(bytes, readTable.getByteColumn("bytes")));
+        assertTrue(Arrays.equals(strings, readTable.getStringColumn("strings")));
+        assertTrue(Arrays.equals(new int[]{7}, read.getIntArray("intArray")));
+        assertEquals(0, read.getDoubleArray("emptyArray").length);
+        assertFalse(read.hasTable("missing"));
+    }
+
+
+    @Test
+    public void columnsLargerThanBufferSurviveRoundTrip () {
+        // 1 MB buffer holds 262144 ints or 131072 doubles
+        int rows = 600001;
+        Random rand = new Random(42);
+        int[] ints = new int[rows];
+        double[] doubles = new double[rows];
+        byte[] bytes = new byte[rows];
+        String[] strings = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            ints[i] = rand.nextInt();
+            doubles[i] = rand.nextDouble();
+            bytes[i] = (byte) rand.nextInt();
+            strings[i] = "value" + rand.nextInt(1000);
+        }
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        MicroDataSnapshot.Table table = snapshot.addTable("large", rows);
+        table.addIntColumn("ints", ints);
+        table.addDoubleColumn("doubles", doubles);
+        table.addByteColumn("bytes", bytes);
+        table.addStringColumn("strings", strings);
+
+        MicroDataSnapshot.Table read = writeAndRead(snapshot).getTable("large");
+        assertTrue(Arrays.equals(ints, read.getIntColumn("ints")));
+        assertTrue(Arrays.equals(doubles, read.getDoubleColumn("doubles")));
+        assertTrue(Arrays.equals(bytes, read.getByteColumn("bytes")));
+        assertTrue(Arrays.equals(strings, read.getStringColumn("strings")));
+    }
+
+
+    @Test
+    public void populationSurvivesRoundTrip () {
+        new Household(3, 30, 5, 2, 1);
+        new Household(1, 10, 7, 1, 0);
+        Person father = new Person(11, 3, 45, 1, Race.white, 1, 100, 52000);
+        father.setRole(PersonRole.married);
+        Person child = new Person(12, 3, 8, 2, Race.white, 3, -1, 0);
+        child.setRole(PersonRole.child);
+        Person single = new Person(13, 1, 30, 2, Race.hispanic, 1, 101, 35000);
+        single.setRole(PersonRole.single);
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        HouseholdDataManager.addPopulationToSnapshot(snapshot);
+
+        MicroDataSnapshot read = writeAndRead(snapshot);
+        clearPopulation();
+        HouseholdDataManager.createPopulationFromSnapshot(read);
+        assertEquals(2, Household.getHouseholdCount());
+        assertEquals(3, Person.getPersonCount());
+        Household hh = Household.getHouseholdFromId(3);
+        assertEquals(30, hh.getDwellingId());
+        assertEquals(5, hh.getHomeZone());
+        assertEquals(2, hh.getHhSize());
+        assertEquals(1, hh.getAutos());
+        assertEquals(7, Household.getHouseholdFromId(1).getHomeZone());
+        Person pp = Person.getPersonFromId(11);
+        assertEquals(3, pp.getHhId());
+        assertEquals(45, pp.getAge());
+        assertEquals(1, pp.getGender());
+        assertSame(Race.white, pp.getRace());
+        assertSame(PersonRole.married, pp.getRole());
+        assertEquals(1, pp.getOccupation());
+        assertEquals(100, pp.getWorkplace());
+        assertEquals(52000, pp.getIncome());
+        assertSame(PersonRole.child, Person.getPersonFromId(12).getRole());
+        assertSame(Race.hispanic, Person.getPersonFromId(13).getRace());
+    }
+
+
+    @Test
+    public void snapshotWithoutHouseholdsSurvivesRoundTrip () {
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        HouseholdDataManager.addPopulationToSnapshot(snapshot);
+
+        MicroDataSnapshot read = writeAndRead(snapshot);
+        assertEquals(0, read.getTable("households").getRowCount());
+        assertEquals(0, read.getTable("persons").getRowCount());
+        assertEquals(0, read.getTable("persons").getStringColumn("race").length);
+        HouseholdDataManager.createPopulationFromSnapshot(read);
+        assertEquals(0, Household.getHouseholdCount());
+        assertEquals(0, Person.getPersonCount());
+    }
+
+
+    @Test
+    public void missingColumnIsReported () {
+        MicroDataSnapshot snapshot = new MicroDataSnapshot();
+        snapshot.addTable("table", 1).addIntColumn("ints", new int[]{1});
+        MicroDataSnapshot.Table read = writeAndRead(snapshot).getTable("table");
+        try {
+            read.getIntColumn("other");
+            fail("Missing column not reported");
+        } catch (RuntimeException expected) {
+            // expected
+        }
+        try {
+            read.getFloatColumn("ints");
+            fail("Column of wrong type not reported");
+        } catch (RuntimeException expected) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void fileOfOtherFormatIsRejected () throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{'h', 'h', 'I', 'd', ',', 'z', 'o', 'n', 'e', '\n'});
+        }
+        try {
+            MicroDataSnapshot.read(file.getPath());
+            fail("File of other format not rejected");
+        } catch (RuntimeException expected) {
+            // expected
+        }
+    }
+}
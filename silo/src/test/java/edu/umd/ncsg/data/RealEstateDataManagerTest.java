@@ -0,0 +1,147 @@
+package edu.umd.ncsg.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ResourceBundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Removes dwellings from the head, the middle and the tail of the vacancy lists and adds them again, and checks after
+ * every step that the position index matches the positions in the lists.
+ **/
+
+public class RealEstateDataManagerTest {
+
+    private static final int ZONES = 6;
+    private static final int REGIONS = 2;
+    private static final int DWELLINGS = 12;
+
+
+    @Before
+    public void setUp () throws IOException {
+        ResourceBundle rb = TestGeography.setUp(ZONES, REGIONS);
+        // dwelling id d is located in zone (d - 1) % 6 + 1, every third dwelling is occupied
+        for (int id = 1; id <= DWELLINGS; id++)
+            new Dwelling(id, (id - 1) % ZONES + 1, id % 3 == 0 ? 100 + id : -1, DwellingType.SFD, 2, 3, 1000, 0, 1990);
+        new RealEstateDataManager(rb).identifyVacantDwellings();
+    }
+
+
+    @After
+    public void tearDown () {
+        TestGeography.clearMicroData();
+    }
+
+
+    private static int getRegion (int ddId) {
+        return geoData.getRegionOfZone(Dwelling.getDwellingFromId(ddId).getZone());
+    }
+
+
+    private static void assertIndexMatchesLists (int expectedVacancies) {
+        int vacancies = 0;
+        for (int region: geoData.getRegionList()) {
+            int length = RealEstateDataManager.getVacancyListLengthOfRegion(region);
+            for (int pos = 0; pos < length; pos++) {
+                int ddId = RealEstateDataManager.getVacantDwellingInRegion(region, pos);
+                assertEquals("position of dwelling " + ddId, pos, RealEstateDataManager.getPositionOfVacantDwelling(ddId));
+                assertEquals(region, getRegion(ddId));
+                assertEquals(-1, Dwelling.getDwellingFromId(ddId).getResidentId());
+            }
+            vacancies += length;
+        }
+        assertEquals(expectedVacancies, vacancies);
+        int indexed = 0;
+        for (Dwelling dd: Dwelling.getDwellings())
+            if (RealEstateDataManager.getPositionOfVacantDwelling(dd.getId()) != -1) indexed++;
+        assertEquals(expectedVacancies, indexed);
+    }
+
+
+    private static void occupy (int ddId) {
+        Dwelling.getDwellingFromId(ddId).setResidentID(500 + ddId);
+        RealEstateDataManager.removeDwellingFromVacancyList(ddId);
+    }
+
+
+    private static void vacate (int ddId) {
+        Dwelling dd = Dwelling.getDwellingFromId(ddId);
+        dd.setResidentID(-1);
+        RealEstateDataManager.addDwellingToVacancyList(dd);
+    }
+
+
+    @Test
+    public void initialListsContainVacantDwellings () {
+        assertIndexMatchesLists(8);
+        assertEquals(-1, RealEstateDataManager.getPositionOfVacantDwelling(3));
+        assertEquals(-1, RealEstateDataManager.getPositionOfVacantDwelling(1000));
+    }
+
+
+    @Test
+    public void removeFromHeadMiddleAndTailAndAddAgain () {
+        // region 1 holds vacant dwellings 1, 5, 7 and 11 in this order
+        int region = getRegion(1);
+        assertEquals(4, RealEstateDataManager.getVacancyListLengthOfRegion(region));
+        int head = RealEstateDataManager.getVacantDwellingInRegion(region, 0);
+        int middle = RealEstateDataManager.getVacantDwellingInRegion(region, 1);
+        int tail = RealEstateDataManager.getVacantDwellingInRegion(region, 3);
+
+        occupy(head);
+        assertIndexMatchesLists(7);
+        assertEquals(tail, RealEstateDataManager.getVacantDwellingInRegion(region, 0));   // tail moved to the head
+        occupy(middle);
+        assertIndexMatchesLists(6);
+        int newTail = RealEstateDataManager.getVacantDwellingInRegion(region, 1);
+        occupy(newTail);
+        assertIndexMatchesLists(5);
+        assertEquals(1, RealEstateDataManager.getVacancyListLengthOfRegion(region));
+
+        vacate(middle);
+        assertIndexMatchesLists(6);
+        vacate(head);
+        vacate(newTail);
+        assertIndexMatchesLists(8);
+        assertEquals(4, RealEstateDataManager.getVacancyListLengthOfRegion(region));
+    }
+
+
+    @Test
+    public void removeOnlyDwellingOfList () {
+        int region = getRegion(2);
+        while (RealEstateDataManager.getVacancyListLengthOfRegion(region) > 1)
+            occupy(RealEstateDataManager.getVacantDwellingInRegion(region, 0));
+        occupy(RealEstateDataManager.getVacantDwellingInRegion(region, 0));
+        assertEquals(0, RealEstateDataManager.getVacancyListLengthOfRegion(region));
+        assertIndexMatchesLists(4);
+    }
+
+
+    @Test
+    public void newDwellingsExtendListsAndIndex () {
+        // lists start with room for 2 dwellings per region and the index covers the ids read at the beginning only
+        for (int id = 1000; id < 1040; id++) {
+            Dwelling dd = new Dwelling(id, id % ZONES + 1, -1, DwellingType.MF5plus, 1, 2, 800, 0, 2001);
+            RealEstateDataManager.addDwellingToVacancyList(dd);
+        }
+        assertIndexMatchesLists(48);
+        for (int id = 1000; id < 1040; id += 3) occupy(id);
+        assertIndexMatchesLists(34);
+    }
+
+
+    @Test
+    public void inconsistentUpdatesAreIgnored () {
+        // removing an occupied dwelling or adding a vacant dwelling twice must not change the lists
+        RealEstateDataManager.removeDwellingFromVacancyList(3);
+        RealEstateDataManager.addDwellingToVacancyList(Dwelling.getDwellingFromId(1));
+        assertIndexMatchesLists(8);
+        assertTrue(RealEstateDataManager.getPositionOfVacantDwelling(1) >= 0);
+    }
+}
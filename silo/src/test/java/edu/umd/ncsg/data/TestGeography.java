@@ -0,0 +1,104 @@
+package edu.umd.ncsg.data;
+
+import edu.umd.ncsg.SiloUtil;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+
+/**
+ * Small study area for tests. Zones 1 to n are assigned to regions 1 to m in turn and to two counties, and the zonal
+ * data files are written to a temporary directory before geoData reads them. Micro data stores are emptied, so that
+ * every test starts without households, persons, dwellings and jobs.
+ **/
+
+public class TestGeography {
+
+    private static File directory;
+
+
+    public static ResourceBundle setUp (int zones, int regions) throws IOException {
+        return setUp(zones, regions, "");
+    }
+
+
+    public static ResourceBundle setUp (int zones, int regions, String properties) throws IOException {
+        // write zonal data for zones 1 to zones and read them into geoData, returns the properties that were used
+        // together with additional properties (lines of "key = value")
+        if (directory == null) {
+            directory = File.createTempFile("geography", "");
+            directory.delete();
+            directory.mkdir();
+            directory.deleteOnExit();
+        }
+        try (PrintWriter out = open("zones.csv")) {
+            out.println("ZoneId,ACRES,COUNTYFIPS,PUMA,msa,simplifiedPUMA");
+            for (int zone = 1; zone <= zones; zone++)
+                out.println(zone + "," + (100 + zone) + "," + (zone % 2 == 0 ? 24001 : 24003) + ",100,1,101");
+        }
+        try (PrintWriter out = open("regions.csv")) {
+            out.println("ZoneId,Region");
+            for (int zone = 1; zone <= zones; zone++) out.println(zone + "," + getRegionOfZone(zone, regions));
+        }
+        try (PrintWriter out = open("schools.csv")) {
+            out.println("Zone,SchoolQualityIndex");
+            for (int zone = 1; zone <= zones; zone++) out.println(zone + ",0.5");
+        }
+        try (PrintWriter out = open("crime.csv")) {
+            out.println("FIPS,CrimeIndicator");
+            out.println("24001,1.0");
+            out.println("24003,0.5");
+        }
+        ResourceBundle rb = new PropertyResourceBundle(new StringReader(
+                "start.year = 2000\n" +
+                "end.year = 2002\n" +
+                "simulation.period.length = 1\n" +
+                "this.gregorian.iterator = 1\n" +
+                "income.brackets.hh.types = 20000,40000,60000\n" +
+                "dwelling.quality.levels.distinguished = 4\n" +
+                "zonal.data.file = zones.csv\n" +
+                "region.definition.file = regions.csv\n" +
+                "school.quality.index = schools.csv\n" +
+                "crime.index = crime.csv\n" +
+                "vacant.dd.by.reg.array = 2\n" + properties));
+        SiloUtil.baseDirectory = directory.getPath() + File.separator;
+        SiloUtil.trackHh = -1;
+        SiloUtil.trackPp = -1;
+        SiloUtil.trackDd = -1;
+        SiloUtil.trackJj = -1;
+        geoData.setInitialData(rb);
+        clearMicroData();
+        return rb;
+    }
+
+
+    public static int getRegionOfZone (int zone, int regions) {
+        return (zone - 1) % regions + 1;
+    }
+
+
+    public static void clearMicroData () {
+        Household.getHouseholds().clear();
+        Person.getPersons().clear();
+        Dwelling.getDwellings().clear();
+        Job.getJobs().clear();
+        ZonalCounters.reset();
+        ZonalSummary.invalidate();
+    }
+
+
+    public static File getDirectory () {
+        return directory;
+    }
+
+
+    private static PrintWriter open (String fileName) throws IOException {
+        File file = new File(directory, fileName);
+        file.deleteOnExit();
+        return new PrintWriter(new FileWriter(file));
+    }
+}
@@ -0,0 +1,157 @@
+package edu.umd.ncsg.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Changes households and dwellings after the zonal counters were set up and compares the counters with a recount of
+ * all households and dwellings, with cross-checking enabled as with cross.check.zonal.counters = true.
+ **/
+
+public class ZonalCountersTest {
+
+    private static final int ZONES = 15;
+    private static final int REGIONS = 4;
+
+    private final Random rand = new Random(5);
+    private int nextPersonId = 1;
+
+
+    @Before
+    public void setUp () throws IOException {
+        TestGeography.setUp(ZONES, REGIONS);
+        ZonalCounters.setCrossCheck(true);
+        for (int id = 1; id <= 300; id++) {
+            addDwelling(id, id <= 200 ? id : -1);
+            if (id <= 200) addHousehold(id, id);
+        }
+    }
+
+
+    @After
+    public void tearDown () {
+        ZonalCounters.setCrossCheck(false);
+        TestGeography.clearMicroData();
+    }
+
+
+    private Dwelling addDwelling (int id, int hhId) {
+        DwellingType[] types = DwellingType.values();
+        return new Dwelling(id, rand.nextInt(ZONES) + 1, hhId, types[rand.nextInt(types.length)], rand.nextInt(5),
+                rand.nextInt(4) + 1, 500 + rand.nextInt(2000), 0, 1990);
+    }
+
+
+    private Household addHousehold (int id, int dwellingId) {
+        // race is set after persons have been added, as when households are created by the model
+        int size = rand.nextInt(4) + 1;
+        Household hh = new Household(id, dwellingId, Dwelling.getDwellingFromId(dwellingId).getZone(), size, 1);
+        Race[] races = Race.values();
+        Race race = races[rand.nextInt(races.length)];
+        for (int i = 0; i < size; i++) {
+            Race raceOfPerson = rand.nextInt(5) == 0 ? races[rand.nextInt(races.length)] : race;
+            hh.addPersonForInitialSetup(new Person(nextPersonId++, id, 30, 1, raceOfPerson, 1, -1, 20000));
+        }
+        hh.setHouseholdRace();
+        return hh;
+    }
+
+
+    private static void assertCountersEqualRecount () {
+        int zones = geoData.getZones().length;
+        int regions = geoData.getRegionList().length;
+        int races = Race.values().length;
+        int types = DwellingType.values().length;
+        float[][] householdsByZoneAndRace = new float[zones][races];
+        float[][] householdsByRegionAndRace = new float[regions][races];
+        int[] householdsByRegion = new int[regions];
+        for (Household hh: Household.getHouseholdArray()) {
+            if (hh.getHomeZone() == -1) continue;
+            int region = geoData.getRegionIndex(geoData.getRegionOfZone(hh.getHomeZone()));
+            householdsByRegion[region]++;
+            householdsByZoneAndRace[geoData.getZoneIndex(hh.getHomeZone())][hh.getRace().ordinal()]++;
+            householdsByRegionAndRace[region][hh.getRace().ordinal()]++;
+        }
+        int[][] dwellings = new int[types][geoData.getHighestZonalId() + 1];
+        long[][] prices = new long[types][geoData.getHighestZonalId() + 1];
+        long[][] bedrooms = new long[types][geoData.getHighestZonalId() + 1];
+        for (Dwelling dd: Dwelling.getDwellingArray()) {
+            dwellings[dd.getType().ordinal()][dd.getZone()]++;
+            prices[dd.getType().ordinal()][dd.getZone()] += dd.getPrice();
+            bedrooms[dd.getType().ordinal()][dd.getZone()] += dd.getBedrooms();
+        }
+
+        assertTrue(Arrays.deepEquals(householdsByZoneAndRace, ZonalCounters.getHouseholdsByZoneIndexAndRace()));
+        assertTrue(Arrays.deepEquals(householdsByRegionAndRace, ZonalCounters.getHouseholdsByRegionIndexAndRace()));
+        assertTrue(Arrays.equals(householdsByRegion, ZonalCounters.getHouseholdsByRegionIndex()));
+        for (DwellingType type: DwellingType.values()) {
+            assertTrue(type.toString(), Arrays.equals(dwellings[type.ordinal()], ZonalCounters.getDwellingsByZone(type)));
+            assertTrue(type.toString(), Arrays.equals(prices[type.ordinal()], ZonalCounters.getSumOfPricesByZone(type)));
+            assertTrue(type.toString(), Arrays.equals(bedrooms[type.ordinal()], ZonalCounters.getSumOfBedroomsByZone(type)));
+        }
+    }
+
+
+    @Test
+    public void countersFollowChangesOfHouseholdsAndDwellings () {
+        // first request sets up the counters, all following changes are counted as they happen
+        assertCountersEqualRecount();
+
+        // households move into vacant dwellings, also into other regions
+        for (int id = 1; id <= 60; id++) {
+            Dwelling.getDwellingFromId(id).setResidentID(-1);
+            Dwelling.getDwellingFromId(200 + id).setResidentID(id);
+            Household.getHouseholdFromId(id).setDwelling(200 + id);
+        }
+        assertCountersEqualRecount();
+
+        // households change their race, and a household leaves the study area
+        for (int id = 61; id <= 120; id += 3) {
+            Household hh = Household.getHouseholdFromId(id);
+            hh.getPersons()[0].race = Race.values()[(hh.getRace().ordinal() + 1) % Race.values().length];
+            hh.setHouseholdRace();
+        }
+        Household.getHouseholdFromId(121).setHomeZone(-1);
+        assertCountersEqualRecount();
+
+        // dwellings are repriced, demolished and built, households are removed and created
+        for (int id = 1; id <= 300; id += 4) Dwelling.getDwellingFromId(id).setPrice(rand.nextInt(3000));
+        for (int id = 150; id <= 200; id++) Household.remove(id);
+        for (int id = 150; id <= 200; id += 2) Dwelling.removeDwelling(id);
+        for (int id = 301; id <= 340; id++) {
+            addDwelling(id, id);
+            addHousehold(id, id);
+        }
+        assertCountersEqualRecount();
+
+        // a household that entered without home zone moves in
+        Household hh = addHousehold(341, 301);
+        hh.setHomeZone(-1);
+        addDwelling(342, 341);
+        hh.setDwelling(342);
+        assertCountersEqualRecount();
+    }
+
+
+    @Test
+    public void crossCheckDetectsCountersThatDifferFromRecount () {
+        assertCountersEqualRecount();
+        // count a household a second time without adding it to the store
+        ZonalCounters.householdAdded(Household.getHouseholdFromId(1));
+        try {
+            ZonalCounters.getHouseholdsByRegionIndex();
+            fail("cross-check did not detect wrong counters");
+        } catch (RuntimeException e) {
+            assertEquals("Zonal counters differ from full recount of households and dwellings.", e.getMessage());
+        }
+    }
+}
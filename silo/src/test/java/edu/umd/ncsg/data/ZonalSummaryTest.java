@@ -0,0 +1,190 @@
+package edu.umd.ncsg.data;
+
+import edu.umd.ncsg.SiloUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the zonal summary with counts of the same micro data in loops over all households, dwellings and jobs, as
+ * summarizeData and transportModel counted them before, and again after the micro data were changed.
+ **/
+
+public class ZonalSummaryTest {
+
+    private static final int ZONES = 12;
+    private static final int REGIONS = 3;
+    private static final int[] MSTM_INCOME_BRACKETS = {15000, 30000, 60000, 100000};
+    private static final String[] JOB_TYPES = {"RET", "OFF", "IND", "OTH"};
+
+    private int nextPersonId = 1;
+
+
+    @Before
+    public void setUp () throws IOException {
+        new JobType(TestGeography.setUp(ZONES, REGIONS, "employment.types = RET,OFF,IND,OTH\n"));
+        SiloUtil.incBrackets = new int[]{20000, 40000, 60000};
+        ZonalSummary.setMstmIncomeBrackets(MSTM_INCOME_BRACKETS);
+
+        Random rand = new Random(11);
+        DwellingType[] types = DwellingType.values();
+        for (int id = 1; id <= 400; id++) {
+            int zone = rand.nextInt(ZONES) + 1;
+            new Dwelling(id, zone, id <= 300 ? id : -1, types[rand.nextInt(types.length)], rand.nextInt(5),
+                    rand.nextInt(4) + 1, 500 + rand.nextInt(2000), 0, 1990);
+            // a few households have no home zone and are not counted by home zone
+            if (id <= 300) addHousehold(id, id, id % 50 == 0 ? -1 : zone, rand);
+        }
+        for (int id = 1; id <= 600; id++) {
+            new Job(id, rand.nextInt(ZONES) + 1, -1, JOB_TYPES[rand.nextInt(JOB_TYPES.length)]);
+        }
+    }
+
+
+    @After
+    public void tearDown () {
+        TestGeography.clearMicroData();
+    }
+
+
+    private void addHousehold (int id, int dwellingId, int homeZone, Random rand) {
+        int size = rand.nextInt(7) + 1;
+        Household hh = new Household(id, dwellingId, homeZone, size, 1);
+        for (int i = 0; i < size; i++) {
+            int occupation = rand.nextInt(3) == 0 ? 2 : 1;
+            Person pp = new Person(nextPersonId++, id, 20 + rand.nextInt(50), rand.nextInt(2) + 1, Race.white,
+                    occupation, -1, occupation == 1 ? rand.nextInt(50000) : 0);
+            hh.addPersonForInitialSetup(pp);
+        }
+        hh.setHouseholdRace();
+    }
+
+
+    private static void assertSummaryEqualsLoops () {
+        int highestZone = geoData.getHighestZonalId() + 1;
+        int zones = geoData.getZones().length;
+        int[] population = new int[highestZone];
+        int[] households = new int[highestZone];
+        int[][] householdsByIncome = new int[SiloUtil.incBrackets.length + 1][highestZone];
+        int[] householdsByHomeZone = new int[zones];
+        int[][][] byWorkers = new int[zones][4][MSTM_INCOME_BRACKETS.length + 1];
+        int[][][] bySize = new int[zones][5][MSTM_INCOME_BRACKETS.length + 1];
+        for (Household hh: Household.getHouseholdArray()) {
+            int zone = Dwelling.getDwellingFromId(hh.getDwellingId()).getZone();
+            population[zone] += hh.getHhSize();
+            households[zone]++;
+            householdsByIncome[HouseholdDataManager.getIncomeCategoryForIncome(hh.getHhIncome()) - 1][zone]++;
+            if (hh.getHomeZone() == -1) continue;
+            int zoneIndex = geoData.getZoneIndex(hh.getHomeZone());
+            householdsByHomeZone[zoneIndex]++;
+            int inc = HouseholdDataManager.getSpecifiedIncomeCategoryForIncome(MSTM_INCOME_BRACKETS, hh.getHhIncome());
+            int wrk = Math.min(HouseholdDataManager.getNumberOfWorkersInHousehold(hh), 3);
+            byWorkers[zoneIndex][wrk][inc - 1]++;
+            bySize[zoneIndex][Math.min(hh.getHhSize(), 5) - 1][inc - 1]++;
+        }
+        assertTrue(Arrays.equals(population, ZonalSummary.getPopulationByZone()));
+        assertTrue(Arrays.equals(households, ZonalSummary.getHouseholdsByZone()));
+        for (int inc = 1; inc <= householdsByIncome.length; inc++)
+            assertTrue("income " + inc, Arrays.equals(householdsByIncome[inc - 1],
+                    ZonalSummary.getHouseholdsByIncomeCategory(inc)));
+        assertTrue(Arrays.equals(householdsByHomeZone, ZonalSummary.getHouseholdsByHomeZoneIndex()));
+        assertTrue(Arrays.deepEquals(byWorkers, ZonalSummary.getHouseholdsByWorkersAndMstmIncome()));
+        assertTrue(Arrays.deepEquals(bySize, ZonalSummary.getHouseholdsBySizeAndMstmIncome()));
+
+        int[][] dwellingsByType = new int[DwellingType.values().length][highestZone];
+        int[] sumOfPrices = new int[highestZone];
+        for (Dwelling dd: Dwelling.getDwellingArray()) {
+            dwellingsByType[dd.getType().ordinal()][dd.getZone()]++;
+            sumOfPrices[dd.getZone()] += dd.getPrice();
+        }
+        for (DwellingType type: DwellingType.values())
+            assertTrue(type.toString(), Arrays.equals(dwellingsByType[type.ordinal()], ZonalSummary.getDwellingsByZone(type)));
+        assertTrue(Arrays.equals(sumOfPrices, ZonalSummary.getSumOfPricesByZone()));
+
+        int[] jobs = new int[highestZone];
+        int[] retailJobs = new int[highestZone];
+        int[] otherJobs = new int[highestZone];
+        int[] totalJobs = new int[highestZone];
+        int[][] jobsByMstmType = new int[JOB_TYPES.length][zones];
+        for (Job jj: Job.getJobArray()) {
+            int zoneIndex = geoData.getZoneIndex(jj.getZone());
+            jobs[jj.getZone()]++;
+            totalJobs[zoneIndex]++;
+            if (jj.getType().equals("RET")) retailJobs[zoneIndex]++;
+            if (jj.getType().equals("OTH")) otherJobs[zoneIndex]++;
+            jobsByMstmType[Arrays.asList(JOB_TYPES).indexOf(jj.getType())][zoneIndex]++;
+        }
+        assertTrue(Arrays.equals(jobs, ZonalSummary.getJobsByZone()));
+        assertTrue(Arrays.equals(retailJobs, ZonalSummary.getRetailJobsByZoneIndex()));
+        assertTrue(Arrays.equals(otherJobs, ZonalSummary.getOtherJobsByZoneIndex()));
+        assertTrue(Arrays.equals(totalJobs, ZonalSummary.getTotalJobsByZoneIndex()));
+        for (int type = 0; type < JOB_TYPES.length; type++)
+            assertTrue(JOB_TYPES[type], Arrays.equals(jobsByMstmType[type], ZonalSummary.getJobsByMstmTypeAndZoneIndex(type)));
+    }
+
+
+    @Test
+    public void summaryEqualsCountsOfMicroData () {
+        assertSummaryEqualsLoops();
+        assertEquals(300, sum(ZonalSummary.getHouseholdsByZone()));
+        assertEquals(600, sum(ZonalSummary.getTotalJobsByZoneIndex()));
+    }
+
+
+    @Test
+    public void summaryFollowsChangesOfMicroData () {
+        assertSummaryEqualsLoops();
+        Random rand = new Random(23);
+        // attributes of existing entities
+        for (int id = 1; id <= 400; id += 7) Dwelling.getDwellingFromId(id).setPrice(rand.nextInt(3000));
+        for (int id = 2; id <= 300; id += 5) {
+            for (Person pp: Household.getHouseholdFromId(id).getPersons()) {
+                pp.setOccupation(pp.getOccupation() == 1 ? 2 : 1);
+                pp.setIncome(rand.nextInt(120000));
+            }
+        }
+        assertSummaryEqualsLoops();
+        // households move into the vacant dwellings
+        for (int id = 1; id <= 100; id++) {
+            Dwelling.getDwellingFromId(id).setResidentID(-1);
+            Dwelling.getDwellingFromId(300 + id).setResidentID(id);
+            Household.getHouseholdFromId(id).setDwelling(300 + id);
+        }
+        assertSummaryEqualsLoops();
+        // entities are removed and added
+        for (int id = 101; id <= 150; id++) Household.remove(id);
+        for (int id = 1; id <= 600; id += 3) Job.removeJob(id);
+        for (int id = 601; id <= 650; id++) new Job(id, rand.nextInt(ZONES) + 1, -1, "OTH");
+        for (int id = 401; id <= 450; id++) {
+            new Dwelling(id, rand.nextInt(ZONES) + 1, id, DwellingType.MF5plus, 2, 3, 1200, 0, 2001);
+            addHousehold(id, id, Dwelling.getDwellingFromId(id).getZone(), rand);
+        }
+        assertSummaryEqualsLoops();
+    }
+
+
+    @Test
+    public void returnedArraysAreCopies () {
+        int[][][] byWorkers = ZonalSummary.getHouseholdsByWorkersAndMstmIncome();
+        int[][][] bySize = ZonalSummary.getHouseholdsBySizeAndMstmIncome();
+        int[] households = ZonalSummary.getHouseholdsByZone();
+        byWorkers[0][0][0] += 1000;
+        bySize[0][0][0] += 1000;
+        households[1] += 1000;
+        assertSummaryEqualsLoops();
+    }
+
+
+    private static int sum (int[] values) {
+        int sum = 0;
+        for (int value: values) sum += value;
+        return sum;
+    }
+}
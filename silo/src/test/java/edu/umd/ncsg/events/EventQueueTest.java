@@ -0,0 +1,111 @@
+package edu.umd.ncsg.events;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests packing of events into longs, growing and appending of queues and reproducible shuffling.
+ **/
+
+public class EventQueueTest {
+
+    @Test
+    public void packedEventKeepsTypeAndId () {
+        int[] ids = {0, 1, 123456, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        for (EventTypes et: EventTypes.values()) {
+            for (int id: ids) {
+                long event = EventQueue.encode(et.ordinal(), id);
+                assertEquals(et.ordinal(), EventQueue.getEventType(event));
+                assertEquals(id, EventQueue.getEventId(event));
+            }
+        }
+    }
+
+
+    @Test
+    public void queueGrowsAndKeepsOrder () {
+        EventQueue queue = new EventQueue(0);
+        for (int id = 0; id < 1000; id++) queue.add(EventTypes.values()[id % EventTypes.values().length], id);
+        assertEquals(1000, queue.size());
+        for (int id = 0; id < 1000; id++) {
+            assertTrue(queue.hasNext());
+            long event = queue.next();
+            assertEquals(id % EventTypes.values().length, EventQueue.getEventType(event));
+            assertEquals(id, EventQueue.getEventId(event));
+        }
+        assertFalse(queue.hasNext());
+    }
+
+
+    @Test
+    public void emptyQueue () {
+        EventQueue queue = new EventQueue(10);
+        assertEquals(0, queue.size());
+        assertFalse(queue.hasNext());
+        queue.shuffle(new Random(1));
+        assertFalse(queue.hasNext());
+        int[] counts = queue.countByType();
+        assertEquals(EventTypes.values().length, counts.length);
+        for (int count: counts) assertEquals(0, count);
+    }
+
+
+    @Test
+    public void addAllAppendsInOrder () {
+        EventQueue first = new EventQueue(2);
+        EventQueue second = new EventQueue(2);
+        for (int id = 0; id < 5; id++) first.add(EventTypes.birthday, id);
+        for (int id = 5; id < 40; id++) second.add(EventTypes.householdMove, id);
+        first.addAll(second);
+        assertEquals(40, first.size());
+        for (int pos = 0; pos < 40; pos++) assertEquals(pos, EventQueue.getEventId(first.get(pos)));
+        int[] counts = first.countByType();
+        assertEquals(5, counts[EventTypes.birthday.ordinal()]);
+        assertEquals(35, counts[EventTypes.householdMove.ordinal()]);
+    }
+
+
+    @Test
+    public void shuffleIsReproduciblePermutation () {
+        EventQueue a = new EventQueue(16);
+        EventQueue b = new EventQueue(16);
+        for (int id = 0; id < 500; id++) {
+            a.add(EventTypes.checkDeath, id);
+            b.add(EventTypes.checkDeath, id);
+        }
+        a.next();
+        a.shuffle(new Random(42));
+        b.shuffle(new Random(42));
+        // shuffle restarts the queue at the first event
+        long[] orderA = drain(a);
+        long[] orderB = drain(b);
+        assertTrue(Arrays.equals(orderA, orderB));
+
+        long[] sorted = orderA.clone();
+        Arrays.sort(sorted);
+        for (int id = 0; id < 500; id++) assertEquals(id, EventQueue.getEventId(sorted[id]));
+        boolean changed = false;
+        for (int pos = 0; pos < 500; pos++) if (EventQueue.getEventId(orderA[pos]) != pos) changed = true;
+        assertTrue(changed);
+
+        EventQueue c = new EventQueue(16);
+        for (int id = 0; id < 500; id++) c.add(EventTypes.checkDeath, id);
+        c.shuffle(new Random(43));
+        assertFalse(Arrays.equals(orderA, drain(c)));
+    }
+
+
+    private static long[] drain (EventQueue queue) {
+        long[] events = new long[queue.size()];
+        int pos = 0;
+        while (queue.hasNext()) events[pos++] = queue.next();
+        assertEquals(queue.size(), pos);
+        return events;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.umd.ncsg.relocation;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the two steps of drawing candidate dwellings directly from a vacancy list: the number of candidates drawn from
+ * a binomial distribution and the distinct positions in the list.
+ **/
+
+public class DwellingSamplingTest {
+
+    private static void assertDistinctInRange (int range, int count, int[] positions) {
+        boolean[] seen = new boolean[range];
+        for (int i = 0; i < count; i++) {
+            assertTrue("position " + positions[i] + " out of range " + range, positions[i] >= 0 && positions[i] < range);
+            assertFalse("position " + positions[i] + " drawn twice", seen[positions[i]]);
+            seen[positions[i]] = true;
+        }
+    }
+
+
+    @Test
+    public void distinctPositionsAreInRange () {
+        Random rand = new Random(1);
+        int[] positions = new int[100];
+        int[] ranges = {1, 2, 5, 20, 21, 100, 5000};
+        for (int range: ranges) {
+            for (int count = 0; count <= Math.min(range, 100); count++) {
+                for (int repetition = 0; repetition < 20; repetition++) {
+                    MovesModel.drawDistinctPositions(range, count, positions, rand);
+                    assertDistinctInRange(range, count, positions);
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void allPositionsAreDrawnIfCountEqualsRange () {
+        Random rand = new Random(2);
+        for (int range = 1; range <= 30; range++) {
+            int[] positions = new int[range];
+            MovesModel.drawDistinctPositions(range, range, positions, rand);
+            assertDistinctInRange(range, range, positions);
+        }
+    }
+
+
+    @Test
+    public void emptyRangeDrawsNothing () {
+        int[] positions = {-7};
+        MovesModel.drawDistinctPositions(0, 0, positions, new Random(3));
+        assertEquals(-7, positions[0]);
+    }
+
+
+    @Test
+    public void positionsAreEquallyLikely () {
+        // 5 of 40 positions, every position is expected to be drawn 1/8 of the time
+        Random rand = new Random(4);
+        int range = 40;
+        int count = 5;
+        int draws = 80000;
+        int[] frequency = new int[range];
+        int[] positions = new int[count];
+        for (int draw = 0; draw < draws; draw++) {
+            MovesModel.drawDistinctPositions(range, count, positions, rand);
+            for (int i = 0; i < count; i++) frequency[positions[i]]++;
+        }
+        double expected = (double) draws * count / range;
+        double sigma = Math.sqrt(expected * (1 - (double) count / range));
+        for (int pos = 0; pos < range; pos++)
+            assertEquals("position " + pos, expected, frequency[pos], 5 * sigma);
+    }
+
+
+    @Test
+    public void binomialDrawsHaveExpectedMeanAndVariance () {
+        Random rand = new Random(5);
+        int[] trialsToTest = {21, 100, 2000, 50000};
+        int draws = 50000;
+        for (int trials: trialsToTest) {
+            double probability = 20. / trials;
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int draw = 0; draw < draws; draw++) {
+                int k = MovesModel.drawBinomial(trials, probability, rand);
+                assertTrue(k >= 0 && k <= trials);
+                sum += k;
+                sumOfSquares += (double) k * k;
+            }
+            double mean = sum / draws;
+            double variance = sumOfSquares / draws - mean * mean;
+            double expectedVariance = trials * probability * (1 - probability);
+            assertEquals(trials + " trials", trials * probability, mean, 5 * Math.sqrt(expectedVariance / draws));
+            assertEquals(trials + " trials", expectedVariance, variance, 0.05 * expectedVariance);
+        }
+    }
+
+
+    @Test
+    public void binomialWithoutTrialsIsZero () {
+        assertEquals(0, MovesModel.drawBinomial(0, 0.5, new Random(6)));
+    }
+}
@@ -0,0 +1,142 @@
+package edu.umd.ncsg.relocation;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares utilities returned through the cache with utilities calculated without the cache, also after the cache has
+ * been emptied for exceeding its maximum size. A function of the dwelling attributes stands in for the UEC.
+ **/
+
+public class DwellingUtilityCacheTest {
+
+    private static final int HOUSEHOLD_TYPES = 80;
+    private static final int ZONES = 3000;
+    private static final int QUALITIES = 4;
+    private static final int BEDROOMS = 6;
+    private static final int PRICE_CATEGORIES = 120;
+
+    private int calculations = 0;
+
+
+    private double calculateUtility (int ht, int zone, int quality, int bedrooms, int priceCategory) {
+        calculations++;
+        return Math.sin(ht * 0.37 + zone * 0.011) + quality * 0.1 + Math.log(bedrooms + 1) - priceCategory * 0.003;
+    }
+
+
+    private double getUtility (DwellingUtilityCache cache, int ht, int zone, int quality, int bedrooms, int priceCategory) {
+        // same pattern as MovesModel.calculateUtility()
+        long key = DwellingUtilityCache.createKey(ht, zone, quality, bedrooms, priceCategory);
+        if (key != -1) {
+            double cachedUtil = cache.get(key);
+            if (!Double.isNaN(cachedUtil)) return cachedUtil;
+        }
+        double util = calculateUtility(ht, zone, quality, bedrooms, priceCategory);
+        if (key != -1) cache.put(key, util);
+        return util;
+    }
+
+
+    private void assertCachedEqualsUncached (DwellingUtilityCache cache, Random rand, int draws) {
+        for (int i = 0; i < draws; i++) {
+            int ht = rand.nextInt(HOUSEHOLD_TYPES);
+            int zone = rand.nextInt(ZONES);
+            int quality = rand.nextInt(QUALITIES) + 1;
+            int bedrooms = rand.nextInt(BEDROOMS);
+            int priceCategory = rand.nextInt(PRICE_CATEGORIES);
+            double uncached = calculateUtility(ht, zone, quality, bedrooms, priceCategory);
+            assertEquals(uncached, getUtility(cache, ht, zone, quality, bedrooms, priceCategory), 0);
+        }
+    }
+
+
+    @Test
+    public void keysAreUniqueForAttributesInRange () {
+        Set<Long> keys = new HashSet<>();
+        int[] zones = {0, 1, 255, 256, 65535, 65536, 0xFFFFFF};
+        int[] prices = {0, 1, 255, 256, 0xFFFF};
+        for (int ht = 0; ht < 128; ht += 9)
+            for (int zone: zones)
+                for (int quality = 0; quality < 256; quality += 85)
+                    for (int bedrooms = 0; bedrooms < 256; bedrooms += 51)
+                        for (int price: prices) {
+                            long key = DwellingUtilityCache.createKey(ht, zone, quality, bedrooms, price);
+                            assertTrue("key " + key, key != -1);
+                            assertTrue("duplicate key " + key, keys.add(key));
+                        }
+    }
+
+
+    @Test
+    public void attributesOutOfRangeAreNotCached () {
+        assertEquals(-1, DwellingUtilityCache.createKey(128, 0, 0, 0, 0));
+        assertEquals(-1, DwellingUtilityCache.createKey(-1, 0, 0, 0, 0));
+        assertEquals(-1, DwellingUtilityCache.createKey(0, 0x1000000, 0, 0, 0));
+        assertEquals(-1, DwellingUtilityCache.createKey(0, 0, 256, 0, 0));
+        assertEquals(-1, DwellingUtilityCache.createKey(0, 0, 0, 256, 0));
+        assertEquals(-1, DwellingUtilityCache.createKey(0, 0, 0, 0, 0x10000));
+        assertEquals(-1, DwellingUtilityCache.createKey(0, 0, 0, 0, -1));
+    }
+
+
+    @Test
+    public void cachedUtilitiesEqualUncachedUtilities () {
+        DwellingUtilityCache cache = new DwellingUtilityCache();
+        Random rand = new Random(42);
+        assertCachedEqualsUncached(cache, rand, 200000);
+        assertTrue("cache was used", cache.getHits() > 0);
+        assertEquals(cache.size(), cache.getMisses());
+
+        // the same attributes are found again without calculating them
+        calculations = 0;
+        cache.resetCounters();
+        int before = cache.size();
+        for (int i = 0; i < 1000; i++) getUtility(cache, 1, i, 2, 3, 4);
+        int calculated = calculations;
+        calculations = 0;
+        for (int i = 0; i < 1000; i++) getUtility(cache, 1, i, 2, 3, 4);
+        assertEquals(0, calculations);
+        assertEquals(before + calculated, cache.size());
+        assertEquals(2000 - calculated, cache.getHits());
+    }
+
+
+    @Test
+    public void cachedUtilitiesEqualUncachedUtilitiesAfterEviction () {
+        DwellingUtilityCache cache = new DwellingUtilityCache();
+        // fill cache beyond its maximum size with distinct keys, it is emptied once and refilled
+        for (int i = 0; i <= DwellingUtilityCache.MAX_SIZE + 1000; i++) {
+            long key = DwellingUtilityCache.createKey(i % 128, i / 128, 1, 1, 1);
+            cache.put(key, -i);
+        }
+        assertTrue("cache was emptied", cache.size() <= 1001);
+        for (int i = DwellingUtilityCache.MAX_SIZE; i <= DwellingUtilityCache.MAX_SIZE + 1000; i++) {
+            long key = DwellingUtilityCache.createKey(i % 128, i / 128, 1, 1, 1);
+            assertEquals(-i, cache.get(key), 0);
+        }
+        assertTrue(Double.isNaN(cache.get(DwellingUtilityCache.createKey(0, 0, 1, 1, 1))));
+        assertCachedEqualsUncached(cache, new Random(7), 200000);
+    }
+
+
+    @Test
+    public void clearRemovesAllUtilities () {
+        DwellingUtilityCache cache = new DwellingUtilityCache();
+        long key = DwellingUtilityCache.createKey(3, 17, 2, 2, 40);
+        cache.put(key, 1.5);
+        assertEquals(1.5, cache.get(key), 0);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertTrue(Double.isNaN(cache.get(key)));
+        cache.put(key, 2.5);
+        assertEquals(2.5, cache.get(key), 0);
+        assertEquals(1, cache.size());
+    }
+}
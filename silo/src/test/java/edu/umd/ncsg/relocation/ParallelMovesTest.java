@@ -0,0 +1,117 @@
+package edu.umd.ncsg.relocation;
+
+import edu.umd.ncsg.data.Dwelling;
+import edu.umd.ncsg.data.DwellingType;
+import edu.umd.ncsg.data.Household;
+import edu.umd.ncsg.data.RealEstateDataManager;
+import edu.umd.ncsg.data.TestGeography;
+import edu.umd.ncsg.data.geoData;
+import edu.umd.ncsg.events.EventQueue;
+import edu.umd.ncsg.events.EventTypes;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Relocates the same households with the same seed on one and on several threads and checks that every household ends
+ * up in the same dwelling. Few vacancies make many households select the same dwelling, so that claims are retried.
+ **/
+
+public class ParallelMovesTest {
+
+    private static final int ZONES = 10;
+    private static final int REGIONS = 2;
+    private static final int HOUSEHOLDS = 2500;            // more than one task of MOVES_PER_TASK households
+    private static final int DWELLINGS = 2800;
+    private static final int YEAR = 2001;
+
+    // selects a random vacant dwelling in a random region, 60 percent of the households consider moving
+    private static final MovesModel.DwellingSearch search = new MovesModel.DwellingSearch() {
+        public int selectDwelling (int hhId, Random rand) {
+            if (rand.nextDouble() > 0.6) return -1;
+            return searchAgain(Household.getHouseholdFromId(hhId), rand);
+        }
+        public int searchAgain (Household hh, Random rand) {
+            int[] regions = geoData.getRegionList();
+            int region = regions[rand.nextInt(regions.length)];
+            int vacancies = RealEstateDataManager.getVacancyListLengthOfRegion(region);
+            if (vacancies == 0) return -1;
+            return RealEstateDataManager.getVacantDwellingInRegion(region, rand.nextInt(vacancies));
+        }
+    };
+
+
+    @After
+    public void tearDown () {
+        TestGeography.clearMicroData();
+    }
+
+
+    private static int[] relocate (int threads, int[] counts) throws IOException {
+        // set up households in dwellings 1 to HOUSEHOLDS, relocate them and return the dwelling of every household
+        TestGeography.clearMicroData();
+        ResourceBundle rb = TestGeography.setUp(ZONES, REGIONS);
+        EventQueue moves = new EventQueue(HOUSEHOLDS);
+        for (int id = 1; id <= DWELLINGS; id++) {
+            int zone = (id - 1) % ZONES + 1;
+            new Dwelling(id, zone, id <= HOUSEHOLDS ? id : -1, DwellingType.SFD, 2, 3, 1000, 0, 1990);
+            if (id <= HOUSEHOLDS) {
+                new Household(id, id, zone, 1, 1);
+                moves.add(EventTypes.householdMove, id);
+            }
+        }
+        new RealEstateDataManager(rb).identifyVacantDwellings();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int[] result = MovesModel.chooseMovesInParallel(moves, YEAR, search, pool);
+        pool.shutdown();
+        System.arraycopy(result, 0, counts, 0, result.length);
+
+        int[] dwellingOfHousehold = new int[HOUSEHOLDS + 1];
+        for (int id = 1; id <= HOUSEHOLDS; id++) dwellingOfHousehold[id] = Household.getHouseholdFromId(id).getDwellingId();
+        return dwellingOfHousehold;
+    }
+
+
+    @Test
+    public void resultsDoNotDependOnNumberOfThreads () throws IOException {
+        int[] countsSingle = new int[2];
+        int[] single = relocate(1, countsSingle);
+        assertTrue("households moved", countsSingle[0] > 0);
+        assertTrue("claims retried", countsSingle[1] > 0);
+        for (int threads: new int[]{2, 4, 7}) {
+            int[] counts = new int[2];
+            int[] parallel = relocate(threads, counts);
+            assertTrue("dwellings differ on " + threads + " threads", Arrays.equals(single, parallel));
+            assertEquals(countsSingle[0], counts[0]);
+            assertEquals(countsSingle[1], counts[1]);
+        }
+    }
+
+
+    @Test
+    public void everyDwellingIsClaimedOnce () throws IOException {
+        relocate(4, new int[2]);
+        int[] residents = new int[DWELLINGS + 1];
+        for (int id = 1; id <= HOUSEHOLDS; id++) {
+            int ddId = Household.getHouseholdFromId(id).getDwellingId();
+            assertEquals("dwelling " + ddId + " claimed twice", 0, residents[ddId]);
+            residents[ddId] = id;
+            assertEquals(id, Dwelling.getDwellingFromId(ddId).getResidentId());
+        }
+        int vacancies = 0;
+        for (int region: geoData.getRegionList()) vacancies += RealEstateDataManager.getVacancyListLengthOfRegion(region);
+        assertEquals(DWELLINGS - HOUSEHOLDS, vacancies);
+        for (int id = 1; id <= DWELLINGS; id++) {
+            if (residents[id] == 0) assertEquals(-1, Dwelling.getDwellingFromId(id).getResidentId());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package edu.umd.ncsg.transportModel.tripGeneration;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Builds the cube from generated survey records and compares every cell with the records that have the same household
+ * characteristics, also for characteristics beyond those of the Maryland survey, such as a fourth region type.
+ **/
+
+public class SurveyHistogramCubeTest {
+
+    private static final int PURPOSES = tripPurposes.values().length;
+
+
+    private static int[][][] createSurvey (int records, int[] lowest, int[] highest, long seed) {
+        // characteristics and trips of survey households in rows 1 to records
+        Random rand = new Random(seed);
+        int[][] characteristics = new int[records + 1][];
+        int[][] trips = new int[records + 1][];
+        for (int row = 1; row <= records; row++) {
+            characteristics[row] = new int[5];
+            for (int dim = 0; dim < 5; dim++)
+                characteristics[row][dim] = lowest[dim] + rand.nextInt(highest[dim] - lowest[dim] + 1);
+            trips[row] = new int[PURPOSES];
+            for (int p = 0; p < PURPOSES; p++) trips[row][p] = rand.nextInt(4) == 0 ? rand.nextInt(12) : 0;
+        }
+        return new int[][][] {characteristics, trips};
+    }
+
+
+    private static void assertCellsEqualRecords (SurveyHistogramCube cube, int[][] characteristics, int[][] trips) {
+        // households and trip frequencies by purpose of every combination of characteristics in the survey
+        Map<String, int[][]> frequencies = new HashMap<>();
+        Map<String, Integer> households = new HashMap<>();
+        for (int row = 1; row < characteristics.length; row++) {
+            String key = Arrays.toString(characteristics[row]);
+            if (!frequencies.containsKey(key)) {
+                frequencies.put(key, new int[PURPOSES][TripGenerationData.MAX_NUMBER_OF_TRIPS + 1]);
+                households.put(key, 0);
+            }
+            households.put(key, households.get(key) + 1);
+            for (int p = 0; p < PURPOSES; p++) frequencies.get(key)[p][trips[row][p]]++;
+        }
+        assertEquals(frequencies.size(), cube.getNumberOfCells());
+        for (int cell = 0; cell < cube.getNumberOfCells(); cell++) {
+            int[] values = new int[5];
+            for (int dim = 0; dim < 5; dim++) {
+                values[dim] = cube.getValue(cell, dim);
+                assertTrue(values[dim] >= cube.getLowestValue(dim) && values[dim] <= cube.getHighestValue(dim));
+            }
+            String key = Arrays.toString(values);
+            assertTrue("cell " + key + " is not in survey", frequencies.containsKey(key));
+            assertEquals(key, (int) households.get(key), cube.getHouseholds(cell));
+            for (int p = 0; p < PURPOSES; p++) {
+                int[] frequency = new int[TripGenerationData.MAX_NUMBER_OF_TRIPS + 1];
+                int[] tripsOfCell = cube.getTrips(cell, p);
+                for (int entry = 0; entry < tripsOfCell.length; entry++) {
+                    assertTrue(cube.getCounts(cell, p)[entry] > 0);
+                    frequency[tripsOfCell[entry]] = cube.getCounts(cell, p)[entry];
+                }
+                assertTrue(key + " purpose " + p, Arrays.equals(frequencies.get(key)[p], frequency));
+            }
+        }
+    }
+
+
+    @Test
+    public void cellsEqualSurveyRecords () {
+        int[] lowest = {1, 0, 1, 0, 1};
+        int[] highest = {7, 4, 12, 3, 3};
+        int[][][] survey = createSurvey(20000, lowest, highest, 3);
+        SurveyHistogramCube cube = new SurveyHistogramCube(survey[0], survey[1]);
+        for (int dim = 0; dim < 5; dim++) {
+            assertEquals(lowest[dim], cube.getLowestValue(dim));
+            assertEquals(highest[dim], cube.getHighestValue(dim));
+        }
+        assertCellsEqualRecords(cube, survey[0], survey[1]);
+    }
+
+
+    @Test
+    public void dimensionsFollowRangeOfSurvey () {
+        // a fourth region type, larger households and more income categories than in the Maryland survey
+        int[] lowest = {1, 0, 1, 0, 1};
+        int[] highest = {9, 6, 20, 2, 4};
+        int[][][] survey = createSurvey(5000, lowest, highest, 8);
+        SurveyHistogramCube cube = new SurveyHistogramCube(survey[0], survey[1]);
+        assertEquals(4, cube.getHighestValue(SurveyHistogramCube.REGION));
+        assertEquals(2, cube.getHighestValue(SurveyHistogramCube.AUTOS));
+        assertEquals(20, cube.getHighestValue(SurveyHistogramCube.INCOME));
+        assertCellsEqualRecords(cube, survey[0], survey[1]);
+
+        // income in dollars instead of categories
+        int[][][] dollars = createSurvey(2000, new int[] {1, 0, 0, 0, 1}, new int[] {7, 4, 250000, 3, 3}, 9);
+        assertCellsEqualRecords(new SurveyHistogramCube(dollars[0], dollars[1]), dollars[0], dollars[1]);
+    }
+
+
+    @Test
+    public void negativeCharacteristicsAreRejected () {
+        int[][][] survey = createSurvey(100, new int[] {1, 0, 1, 0, 1}, new int[] {7, 4, 12, 3, 3}, 1);
+        survey[0][50][SurveyHistogramCube.WORKERS] = -1;
+        try {
+            new SurveyHistogramCube(survey[0], survey[1]);
+            fail("negative number of workers was accepted");
+        } catch (RuntimeException e) {
+            assertEquals("Survey households have negative workers -1.", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package edu.umd.ncsg.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Writes several files at the same time, plain and compressed, with more text than fits into a chunk or into the
+ * buffer of the writer thread, and compares their content with the text that was printed.
+ **/
+
+public class AsyncFileWriterTest {
+
+    private File directory;
+
+
+    @Before
+    public void setUp () throws IOException {
+        directory = Files.createTempDirectory("asyncWriter").toFile();
+    }
+
+
+    @After
+    public void tearDown () {
+        AsyncFileWriter.closeAll();
+        File[] files = directory.listFiles();
+        if (files != null) for (File file: files) file.delete();
+        directory.delete();
+    }
+
+
+    private static String read (File file) throws IOException {
+        try (InputStream in = file.getName().endsWith(".gz") ? new GZIPInputStream(new FileInputStream(file)) :
+                new FileInputStream(file)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) bytes.write(buffer, 0, n);
+            return bytes.toString("UTF-8");
+        }
+    }
+
+
+    private static void printLine (AsyncFileWriter writer, StringBuilder expected, int line) {
+        // mix of all print methods, the sharp s is encoded with two bytes
+        writer.print("line ");
+        writer.print(line);
+        writer.print(',');
+        writer.print(line / 4f);
+        writer.print(',');
+        writer.print(line / 8d);
+        writer.println(",Stra\u00dfe");
+        expected.append("line ").append(line).append(',').append(line / 4f).append(',').append(line / 8d)
+                .append(",Stra\u00dfe").append(System.lineSeparator());
+    }
+
+
+    @Test
+    public void linesAreWrittenInOrderToEveryFile () throws IOException {
+        File plain = new File(directory, "plain.csv");
+        File compressed = new File(directory, "compressed.csv.gz");
+        AsyncFileWriter plainWriter = AsyncFileWriter.open(plain.getPath(), false);
+        AsyncFileWriter compressedWriter = AsyncFileWriter.open(compressed.getPath(), false);
+        StringBuilder expectedPlain = new StringBuilder();
+        StringBuilder expectedCompressed = new StringBuilder();
+        // about 4 MB per file, many chunks and several times the buffer of the writer thread
+        for (int line = 0; line < 100000; line++) {
+            printLine(plainWriter, expectedPlain, line);
+            printLine(compressedWriter, expectedCompressed, 2 * line);
+        }
+        plainWriter.close();
+        compressedWriter.close();
+        AsyncFileWriter.waitForQueuedOutput();
+        assertEquals(expectedPlain.toString(), read(plain));
+        assertEquals(expectedCompressed.toString(), read(compressed));
+    }
+
+
+    @Test
+    public void flushedTextIsOnDiskBeforeFileIsClosed () throws IOException {
+        File file = new File(directory, "flushed.csv");
+        AsyncFileWriter writer = AsyncFileWriter.open(file.getPath(), false);
+        writer.println("header");
+        writer.flush();
+        writer.println("not flushed yet");
+        AsyncFileWriter.waitForQueuedOutput();
+        assertEquals("header" + System.lineSeparator(), read(file));
+        writer.close();
+        AsyncFileWriter.waitForQueuedOutput();
+        assertEquals("header" + System.lineSeparator() + "not flushed yet" + System.lineSeparator(), read(file));
+    }
+
+
+    @Test
+    public void closeAllWritesAndClosesAllFiles () throws IOException {
+        File[] files = new File[5];
+        AsyncFileWriter[] writers = new AsyncFileWriter[files.length];
+        StringBuilder[] expected = new StringBuilder[files.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(directory, "file" + i + (i % 2 == 0 ? ".csv" : ".csv.gz"));
+            writers[i] = AsyncFileWriter.open(files[i].getPath(), false);
+            expected[i] = new StringBuilder();
+        }
+        for (int line = 0; line < 5000; line++) printLine(writers[line % files.length], expected[line % files.length], line);
+        AsyncFileWriter.closeAll();
+        for (int i = 0; i < files.length; i++) assertEquals(expected[i].toString(), read(files[i]));
+
+        // text printed after closing is ignored
+        for (AsyncFileWriter writer: writers) writer.println("after close");
+        AsyncFileWriter.closeAll();
+        for (int i = 0; i < files.length; i++) assertEquals(expected[i].toString(), read(files[i]));
+    }
+
+
+    @Test
+    public void appendedTextFollowsExistingContent () throws IOException {
+        File file = new File(directory, "append.csv");
+        AsyncFileWriter writer = AsyncFileWriter.open(file.getPath(), false);
+        writer.println("first run");
+        writer.close();
+        writer = AsyncFileWriter.open(file.getPath(), true);
+        writer.println("second run");
+        AsyncFileWriter.closeAll();
+        assertEquals("first run" + System.lineSeparator() + "second run" + System.lineSeparator(), read(file));
+    }
+}
@@ -0,0 +1,80 @@
+package edu.umd.ncsg.utils;
+
+import edu.umd.ncsg.SiloUtil;
+
+import java.util.Random;
+
+/**
+ * Compares the time per draw of SiloUtil.select(), CumulativeSampler and AliasSampler for distributions of different
+ * size that are reused for many draws. Every variant is run a few times after a warm-up run and the best time is
+ * reported. Set-up time of the samplers is reported separately.
+ *
+ * Usage: DiscreteSamplerBenchmark [draws] [runs]
+ **/
+
+public class DiscreteSamplerBenchmark {
+
+    private static final int[] LENGTHS = {10, 100, 1000, 10000};
+
+
+    public static void main (String[] args) {
+        int draws = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        System.out.println(String.format("%8s %14s %14s %14s %14s %14s", "items", "select ns", "cumulative ns",
+                "alias ns", "cum. setup ms", "alias setup ms"));
+        for (int length: LENGTHS) {
+            Random rand = new Random(length);
+            final double[] probabilities = new double[length];
+            for (int i = 0; i < length; i++) probabilities[i] = rand.nextDouble();
+
+            long start = System.nanoTime();
+            final DiscreteSampler cumulative = DiscreteSampler.cumulative(probabilities);
+            double cumulativeSetup = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            final DiscreteSampler alias = DiscreteSampler.alias(probabilities);
+            double aliasSetup = (System.nanoTime() - start) / 1e6;
+
+            // fewer draws for SiloUtil.select() with long distributions, time is reported per draw
+            int selectDraws = (int) Math.max(draws / Math.max(length / 100, 1), 1000);
+            double select = benchmark(new Draw() {
+                public int draw (Random rand) {
+                    return SiloUtil.select(probabilities, rand);
+                }
+            }, selectDraws, runs);
+            double cumulativeTime = benchmark(new Draw() {
+                public int draw (Random rand) {
+                    return cumulative.select(rand);
+                }
+            }, draws, runs);
+            double aliasTime = benchmark(new Draw() {
+                public int draw (Random rand) {
+                    return alias.select(rand);
+                }
+            }, draws, runs);
+            System.out.println(String.format("%8d %14.1f %14.1f %14.1f %14.3f %14.3f", length, select, cumulativeTime,
+                    aliasTime, cumulativeSetup, aliasSetup));
+        }
+    }
+
+
+    private interface Draw {
+        int draw (Random rand);
+    }
+
+
+    private static double benchmark (Draw variant, int draws, int runs) {
+        // return best time per draw in nanoseconds
+        long checksum = 0;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run <= runs; run++) {
+            Random rand = new Random(42);
+            long start = System.nanoTime();
+            for (int draw = 0; draw < draws; draw++) checksum += variant.draw(rand);
+            long time = System.nanoTime() - start;
+            if (run > 0) best = Math.min(best, time);
+        }
+        if (checksum == Long.MIN_VALUE) System.out.println(checksum);   // keeps the draws from being optimized away
+        return (double) best / draws;
+    }
+}
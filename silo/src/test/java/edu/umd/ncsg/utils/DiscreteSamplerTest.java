@@ -0,0 +1,136 @@
+package edu.umd.ncsg.utils;
+
+import edu.umd.ncsg.SiloUtil;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares CumulativeSampler and AliasSampler with SiloUtil.select(). The cumulative sampler has to select the same
+ * items for the same seed, the alias sampler has to reproduce the distribution.
+ **/
+
+public class DiscreteSamplerTest {
+
+    private static final int DRAWS = 200000;
+
+
+    private static double[] createProbabilities (int length, long seed) {
+        // random weights with some zeros in between
+        Random rand = new Random(seed);
+        double[] probabilities = new double[length];
+        for (int i = 0; i < length; i++) probabilities[i] = rand.nextInt(4) == 0 ? 0 : rand.nextDouble() * 10;
+        return probabilities;
+    }
+
+
+    @Test
+    public void cumulativeSelectsSameItemsAsSiloUtil () {
+        int[] lengths = {1, 2, 3, 7, 64, 1000, 4097};
+        for (int length: lengths) {
+            double[] probabilities = createProbabilities(length, length);
+            DiscreteSampler sampler = DiscreteSampler.cumulative(probabilities);
+            Random selectRand = new Random(1234 + length);
+            Random samplerRand = new Random(1234 + length);
+            for (int draw = 0; draw < DRAWS / 10; draw++) {
+                assertEquals("length " + length + ", draw " + draw, SiloUtil.select(probabilities, selectRand),
+                        sampler.select(samplerRand));
+            }
+            // both used the random number generator the same way
+            assertEquals(selectRand.nextLong(), samplerRand.nextLong());
+        }
+    }
+
+
+    @Test
+    public void aliasReproducesDistributionOfSiloUtil () {
+        int[] lengths = {2, 7, 64, 500};
+        for (int length: lengths) {
+            double[] probabilities = createProbabilities(length, 99 + length);
+            double sum = SiloUtil.getSum(probabilities);
+            if (sum == 0) continue;
+            int[] selectCounts = new int[length];
+            int[] aliasCounts = new int[length];
+            Random selectRand = new Random(5);
+            Random aliasRand = new Random(6);
+            DiscreteSampler sampler = DiscreteSampler.alias(probabilities);
+            for (int draw = 0; draw < DRAWS; draw++) {
+                selectCounts[SiloUtil.select(probabilities, selectRand)]++;
+                aliasCounts[sampler.select(aliasRand)]++;
+            }
+            for (int i = 0; i < length; i++) {
+                double p = probabilities[i] / sum;
+                double tolerance = 5 * Math.sqrt(DRAWS * p * (1 - p)) + 1;
+                if (p == 0) {
+                    assertEquals(0, selectCounts[i]);
+                    assertEquals(0, aliasCounts[i]);
+                }
+                assertTrue("select, item " + i, Math.abs(selectCounts[i] - DRAWS * p) <= tolerance);
+                assertTrue("alias, item " + i, Math.abs(aliasCounts[i] - DRAWS * p) <= tolerance);
+            }
+        }
+    }
+
+
+    @Test
+    public void allZeroProbabilitiesSelectLastItem () {
+        for (int length: new int[] {1, 2, 5}) {
+            double[] probabilities = new double[length];
+            DiscreteSampler cumulative = DiscreteSampler.cumulative(probabilities);
+            DiscreteSampler alias = DiscreteSampler.alias(probabilities);
+            Random selectRand = new Random(3);
+            Random cumulativeRand = new Random(3);
+            Random aliasRand = new Random(3);
+            for (int draw = 0; draw < 1000; draw++) {
+                assertEquals(length - 1, SiloUtil.select(probabilities, selectRand));
+                assertEquals(length - 1, cumulative.select(cumulativeRand));
+                assertEquals(length - 1, alias.select(aliasRand));
+            }
+            assertEquals(selectRand.nextLong(), cumulativeRand.nextLong());
+        }
+    }
+
+
+    @Test
+    public void singleNonZeroProbabilityIsAlwaysSelected () {
+        int length = 9;
+        for (int item = 0; item < length; item++) {
+            double[] probabilities = new double[length];
+            probabilities[item] = 0.3;
+            DiscreteSampler cumulative = DiscreteSampler.cumulative(probabilities);
+            DiscreteSampler alias = DiscreteSampler.alias(probabilities);
+            Random selectRand = new Random(item);
+            Random cumulativeRand = new Random(item);
+            Random aliasRand = new Random(item);
+            for (int draw = 0; draw < 1000; draw++) {
+                assertEquals(item, SiloUtil.select(probabilities, selectRand));
+                assertEquals(item, cumulative.select(cumulativeRand));
+                assertEquals(item, alias.select(aliasRand));
+            }
+        }
+    }
+
+
+    @Test
+    public void invalidProbabilitiesAreRejected () {
+        double[][] invalid = {{}, {0.5, -0.1}, {Double.NaN, 1}, {1, Double.POSITIVE_INFINITY}};
+        for (double[] probabilities: invalid) {
+            try {
+                DiscreteSampler.cumulative(probabilities);
+                fail("cumulative sampler accepted invalid probabilities");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+            try {
+                DiscreteSampler.alias(probabilities);
+                fail("alias sampler accepted invalid probabilities");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+}
@@ -41,9 +41,16 @@ public class CSVFileReader extends TableDataFileReader implements  DataTypes {
     private char delimiter = ',';
 
     //Pattern composed of regular expression used to parse CSV fields
-    private String pattern = ",(?=(?:[^\"]*\"[^\"]*\")*(?![^\"]*\"))";
+    private static final String DEFAULT_PATTERN = ",(?=(?:[^\"]*\"[^\"]*\")*(?![^\"]*\"))";
+    private String pattern = DEFAULT_PATTERN;
     private Pattern regexPattern = Pattern.compile(pattern);
 
+    //Files are parsed by ColumnarCSVParser unless a custom pattern has been set
+    private boolean useColumnarParser = true;
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+    //Files larger than this number of bytes are parsed in parallel
+    private long parallelThreshold = 32L * 1024 * 1024;
+
     //These attributes are initialized on each call to readFile()
     private int columnCount;
     private int rowCount;
@@ -95,6 +102,34 @@ public class CSVFileReader extends TableDataFileReader implements  DataTypes {
         regexPattern = Pattern.compile(pattern);
     }
 
+    /**
+     * Selects how files are parsed. The columnar parser reads a file in a single pass,
+     * parses numbers straight from bytes and skips columns that are not read. Otherwise
+     * lines are split with the regular expression, which is always done for URLs and
+     * custom patterns.
+     *
+     * @param useColumnarParser true to use the columnar parser (default)
+     */
+    public void setUseColumnarParser(boolean useColumnarParser) {
+        this.useColumnarParser = useColumnarParser;
+    }
+
+    /**
+     *
+     * @param numberOfThreads number of threads used to parse large files, 1 parses on the calling thread
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     *
+     * @param parallelThreshold size in bytes above which files are parsed in parallel
+     */
+    public void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
 
     public TableDataSet readFile(File file) throws IOException {
         return readFile(file, true);
@@ -162,6 +197,10 @@ public class CSVFileReader extends TableDataFileReader implements  DataTypes {
 		columnData = new ArrayList();
 		columnLabels = new ArrayList();
 		columnType = null;
+
+		if (isColumnarParserUsed()) {
+			return readFileColumnar(file, columnLabelsPresent, columnsToRead, null);
+		}
         
 		BufferedReader inStream = openFile(file);
         
@@ -261,6 +300,10 @@ public class CSVFileReader extends TableDataFileReader implements  DataTypes {
 		columnData = new ArrayList();
 		columnLabels = new ArrayList();
 		columnType = null;
+
+		if (isColumnarParserUsed()) {
+			return readFileColumnar(file, columnLabelsPresent, columnsToRead, columnFormats);
+		}
         
 		BufferedReader inStream = openFile(file);
         
@@ -292,6 +335,106 @@ public class CSVFileReader extends TableDataFileReader implements  DataTypes {
     }
 
 
+    private boolean isColumnarParserUsed() {
+        //The columnar parser splits fields like the default pattern with a single-byte delimiter
+        return useColumnarParser && delimiter < 128 &&
+                pattern.equals(Character.toString(delimiter) + DEFAULT_PATTERN.substring(1));
+    }
+
+
+    /**
+     * Loads a CSV file in a single pass with the columnar parser. Columns that are not
+     * read are skipped, and number columns are parsed without creating strings.
+     */
+    private TableDataSet readFileColumnar(File file, boolean columnLabelsPresent, String[] columnsToRead,
+                                          String[] columnFormats) throws IOException {
+        logger.debug("Opening file: "+file);
+        InputStream inStream = new FileInputStream(file);
+        try {
+            ColumnarCSVParser parser = new ColumnarCSVParser(inStream, file.toString(), delimiter, regexPattern);
+
+            boolean[] readColumnFlag = null;
+            if (columnLabelsPresent) {
+                String line = parser.readLine();
+                if (line == null) {
+                    throw new IOException("Error: file looks like it's empty");
+                }
+                readColumnFlag = parseColumnLabels(line, columnsToRead);
+                if (columnFormats == null) {
+                    boolean readAColumn=false;
+                    for (boolean b: readColumnFlag) {
+                        readAColumn = readAColumn || b;
+                    }
+                    if (!readAColumn) {
+                        logger.fatal("No columns read when reading file "+file);
+                        throw new RuntimeException("No columns read when reading file "+file);
+                    }
+                }
+            }
+
+            //Types are determined from the first data line unless formats are given
+            String firstLine = parser.peekLine();
+            if (firstLine == null) {
+                columnType = new int[columnCount];
+                for (int col=0; col < columnCount; col++) {
+                    if (columnFormats != null && columnFormats[col].equals("NUMBER")) {
+                        columnType[col] = NUMBER;
+                        columnData.add(new float[0]);
+                    } else {
+                        columnType[col] = STRING;
+                        columnData.add(new String[0]);
+                    }
+                }
+            } else {
+                //columnCount will be 0 when column titles are not present
+                if (columnCount == 0) {
+                    columnCount = parseTokens(firstLine).length;
+                }
+                if (readColumnFlag == null) {
+                    readColumnFlag = new boolean[columnCount];
+                    for (int col =0; col<readColumnFlag.length; col++) {
+                        readColumnFlag[col] = true;
+                    }
+                }
+                int[] types = columnFormats == null ? determineColumnTypes(firstLine) : null;
+
+                //c is the actual column number of the column in the file
+                //c2 is the column number in the data set
+                int[] fileColumnType = new int[readColumnFlag.length];
+                columnType = new int[columnCount];
+                int c2 = -1;
+                for (int c=0; c < readColumnFlag.length; c++) {
+                    if (readColumnFlag[c] == false) {
+                        fileColumnType[c] = ColumnarCSVParser.SKIP;
+                        continue;
+                    }
+                    c2++;
+                    if (columnFormats != null) {
+                        fileColumnType[c] = columnFormats[c].equals("NUMBER") ? NUMBER : STRING;
+                    } else {
+                        fileColumnType[c] = c < types.length ? types[c] : STRING;
+                    }
+                    columnType[c2] = fileColumnType[c];
+                }
+
+                int threads = file.length() > parallelThreshold ? numberOfThreads : 1;
+                Object[] columns = parser.parse(fileColumnType, columnCount, threads);
+                for (Object column: columns) {
+                    columnData.add(column);
+                }
+                rowCount = parser.getRowCount();
+            }
+            logger.debug("number of rows in file: " + rowCount);
+        } finally {
+            inStream.close();
+        }
+
+        TableDataSet tds = makeTableDataSet();
+        tds.setName(file.toString());
+        return tds;
+    }
+
+
     /**
      * Read and parse the column titles from the first line of file.
      */
@@ -305,6 +448,14 @@ public class CSVFileReader extends TableDataFileReader implements  DataTypes {
             throw new IOException("Error: file looks like it's empty");
         }
 
+        return parseColumnLabels(line, columnsToRead);
+    }
+
+
+    /**
+     * Parse the column titles from the first line of file.
+     */
+    private boolean[] parseColumnLabels(String line, String[] columnsToRead) {
         //Tokenize the first line
         String[] tokens = parseTokens(line);
         int count = tokens.length;
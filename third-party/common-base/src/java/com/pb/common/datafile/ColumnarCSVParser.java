@@ -0,0 +1,384 @@
+package com.pb.common.datafile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass CSV parser used by CSVFileReader. The file is read in blocks of complete lines and parsed byte by byte.
+ * Number columns are parsed straight into float arrays, strings are only created for string columns that are read,
+ * and columns that are not read are skipped. Blocks can be parsed in parallel. Fields are split and cleaned the same
+ * way as by the regular expression of CSVFileReader, lines with unbalanced quotes are split with that expression.
+ */
+class ColumnarCSVParser implements DataTypes {
+
+    //Type of columns in the file that are not read
+    static final int SKIP = -1;
+
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    private final InputStream in;
+    private final String fileName;
+    private final byte delimiter;
+    private final Pattern regexPattern;
+    private final Charset charset = Charset.defaultCharset();
+
+    private byte[] buffer = new byte[BLOCK_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfFile = false;
+    private int rowCount = 0;
+
+    //Set by parse()
+    private int[] fileColumnType;
+    private int[] columnIndex;
+    private int numberOfColumns;
+    private int minimumTokens;
+
+
+    ColumnarCSVParser(InputStream in, String fileName, char delimiter, Pattern regexPattern) {
+        this.in = in;
+        this.fileName = fileName;
+        this.delimiter = (byte) delimiter;
+        this.regexPattern = regexPattern;
+    }
+
+
+    /**
+     * Parsed lines of one block, values are stored by column in arrays that grow as needed.
+     */
+    private class Block {
+        float[][] numbers = new float[numberOfColumns][];
+        String[][] strings = new String[numberOfColumns][];
+        int rows = 0;
+        int errorRow = -1;
+        int errorTokens;
+
+        Block(int expectedRows) {
+            for (int c = 0; c < fileColumnType.length; c++) {
+                if (fileColumnType[c] == NUMBER) numbers[columnIndex[c]] = new float[expectedRows];
+                else if (fileColumnType[c] == STRING) strings[columnIndex[c]] = new String[expectedRows];
+            }
+        }
+
+        void ensureCapacity() {
+            for (int i = 0; i < numberOfColumns; i++) {
+                if (numbers[i] != null && numbers[i].length == rows)
+                    numbers[i] = Arrays.copyOf(numbers[i], Math.max(16, rows * 2));
+                if (strings[i] != null && strings[i].length == rows)
+                    strings[i] = Arrays.copyOf(strings[i], Math.max(16, rows * 2));
+            }
+        }
+    }
+
+
+    /**
+     * Returns the next line without consuming it, or null at the end of the file.
+     */
+    String peekLine() throws IOException {
+        int end = findLineEnd();
+        if (end < 0) return null;
+        return new String(buffer, position, end - position, charset);
+    }
+
+
+    /**
+     * Returns the next line and moves on to the following line, or null at the end of the file.
+     */
+    String readLine() throws IOException {
+        int end = findLineEnd();
+        if (end < 0) return null;
+        String line = new String(buffer, position, end - position, charset);
+        position = skipLineTerminator(buffer, end, limit);
+        return line;
+    }
+
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+
+    private int findLineEnd() throws IOException {
+        //Returns position of the terminator of the next line, limit if the last line has no terminator, or -1 at the
+        //end of the file. A \r at the end of the buffer might be followed by \n, so more data is read first
+        while (true) {
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == '\n' || (buffer[i] == '\r' && (i < limit - 1 || endOfFile))) return i;
+            }
+            if (endOfFile) return position < limit ? limit : -1;
+            fillBuffer();
+        }
+    }
+
+
+    private static int skipLineTerminator(byte[] data, int end, int to) {
+        if (end >= to) return to;
+        if (data[end] == '\r' && end + 1 < to && data[end + 1] == '\n') return end + 2;
+        return end + 1;
+    }
+
+
+    private void fillBuffer() throws IOException {
+        //Moves unread bytes to the beginning of the buffer and reads until the buffer is full or the file has ended
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        while (limit < buffer.length && !endOfFile) {
+            int count = in.read(buffer, limit, buffer.length - limit);
+            if (count < 0) endOfFile = true;
+            else limit += count;
+        }
+    }
+
+
+    /**
+     * Parses all remaining lines of the file.
+     *
+     * @param fileColumnType  type of each column in the file (NUMBER, STRING or SKIP)
+     * @param minimumTokens   minimum number of fields on every line
+     * @param numberOfThreads number of threads parsing blocks of lines, 1 parses on the calling thread
+     * @return one float[] or String[] for every column that is not skipped, in the order of the file
+     */
+    Object[] parse(int[] fileColumnType, int minimumTokens, int numberOfThreads) throws IOException {
+        this.fileColumnType = fileColumnType;
+        this.minimumTokens = minimumTokens;
+        columnIndex = new int[fileColumnType.length];
+        numberOfColumns = 0;
+        for (int c = 0; c < fileColumnType.length; c++) {
+            columnIndex[c] = fileColumnType[c] == SKIP ? -1 : numberOfColumns++;
+        }
+
+        List<Block> blocks = new ArrayList<Block>();
+        ExecutorService executor = null;
+        LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+        if (numberOfThreads > 1) executor = Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ColumnarCSVParser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            while (true) {
+                if (!endOfFile) fillBuffer();
+                int cut = findLastLineEnd();
+                if (cut < 0) continue;   //no complete line in buffer, buffer was grown by fillBuffer()
+                if (cut > position) {
+                    if (executor == null) {
+                        blocks.add(parseBlock(buffer, position, cut));
+                    } else {
+                        final byte[] data = Arrays.copyOfRange(buffer, position, cut);
+                        pending.add(executor.submit(new Callable<Block>() {
+                            public Block call() {
+                                return parseBlock(data, 0, data.length);
+                            }
+                        }));
+                        while (pending.size() >= 2 * numberOfThreads) blocks.add(pending.removeFirst().get());
+                    }
+                    position = cut;
+                }
+                if (endOfFile && position >= limit) break;
+            }
+            while (!pending.isEmpty()) blocks.add(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while reading file " + fileName, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException("Could not read file " + fileName, e.getCause());
+        } finally {
+            if (executor != null) executor.shutdownNow();
+        }
+        return mergeBlocks(blocks);
+    }
+
+
+    private int findLastLineEnd() {
+        //Returns position after the last complete line in the buffer, or -1 if there is none
+        if (endOfFile) return limit;
+        for (int i = limit - 1; i >= position; i--) {
+            if (buffer[i] == '\n') return i + 1;
+        }
+        for (int i = limit - 2; i >= position; i--) {
+            if (buffer[i] == '\r') return i + 1;
+        }
+        return -1;
+    }
+
+
+    private Object[] mergeBlocks(List<Block> blocks) {
+        rowCount = 0;
+        for (Block block: blocks) {
+            if (block.errorRow >= 0) {
+                throw new RuntimeException(block.errorTokens + " columns found on line " + (rowCount + block.errorRow) +
+                        ", should be at least " + minimumTokens + " in file " + fileName);
+            }
+            rowCount += block.rows;
+        }
+        Object[] columns = new Object[numberOfColumns];
+        for (int c = 0; c < fileColumnType.length; c++) {
+            int i = columnIndex[c];
+            if (i < 0) continue;
+            int row = 0;
+            if (fileColumnType[c] == NUMBER) {
+                float[] values = new float[rowCount];
+                for (Block block: blocks) {
+                    System.arraycopy(block.numbers[i], 0, values, row, block.rows);
+                    row += block.rows;
+                }
+                columns[i] = values;
+            } else {
+                String[] values = new String[rowCount];
+                for (Block block: blocks) {
+                    System.arraycopy(block.strings[i], 0, values, row, block.rows);
+                    row += block.rows;
+                }
+                columns[i] = values;
+            }
+        }
+        return columns;
+    }
+
+
+    private Block parseBlock(byte[] data, int from, int to) {
+        Block block = new Block(Math.max(16, (to - from) / 32));
+        int[] starts = new int[Math.max(16, fileColumnType.length + 1)];
+        int[] ends = new int[starts.length];
+        int p = from;
+        while (p < to) {
+            int lineStart = p;
+            int count = 0;
+            boolean inQuotes = false;
+            int fieldStart = p;
+            int i = p;
+            for (; i < to; i++) {
+                byte b = data[i];
+                if (b == '\n' || b == '\r') break;
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == delimiter && !inQuotes) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        ends = Arrays.copyOf(ends, count * 2);
+                    }
+                    starts[count] = fieldStart;
+                    ends[count++] = i;
+                    fieldStart = i + 1;
+                }
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = fieldStart;
+            ends[count++] = i;
+            p = skipLineTerminator(data, i, to);
+
+            block.ensureCapacity();
+            if (inQuotes) {
+                //Unbalanced quotes, split line like CSVFileReader
+                String[] tokens = regexPattern.split(new String(data, lineStart, i - lineStart, charset));
+                if (tokens.length < minimumTokens) return setError(block, tokens.length);
+                for (int c = 0; c < Math.min(tokens.length, fileColumnType.length); c++) {
+                    if (fileColumnType[c] == SKIP) continue;
+                    String token = cleanToken(tokens[c]);
+                    if (fileColumnType[c] == NUMBER) block.numbers[columnIndex[c]][block.rows] = Float.parseFloat(token);
+                    else block.strings[columnIndex[c]][block.rows] = cleanString(token);
+                }
+            } else {
+                //Trailing empty fields are dropped like by String.split(), unless the line has no delimiter at all
+                if (count > 1) while (count > 0 && ends[count - 1] == starts[count - 1]) count--;
+                if (count < minimumTokens) return setError(block, count);
+                for (int c = 0; c < Math.min(count, fileColumnType.length); c++) {
+                    if (fileColumnType[c] == NUMBER) {
+                        block.numbers[columnIndex[c]][block.rows] = parseNumber(data, starts[c], ends[c]);
+                    } else if (fileColumnType[c] == STRING) {
+                        String token = cleanToken(new String(data, starts[c], ends[c] - starts[c], charset));
+                        block.strings[columnIndex[c]][block.rows] = cleanString(token);
+                    }
+                }
+            }
+            block.rows++;
+        }
+        return block;
+    }
+
+
+    private static Block setError(Block block, int tokens) {
+        block.errorRow = block.rows;
+        block.errorTokens = tokens;
+        return block;
+    }
+
+
+    private float parseNumber(byte[] data, int from, int to) {
+        //Numbers with up to 7 digits and 10 decimals are exactly representable as float and divided by an exact power
+        //of ten, which gives the same result as Float.parseFloat(). Anything else is parsed by Float.parseFloat()
+        int i = from;
+        boolean negative = false;
+        if (i < to && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+        int mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < to; i++) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) decimals++;
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == to && digits > 0 && digits <= 7 && decimals <= 10) {
+            float value = decimals > 0 ? (float) mantissa / POWERS_OF_TEN[decimals] : (float) mantissa;
+            return negative ? -value : value;
+        }
+        return Float.parseFloat(cleanToken(new String(data, from, to - from, charset)));
+    }
+
+
+    /**
+     * Removes enclosing quotes and replaces escaped quotes like CSVFileReader.parseTokens().
+     */
+    static String cleanToken(String token) {
+        if (token.startsWith("\"")) {
+            token = token.substring(1);
+        }
+        if (token.endsWith("\"")) {
+            token = token.substring(0, (token.length()-1) );
+        }
+        return token.replace("\"\"", "\"");
+    }
+
+
+    /**
+     * Removes another leading quote from string values like CSVFileReader.readData().
+     */
+    private static String cleanString(String token) {
+        if (token.startsWith("\"")) {
+            token = token.substring(1);
+        }
+        return token;
+    }
+}
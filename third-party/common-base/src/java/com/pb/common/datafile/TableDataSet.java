@@ -42,6 +42,11 @@ public class TableDataSet implements DataTypes, Serializable {
     private ArrayList columnData = new ArrayList();
     private int[] columnIndex = null;
     private int[] columnType = null;
+
+    // case-insensitive lookup of 1-based column positions by label, rebuilt when labels change
+    private transient Map<String,Integer> columnPositions = null;
+    // incremented whenever a column array is replaced, so that column handles pick up the new array
+    private int columnVersion = 0;
     
     // the index columns work with the TableDataSetIndex and TableDataSetIndexedValue
     // if an index column changes, then any TableDataSetIndex that uses that column has to regenerate
@@ -114,6 +119,7 @@ public class TableDataSet implements DataTypes, Serializable {
         }
 
         columnLabelsPresent = true;
+        columnPositions = null;
         
         fireIndexValuesChanged();
         setDirty(true);
@@ -466,17 +472,39 @@ public class TableDataSet implements DataTypes, Serializable {
     *
     */
     public int getColumnPosition(String columnName) {
-        int position = -1;
+        if (columnName == null) {
+            return -1;
+        }
+        if (columnPositions == null) {
+            buildColumnPositions();
+        }
+        Integer position = columnPositions.get(foldCase(columnName));
+        return position == null ? -1 : position;
+    }
 
-        for (int col = 0; col < columnLabels.size(); col++) {
+    private void buildColumnPositions() {
+        //If labels are repeated, the first column with this label is found like by a linear search
+        Map<String,Integer> positions = new HashMap<String,Integer>(columnLabels.size() * 2);
+        for (int col = columnLabels.size() - 1; col >= 0; col--) {
             String currentColumn = (String) columnLabels.get(col);
-            if (currentColumn.equalsIgnoreCase(columnName)) {
-                position = col + 1;
-                break;
+            if (currentColumn != null) {
+                positions.put(foldCase(currentColumn), col + 1);
             }
         }
+        columnPositions = positions;
+    }
 
-        return position;
+    /**
+     * Folds the case of every character the same way as String.equalsIgnoreCase()
+     * compares characters, so that two labels have the same key if and only if they
+     * are equal ignoring case.
+     */
+    private static String foldCase(String label) {
+        char[] chars = label.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
     }
     
     public int checkColumnPosition(String columnName) throws RuntimeException {
@@ -766,6 +794,7 @@ public class TableDataSet implements DataTypes, Serializable {
 		    f[i] = (float)newValues[i];
 		    
 		columnData.set( column, f );
+		columnVersion++;
         if (indexColumns[column]==true) {
             fireIndexValuesChanged();
         }
@@ -782,6 +811,7 @@ public class TableDataSet implements DataTypes, Serializable {
 		column = column - 1;
 
 		columnData.set( column, newValues );
+		columnVersion++;
         if (indexColumns[column]==true) {
             fireIndexValuesChanged();
         }
@@ -802,6 +832,7 @@ public class TableDataSet implements DataTypes, Serializable {
 		    f[i] = (float)newValues[i];
 		    
 		columnData.set( column, f );
+		columnVersion++;
         if (indexColumns[column]==true) {
             fireIndexValuesChanged();
         }
@@ -1070,6 +1101,7 @@ public class TableDataSet implements DataTypes, Serializable {
 
         columnLabels.add(newColumnLabel);
         columnLabelsPresent = true;
+        columnPositions = null;
     }
     public void appendColumnAsDouble(Object newColumn, String newColumnLabel) {
         int newType = -1;
@@ -1138,6 +1170,7 @@ public class TableDataSet implements DataTypes, Serializable {
 
         columnLabels.add(newColumnLabel);
         columnLabelsPresent = true;
+        columnPositions = null;
     }
 
     
@@ -1953,6 +1986,7 @@ public class TableDataSet implements DataTypes, Serializable {
     public void replaceFloatColumn(int colNumber, float[] newData){
         columnData.remove(colNumber-1);
         columnData.add(colNumber-1, newData);
+        columnVersion++;
     }
 
     //column positions are 1-number of columns but columnData ArrayList
@@ -1960,8 +1994,162 @@ public class TableDataSet implements DataTypes, Serializable {
     public void replaceStringColumn(int colNumber, String[] newData){
         columnData.remove(colNumber-1);
         columnData.add(colNumber-1, newData);
+        columnVersion++;
+    }
+
+
+    ////// Typed Column Handles //////
+
+    /**
+     * Returns a handle to a NUMBER column. The column is looked up once, afterwards
+     * values are read from the underlying array without lookups or casts.
+     *
+     * @param columnName name of the column
+     * @throws RuntimeException if the column does not exist or is not of type NUMBER
+     */
+    public FloatColumn floatColumn(String columnName) {
+        return floatColumn(checkColumnPosition(columnName));
+    }
+
+    /**
+     * Returns a handle to a NUMBER column.
+     *
+     * @param column column number (1-based)
+     * @throws RuntimeException if the column is not of type NUMBER
+     */
+    public FloatColumn floatColumn(int column) {
+        checkColumnNumber(column, NUMBER);
+        return new FloatColumn(column);
+    }
+
+    /**
+     * Returns a handle to a STRING column.
+     *
+     * @param columnName name of the column
+     * @throws RuntimeException if the column does not exist or is not of type STRING
+     */
+    public StringColumn stringColumn(String columnName) {
+        return stringColumn(checkColumnPosition(columnName));
+    }
+
+    /**
+     * Returns a handle to a STRING column.
+     *
+     * @param column column number (1-based)
+     * @throws RuntimeException if the column is not of type STRING
+     */
+    public StringColumn stringColumn(int column) {
+        checkColumnNumber(column, STRING);
+        return new StringColumn(column);
+    }
+
+    /**
+     * Handle to a column of type NUMBER. Row numbers are 1-based as in the rest of
+     * TableDataSet. The handle stays valid if the column array is replaced.
+     */
+    public class FloatColumn {
+        private final int column;
+        private float[] values;
+        private int version;
+
+        private FloatColumn(int column) {
+            this.column = column;
+            refresh();
+        }
+
+        private void refresh() {
+            values = (float[]) columnData.get(column - 1);
+            version = columnVersion;
+        }
+
+        /**
+         * @return the array holding the values of this column, indexed by row - 1
+         */
+        public float[] values() {
+            if (version != columnVersion) refresh();
+            return values;
+        }
+
+        public float get(int row) {
+            return values()[row - 1];
+        }
+
+        /**
+         * Returns the value in the row found through the index built by buildIndex().
+         */
+        public float getIndexed(int value) {
+            if (columnIndex == null) {
+                throw new RuntimeException("No index defined for column: " + column);
+            }
+            return values()[columnIndex[value]];
+        }
+
+        public void set(int row, float value) {
+            setValueAt(row, column, value);
+        }
+
+        public int getPosition() {
+            return column;
+        }
+
+        public String getLabel() {
+            return getColumnLabel(column);
+        }
+    }
+
+    /**
+     * Handle to a column of type STRING. Row numbers are 1-based as in the rest of
+     * TableDataSet. The handle stays valid if the column array is replaced.
+     */
+    public class StringColumn {
+        private final int column;
+        private String[] values;
+        private int version;
+
+        private StringColumn(int column) {
+            this.column = column;
+            refresh();
+        }
+
+        private void refresh() {
+            values = (String[]) columnData.get(column - 1);
+            version = columnVersion;
+        }
+
+        /**
+         * @return the array holding the values of this column, indexed by row - 1
+         */
+        public String[] values() {
+            if (version != columnVersion) refresh();
+            return values;
+        }
+
+        public String get(int row) {
+            return values()[row - 1];
+        }
+
+        /**
+         * Returns the value in the row found through the index built by buildIndex().
+         */
+        public String getIndexed(int value) {
+            if (columnIndex == null) {
+                throw new RuntimeException("No index defined for column: " + column);
+            }
+            return values()[columnIndex[value]];
+        }
+
+        public void set(int row, String value) {
+            setStringValueAt(row, column, value);
+        }
+
+        public int getPosition() {
+            return column;
+        }
+
+        public String getLabel() {
+            return getColumnLabel(column);
+        }
     }
-    
 }
 
 
@@ -0,0 +1,130 @@
+package com.pb.common.datafile.tests;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.pb.common.datafile.CSVFileReader;
+import com.pb.common.datafile.DataTypes;
+import com.pb.common.datafile.TableDataSet;
+
+/**
+ * Compares the columnar CSVFileReader with the line-by-line regular expression reader
+ * on a generated file of 1 million rows. Every variant is run a few times after a warm-up
+ * run, the best time is reported, and all variants are checked to give identical tables.
+ *
+ * Usage: CSVFileReaderBenchmark [rows] [runs]
+ */
+public class CSVFileReaderBenchmark {
+
+    private static final String[] COLUMNS_TO_READ = {"zone", "income", "type"};
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File file = File.createTempFile("csvBenchmark", ".csv");
+        file.deleteOnExit();
+        writeFile(file, rows);
+        System.out.println("File with " + rows + " rows: " + file.length() / (1024 * 1024) + " MB");
+
+        TableDataSet reference = benchmark("regular expression", regexReader(), file, null, runs);
+        TableDataSet columnar = benchmark("columnar", columnarReader(1), file, null, runs);
+        TableDataSet parallel = benchmark("columnar parallel", columnarReader(4), file, null, runs);
+        compare(reference, columnar);
+        compare(reference, parallel);
+
+        TableDataSet referenceSubset = benchmark("regular expression, 3 columns", regexReader(), file, COLUMNS_TO_READ, runs);
+        TableDataSet columnarSubset = benchmark("columnar, 3 columns", columnarReader(1), file, COLUMNS_TO_READ, runs);
+        TableDataSet parallelSubset = benchmark("columnar parallel, 3 columns", columnarReader(4), file, COLUMNS_TO_READ, runs);
+        compare(referenceSubset, columnarSubset);
+        compare(referenceSubset, parallelSubset);
+        System.out.println("All readers returned identical tables.");
+    }
+
+
+    private static CSVFileReader regexReader() {
+        CSVFileReader reader = new CSVFileReader();
+        reader.setUseColumnarParser(false);
+        return reader;
+    }
+
+
+    private static CSVFileReader columnarReader(int threads) {
+        CSVFileReader reader = new CSVFileReader();
+        reader.setNumberOfThreads(threads);
+        reader.setParallelThreshold(threads > 1 ? 0 : Long.MAX_VALUE);
+        return reader;
+    }
+
+
+    private static void writeFile(File file, int rows) throws IOException {
+        //Mix of integers, decimals, exponents, quoted strings and escaped quotes, with CRLF and LF line ends
+        Random random = new Random(42);
+        String[] types = {"\"SFD\"", "\"MF234\"", "\"MH, mobile\"", "\"say \"\"hi\"\"\""};
+        BufferedWriter out = new BufferedWriter(new FileWriter(file));
+        out.write("id,zone,hhSize,income,autos,type,price,share,label,coordX,coordY\r\n");
+        for (int i = 0; i < rows; i++) {
+            out.write(Integer.toString(i + 1));
+            out.write(',');
+            out.write(Integer.toString(random.nextInt(4000) + 1));
+            out.write(',');
+            out.write(Integer.toString(random.nextInt(8) + 1));
+            out.write(',');
+            out.write(Integer.toString(random.nextInt(250000) - 1000));
+            out.write(',');
+            out.write(Integer.toString(random.nextInt(4)));
+            out.write(',');
+            out.write(types[random.nextInt(types.length)]);
+            out.write(',');
+            out.write(String.format("%.2f", random.nextFloat() * 5000));
+            out.write(',');
+            out.write(Float.toString(random.nextFloat() / 1000));
+            out.write(',');
+            out.write("hh" + i);
+            out.write(',');
+            out.write(Double.toString(random.nextDouble() * 1e6));
+            out.write(',');
+            out.write(String.format("%.6f", random.nextDouble() * 100));
+            out.write(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        out.close();
+    }
+
+
+    private static TableDataSet benchmark(String name, CSVFileReader reader, File file, String[] columnsToRead,
+                                          int runs) throws IOException {
+        TableDataSet table = reader.readFile(file, columnsToRead);
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            table = reader.readFile(file, columnsToRead);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%-32s %8.1f ms", name, best / 1e6));
+        return table;
+    }
+
+
+    private static void compare(TableDataSet expected, TableDataSet actual) {
+        if (expected.getRowCount() != actual.getRowCount() ||
+                !Arrays.equals(expected.getColumnLabels(), actual.getColumnLabels()) ||
+                !Arrays.equals(expected.getColumnType(), actual.getColumnType())) {
+            throw new RuntimeException("Tables differ in rows, labels or column types");
+        }
+        for (int col = 1; col <= expected.getColumnCount(); col++) {
+            boolean same;
+            if (expected.getColumnType()[col - 1] == DataTypes.NUMBER) {
+                same = Arrays.equals(expected.getColumnAsFloat(col), actual.getColumnAsFloat(col));
+            } else {
+                same = Arrays.equals(expected.getColumnAsString(col), actual.getColumnAsString(col));
+            }
+            if (!same) {
+                throw new RuntimeException("Tables differ in column " + expected.getColumnLabels()[col - 1]);
+            }
+        }
+    }
+}